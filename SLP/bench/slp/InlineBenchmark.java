@@ -0,0 +1,96 @@
+package slp;
+
+import java.io.*;
+
+import LIR.InstructionCounter;
+import LIR.LIRInterpreter;
+import LIR.LIRProgram;
+
+/** Measures what inlining small methods gains: each program is compiled with -O twice, with
+ * the inline budget given and with no inlining, both outputs are compared, and then each is
+ * run repeatedly on the LIR interpreter with its output discarded, in rounds that take turns,
+ * of which the best counts. Next to the times, it reports the calls inlined and the code size.
+ *
+ * Usage: InlineBenchmark [budget] [iterations] [IC files...]
+ */
+public class InlineBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int budget = args.length > 0 ? Integer.parseInt(args[0]) : optimizer.Inliner.DEFAULT_BUDGET;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		String[] files = { "test/BubbleSort.ic", "test/FarmersLife.ic", "test/Quicksort.ic", "test/Sieve.ic",
+				"test/test_virtual_calls_2.ic" };
+		if (args.length > 2) {
+			files = new String[args.length-2];
+			System.arraycopy(args, 2, files, 0, files.length);
+		}
+
+		System.out.println(iterations+" runs per program, inline budget "+budget);
+		System.out.printf("%-24s %8s %14s %14s %12s %12s %9s  %s%n", "program", "inlined", "instrs",
+				"no inl instrs", "ms/run", "no inl ms", "speedup", "same output");
+		for (String file: files) {
+			Compiled with = compile(file, budget);
+			Compiled without = compile(file, 0);
+
+			ByteArrayOutputStream withOut = new ByteArrayOutputStream();
+			ByteArrayOutputStream withoutOut = new ByteArrayOutputStream();
+			run(with.program, new PrintStream(withOut), 1);
+			run(without.program, new PrintStream(withoutOut), 1);
+			boolean same = withOut.toString().equals(withoutOut.toString());
+
+			PrintStream discard = new PrintStream(new OutputStream() {
+				public void write(int b) {}
+				public void write(byte[] b, int off, int len) {}
+			});
+			// the two take turns, and the best round of each counts
+			double withMs = Double.MAX_VALUE, withoutMs = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				withMs = Math.min(withMs, run(with.program, discard, iterations) / iterations);
+				withoutMs = Math.min(withoutMs, run(without.program, discard, iterations) / iterations);
+			}
+
+			System.out.printf("%-24s %8d %14d %14d %12.4f %12.4f %8.2fx  %s%n", new File(file).getName(), with.inlined,
+					with.instructions, without.instructions, withMs, withoutMs, withoutMs / withMs, same);
+		}
+	}
+
+	/** A program compiled with -O, with or without inlining.
+	 */
+	static class Compiled {
+		LIRProgram program;
+		int inlined;
+		int instructions;
+	}
+
+	static Compiled compile(String file, int budget) throws Exception {
+		Compiler compiler = new Compiler();
+		Reader source = new FileReader(file);
+		try {
+			compiler.parse(source);
+		} finally {
+			source.close();
+		}
+		compiler.check();
+		compiler.setOptimize(true);
+		compiler.setInlineBudget(budget);
+		compiler.optimize();
+
+		StringBuilder lir = new StringBuilder();
+		InstructionCounter counter = new InstructionCounter(lir);
+		compiler.translate(counter);
+		Compiled c = new Compiled();
+		c.program = LIRProgram.load(new StringReader(lir.toString()));
+		c.inlined = compiler.getOptimizer().getCallsInlined();
+		c.instructions = counter.getCount();
+		return c;
+	}
+
+	// run the program <n> times on the interpreter, returns the elapsed time in ms
+	private static double run(LIRProgram program, PrintStream out, int n) {
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			new LIRInterpreter(program, out, new StringReader("")).run(new String[0]);
+		return (System.nanoTime() - start) / 1e6;
+	}
+}
@@ -0,0 +1,97 @@
+package slp;
+
+import java.io.*;
+
+import LIR.InstructionCounter;
+import LIR.LIRInterpreter;
+import LIR.LIRProgram;
+
+/** Compares the runtime checks translated inline (-inline-checks) with calls of the check
+ * helpers, in code size and in speed: each program is compiled both ways, both outputs are
+ * compared, and then each is run repeatedly on the LIR interpreter with its output discarded,
+ * in rounds that take turns, of which the best counts. With -O, the programs are optimized
+ * first, which leaves fewer checks.
+ *
+ * Usage: InlineChecksBenchmark [-O] [iterations] [IC files...]
+ */
+public class InlineChecksBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		boolean optimize = args.length > 0 && args[0].equals("-O");
+		int first = optimize ? 1 : 0;
+		int iterations = args.length > first ? Integer.parseInt(args[first]) : 2000;
+		String[] files = { "test/BubbleSort.ic", "test/MatrixMultiplier.ic", "test/Quicksort.ic", "test/Sieve.ic" };
+		if (args.length > first+1) {
+			files = new String[args.length-first-1];
+			System.arraycopy(args, first+1, files, 0, files.length);
+		}
+
+		System.out.println(iterations+" runs per program"+(optimize ? ", with -O" : ""));
+		System.out.printf("%-24s %7s %14s %14s %12s %12s %9s  %s%n", "program", "checks", "inline instrs",
+				"call instrs", "inline ms", "call ms", "speedup", "same output");
+		for (String file: files) {
+			Compiled inline = compile(file, optimize, true);
+			Compiled call = compile(file, optimize, false);
+
+			ByteArrayOutputStream inlineOut = new ByteArrayOutputStream();
+			ByteArrayOutputStream callOut = new ByteArrayOutputStream();
+			run(inline.program, new PrintStream(inlineOut), 1);
+			run(call.program, new PrintStream(callOut), 1);
+			boolean same = inlineOut.toString().equals(callOut.toString());
+
+			PrintStream discard = new PrintStream(new OutputStream() {
+				public void write(int b) {}
+				public void write(byte[] b, int off, int len) {}
+			});
+			// the two take turns, and the best round of each counts
+			double inlineMs = Double.MAX_VALUE, callMs = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				inlineMs = Math.min(inlineMs, run(inline.program, discard, iterations) / iterations);
+				callMs = Math.min(callMs, run(call.program, discard, iterations) / iterations);
+			}
+
+			System.out.printf("%-24s %7d %14d %14d %12.4f %12.4f %8.2fx  %s%n", new File(file).getName(), call.runtimeChecks,
+					inline.instructions, call.instructions, inlineMs, callMs, callMs / inlineMs, same);
+		}
+	}
+
+	/** A program compiled with the runtime checks inline or as calls.
+	 */
+	static class Compiled {
+		LIRProgram program;
+		int instructions;
+		int runtimeChecks;
+	}
+
+	static Compiled compile(String file, boolean optimize, boolean inlineChecks) throws Exception {
+		Compiler compiler = new Compiler();
+		Reader source = new FileReader(file);
+		try {
+			compiler.parse(source);
+		} finally {
+			source.close();
+		}
+		compiler.check();
+		compiler.setOptimize(optimize);
+		compiler.optimize();
+		compiler.setInlineChecks(inlineChecks);
+
+		StringBuilder lir = new StringBuilder();
+		InstructionCounter counter = new InstructionCounter(lir);
+		compiler.translate(counter);
+		Compiled c = new Compiled();
+		c.program = LIRProgram.load(new StringReader(lir.toString()));
+		c.instructions = counter.getCount();
+		c.runtimeChecks = counter.getRuntimeChecks();
+		return c;
+	}
+
+	// run the program <n> times on the interpreter, returns the elapsed time in ms
+	private static double run(LIRProgram program, PrintStream out, int n) {
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			new LIRInterpreter(program, out, new StringReader("")).run(new String[0]);
+		return (System.nanoTime() - start) / 1e6;
+	}
+}
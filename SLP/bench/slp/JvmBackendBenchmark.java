@@ -0,0 +1,74 @@
+package slp;
+
+import java.io.*;
+
+import JVM.JVMBackend;
+import LIR.LIRInterpreter;
+import LIR.LIRProgram;
+
+/** Compares the run time of IC programs on the LIR interpreter with the JVM backend.
+ * Each program is compiled once for each backend, both outputs are compared, and then
+ * each is run repeatedly (after a warmup) with its output discarded.
+ *
+ * Usage: JvmBackendBenchmark [iterations] [IC files...]
+ */
+public class JvmBackendBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		String[] files = { "test/MatrixMultiplier.ic", "test/Quicksort.ic", "test/Sieve.ic" };
+		if (args.length > 1) {
+			files = new String[args.length-1];
+			System.arraycopy(args, 1, files, 0, files.length);
+		}
+
+		System.out.println(iterations+" runs per program");
+		System.out.printf("%-24s %12s %12s %9s  %s%n", "program", "LIR ms/run", "JVM ms/run", "speedup", "same output");
+		for (String file: files) {
+			Compiler compiler = new Compiler();
+			Reader source = new FileReader(file);
+			try {
+				compiler.parse(source);
+			} finally {
+				source.close();
+			}
+			compiler.check();
+			StringBuilder lir = new StringBuilder();
+			compiler.translate(lir);
+			LIRProgram program = LIRProgram.load(new StringReader(lir.toString()));
+			JVMBackend jvm = new JVMBackend(compiler.getRoot());
+
+			ByteArrayOutputStream lirOut = new ByteArrayOutputStream();
+			ByteArrayOutputStream jvmOut = new ByteArrayOutputStream();
+			runLir(program, new PrintStream(lirOut), 1);
+			runJvm(jvm, new PrintStream(jvmOut), 1);
+			boolean same = lirOut.toString().equals(jvmOut.toString());
+
+			PrintStream discard = new PrintStream(new OutputStream() {
+				public void write(int b) {}
+				public void write(byte[] b, int off, int len) {}
+			});
+			runLir(program, discard, iterations);
+			runJvm(jvm, discard, iterations);
+			double lirMs = runLir(program, discard, iterations) / iterations;
+			double jvmMs = runJvm(jvm, discard, iterations) / iterations;
+
+			System.out.printf("%-24s %12.4f %12.4f %8.1fx  %s%n", new File(file).getName(), lirMs, jvmMs, lirMs / jvmMs, same);
+		}
+	}
+
+	// run the program <n> times on the interpreter, returns the elapsed time in ms
+	private static double runLir(LIRProgram program, PrintStream out, int n) {
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			new LIRInterpreter(program, out, new StringReader("")).run(new String[0]);
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	private static double runJvm(JVMBackend jvm, PrintStream out, int n) {
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			jvm.run(new String[0], out, new StringReader(""));
+		return (System.nanoTime() - start) / 1e6;
+	}
+}
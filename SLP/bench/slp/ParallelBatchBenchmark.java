@@ -0,0 +1,62 @@
+package slp;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/** Compares the sequential batch compiler with the multi-threaded one. The IC corpus is
+ * copied several times into a temporary directory, compiled once with a single thread
+ * and once with a worker pool, and the produced .lir files of both runs are compared.
+ *
+ * Usage: ParallelBatchBenchmark [corpus dir] [copies] [threads]
+ */
+public class ParallelBatchBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		File corpus = new File(args.length > 0 ? args[0] : "test");
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Path work = Files.createTempDirectory("slp-bench");
+		Path sources = Files.createDirectories(work.resolve("src"));
+		for (int i = 0; i < copies; i++) {
+			for (File f: corpus.listFiles()) {
+				if (f.getName().endsWith(".ic"))
+					Files.copy(f.toPath(), sources.resolve("copy"+i+"_"+f.getName()));
+			}
+		}
+
+		// warm up both paths, then measure
+		run(work, 1, "warmup");
+		run(work, threads, "warmup");
+		double seqMs = run(work, 1, "seq");
+		double parMs = run(work, threads, "par");
+
+		int files = work.resolve("seq").toFile().list().length;
+		System.out.println(files+" files, "+Runtime.getRuntime().availableProcessors()+" cores");
+		System.out.printf("sequential:           %10.1f ms%n", seqMs);
+		System.out.printf("parallel (%2d threads): %10.1f ms%n", threads, parMs);
+		System.out.printf("speedup:              %10.2fx%n", seqMs / parMs);
+		System.out.println("identical output:     "+sameOutput(work.resolve("seq").toFile(), work.resolve("par").toFile()));
+	}
+
+	// compile all sources into <work>/<outName>, returns the elapsed time in ms
+	private static double run(Path work, int threads, String outName) {
+		BatchCompiler batch = new BatchCompiler();
+		batch.setThreads(threads);
+		batch.setOutputDir(work.resolve(outName).toString());
+		batch.addInput(work.resolve("src").toFile());
+		long start = System.nanoTime();
+		batch.run(new PrintStream(new ByteArrayOutputStream()));
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	private static boolean sameOutput(File a, File b) throws IOException {
+		for (File fa: a.listFiles()) {
+			File fb = new File(b, fa.getName());
+			if (!fb.exists() || !Arrays.equals(Files.readAllBytes(fa.toPath()), Files.readAllBytes(fb.toPath())))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,308 @@
+package slp;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import LIR.LIRTranslator;
+import semanticTypes.TypeTable;
+import symbolTable.SemanticChecker;
+import symbolTable.SymbolTable;
+
+/** Measures each phase of the compiler on its own: the Lexer in tokens/s, the Parser in AST
+ * nodes/s, the SemanticChecker in AST nodes/s, the LIRTranslator in LIR lines/s, and whole
+ * compilations (parse, check and translate) in files/s. Each phase runs on the test/*.ic
+ * corpus, and on a large program of each ProgramGenerator preset (or only the -presets given).
+ *
+ * Every iteration runs the phase once on each file of the input. The phases before it run
+ * in the same iteration but outside the timed part, as does everything they allocate. Next
+ * to the time, it reports what the timed part allocated (per iteration, and per second of
+ * it) and the collections during the iterations, like the gc profiler of JMH. With -json,
+ * the results are also written into a JSON file, to keep track of them over time.
+ *
+ * Usage: PhaseBenchmark [-warmup n] [-iterations n] [-presets name,...] [-json file] [corpus dir]
+ */
+public class PhaseBenchmark {
+
+	/** A phase, timed on one source file at a time.
+	 */
+	static abstract class Phase {
+		final String name, unit;
+
+		Phase(String name, String unit) {
+			this.name = name;
+			this.unit = unit;
+		}
+
+		// what run works on, made outside the timed part - by default the source itself
+		Object prepare(String source) throws Exception {
+			return source;
+		}
+
+		// runs the phase, returning the number of units it processed
+		abstract long run(Object prepared) throws Exception;
+	}
+
+	/** The measurements of a phase on an input.
+	 */
+	static class Result {
+		String phase, input, unit;
+		double[] throughput;	// units per second, per iteration
+		double msPerIteration;
+		long units;				// per iteration
+		long bytes;				// allocated by the timed parts, in all iterations
+		long gcCount, gcMs;
+		double seconds;			// time in the timed parts, in all iterations
+
+		double mean() {
+			double sum = 0;
+			for (double t: throughput)
+				sum += t;
+			return sum / throughput.length;
+		}
+
+		double stddev() {
+			double mean = mean(), sum = 0;
+			for (double t: throughput)
+				sum += (t - mean) * (t - mean);
+			return throughput.length > 1 ? Math.sqrt(sum / (throughput.length - 1)) : 0;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int warmup = 5, iterations = 10;
+		String[] presets = ProgramGenerator.PRESETS;
+		String json = null;
+		File corpus = new File("test");
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-iterations"))
+				iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-presets"))
+				presets = args[++i].split(",");
+			else if (args[i].equals("-json"))
+				json = args[++i];
+			else
+				corpus = new File(args[i]);
+		}
+
+		Map<String, List<String>> inputs = new LinkedHashMap<String, List<String>>();
+		inputs.put("corpus", readCorpus(corpus));
+		for (String preset: presets)
+			inputs.put(preset, Collections.singletonList(ProgramGenerator.preset(preset).generate()));
+
+		List<Result> results = new ArrayList<Result>();
+		System.out.printf("%-10s %-13s %14s %9s %12s %12s %14s %6s %7s%n",
+				"phase", "input", "units/s", "+-", "unit", "ms/iter", "alloc MB/s", "gc", "gc ms");
+		for (Phase phase: phases()) {
+			for (Map.Entry<String, List<String>> input: inputs.entrySet()) {
+				Result r = measure(phase, input.getKey(), input.getValue(), warmup, iterations);
+				results.add(r);
+				System.out.printf("%-10s %-13s %14.0f %8.1f%% %12s %12.3f %14.1f %6d %7d%n",
+						r.phase, r.input, r.mean(), 100 * r.stddev() / r.mean(), r.unit, r.msPerIteration,
+						r.bytes < 0 ? -1.0 : r.bytes / r.seconds / (1 << 20), r.gcCount, r.gcMs);
+			}
+		}
+		if (json != null) {
+			Writer out = new BufferedWriter(new FileWriter(json));
+			try {
+				writeJson(out, results, warmup, iterations, presets);
+			} finally {
+				out.close();
+			}
+			System.out.println("results written to "+json);
+		}
+	}
+
+	static List<Phase> phases() {
+		List<Phase> phases = new ArrayList<Phase>();
+		phases.add(new Phase("lex", "tokens") {
+			long run(Object source) throws Exception {
+				Lexer lexer = new Lexer(new StringReader((String) source));
+				long tokens = 0;
+				while (lexer.next_token().sym != sym.EOF)
+					tokens++;
+				return tokens;
+			}
+		});
+		phases.add(new Phase("parse", "nodes") {
+			long run(Object source) throws Exception {
+				return NodeCounter.count(parse((String) source));
+			}
+		});
+		phases.add(new Phase("check", "nodes") {
+			Object prepare(String source) throws Exception {
+				return parse(source);
+			}
+			long run(Object root) throws Exception {
+				SemanticChecker checker = new SemanticChecker((Program) root, new SymbolTable(), new TypeTable());
+				checker.start();
+				if (checker.hasErrors())
+					throw new IllegalStateException(checker.getDiagnostics().getDiagnostics().get(0).toString());
+				return NodeCounter.count((Program) root);
+			}
+		});
+		phases.add(new Phase("translate", "lines") {
+			Object prepare(String source) throws Exception {
+				Program root = parse(source);
+				SymbolTable symTab = new SymbolTable();
+				TypeTable typTab = new TypeTable();
+				new SemanticChecker(root, symTab, typTab).start();
+				return new Object[] { root, symTab, typTab };
+			}
+			long run(Object prepared) throws Exception {
+				Object[] p = (Object[]) prepared;
+				LineCounter lines = new LineCounter();
+				new LIRTranslator((Program) p[0], (SymbolTable) p[1], (TypeTable) p[2], lines).translate();
+				return lines.lines;
+			}
+		});
+		phases.add(new Phase("compile", "files") {
+			long run(Object source) throws Exception {
+				Compiler compiler = new Compiler();
+				compiler.parse(new StringReader((String) source));
+				compiler.check();
+				compiler.translate(new LineCounter());
+				return 1;
+			}
+		});
+		return phases;
+	}
+
+	static Result measure(Phase phase, String input, List<String> sources, int warmup, int iterations) throws Exception {
+		for (int i = 0; i < warmup; i++)
+			iteration(phase, sources, null);
+
+		Result r = new Result();
+		r.phase = phase.name;
+		r.input = input;
+		r.unit = phase.unit;
+		r.throughput = new double[iterations];
+		long gcCount = gcCount(), gcMs = gcMillis();
+		long nanos = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] timed = new long[3];
+			iteration(phase, sources, timed);
+			nanos += timed[0];
+			r.units = timed[1];
+			r.bytes = (timed[2] < 0 || r.bytes < 0) ? -1 : r.bytes + timed[2];
+			r.throughput[i] = timed[1] / (timed[0] / 1e9);
+		}
+		r.gcCount = gcCount() - gcCount;
+		r.gcMs = gcMillis() - gcMs;
+		r.seconds = nanos / 1e9;
+		r.msPerIteration = nanos / 1e6 / iterations;
+		return r;
+	}
+
+	// runs <phase> on every source, adding the time, units and allocated bytes of the timed parts to <timed>
+	private static void iteration(Phase phase, List<String> sources, long[] timed) throws Exception {
+		for (String source: sources) {
+			Object prepared = phase.prepare(source);
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			long units = phase.run(prepared);
+			long time = System.nanoTime() - start;
+			bytes = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+			if (timed != null) {
+				timed[0] += time;
+				timed[1] += units;
+				timed[2] = (bytes < 0 || timed[2] < 0) ? -1 : timed[2] + bytes;
+			}
+		}
+	}
+
+	static Program parse(String source) throws Exception {
+		Parser parser = new Parser(new Lexer(new StringReader(source)));
+		return (Program) parser.parse().value;
+	}
+
+	private static List<String> readCorpus(File dir) throws IOException {
+		List<String> sources = new ArrayList<String>();
+		File[] files = dir.listFiles();
+		if (files == null)
+			throw new FileNotFoundException(dir.getPath());
+		Arrays.sort(files);
+		for (File f: files) {
+			if (f.getName().endsWith(".ic"))
+				sources.add(new String(java.nio.file.Files.readAllBytes(f.toPath()), "UTF-8"));
+		}
+		return sources;
+	}
+
+	private static void writeJson(Writer out, List<Result> results, int warmup, int iterations, String[] presets) throws IOException {
+		out.write("{\n");
+		out.write("  \"date\": \""+new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date())+"\",\n");
+		out.write("  \"jvm\": \""+System.getProperty("java.vm.name")+" "+System.getProperty("java.version")+"\",\n");
+		out.write("  \"warmupIterations\": "+warmup+",\n");
+		out.write("  \"iterations\": "+iterations+",\n");
+		out.write("  \"presets\": [");
+		for (int i = 0; i < presets.length; i++)
+			out.write((i > 0 ? ", " : "")+"\""+presets[i]+"\"");
+		out.write("],\n");
+		out.write("  \"results\": [\n");
+		for (int i = 0; i < results.size(); i++) {
+			Result r = results.get(i);
+			out.write("    {\"phase\": \""+r.phase+"\", \"input\": \""+r.input+"\", \"unit\": \""+r.unit+"/s\", ");
+			out.write("\"score\": "+fmt(r.mean())+", \"scoreError\": "+fmt(r.stddev())+", ");
+			out.write("\"msPerIteration\": "+fmt(r.msPerIteration)+", \"unitsPerIteration\": "+r.units+", ");
+			out.write("\"gc.alloc.rate.MBps\": "+(r.bytes < 0 ? "null" : fmt(r.bytes / r.seconds / (1 << 20)))+", ");
+			out.write("\"gc.alloc.rate.norm.bytesPerIteration\": "+(r.bytes < 0 ? "null" : ""+(r.bytes / r.throughput.length))+", ");
+			out.write("\"gc.count\": "+r.gcCount+", \"gc.time.ms\": "+r.gcMs+"}");
+			out.write(i < results.size()-1 ? ",\n" : "\n");
+		}
+		out.write("  ]\n}\n");
+	}
+
+	private static String fmt(double d) {
+		return String.format(Locale.ROOT, "%.3f", d);
+	}
+
+	// bytes allocated by this thread so far, or -1
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static long gcCount() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+
+	private static long gcMillis() {
+		long ms = 0;
+		for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans())
+			ms += Math.max(0, gc.getCollectionTime());
+		return ms;
+	}
+
+	/** Counts LIR lines, dropping the code.
+	 */
+	static class LineCounter implements Appendable {
+		long lines;
+
+		public Appendable append(CharSequence s) {
+			return append(s, 0, s.length());
+		}
+
+		public Appendable append(CharSequence s, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (s.charAt(i) == '\n')
+					lines++;
+			}
+			return this;
+		}
+
+		public Appendable append(char c) {
+			if (c == '\n')
+				lines++;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package slp;
+
+import java.io.*;
+import java.util.*;
+
+/** Generates large IC programs that pass the semantic checks, to see how the compiler scales.
+ *
+ * Classes come in inheritance chains of up to <inheritanceDepth> classes, each overriding the
+ * virtual methods of its superclass. Every class has a few int fields, <methodsPerClass>
+ * methods (half virtual, half static) of about <statementsPerMethod> statements, with if and
+ * while blocks nested up to <nestingDepth> deep and expressions up to <expressionDepth> deep.
+ * <stringLiterals> distinct string literals are spread over all methods.
+ *
+ * The programs also run, and stop: every method takes a call depth d, returns at once when
+ * it is 0, and passes d-1 to the methods it calls. Loops count to a constant, divisors are
+ * non-zero constants and array indexes are in bounds.
+ *
+ * The presets are "wide" (many small classes), "deep" (long inheritance chains and deep
+ * nesting), "literal-heavy" and "call-heavy".
+ *
+ * Usage: ProgramGenerator [-preset name] [-classes n] [-depth n] [-methods n] [-statements n]
+ *        [-nesting n] [-expressions n] [-literals n] [-calls fraction] [-seed n] [-o file]
+ */
+public class ProgramGenerator {
+	public static final String[] PRESETS = { "wide", "deep", "literal-heavy", "call-heavy" };
+
+	private static final int FIELDS = 3;
+	private static final int ARRAY_SIZE = 4;
+	private static final int LOOP_COUNT = 3;
+
+	private int classes = 50;
+	private int inheritanceDepth = 3;
+	private int methodsPerClass = 6;
+	private int statementsPerMethod = 20;
+	private int nestingDepth = 3;
+	private int expressionDepth = 3;
+	private int stringLiterals = 100;
+	private double callDensity = 0.1;
+	private long seed = 42;
+
+	// state while generating
+	private StringBuilder src;
+	private Random random;
+	private int methodNumber;
+	private int nextLiteral;
+	private int cls;
+	private boolean isStatic;
+	private int loops;
+	private int names;
+	// int locals and int[] locals of the enclosing blocks, innermost last
+	private List<List<String>> ints = new ArrayList<List<String>>();
+	private List<List<String>> arrays = new ArrayList<List<String>>();
+
+	/** The generator of a preset, one of PRESETS.
+	 */
+	public static ProgramGenerator preset(String name) {
+		ProgramGenerator g = new ProgramGenerator();
+		if (name.equals("wide")) {
+			g.setClasses(250);
+			g.setInheritanceDepth(1);
+			g.setMethodsPerClass(4);
+			g.setStatementsPerMethod(10);
+			g.setNestingDepth(2);
+			g.setExpressionDepth(2);
+			g.setStringLiterals(250);
+		} else if (name.equals("deep")) {
+			g.setClasses(100);
+			g.setInheritanceDepth(50);
+			g.setMethodsPerClass(4);
+			g.setStatementsPerMethod(16);
+			g.setNestingDepth(8);
+			g.setExpressionDepth(7);
+			g.setStringLiterals(100);
+		} else if (name.equals("literal-heavy")) {
+			g.setClasses(30);
+			g.setMethodsPerClass(4);
+			g.setStatementsPerMethod(10);
+			g.setStringLiterals(10000);
+		} else if (name.equals("call-heavy")) {
+			g.setClasses(60);
+			g.setInheritanceDepth(5);
+			g.setMethodsPerClass(10);
+			g.setStatementsPerMethod(15);
+			g.setExpressionDepth(4);
+			g.setCallDensity(0.5);
+		} else {
+			throw new IllegalArgumentException("unknown preset "+name+", expected one of "+Arrays.toString(PRESETS));
+		}
+		return g;
+	}
+
+	public void setClasses(int classes) {
+		this.classes = Math.max(1, classes);
+	}
+
+	public void setInheritanceDepth(int depth) {
+		this.inheritanceDepth = Math.max(1, depth);
+	}
+
+	public void setMethodsPerClass(int methods) {
+		this.methodsPerClass = Math.max(2, methods);
+	}
+
+	public void setStatementsPerMethod(int statements) {
+		this.statementsPerMethod = Math.max(1, statements);
+	}
+
+	public void setNestingDepth(int depth) {
+		this.nestingDepth = Math.max(0, depth);
+	}
+
+	public void setExpressionDepth(int depth) {
+		this.expressionDepth = Math.max(0, depth);
+	}
+
+	public void setStringLiterals(int literals) {
+		this.stringLiterals = Math.max(0, literals);
+	}
+
+	/** Sets the fraction of the operands of expressions that are method calls.
+	 */
+	public void setCallDensity(double density) {
+		this.callDensity = density;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/** The program. The same settings and seed always give the same program.
+	 */
+	public String generate() {
+		src = new StringBuilder();
+		random = new Random(seed);
+		methodNumber = 0;
+		nextLiteral = 0;
+		for (cls = 0; cls < classes; cls++)
+			generateClass();
+
+		src.append("class Main {\n\tstatic void main(string[] args) {\n\t\tint t = 0;\n");
+		for (int c = 0; c < classes; c++)
+			src.append("\t\tt = t + C"+c+"."+staticName(c, 0)+"(2, "+c+");\n");
+		src.append("\t\tLibrary.printi(t);\n\t\tLibrary.println(\"\");\n\t}\n}\n");
+		return src.toString();
+	}
+
+	private void generateClass() {
+		src.append("class C"+cls);
+		if (cls % inheritanceDepth != 0)
+			src.append(" extends C"+(cls-1));
+		src.append(" {\n");
+		for (int f = 0; f < FIELDS; f++)
+			src.append("\tint "+fieldName(cls, f)+";\n");
+		for (int m = 0; m < methodsPerClass; m++) {
+			src.append("\n");
+			isStatic = (m % 2 == 0);
+			generateMethod(isStatic ? staticName(cls, m/2) : "m"+(m/2));
+		}
+		src.append("}\n\n");
+	}
+
+	private void generateMethod(String name) {
+		src.append("\t"+(isStatic ? "static " : "")+"int "+name+"(int d, int a) {\n");
+		ints.clear();
+		arrays.clear();
+		openScope();
+		ints.get(0).add("a");
+		ints.get(0).add("d");
+		loops = 0;
+		names = 0;
+		line(2, "if (d < 1) {");
+		line(3, "return a;");
+		line(2, "}");
+		line(2, "C"+chainRoot(cls)+" obj = new C"+cls+"();");
+
+		block(statementsPerMethod, 2);
+
+		// this method's share of the string literals
+		int literals = (int) ((long) stringLiterals * (methodNumber+1) / (classes * methodsPerClass)) - nextLiteral;
+		for (int i = 0; i < literals; i++)
+			line(2, "string s"+(names++)+" = \"literal "+(nextLiteral++)+" of the generated program\";");
+		methodNumber++;
+
+		line(2, "return "+intExpr(expressionDepth)+";");
+		src.append("\t}\n");
+	}
+
+	// <budget> statements, some of them blocks of more statements, at indentation <level>
+	private void block(int budget, int level) {
+		int nesting = level - 2;
+		while (budget > 0) {
+			budget--;
+			double r = random.nextDouble();
+			if (r < 0.25) {
+				String v = "v"+(names++);
+				line(level, "int "+v+" = "+intExpr(expressionDepth)+";");
+				ints.get(ints.size()-1).add(v);
+			} else if (r < 0.45) {
+				line(level, assignable()+" = "+intExpr(expressionDepth)+";");
+			} else if (r < 0.55 && nesting < nestingDepth && budget > 0) {
+				int inner = 1 + random.nextInt(Math.max(1, budget/2));
+				budget -= inner;
+				line(level, "if ("+condition(2)+") {");
+				scope(inner - inner/2, level+1);
+				line(level, "} else {");
+				scope(Math.max(1, inner/2), level+1);
+				line(level, "}");
+			} else if (r < 0.65 && nesting < nestingDepth && budget > 0) {
+				int inner = 1 + random.nextInt(Math.max(1, budget/2));
+				budget -= inner;
+				String w = "w"+(names++);
+				line(level, "int "+w+" = 0;");
+				line(level, "while ("+w+" < "+LOOP_COUNT+") {");
+				line(level+1, w+" = "+w+" + 1;");
+				loops++;
+				scope(inner, level+1);
+				loops--;
+				line(level, "}");
+			} else if (r < 0.75) {
+				line(level, call()+";");
+			} else if (r < 0.85) {
+				String arr = "arr"+(names++);
+				line(level, "int[] "+arr+" = new int["+ARRAY_SIZE+"];");
+				line(level, arr+"["+random.nextInt(ARRAY_SIZE)+"] = "+intExpr(expressionDepth)+";");
+				arrays.get(arrays.size()-1).add(arr);
+			} else if (loops > 0 && r < 0.9) {
+				line(level, "if ("+condition(1)+") {");
+				line(level+1, random.nextBoolean() ? "break;" : "continue;");
+				line(level, "}");
+			} else {
+				line(level, assignable()+" = "+intExpr(expressionDepth)+";");
+			}
+		}
+	}
+
+	// a block in a scope of its own
+	private void scope(int budget, int level) {
+		openScope();
+		block(budget, level);
+		ints.remove(ints.size()-1);
+		arrays.remove(arrays.size()-1);
+	}
+
+	private void openScope() {
+		ints.add(new ArrayList<String>());
+		arrays.add(new ArrayList<String>());
+	}
+
+	// an int expression up to <depth> deep - one of its operands is exactly that deep
+	private String intExpr(int depth) {
+		if (depth == 0)
+			return operand();
+		String deep = intExpr(depth-1);
+		String other = intExpr(random.nextInt(depth));
+		switch (random.nextInt(6)) {
+		case 0:		return "("+deep+" + "+other+")";
+		case 1:		return "("+deep+" - "+other+")";
+		case 2:		return "("+deep+" * "+other+")";
+		case 3:		return "("+deep+" / "+(2+random.nextInt(8))+")";
+		case 4:		return "(-"+deep+")";
+		default:	return "("+other+" + "+deep+" % "+(2+random.nextInt(8))+")";
+		}
+	}
+
+	private String condition(int depth) {
+		if (depth == 0 || random.nextInt(3) == 0) {
+			String[] ops = { "<", "<=", ">", ">=", "==", "!=" };
+			return intExpr(1)+" "+ops[random.nextInt(ops.length)]+" "+intExpr(1);
+		}
+		switch (random.nextInt(3)) {
+		case 0:		return "("+condition(depth-1)+") && ("+condition(depth-1)+")";
+		case 1:		return "("+condition(depth-1)+") || ("+condition(depth-1)+")";
+		default:	return "!("+condition(depth-1)+")";
+		}
+	}
+
+	private String operand() {
+		if (random.nextDouble() < callDensity)
+			return call();
+		// a field in static methods, and an array element where there are no arrays, become a local
+		int kind = random.nextInt(5);
+		if (kind == 0)
+			return ""+random.nextInt(100);
+		if (kind == 1 && !isStatic)
+			return fieldName(fieldClass(), random.nextInt(FIELDS));
+		if (kind <= 2) {
+			String arr = pick(arrays);
+			if (arr != null)
+				return arr+"["+random.nextInt(ARRAY_SIZE)+"]";
+		}
+		return pick(ints);
+	}
+
+	// a call, with operands that are not calls as arguments
+	private String call() {
+		double saved = callDensity;
+		callDensity = 0;
+		String arg = operand();
+		callDensity = saved;
+		int kind = random.nextInt(3);
+		if (kind == 0) {
+			// a static method of any class
+			int c = random.nextInt(classes);
+			return "C"+c+"."+staticName(c, random.nextInt(staticMethods()))+"(d - 1, "+arg+")";
+		}
+		// a virtual method of this class
+		if (kind == 1 && !isStatic)
+			return "m"+random.nextInt(virtualMethods())+"(d - 1, "+arg+")";
+		// a virtual method through a reference of the root class of the chain
+		return "obj.m"+random.nextInt(virtualMethods())+"(d - 1, "+arg+")";
+	}
+
+	// a local int or, in virtual methods, a field
+	private String assignable() {
+		if (!isStatic && random.nextInt(3) == 0)
+			return fieldName(fieldClass(), random.nextInt(FIELDS));
+		String v = pick(ints);
+		return v.equals("d") ? "a" : v;
+	}
+
+	// the class of a field this class has - its own or inherited
+	private int fieldClass() {
+		return cls - random.nextInt(cls % inheritanceDepth + 1);
+	}
+
+	// a random name of the enclosing blocks, or null
+	private String pick(List<List<String>> scopes) {
+		int n = 0;
+		for (List<String> s: scopes)
+			n += s.size();
+		if (n == 0)
+			return null;
+		int i = random.nextInt(n);
+		for (List<String> s: scopes) {
+			if (i < s.size())
+				return s.get(i);
+			i -= s.size();
+		}
+		return null;
+	}
+
+	private int chainRoot(int c) {
+		return c - c % inheritanceDepth;
+	}
+
+	private int staticMethods() {
+		return (methodsPerClass+1) / 2;
+	}
+
+	// the virtual methods all classes have - m0 of the root of a chain is overridden by all its subclasses
+	private int virtualMethods() {
+		return methodsPerClass / 2;
+	}
+
+	private static String staticName(int c, int m) {
+		return "s"+c+"_"+m;
+	}
+
+	private static String fieldName(int c, int f) {
+		return "f"+c+"_"+f;
+	}
+
+	private void line(int level, String code) {
+		for (int i = 0; i < level; i++)
+			src.append('\t');
+		src.append(code).append('\n');
+	}
+
+	public static void main(String[] args) throws IOException {
+		ProgramGenerator g = new ProgramGenerator();
+		String out = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-preset")) {
+				long seed = g.seed;
+				g = preset(args[++i]);
+				g.setSeed(seed);
+			} else if (arg.equals("-o")) {
+				out = args[++i];
+			} else if (arg.equals("-calls")) {
+				g.setCallDensity(Double.parseDouble(args[++i]));
+			} else if (arg.equals("-seed")) {
+				g.setSeed(Long.parseLong(args[++i]));
+			} else {
+				int n = Integer.parseInt(args[++i]);
+				if (arg.equals("-classes"))
+					g.setClasses(n);
+				else if (arg.equals("-depth"))
+					g.setInheritanceDepth(n);
+				else if (arg.equals("-methods"))
+					g.setMethodsPerClass(n);
+				else if (arg.equals("-statements"))
+					g.setStatementsPerMethod(n);
+				else if (arg.equals("-nesting"))
+					g.setNestingDepth(n);
+				else if (arg.equals("-expressions"))
+					g.setExpressionDepth(n);
+				else if (arg.equals("-literals"))
+					g.setStringLiterals(n);
+				else
+					throw new IllegalArgumentException("unknown option "+arg);
+			}
+		}
+		String program = g.generate();
+		if (out == null) {
+			System.out.print(program);
+			return;
+		}
+		Writer w = new BufferedWriter(new FileWriter(out));
+		try {
+			w.write(program);
+		} finally {
+			w.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package slp;
+
+import java.io.StringReader;
+
+import semanticTypes.*;
+
+/** Times subtype checks on deep inheritance chains: isLike of the type table, against a walk
+ * up the superclass chain (how isLike used to work), and the semantic checks of a program whose
+ * assignments and calls convert between the ends of such a chain.
+ *
+ * Usage: SubtypeCheckBenchmark [depth...]
+ */
+public class SubtypeCheckBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int[] depths = { 10, 100, 1000 };
+		if (args.length > 0) {
+			depths = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				depths[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%8s %14s %14s %16s%n", "depth", "isLike ns", "chain walk ns", "check ms");
+		for (int depth: depths) {
+			TypeTable types = new TypeTable();
+			types.addClassType("C0", null);
+			for (int i = 1; i <= depth; i++)
+				types.addClassType("C"+i, "C"+(i-1));
+			types.addClassType("Other", null);
+			SemanticType leaf = types.resolveClassType("C"+depth);
+			SemanticType root = types.resolveClassType("C0");
+			SemanticType other = types.resolveClassType("Other");
+
+			// each round asks one question that holds and two that do not
+			int rounds = 2000000 / (depth+1) + 1000;
+			isLike(leaf, root, other, rounds);
+			walk(types, leaf, root, other, rounds);
+			double isLikeNs = isLike(leaf, root, other, rounds) / (3.0*rounds);
+			double walkNs = walk(types, leaf, root, other, rounds) / (3.0*rounds);
+
+			String program = program(depth, 200);
+			check(program);
+			long start = System.nanoTime();
+			int checks = 5;
+			for (int i = 0; i < checks; i++)
+				check(program);
+			double checkMs = (System.nanoTime() - start) / 1e6 / checks;
+
+			System.out.printf("%8d %14.1f %14.1f %16.2f%n", depth, isLikeNs, walkNs, checkMs);
+		}
+	}
+
+	private static long isLike(SemanticType leaf, SemanticType root, SemanticType other, int rounds) {
+		long start = System.nanoTime();
+		int yes = 0;
+		for (int i = 0; i < rounds; i++) {
+			if (leaf.isLike(root)) yes++;
+			if (root.isLike(leaf)) yes++;
+			if (leaf.isLike(other)) yes++;
+		}
+		if (yes != rounds)
+			throw new IllegalStateException("isLike is wrong");
+		return System.nanoTime() - start;
+	}
+
+	private static long walk(TypeTable types, SemanticType leaf, SemanticType root, SemanticType other, int rounds) throws SemanticError {
+		long start = System.nanoTime();
+		int yes = 0;
+		for (int i = 0; i < rounds; i++) {
+			if (walk(types, leaf, root)) yes++;
+			if (walk(types, root, leaf)) yes++;
+			if (walk(types, leaf, other)) yes++;
+		}
+		if (yes != rounds)
+			throw new IllegalStateException("walk is wrong");
+		return System.nanoTime() - start;
+	}
+
+	// up the superclass chain with a lookup by name at each step, ended by the SemanticError
+	// of the class without a superclass
+	private static boolean walk(TypeTable types, SemanticType sub, SemanticType sup) {
+		while (sub != sup) {
+			try {
+				sub = types.resolveClassType(((SClassType) sub).superName);
+			} catch (SemanticError e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// a chain C0 <- C1 <- ... <- C<depth>, and <statements> conversions from C<depth> to C0
+	private static String program(int depth, int statements) {
+		StringBuilder src = new StringBuilder("class C0 {\n\tint id(C0 c) { return 0; }\n}\n");
+		for (int i = 1; i <= depth; i++)
+			src.append("class C"+i+" extends C"+(i-1)+" {\n}\n");
+		src.append("class Main {\n\tstatic void main(string[] args) {\n");
+		src.append("\t\tC"+depth+" leaf = new C"+depth+"();\n\t\tC0 c = leaf;\n");
+		for (int i = 0; i < statements; i++)
+			src.append((i % 2 == 0) ? "\t\tc = leaf;\n" : "\t\tc.id(leaf);\n");
+		src.append("\t}\n}\n");
+		return src.toString();
+	}
+
+	private static void check(String program) throws Exception {
+		Compiler compiler = new Compiler();
+		compiler.parse(new StringReader(program));
+		compiler.check();
+	}
+}
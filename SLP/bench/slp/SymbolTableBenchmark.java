@@ -0,0 +1,208 @@
+package slp;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import symbolTable.*;
+
+/** Compares SymbolTable with the list-per-name table it replaced, on the scope traffic of
+ * checking large methods with many nested blocks: classes, fields and methods at the outer
+ * levels, then blocks nested up to <depth> deep, each declaring a few locals (with the usual
+ * names, so they shadow each other), checking them with findEntryLocal, and looking up names
+ * of the enclosing blocks, the class and the program.
+ *
+ * Reports the time and the bytes allocated per block, where the JVM can tell.
+ *
+ * Usage: SymbolTableBenchmark [blocks] [depth]
+ */
+public class SymbolTableBenchmark {
+
+	// the operations the workload uses, over either table
+	interface Table {
+		void enterScope();
+		void exitScope();
+		void addEntry(Symbol sym);
+		Symbol findEntryGlobal(String name);
+		Symbol findEntryLocal(String name);
+	}
+
+	private static final String[] LOCALS = { "i", "j", "tmp", "sum", "node", "len", "x", "y" };
+
+	public static void main(String[] args) {
+		int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+
+		// the symbols are made up front, so only the tables allocate while timing
+		String[] classes = names("C", 50), members = names("m", 100), params = names("p", 4);
+		Map<String, Symbol> symbols = new HashMap<String, Symbol>();
+		for (String[] group: Arrays.asList(classes, members, params, LOCALS))
+			for (String name: group)
+				symbols.put(name, new VarSymbol(name, null));
+
+		System.out.println(blocks+" blocks, nested up to "+depth+" deep");
+		System.out.printf("%-22s %12s %16s%n", "table", "ns/block", "bytes/block");
+		for (int round = 0; round < 5; round++) {
+			boolean last = (round == 4);
+			run("SymbolTable", newTable(), classes, members, params, symbols, blocks, depth, last);
+			run("list per name (old)", oldTable(), classes, members, params, symbols, blocks, depth, last);
+		}
+	}
+
+	private static void run(String label, Table table, String[] classes, String[] members, String[] params,
+			Map<String, Symbol> symbols, int blocks, int depth, boolean print) {
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		int found = workload(table, classes, members, params, symbols, blocks, depth);
+		long time = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		if (found == 0)
+			throw new IllegalStateException("nothing found");
+		if (print)
+			System.out.printf("%-22s %12.1f %16s%n", label, (double) time / blocks,
+					(bytes < 0) ? "n/a" : String.format("%.1f", (double) bytes / blocks));
+	}
+
+	private static int workload(Table table, String[] classes, String[] members, String[] params,
+			Map<String, Symbol> symbols, int blocks, int depth) {
+		int found = 0;
+		for (String c: classes)
+			table.addEntry(symbols.get(c));
+		table.enterScope();
+		for (String m: members)
+			table.addEntry(symbols.get(m));
+		table.enterScope();
+		for (String p: params)
+			table.addEntry(symbols.get(p));
+
+		// walk a tree of blocks: go deeper until <depth>, then back out to a random level
+		Random random = new Random(42);
+		int level = 0;
+		for (int b = 0; b < blocks; b++) {
+			if (level == depth || (level > 0 && random.nextInt(3) == 0)) {
+				int out = 1 + random.nextInt(level);
+				for (int i = 0; i < out; i++)
+					table.exitScope();
+				level -= out;
+			}
+			table.enterScope();
+			level++;
+			for (int i = 0; i < 3; i++) {
+				String local = LOCALS[(b + i) % LOCALS.length];
+				if (table.findEntryLocal(local) == null)
+					table.addEntry(symbols.get(local));
+			}
+			for (int i = 0; i < 8; i++) {
+				if (table.findEntryGlobal(LOCALS[(b * 7 + i) % LOCALS.length]) != null) found++;
+				if (table.findEntryGlobal(members[(b + i) % members.length]) != null) found++;
+			}
+			if (table.findEntryGlobal(classes[b % classes.length]) != null) found++;
+			if (table.findEntryGlobal(params[b % params.length]) != null) found++;
+		}
+		for (; level > 0; level--)
+			table.exitScope();
+		table.exitScope();
+		table.exitScope();
+		return found;
+	}
+
+	private static String[] names(String prefix, int n) {
+		String[] names = new String[n];
+		for (int i = 0; i < n; i++)
+			names[i] = prefix+i;
+		return names;
+	}
+
+	// bytes allocated by this thread so far, or -1
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static Table newTable() {
+		final SymbolTable t = new SymbolTable();
+		return new Table() {
+			public void enterScope() { t.enterScope(); }
+			public void exitScope() { t.exitScope(); }
+			public void addEntry(Symbol sym) { t.addEntry(sym); }
+			public Symbol findEntryGlobal(String name) { return t.findEntryGlobal(name); }
+			public Symbol findEntryLocal(String name) { return t.findEntryLocal(name); }
+		};
+	}
+
+	private static Table oldTable() {
+		final ListSymbolTable t = new ListSymbolTable();
+		return new Table() {
+			public void enterScope() { t.enterScope(); }
+			public void exitScope() { t.exitScope(); }
+			public void addEntry(Symbol sym) { t.addEntry(sym); }
+			public Symbol findEntryGlobal(String name) { return t.findEntryGlobal(name); }
+			public Symbol findEntryLocal(String name) { return t.findEntryLocal(name); }
+		};
+	}
+
+	/** The symbol table as it was before, kept here for comparison.
+	 */
+	static class ListSymbolTable {
+		private Map<String, List<SymbolEntry>> symbolMap = new HashMap<String, List<SymbolEntry>>();
+		private List<List<SymbolEntry>> scope = new ArrayList<List<SymbolEntry>>();
+		int scopeLevel = 0;
+
+		private static class SymbolEntry {
+			private Symbol symbol;
+			private int level;
+
+			private SymbolEntry(Symbol symbol, int level) {
+				this.symbol = symbol;
+				this.level = level;
+			}
+		}
+
+		ListSymbolTable() {
+			enterScope();
+		}
+
+		void enterScope() {
+			scope.add(0, new ArrayList<SymbolEntry>());
+			++scopeLevel;
+		}
+
+		void exitScope() {
+			for (SymbolEntry se: scope.get(0)) {
+				symbolMap.get(se.symbol.name).remove(0);
+				if (symbolMap.get(se.symbol.name).isEmpty())
+					symbolMap.remove(se.symbol.name);
+			}
+			scope.remove(0);
+			--scopeLevel;
+		}
+
+		void addEntry(Symbol sym) {
+			if (sym == null)
+				return;
+			SymbolEntry se = new SymbolEntry(sym, scopeLevel);
+			if (findEntryGlobal(sym.name) == null) {
+				List<SymbolEntry> l = new ArrayList<SymbolEntry>();
+				l.add(0, se);
+				symbolMap.put(sym.name, l);
+			} else
+				symbolMap.get(sym.name).add(0, se);
+			scope.get(0).add(se);
+		}
+
+		Symbol findEntryGlobal(String name) {
+			List<SymbolEntry> l = symbolMap.get(name);
+			if (l == null)
+				return null;
+			return l.get(0).symbol;
+		}
+
+		Symbol findEntryLocal(String name) {
+			List<SymbolEntry> l = symbolMap.get(name);
+			if (l == null || (l.get(0).level < scopeLevel))
+				return null;
+			return l.get(0).symbol;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package slp;
+
+import java.io.StringReader;
+
+import semanticTypes.TypeTable;
+import symbolTable.SemanticChecker;
+import symbolTable.SymbolTable;
+import LIR.LIRTranslator;
+
+/** Measures LIR translation of deeply nested member accesses (n.next.next...next.val),
+ * once with the expression types recorded by the semantic checker and once on an
+ * unchecked copy of the same AST, where the translator has to resolve the types again.
+ *
+ * Usage: TypedAstBenchmark [depth] [statements] [iterations]
+ */
+public class TypedAstBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int statements = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		String source = deepChainProgram(depth, statements);
+
+		// typed AST: checked by the semantic checker
+		Program typed = parse(source);
+		SymbolTable symTab = new SymbolTable();
+		TypeTable typTab = new TypeTable();
+		new SemanticChecker(typed, symTab, typTab).start();
+
+		// same program, never checked - no recorded types
+		Program untyped = parse(source);
+
+		System.out.println("depth "+depth+", "+statements+" statements, "+iterations+" iterations");
+		double typedMs = measure(typed, symTab, typTab, iterations);
+		double untypedMs = measure(untyped, symTab, typTab, iterations);
+		System.out.printf("re-resolved types: %10.3f ms/translation%n", untypedMs);
+		System.out.printf("recorded types:    %10.3f ms/translation%n", typedMs);
+		System.out.printf("speedup:           %10.2fx%n", untypedMs / typedMs);
+	}
+
+	// average time of a translation, after the same number of warm-up rounds
+	private static double measure(Program root, SymbolTable symTab, TypeTable typTab, int iterations){
+		for (int i = 0; i < iterations; i++)
+			translate(root, symTab, typTab);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			translate(root, symTab, typTab);
+		return (System.nanoTime() - start) / 1e6 / iterations;
+	}
+
+	private static int translate(Program root, SymbolTable symTab, TypeTable typTab){
+		LIRTranslator translator = new LIRTranslator(root, symTab, typTab);
+		return root.accept(translator, null).lirCode.length();
+	}
+
+	private static Program parse(String source) throws Exception {
+		Parser parser = new Parser(new Lexer(new StringReader(source)));
+		return (Program) parser.parse().value;
+	}
+
+	// a program whose statements read and call through chains of <depth> field accesses
+	static String deepChainProgram(int depth, int statements){
+		StringBuilder chain = new StringBuilder("n");
+		for (int i = 0; i < depth; i++)
+			chain.append(".next");
+
+		StringBuilder src = new StringBuilder();
+		src.append("class Node {\n");
+		src.append("  Node next;\n");
+		src.append("  int val;\n");
+		src.append("  int get() { return val; }\n");
+		src.append("}\n\n");
+		src.append("class Chain {\n");
+		src.append("  static void main(string[] args) {\n");
+		src.append("    Node n = new Node();\n");
+		src.append("    int x = 0;\n");
+		for (int i = 0; i < statements; i++){
+			if (i % 2 == 0)
+				src.append("    x = x + ").append(chain).append(".val;\n");
+			else
+				src.append("    x = ").append(chain).append(".get();\n");
+		}
+		src.append("  }\n");
+		src.append("}\n");
+		return src.toString();
+	}
+}
@@ -0,0 +1,16 @@
+#!/bin/bash
+# Thin client of the SLP compile server (start the server with: slp -server).
+# Takes the same argument as slp and prints the same output, without starting a JVM.
+# The server port can be set with SLP_PORT (default 7171).
+
+PORT=${SLP_PORT:-7171}
+if [ $# -ne 1 ]; then
+	echo "Usage: slpc <filename>"
+	exit 255
+fi
+exec 3<>/dev/tcp/127.0.0.1/$PORT || exit 1
+printf 'FILE\n%s\n%s\n' "$(cd "$(dirname "$1")" && pwd)/$(basename "$1")" "$PWD/output.lir" >&3
+read -r status <&3
+cat <&3
+exec 3<&-
+[ "$status" = "OK" ]
@@ -0,0 +1,2 @@
+@ECHO OFF
+java -cp %CLASSPATH%;E:/compilation/wcc06/slp/build slp.CompileClient %1 %2 %3
\ No newline at end of file
@@ -0,0 +1,30 @@
+package JFR;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The semantic checks of a program, by SemanticChecker.start.
+ */
+@Name("slp.Check")
+@Label("Semantic Check")
+@Category({ "SLP", "Compiler" })
+@Description("Semantic checks of an IC program")
+@StackTrace(false)
+public class CheckEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Classes")
+	public int classes;
+
+	@Label("Statements")
+	public long statements;
+
+	@Label("Semantic Errors")
+	public int errors;
+}
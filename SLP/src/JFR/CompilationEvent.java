@@ -0,0 +1,34 @@
+package JFR;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A whole compilation of one file by Main, from reading the source to writing its LIR.
+ */
+@Name("slp.Compilation")
+@Label("Compilation")
+@Category({ "SLP", "Compiler" })
+@Description("Compilation of an IC file into LIR")
+@StackTrace(false)
+public class CompilationEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Classes")
+	public int classes;
+
+	@Label("Statements")
+	public long statements;
+
+	@Label("Instructions")
+	@Description("LIR instructions written")
+	public long instructions;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+}
@@ -0,0 +1,36 @@
+package JFR;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The translation of one method into LIR by LIRTranslator, including its register allocation.
+ * Methods of classes taken from the cache of an incremental compilation are not translated,
+ * and have no event.
+ */
+@Name("slp.MethodTranslation")
+@Label("Method Translation")
+@Category({ "SLP", "Compiler" })
+@Description("Translation of an IC method into LIR")
+@StackTrace(false)
+public class MethodTranslationEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Class")
+	public String className;
+
+	@Label("Method")
+	public String method;
+
+	@Label("Statements")
+	public long statements;
+
+	@Label("Instructions")
+	@Description("LIR instructions emitted for the method")
+	public long instructions;
+}
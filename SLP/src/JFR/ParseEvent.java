@@ -0,0 +1,31 @@
+package JFR;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Lexing and parsing a file into an AST. The parser pulls its tokens from the lexer, so both
+ * run in the same event.
+ */
+@Name("slp.Parse")
+@Label("Parse")
+@Category({ "SLP", "Compiler" })
+@Description("Lexing and parsing of an IC file")
+@StackTrace(false)
+public class ParseEvent extends Event {
+	@Label("File")
+	public String file;
+
+	@Label("Classes")
+	public int classes;
+
+	@Label("Statements")
+	public long statements;
+
+	@Label("Syntax Errors")
+	public int errors;
+}
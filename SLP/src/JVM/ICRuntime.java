@@ -0,0 +1,211 @@
+package JVM;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Runtime support of the classes generated by JavaTranslator: the IC Library functions,
+ * and the runtime checks, which fail with the messages and exit status of the LIR helpers.
+ */
+public class ICRuntime {
+
+	/** Thrown by Library.exit and by failed runtime checks, to stop the program.
+	 */
+	public static class Exit extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		public final int status;
+
+		public Exit(int status){
+			super(null, null, false, false);
+			this.status = status;
+		}
+	}
+
+	private static PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+	private static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	private static Random random = new Random();
+	private static long startTime = System.currentTimeMillis();
+
+	/** Redirects the program's standard streams, for running it inside another program.
+	 */
+	public static void setStreams(PrintStream out, Reader in){
+		ICRuntime.out = out;
+		ICRuntime.in = new BufferedReader(in);
+	}
+
+	/** Runs the IC main method.
+	 *
+	 * @return The exit status - 0, or the status given to Library.exit or of a failed runtime check.
+	 */
+	public static int run(Runnable main){
+		startTime = System.currentTimeMillis();
+		try {
+			main.run();
+			return 0;
+		} catch (Exit e) {
+			return e.status;
+		} catch (ArithmeticException e) {	// % by zero, which has no runtime check
+			return failed("Runtime Error: Division by zero!");
+		} finally {
+			out.flush();
+		}
+	}
+
+	// runtime checks. Each returns its (checked) argument, so it can be used inside an expression
+
+	public static <T> T checkNullRef(T a){
+		if (a == null)
+			throw new Exit(failed("Runtime Error: Null pointer dereference!"));
+		return a;
+	}
+
+	public static int checkSize(int n){
+		if (n < 0)
+			throw new Exit(failed("Runtime Error: Array allocation with negative array size!"));
+		return n;
+	}
+
+	public static int checkZero(int b){
+		if (b == 0)
+			throw new Exit(failed("Runtime Error: Division by zero!"));
+		return b;
+	}
+
+	private static void checkArrayAccess(int length, int i){
+		if (i < 0 || i >= length)
+			throw new Exit(failed("Runtime Error: Array index out of bounds!"));
+	}
+
+	public static int div(int a, int b){
+		return a / checkZero(b);
+	}
+
+	// array loads, after the array was null checked
+
+	public static int load(int[] a, int i){
+		checkArrayAccess(a.length, i);
+		return a[i];
+	}
+
+	public static boolean load(boolean[] a, int i){
+		checkArrayAccess(a.length, i);
+		return a[i];
+	}
+
+	public static <T> T load(T[] a, int i){
+		checkArrayAccess(a.length, i);
+		return a[i];
+	}
+
+	// array stores. The value comes first, as it is computed before the array and the index
+
+	public static void store(int v, int[] a, int i){
+		checkArrayAccess(a.length, i);
+		a[i] = v;
+	}
+
+	public static void store(boolean v, boolean[] a, int i){
+		checkArrayAccess(a.length, i);
+		a[i] = v;
+	}
+
+	public static <T> void store(T v, T[] a, int i){
+		checkArrayAccess(a.length, i);
+		a[i] = v;
+	}
+
+	// the condition of a while loop - keeps javac from treating 'while (true)' as endless
+	public static boolean cond(boolean b){
+		return b;
+	}
+
+	// Library
+
+	public static void println(String s){
+		out.println(s);
+	}
+
+	public static void print(String s){
+		out.print(s);
+	}
+
+	public static void printi(int i){
+		out.print(i);
+	}
+
+	public static void printb(boolean b){
+		out.print(b);
+	}
+
+	public static int readi(){
+		String line = readln();
+		try {
+			return (line == null) ? 0 : Integer.parseInt(line.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	public static String readln(){
+		try {
+			return in.readLine();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public static boolean eof(){
+		try {
+			in.mark(1);
+			boolean eof = in.read() < 0;
+			in.reset();
+			return eof;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	public static int stoi(String s, int n){
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			return n;
+		}
+	}
+
+	public static String itos(int i){
+		return String.valueOf(i);
+	}
+
+	public static int[] stoa(String s){
+		int[] a = new int[s.length()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = s.charAt(i);
+		return a;
+	}
+
+	public static String atos(int[] a){
+		StringBuilder sb = new StringBuilder(a.length);
+		for (int c: a)
+			sb.append((char) c);
+		return sb.toString();
+	}
+
+	public static int random(int n){
+		return random.nextInt(n);
+	}
+
+	public static int time(){
+		return (int) (System.currentTimeMillis() - startTime);
+	}
+
+	public static void exit(int status){
+		throw new Exit(status);
+	}
+
+	// print the message of a failed runtime check, and return the exit status
+	private static int failed(String message){
+		out.println(message);
+		return 1;
+	}
+}
@@ -0,0 +1,152 @@
+package JVM;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.util.*;
+import java.util.jar.*;
+
+import javax.tools.*;
+
+import slp.Program;
+
+/**
+ * Compiles a checked IC program into JVM classes: JavaTranslator writes the Java source,
+ * and the system Java compiler turns it into class files, in memory. The classes can be
+ * run in this process, or written into a runnable jar together with ICRuntime.
+ */
+public class JVMBackend {
+	// class name to class file
+	private final Map<String, byte[]> classFiles = new LinkedHashMap<String, byte[]>();
+	private java.lang.Class<?> mainClass;
+
+	/** Compiles the program. Requires a JDK - the compiler is not part of a plain JRE.
+	 */
+	public JVMBackend(Program root){
+		final String source = new JavaTranslator(root).translate();
+
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null)
+			throw new IllegalStateException("the JVM backend needs the Java compiler of a JDK");
+
+		JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///"+JavaTranslator.MAIN_CLASS+".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors){
+				return source;
+			}
+		};
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(javac.getStandardFileManager(null, null, null)) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling){
+				return new SimpleJavaFileObject(URI.create("mem:///"+className.replace('.', '/')+kind.extension), kind) {
+					@Override
+					public OutputStream openOutputStream(){
+						return new ByteArrayOutputStream() {
+							@Override
+							public void close(){
+								classFiles.put(className, toByteArray());
+							}
+						};
+					}
+				};
+			}
+		};
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		List<String> options = Arrays.asList("-nowarn", "-g:none", "-classpath", System.getProperty("java.class.path"));
+		boolean ok = javac.getTask(null, files, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+		if (!ok){
+			// the program passed the semantic checks, so this is a bug of JavaTranslator
+			StringBuilder errors = new StringBuilder("generated Java code does not compile:\n");
+			for (Diagnostic<? extends JavaFileObject> e: diagnostics.getDiagnostics())
+				errors.append(e.getLineNumber()+": "+e.getMessage(null)+"\n");
+			throw new IllegalStateException(errors.toString());
+		}
+	}
+
+	/** The generated classes - class name to class file.
+	 */
+	public Map<String, byte[]> getClassFiles(){
+		return classFiles;
+	}
+
+	/** Runs the program in this process.
+	 *
+	 * @param args The arguments of the IC main method.
+	 * @return The exit status of the program.
+	 */
+	public int run(String[] args, PrintStream out, Reader in){
+		ICRuntime.setStreams(out, in);
+		try {
+			return (Integer) loadMainClass().getMethod("run", String[].class).invoke(null, (Object) args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Writes the program, with the runtime support it needs, into a jar that runs with java -jar.
+	 */
+	public void writeJar(File jarFile) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, JavaTranslator.MAIN_CLASS);
+
+		JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jarFile)), manifest);
+		try {
+			for (Map.Entry<String, byte[]> e: classFiles.entrySet())
+				addEntry(jar, e.getKey(), e.getValue());
+			List<java.lang.Class<?>> runtime = new ArrayList<java.lang.Class<?>>();
+			runtime.add(ICRuntime.class);
+			runtime.addAll(Arrays.asList(ICRuntime.class.getDeclaredClasses()));
+			for (java.lang.Class<?> c: runtime)
+				addEntry(jar, c.getName(), readClassFile(c));
+		} finally {
+			jar.close();
+		}
+	}
+
+	private java.lang.Class<?> loadMainClass() throws ClassNotFoundException {
+		if (mainClass == null){
+			ClassLoader loader = new ClassLoader(ICRuntime.class.getClassLoader()) {
+				@Override
+				protected java.lang.Class<?> findClass(String name) throws ClassNotFoundException {
+					byte[] bytes = classFiles.get(name);
+					if (bytes == null)
+						throw new ClassNotFoundException(name);
+					return defineClass(name, bytes, 0, bytes.length);
+				}
+			};
+			mainClass = loader.loadClass(JavaTranslator.MAIN_CLASS);
+		}
+		return mainClass;
+	}
+
+	private static void addEntry(JarOutputStream jar, String className, byte[] bytes) throws IOException {
+		jar.putNextEntry(new JarEntry(className.replace('.', '/')+".class"));
+		jar.write(bytes);
+		jar.closeEntry();
+	}
+
+	private static byte[] readClassFile(java.lang.Class<?> c) throws IOException {
+		InputStream in = c.getResourceAsStream("/"+c.getName().replace('.', '/')+".class");
+		if (in == null)
+			throw new IOException("cannot find the class file of "+c.getName());
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1)
+				bytes.write(buf, 0, n);
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
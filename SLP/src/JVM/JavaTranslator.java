@@ -0,0 +1,360 @@
+package JVM;
+
+import java.util.*;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * Translates a checked IC program into the source of a single Java compilation unit, which
+ * JVMBackend compiles into class files. Every IC class becomes a static nested class of the
+ * class ICProgram, whose main method runs the IC main method.
+ *
+ * Names are prefixed so they never clash with Java keywords or with each other: classes
+ * with c_, fields with f_, methods with m_, parameters with p_ and locals with v_ and the
+ * depth of their block. Evaluation order and runtime checks follow LIRTranslator, so both
+ * backends fail at the same point with the same message.
+ */
+public class JavaTranslator implements PropagatingVisitor<Object, String> {
+
+	public static final String MAIN_CLASS = "ICProgram";
+	private static final String RT = "JVM.ICRuntime.";
+
+	private Program root;
+	private Map<String, Class> classes = new HashMap<String, Class>();
+
+	// visible locals (IC name to Java name) of each enclosing block, innermost last
+	private LinkedList<Map<String, String>> scopes = new LinkedList<Map<String, String>>();
+	private Set<String> params = new HashSet<String>();
+	private String indent = "";
+
+	public JavaTranslator(Program root){
+		this.root = root;
+		for (Class cl: root.classes)
+			classes.put(cl.name, cl);
+	}
+
+	/** The Java source of the program.
+	 */
+	public String translate(){
+		return root.accept(this, null);
+	}
+
+	@Override
+	public String visit(Program program, Object d) {
+		StringBuilder src = new StringBuilder();
+		Method main = null;
+		Class mainClass = null;
+		for (Class cl: program.classes){
+			for (Method m: cl.methods){
+				if (isMain(m)){
+					main = m;
+					mainClass = cl;
+				}
+			}
+		}
+
+		src.append("public class "+MAIN_CLASS+" {\n\n");
+		src.append("\tpublic static void main(String[] args) {\n");
+		src.append("\t\tint status = run(args);\n");
+		src.append("\t\tif (status != 0)\n");
+		src.append("\t\t\tSystem.exit(status);\n");
+		src.append("\t}\n\n");
+		src.append("\tpublic static int run(final String[] args) {\n");
+		src.append("\t\treturn "+RT+"run(new Runnable() {\n");
+		src.append("\t\t\tpublic void run() {\n");
+		if (main != null)
+			src.append("\t\t\t\tc_"+mainClass.name+".m_"+main.name+"(args);\n");
+		src.append("\t\t\t}\n");
+		src.append("\t\t});\n");
+		src.append("\t}\n");
+
+		indent = "\t";
+		for (Class cl: program.classes)
+			src.append("\n").append(cl.accept(this, null));
+		src.append("}\n");
+		return src.toString();
+	}
+
+	@Override
+	public String visit(Class cl, Object d) {
+		StringBuilder src = new StringBuilder();
+		src.append(indent+"static class c_"+cl.name);
+		if (cl.superName != null)
+			src.append(" extends c_"+cl.superName);
+		src.append(" {\n");
+
+		String outer = indent;
+		indent += "\t";
+		for (Field f: cl.fields)
+			src.append(f.accept(this, null));
+		for (Method m: cl.methods)
+			src.append("\n").append(m.accept(this, null));
+		indent = outer;
+
+		src.append(indent+"}\n");
+		return src.toString();
+	}
+
+	@Override
+	public String visit(Field field, Object d) {
+		return indent+javaType(field.type)+" f_"+field.name+";\n";
+	}
+
+	@Override
+	public String visit(Formal formal, Object d) {
+		return javaType(formal.type)+" p_"+formal.name;
+	}
+
+	@Override
+	public String visit(Type type, Object d) {
+		return javaType(type);
+	}
+
+	@Override
+	public String visit(Method method, Object d) {
+		StringBuilder src = new StringBuilder(indent);
+		if (method.isStatic)
+			src.append("static ");
+		src.append(javaType(method.type)+" m_"+method.name+"(");
+		params.clear();
+		for (int i = 0; i < method.formalList.size(); i++){
+			Formal f = method.formalList.get(i);
+			if (i > 0)
+				src.append(", ");
+			src.append(f.accept(this, null));
+			params.add(f.name);
+		}
+		src.append(") {\n");
+
+		String outer = indent;
+		indent += "\t";
+		scopes.clear();
+		scopes.add(new HashMap<String, String>());
+		for (Stmt s: method.statementList)
+			src.append(s.accept(this, null));
+		// javac demands a return at the end of a method. Every Java return is guarded by
+		// 'if (true)' (see ReturnStmt), so this one is always reachable
+		if (!method.type.getName().equals("void"))
+			src.append(indent+"return "+defaultValue(method.type)+";\n");
+		indent = outer;
+
+		src.append(indent+"}\n");
+		return src.toString();
+	}
+
+	@Override
+	public String visit(AssignStmt stmt, Object d) {
+		String rhs = stmt.rhs.accept(this, null);
+		// as in LIR, the value is computed before the location it is stored into
+		if (stmt.lhs instanceof ArrayLocation){
+			ArrayLocation loc = (ArrayLocation) stmt.lhs;
+			return indent+RT+"store("+rhs+", "+RT+"checkNullRef("+loc.array.accept(this, null)+"), "+loc.index.accept(this, null)+");\n";
+		}
+		VarLocation loc = (VarLocation) stmt.lhs;
+		if (loc.location == null)
+			return indent+loc.accept(this, null)+" = "+rhs+";\n";
+		Field field = findField(loc.location.semanticType.name, loc.name);
+		return indent+"{ "+javaType(field.type)+" $v = "+rhs+"; "+RT+"checkNullRef("+loc.location.accept(this, null)+").f_"+loc.name+" = $v; }\n";
+	}
+
+	@Override
+	public String visit(ReturnStmt stmt, Object d) {
+		// 'if (true)' keeps javac from rejecting the IC code after a return as unreachable
+		if (stmt.expr == null)
+			return indent+"if (true) return;\n";
+		return indent+"if (true) return "+stmt.expr.accept(this, null)+";\n";
+	}
+
+	@Override
+	public String visit(StaticCall call, Object d) {
+		if (call.className.equals("Library"))
+			return RT+call.funcName+"("+args(call.args)+")";
+		return "c_"+call.className+".m_"+call.funcName+"("+args(call.args)+")";
+	}
+
+	@Override
+	public String visit(VirtCall call, Object d) {
+		if (call.location == null)
+			return "m_"+call.funcName+"("+args(call.args)+")";
+		return RT+"checkNullRef("+call.location.accept(this, null)+").m_"+call.funcName+"("+args(call.args)+")";
+	}
+
+	@Override
+	public String visit(VarLocation loc, Object d) {
+		if (loc.location != null)
+			return RT+"checkNullRef("+loc.location.accept(this, null)+").f_"+loc.name;
+		for (Iterator<Map<String, String>> it = scopes.descendingIterator(); it.hasNext(); ){
+			String local = it.next().get(loc.name);
+			if (local != null)
+				return local;
+		}
+		if (params.contains(loc.name))
+			return "p_"+loc.name;
+		return "f_"+loc.name;
+	}
+
+	@Override
+	public String visit(ArrayLocation loc, Object d) {
+		return RT+"load("+RT+"checkNullRef("+loc.array.accept(this, null)+"), "+loc.index.accept(this, null)+")";
+	}
+
+	@Override
+	public String visit(CallStmt stmt, Object d) {
+		return indent+stmt.call.accept(this, null)+";\n";
+	}
+
+	@Override
+	public String visit(StmtList stmt, Object d) {
+		return indent+block(stmt);
+	}
+
+	@Override
+	public String visit(IfStmt stmt, Object d) {
+		StringBuilder src = new StringBuilder(indent+"if ("+stmt.condition.accept(this, null)+") ");
+		src.append(block(stmt.thenStmt));
+		if (stmt.elseStmt != null){
+			src.setLength(src.length()-1);
+			src.append(" else ").append(block(stmt.elseStmt));
+		}
+		return src.toString();
+	}
+
+	@Override
+	public String visit(WhileStmt stmt, Object d) {
+		return indent+"while ("+RT+"cond("+stmt.condition.accept(this, null)+")) "+block(stmt.thenStmt);
+	}
+
+	@Override
+	public String visit(BreakStmt stmt, Object d) {
+		return indent+"if (true) break;\n";
+	}
+
+	@Override
+	public String visit(ContinueStmt stmt, Object d) {
+		return indent+"if (true) continue;\n";
+	}
+
+	@Override
+	public String visit(LocalVarStmt stmt, Object d) {
+		// javac needs locals to be definitely assigned - IC locals start as 0, false or null
+		String init = (stmt.init != null) ? stmt.init.accept(this, null) : defaultValue(stmt.type);
+		String name = "v_"+stmt.name+"_"+scopes.size();
+		scopes.getLast().put(stmt.name, name);
+		return indent+javaType(stmt.type)+" "+name+" = "+init+";\n";
+	}
+
+	@Override
+	public String visit(ThisExpr expr, Object d) {
+		return "this";
+	}
+
+	@Override
+	public String visit(NewClassExpr expr, Object d) {
+		return "new c_"+expr.name+"()";
+	}
+
+	@Override
+	public String visit(NewArrayExpr expr, Object d) {
+		// expr.type is the type of the array. The size goes into its first brackets: new int[n][]
+		String arrayType = javaType(expr.type);
+		int brackets = arrayType.indexOf("[]");
+		return "new "+arrayType.substring(0, brackets)+"["+RT+"checkSize("+expr.index.accept(this, null)+")]"+arrayType.substring(brackets+2);
+	}
+
+	@Override
+	public String visit(LengthExpr expr, Object d) {
+		return RT+"checkNullRef("+expr.context.accept(this, null)+").length";
+	}
+
+	@Override
+	public String visit(LiteralExpr expr, Object d) {
+		switch (expr.type){
+		case INTEGER:	// folded constants may be negative - keep -x-1 from becoming --1
+			return (((Integer) expr.value) < 0) ? "("+expr.value+")" : expr.value.toString();
+		case QUOTE:		return "\""+expr.value+"\"";	// IC and Java share their escapes
+		case TRUE:		return "true";
+		case FALSE:		return "false";
+		default:		return "null";
+		}
+	}
+
+	@Override
+	public String visit(UnaryOpExpr expr, Object d) {
+		return "("+expr.operator.name+expr.rightOp.accept(this, null)+")";
+	}
+
+	@Override
+	public String visit(BinaryOpExpr expr, Object d) {
+		String left = expr.leftOp.accept(this, null);
+		String right = expr.rightOp.accept(this, null);
+		if (expr.operator == BinaryOpsEnum.DIVIDE)
+			return RT+"div("+left+", "+right+")";
+		return "("+left+" "+expr.operator.name+" "+right+")";
+	}
+
+	// a statement as a Java block, in a scope of its own
+	private String block(Stmt stmt){
+		StringBuilder src = new StringBuilder("{\n");
+		String outer = indent;
+		indent += "\t";
+		scopes.add(new HashMap<String, String>());
+		if (stmt instanceof StmtList){
+			for (Stmt s: ((StmtList) stmt).statements)
+				src.append(s.accept(this, null));
+		} else {
+			src.append(stmt.accept(this, null));
+		}
+		scopes.removeLast();
+		indent = outer;
+		return src.append(indent+"}\n").toString();
+	}
+
+	private String args(List<Expr> args){
+		StringBuilder src = new StringBuilder();
+		for (int i = 0; i < args.size(); i++){
+			if (i > 0)
+				src.append(", ");
+			src.append(args.get(i).accept(this, null));
+		}
+		return src.toString();
+	}
+
+	// the field <name> of class <className> or of its super classes
+	private Field findField(String className, String name){
+		for (Class cl = classes.get(className); cl != null; cl = classes.get(cl.superName)){
+			for (Field f: cl.fields)
+				if (f.name.equals(name))
+					return f;
+			if (cl.superName == null)
+				break;
+		}
+		throw new IllegalStateException("no field "+name+" in class "+className);
+	}
+
+	private static String javaType(Type type){
+		String name = type.getName();
+		int brackets = name.indexOf('[');
+		String base = (brackets < 0) ? name : name.substring(0, brackets);
+		String dims = (brackets < 0) ? "" : name.substring(brackets);
+		if (base.equals("string"))
+			base = "String";
+		else if (!base.equals("int") && !base.equals("boolean") && !base.equals("void"))
+			base = "c_"+base;
+		return base+dims;
+	}
+
+	private static String defaultValue(Type type){
+		String name = type.getName();
+		if (name.equals("int"))
+			return "0";
+		if (name.equals("boolean"))
+			return "false";
+		return "null";
+	}
+
+	private static boolean isMain(Method m){
+		return m.isStatic && m.name.equals("main") && m.type.getName().equals("void")
+				&& m.formalList.size() == 1 && m.formalList.get(0).type.getName().equals("string[]");
+	}
+}
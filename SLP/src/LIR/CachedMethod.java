@@ -0,0 +1,119 @@
+package LIR;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * The LIR code of a single method, kept independent of the program it was translated in.
+ * Labels are numbered relative to the first label of the method, and string literals are
+ * numbered per method, so the code can be put back into a program whose other methods,
+ * labels and literals have changed.
+ */
+public class CachedMethod {
+	public final String name;
+	public final boolean isMain;
+	// number of label numbers the method used
+	final int labelCount;
+	// the string literals of the method, local literal i is literals[i-1]
+	final List<String> literals;
+	// code with relative labels and literal references of the form '#str<i>'
+	final String code;
+
+	// labels generated by the translator, including the error stubs of inline checks. The
+	// look-behind keeps method labels such as _A_end_label1 out
+	private static final Pattern LABEL = Pattern.compile(
+			"(?<![A-Za-z0-9_])(_(?:true|false|end|while_cond|null_ref|array_bounds|array_negative|zero_division)_label)(\\d+)");
+	// string literal references, marked by the translator when translating for the cache
+	private static final Pattern LITERAL = Pattern.compile("#str(\\d+)");
+
+	private CachedMethod(String name, boolean isMain, int labelCount, List<String> literals, String code){
+		this.name = name;
+		this.isMain = isMain;
+		this.labelCount = labelCount;
+		this.literals = literals;
+		this.code = code;
+	}
+
+	// create from freshly translated code, whose labels start at <labelBase> and whose
+	// literal references '#str<n>' are numbered as in <programLiterals>
+	static CachedMethod fromTranslation(String name, boolean isMain, String code, int labelBase, int labelCount, StringLiteralPool programLiterals){
+		code = shiftLabels(code, -labelBase);
+
+		List<String> literals = new ArrayList<String>();
+		Map<Integer, Integer> localIndex = new HashMap<Integer, Integer>();
+		Matcher m = LITERAL.matcher(code);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()){
+			int global = Integer.parseInt(m.group(1));
+			Integer local = localIndex.get(global);
+			if (local == null){
+				literals.add(programLiterals.get(global));
+				local = literals.size();
+				localIndex.put(global, local);
+			}
+			m.appendReplacement(sb, "#str"+local);
+		}
+		m.appendTail(sb);
+
+		return new CachedMethod(name, isMain, labelCount, literals, sb.toString());
+	}
+
+	// the code of this method inside a program, with labels starting at <labelBase>
+	// and literals numbered as in <programLiterals>, referenced as <prefix><n>
+	String toProgramCode(int labelBase, StringLiteralPool programLiterals, String prefix){
+		Matcher m = LITERAL.matcher(shiftLabels(code, labelBase));
+		StringBuffer sb = new StringBuffer();
+		while (m.find()){
+			String literal = literals.get(Integer.parseInt(m.group(1))-1);
+			m.appendReplacement(sb, prefix+programLiterals.numberOf(literal));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static String shiftLabels(String code, int shift){
+		Matcher m = LABEL.matcher(code);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()){
+			m.appendReplacement(sb, m.group(1)+(Integer.parseInt(m.group(2))+shift));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	void write(DataOutputStream out) throws IOException{
+		writeString(out, name);
+		out.writeBoolean(isMain);
+		out.writeInt(labelCount);
+		out.writeInt(literals.size());
+		for (String literal: literals)
+			writeString(out, literal);
+		writeString(out, code);
+	}
+
+	static CachedMethod read(DataInputStream in) throws IOException{
+		String name = readString(in);
+		boolean isMain = in.readBoolean();
+		int labelCount = in.readInt();
+		int n = in.readInt();
+		List<String> literals = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++)
+			literals.add(readString(in));
+		String code = readString(in);
+		return new CachedMethod(name, isMain, labelCount, literals, code);
+	}
+
+	// unlike writeUTF, not limited to 64K
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
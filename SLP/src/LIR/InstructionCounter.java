@@ -0,0 +1,130 @@
+package LIR;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the instructions of the LIR code written through it, by opcode.
+ * Instructions are the lines that start with an upper case letter - labels, string
+ * literals and dispatch tables start with a lower case letter or '_', comments with '#'.
+ * Labels are the lines that end with ':'.
+ */
+public class InstructionCounter implements Appendable {
+	// where the code is passed on to. null to only count it
+	private Appendable out;
+	private StringBuilder line = new StringBuilder();
+	private int count;
+	private int runtimeChecks;
+	private int labels;
+	private int maxRegister = -1;
+	private Map<String, Integer> opcodes = new TreeMap<String, Integer>();
+
+	public InstructionCounter(Appendable out){
+		this.out = out;
+	}
+
+	@Override
+	public Appendable append(CharSequence csq) throws IOException {
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Appendable append(CharSequence csq, int start, int end) throws IOException {
+		for (int i = start; i < end; i++)
+			take(csq.charAt(i));
+		if (out != null)
+			out.append(csq, start, end);
+		return this;
+	}
+
+	@Override
+	public Appendable append(char c) throws IOException {
+		take(c);
+		if (out != null)
+			out.append(c);
+		return this;
+	}
+
+	private void take(char c){
+		if (c != '\n'){
+			line.append(c);
+			return;
+		}
+		if (line.length() > 0 && Character.isUpperCase(line.charAt(0))){
+			int space = line.indexOf(" ");
+			String opcode = (space < 0) ? line.toString() : line.substring(0, space);
+			Integer n = opcodes.get(opcode);
+			opcodes.put(opcode, (n == null) ? 1 : n+1);
+			count++;
+			if (line.indexOf("StaticCall __check") == 0 || isInlineCheck(line))
+				runtimeChecks++;
+			registers();
+		} else if (line.length() > 0 && line.charAt(line.length()-1) == ':'){
+			labels++;
+		}
+		line.setLength(0);
+	}
+
+	// the first jump of an inline runtime check to its error stub - the only one, but for the
+	// two of a bounds check
+	private static boolean isInlineCheck(StringBuilder line){
+		String s = line.toString();
+		return s.startsWith("JumpTrue _null_ref_label") || s.startsWith("JumpLE _array_bounds_label")
+				|| s.startsWith("JumpL _array_negative_label") || s.startsWith("JumpTrue _zero_division_label");
+	}
+
+	/** The number of instructions, including the runtime check helpers.
+	 */
+	public int getCount(){
+		return count;
+	}
+
+	/** The number of runtime checks: calls of the check helpers, or checks translated inline.
+	 */
+	public int getRuntimeChecks(){
+		return runtimeChecks;
+	}
+
+	/** The number of jumps, conditional or not.
+	 */
+	public int getJumps(){
+		int jumps = 0;
+		for (Map.Entry<String, Integer> e: opcodes.entrySet()){
+			if (e.getKey().startsWith("Jump"))
+				jumps += e.getValue();
+		}
+		return jumps;
+	}
+
+	/** The number of labels, of methods and of jump targets.
+	 */
+	public int getLabels(){
+		return labels;
+	}
+
+	/** The highest register number used, or -1 if no instruction uses a register.
+	 */
+	public int getMaxRegister(){
+		return maxRegister;
+	}
+
+	// take the numbers of the registers (R<n>, not part of a longer name) in the line
+	private void registers(){
+		for (int i = line.indexOf(" "); i >= 0 && i < line.length()-1; i++){
+			if (line.charAt(i+1) != 'R' || Character.isJavaIdentifierPart(line.charAt(i)))
+				continue;
+			int n = 0, j = i+2;
+			for (; j < line.length() && Character.isDigit(line.charAt(j)); j++)
+				n = 10*n + (line.charAt(j)-'0');
+			if (j > i+2 && (j == line.length() || !Character.isJavaIdentifierPart(line.charAt(j))) && n > maxRegister)
+				maxRegister = n;
+		}
+	}
+
+	/** The number of instructions of each opcode.
+	 */
+	public Map<String, Integer> getOpcodes(){
+		return opcodes;
+	}
+}
@@ -0,0 +1,476 @@
+package LIR;
+
+import java.io.*;
+import java.util.*;
+
+import static LIR.LIRProgram.*;
+
+/**
+ * Executes a decoded LIR program.
+ *
+ * Every frame slot (register, variable or parameter) holds an int and a reference, in two
+ * parallel arrays: integers and booleans live in the int part, strings, objects, arrays and
+ * dispatch tables in the reference part, and null is 0 with no reference. Moves copy both
+ * parts, arithmetic works on the int part only. Objects and arrays are Blocks, whose element
+ * 0 of an object is its dispatch table.
+ */
+public class LIRInterpreter {
+
+	/** An object or an array.
+	 */
+	static final class Block {
+		final int[] ints;
+		final Object[] refs;
+
+		Block(int size){
+			ints = new int[size];
+			refs = new Object[size];
+		}
+	}
+
+	/** Thrown by Library __exit and by failed runtime checks, to stop the program.
+	 */
+	static class Exit extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		Exit(int status){
+			super(null, null, false, false);
+			this.status = status;
+		}
+	}
+
+	private final LIRProgram program;
+	private final CallSite[] sites;
+	private final int[] poolInts;
+	private final Object[] poolRefs;
+	private final PrintStream out;
+	private final BufferedReader in;
+	private final Random random = new Random();
+	private long startTime;
+	// the number of accesses to each field offset of the objects of each class, when profiling
+	private Map<DispatchTable, long[]> fieldAccesses;
+	// the number of calls of each function from each function, when profiling
+	private Map<Function, Map<Function, long[]>> calls;
+
+	// the return value of the last call
+	private int retInt;
+	private Object retRef;
+
+	public LIRInterpreter(LIRProgram program, PrintStream out, Reader in){
+		this.program = program;
+		this.sites = program.callSites;
+		this.poolInts = program.poolInts;
+		this.poolRefs = program.poolRefs;
+		this.out = out;
+		this.in = new BufferedReader(in);
+	}
+
+	/** Counts the accesses to the fields of objects while the program runs, see getFieldAccesses.
+	 */
+	public void profileFields(){
+		fieldAccesses = new IdentityHashMap<DispatchTable, long[]>();
+	}
+
+	/** The number of accesses to the fields of the objects of each class that ran, by class
+	 * name and field offset, if profileFields was called before the run.
+	 */
+	public Map<String, long[]> getFieldAccesses(){
+		Map<String, long[]> accesses = new TreeMap<String, long[]>();
+		if (fieldAccesses != null){
+			for (Map.Entry<DispatchTable, long[]> e: fieldAccesses.entrySet())
+				accesses.put(e.getKey().name.substring("_DV_".length()), e.getValue());
+		}
+		return accesses;
+	}
+
+	/** Counts the calls of each function from each function while the program runs, see getCalls.
+	 */
+	public void profileCalls(){
+		calls = new IdentityHashMap<Function, Map<Function, long[]>>();
+	}
+
+	/** The number of calls of each function from each function, by the labels of the caller
+	 * and of the callee, if profileCalls was called before the run. Library calls are not counted.
+	 */
+	public Map<String, Map<String, Long>> getCalls(){
+		Map<String, Map<String, Long>> result = new TreeMap<String, Map<String, Long>>();
+		if (calls != null){
+			for (Map.Entry<Function, Map<Function, long[]>> e: calls.entrySet()){
+				Map<String, Long> callees = new TreeMap<String, Long>();
+				for (Map.Entry<Function, long[]> c: e.getValue().entrySet())
+					callees.put(c.getKey().name, c.getValue()[0]);
+				result.put(e.getKey().name, callees);
+			}
+		}
+		return result;
+	}
+
+	/** Runs the program from _ic_main.
+	 *
+	 * @param args The arguments of the IC main method.
+	 * @return The exit status - 0, or the status given to Library.exit or of a failed runtime check.
+	 */
+	public int run(String[] args){
+		startTime = System.currentTimeMillis();
+		Function main = program.main;
+		int[] ints = new int[main.frameSize];
+		Object[] refs = new Object[main.frameSize];
+		int argsSlot = main.paramSlot("args");
+		if (argsSlot >= 0){
+			Block array = new Block(args.length);
+			System.arraycopy(args, 0, array.refs, 0, args.length);
+			refs[argsSlot] = array;
+		}
+
+		try {
+			execute(main, ints, refs);
+			return 0;
+		} catch (Exit e) {
+			return e.status;
+		// errors the runtime checks catch, when the checks were left out of the code
+		} catch (NullPointerException e) {
+			return fail("error_null_ref", "Runtime Error: Null pointer dereference!");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return fail("error_array_bounds", "Runtime Error: Array index out of bounds!");
+		} catch (NegativeArraySizeException e) {
+			return fail("error_array_negative", "Runtime Error: Array allocation with negative array size!");
+		} catch (ArithmeticException e) {
+			return fail("error_zero_division", "Runtime Error: Division by zero!");
+		} finally {
+			out.flush();
+		}
+	}
+
+	private void execute(Function f, int[] iv, Object[] rv){
+		final int[] code = f.code;
+		int pc = 0;
+		// result of the last Compare - negative, zero or positive
+		int cmp = 0;
+
+		for (;;){
+			switch (code[pc]){
+			case MOVE: {
+				int s = code[pc+1], d = code[pc+2];
+				iv[d] = iv[s];
+				rv[d] = rv[s];
+				break;
+			}
+			case MOVE_IMM: {
+				int d = code[pc+2];
+				iv[d] = code[pc+1];
+				rv[d] = null;
+				break;
+			}
+			case MOVE_POOL: {
+				int p = ~code[pc+1], d = code[pc+2];
+				iv[d] = poolInts[p];
+				rv[d] = poolRefs[p];
+				break;
+			}
+			case LOAD_FIELD: {
+				Block b = (Block) rv[code[pc+1]];
+				int off = code[pc+2], d = code[pc+3];
+				if (fieldAccesses != null)
+					countAccess(b, off);
+				iv[d] = b.ints[off];
+				rv[d] = b.refs[off];
+				break;
+			}
+			case STORE_FIELD: {
+				Block b = (Block) rv[code[pc+2]];
+				int x = code[pc+1], off = code[pc+3];
+				if (fieldAccesses != null)
+					countAccess(b, off);
+				b.ints[off] = intOf(x, iv);
+				b.refs[off] = refOf(x, rv);
+				break;
+			}
+			case LOAD_ARRAY: {
+				Block b = (Block) rv[code[pc+1]];
+				int i = iv[code[pc+2]], d = code[pc+3];
+				iv[d] = b.ints[i];
+				rv[d] = b.refs[i];
+				break;
+			}
+			case STORE_ARRAY: {
+				Block b = (Block) rv[code[pc+2]];
+				int x = code[pc+1], i = iv[code[pc+3]];
+				b.ints[i] = intOf(x, iv);
+				b.refs[i] = refOf(x, rv);
+				break;
+			}
+			case ARRAY_LENGTH: {
+				int d = code[pc+2];
+				iv[d] = ((Block) rv[code[pc+1]]).ints.length;
+				rv[d] = null;
+				break;
+			}
+			// arithmetic writes the int part only - its destination always holds an int
+			case ADD:		iv[code[pc+2]] += iv[code[pc+1]]; break;
+			case ADD_IMM:	iv[code[pc+2]] += code[pc+1]; break;
+			case SUB:		iv[code[pc+2]] -= iv[code[pc+1]]; break;
+			case SUB_IMM:	iv[code[pc+2]] -= code[pc+1]; break;
+			case MUL:		iv[code[pc+2]] *= iv[code[pc+1]]; break;
+			case MUL_IMM:	iv[code[pc+2]] *= code[pc+1]; break;
+			case DIV:		iv[code[pc+2]] /= iv[code[pc+1]]; break;
+			case DIV_IMM:	iv[code[pc+2]] /= code[pc+1]; break;
+			case MOD:		iv[code[pc+2]] %= iv[code[pc+1]]; break;
+			case MOD_IMM:	iv[code[pc+2]] %= code[pc+1]; break;
+			case NEG:		iv[code[pc+1]] = -iv[code[pc+1]]; break;
+			case COMPARE: {
+				// Compare a, b compares b to a. References are only compared for equality
+				int a = code[pc+1], b = code[pc+2];
+				Object ra = rv[a], rb = rv[b];
+				if (ra == null && rb == null)
+					cmp = Integer.compare(iv[b], iv[a]);
+				else
+					cmp = (ra == rb) ? 0 : 1;
+				break;
+			}
+			case COMPARE_IMM: {
+				int b = code[pc+2];
+				cmp = (rv[b] != null) ? 1 : Integer.compare(iv[b], code[pc+1]);
+				break;
+			}
+			case JUMP:
+				pc = code[pc+1];
+				continue;
+			case JUMP_TRUE:
+				if (cmp == 0) { pc = code[pc+1]; continue; }
+				break;
+			case JUMP_FALSE:
+				if (cmp != 0) { pc = code[pc+1]; continue; }
+				break;
+			case JUMP_G:
+				if (cmp > 0) { pc = code[pc+1]; continue; }
+				break;
+			case JUMP_GE:
+				if (cmp >= 0) { pc = code[pc+1]; continue; }
+				break;
+			case JUMP_L:
+				if (cmp < 0) { pc = code[pc+1]; continue; }
+				break;
+			case JUMP_LE:
+				if (cmp <= 0) { pc = code[pc+1]; continue; }
+				break;
+			case STATIC_CALL: {
+				CallSite site = sites[code[pc+1]];
+				if (calls != null)
+					countCall(f, site.target);
+				call(site.target, site.paramSlots, site.args, null, iv, rv);
+				int d = code[pc+2];
+				iv[d] = retInt;
+				rv[d] = retRef;
+				break;
+			}
+			case VIRTUAL_CALL: {
+				CallSite site = sites[code[pc+1]];
+				Block obj = (Block) rv[code[pc+2]];
+				Function callee = ((DispatchTable) obj.refs[0]).methods[site.offset];
+				if (callee != site.lastCallee){
+					int[] slots = new int[site.paramNames.length];
+					for (int i = 0; i < slots.length; i++)
+						slots[i] = callee.paramSlot(site.paramNames[i]);
+					site.lastParamSlots = slots;
+					site.lastCallee = callee;
+				}
+				if (calls != null)
+					countCall(f, callee);
+				call(callee, site.lastParamSlots, site.args, obj, iv, rv);
+				int d = code[pc+3];
+				iv[d] = retInt;
+				rv[d] = retRef;
+				break;
+			}
+			case LIBRARY:
+				library(sites[code[pc+1]], code[pc+2], iv, rv);
+				break;
+			case RETURN: {
+				int x = code[pc+1];
+				retInt = intOf(x, iv);
+				retRef = refOf(x, rv);
+				return;
+			}
+			case CHECK_NULL:
+				if (rv[code[pc+1]] == null)
+					throw new Exit(fail("error_null_ref", "Runtime Error: Null pointer dereference!"));
+				break;
+			case CHECK_ARRAY: {
+				int i = iv[code[pc+2]];
+				if (i < 0 || i >= ((Block) rv[code[pc+1]]).ints.length)
+					throw new Exit(fail("error_array_bounds", "Runtime Error: Array index out of bounds!"));
+				break;
+			}
+			case CHECK_SIZE:
+				if (iv[code[pc+1]] < 0)
+					throw new Exit(fail("error_array_negative", "Runtime Error: Array allocation with negative array size!"));
+				break;
+			case CHECK_ZERO:
+				if (iv[code[pc+1]] == 0)
+					throw new Exit(fail("error_zero_division", "Runtime Error: Division by zero!"));
+				break;
+			default:
+				throw new IllegalStateException("bad opcode "+code[pc]+" in "+f.name);
+			}
+			pc += WIDTH;
+		}
+	}
+
+	// call <callee> with a new frame. A -1 parameter slot is a parameter the callee never uses
+	private void call(Function callee, int[] paramSlots, int[] args, Block thisObj, int[] iv, Object[] rv){
+		int[] civ = new int[callee.frameSize];
+		Object[] crv = new Object[callee.frameSize];
+		for (int i = 0; i < args.length; i++){
+			int p = paramSlots[i];
+			if (p >= 0){
+				civ[p] = intOf(args[i], iv);
+				crv[p] = refOf(args[i], rv);
+			}
+		}
+		if (thisObj != null && callee.thisSlot >= 0)
+			crv[callee.thisSlot] = thisObj;
+		execute(callee, civ, crv);
+	}
+
+	private void library(CallSite site, int d, int[] iv, Object[] rv){
+		int[] args = site.args;
+		int resInt = 0;
+		Object resRef = null;
+		switch (site.library){
+		case 0:		// println
+			out.println(str(refOf(args[0], rv)));
+			break;
+		case 1:		// print
+			out.print(str(refOf(args[0], rv)));
+			break;
+		case 2:		// printi
+			out.print(intOf(args[0], iv));
+			break;
+		case 3:		// printb
+			out.print(intOf(args[0], iv) != 0);
+			break;
+		case 4: {	// readi
+			String line = readLine();
+			try {
+				resInt = (line == null) ? 0 : Integer.parseInt(line.trim());
+			} catch (NumberFormatException e) {
+				resInt = 0;
+			}
+			break;
+		}
+		case 5:		// readln
+			resRef = readLine();
+			break;
+		case 6:		// eof
+			try {
+				in.mark(1);
+				resInt = (in.read() < 0) ? 1 : 0;
+				in.reset();
+			} catch (IOException e) {
+				resInt = 1;
+			}
+			break;
+		case 7:		// stoi
+			try {
+				resInt = Integer.parseInt((String) refOf(args[0], rv));
+			} catch (NumberFormatException e) {
+				resInt = intOf(args[1], iv);
+			}
+			break;
+		case 8:		// itos
+			resRef = String.valueOf(intOf(args[0], iv));
+			break;
+		case 9: {	// stoa
+			String s = (String) refOf(args[0], rv);
+			Block array = new Block(s.length());
+			for (int i = 0; i < s.length(); i++)
+				array.ints[i] = s.charAt(i);
+			resRef = array;
+			break;
+		}
+		case 10: {	// atos
+			Block array = (Block) refOf(args[0], rv);
+			StringBuilder sb = new StringBuilder(array.ints.length);
+			for (int c: array.ints)
+				sb.append((char) c);
+			resRef = sb.toString();
+			break;
+		}
+		case 11:	// random
+			resInt = random.nextInt(intOf(args[0], iv));
+			break;
+		case 12:	// time
+			resInt = (int) (System.currentTimeMillis() - startTime);
+			break;
+		case 13:	// exit
+			throw new Exit(intOf(args[0], iv));
+		case 14:	// allocateObject - size in bytes
+		case 15:	// allocateArray
+			resRef = new Block(intOf(args[0], iv) / 4);
+			break;
+		case 16:	// stringCat
+			resRef = str(refOf(args[0], rv)).concat(str(refOf(args[1], rv)));
+			break;
+		default:
+			throw new IllegalStateException("unknown library function "+site.library);
+		}
+		iv[d] = resInt;
+		rv[d] = resRef;
+	}
+
+	// an access to the field at <off> of object <b> - not to its dispatch table
+	private void countAccess(Block b, int off){
+		if (off == 0 || !(b.refs[0] instanceof DispatchTable))
+			return;
+		DispatchTable table = (DispatchTable) b.refs[0];
+		long[] counts = fieldAccesses.get(table);
+		if (counts == null){
+			counts = new long[b.ints.length];
+			fieldAccesses.put(table, counts);
+		}
+		counts[off]++;
+	}
+
+	// a call of <callee> from <caller>
+	private void countCall(Function caller, Function callee){
+		Map<Function, long[]> callees = calls.get(caller);
+		if (callees == null){
+			callees = new IdentityHashMap<Function, long[]>();
+			calls.put(caller, callees);
+		}
+		long[] count = callees.get(callee);
+		if (count == null){
+			count = new long[1];
+			callees.put(callee, count);
+		}
+		count[0]++;
+	}
+
+	private int intOf(int x, int[] iv){
+		return (x >= 0) ? iv[x] : poolInts[~x];
+	}
+
+	private Object refOf(int x, Object[] rv){
+		return (x >= 0) ? rv[x] : poolRefs[~x];
+	}
+
+	private static String str(Object s){
+		return (s == null) ? "null" : (String) s;
+	}
+
+	private String readLine(){
+		try {
+			return in.readLine();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	// print the error message a runtime check would print, and return the exit status
+	private int fail(String label, String message){
+		Object programMessage = program.constants.get(label);
+		out.println(programMessage instanceof String ? (String) programMessage : message);
+		return 1;
+	}
+}
@@ -0,0 +1,567 @@
+package LIR;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A LIR program decoded for LIRInterpreter.
+ * Every function is decoded once into a flat array of fixed size instructions - an opcode
+ * followed by 3 operands - with labels resolved to code positions and registers, variables
+ * and parameters resolved to frame slots, so nothing is looked up by name while running.
+ *
+ * An operand is either a frame slot (>= 0), or the complement of an index into the constant
+ * pool, which holds string literals, dispatch tables and immediates.
+ */
+public class LIRProgram {
+	// size of a single instruction in the code array
+	static final int WIDTH = 4;
+
+	// opcodes. <s>/<d> are source/destination slots, <k> an immediate, <p> a pool operand,
+	// <x> any operand, <l> a code position and <c> a call site
+	static final int MOVE = 0;			// s, d
+	static final int MOVE_IMM = 1;		// k, d
+	static final int MOVE_POOL = 2;		// p, d
+	static final int LOAD_FIELD = 3;	// s, offset, d
+	static final int STORE_FIELD = 4;	// x, s, offset
+	static final int LOAD_ARRAY = 5;	// s, index slot, d
+	static final int STORE_ARRAY = 6;	// x, s, index slot
+	static final int ARRAY_LENGTH = 7;	// s, d
+	static final int ADD = 8;			// s, d
+	static final int ADD_IMM = 9;		// k, d
+	static final int SUB = 10;
+	static final int SUB_IMM = 11;
+	static final int MUL = 12;
+	static final int MUL_IMM = 13;
+	static final int DIV = 14;
+	static final int DIV_IMM = 15;
+	static final int MOD = 16;
+	static final int MOD_IMM = 17;
+	static final int NEG = 18;			// d
+	static final int COMPARE = 19;		// s, s
+	static final int COMPARE_IMM = 20;	// k, s
+	static final int JUMP = 21;			// l
+	static final int JUMP_TRUE = 22;
+	static final int JUMP_FALSE = 23;
+	static final int JUMP_G = 24;
+	static final int JUMP_GE = 25;
+	static final int JUMP_L = 26;
+	static final int JUMP_LE = 27;
+	static final int STATIC_CALL = 28;	// c, d
+	static final int VIRTUAL_CALL = 29;	// c, s, d
+	static final int LIBRARY = 30;		// c, d
+	static final int RETURN = 31;		// x
+	// calls of the runtime checks, which are executed by the interpreter itself
+	static final int CHECK_NULL = 32;	// s
+	static final int CHECK_ARRAY = 33;	// array slot, index slot
+	static final int CHECK_SIZE = 34;	// s
+	static final int CHECK_ZERO = 35;	// s
+
+	// library functions
+	static final String[] LIBRARY_FUNCTIONS = {
+		"__println", "__print", "__printi", "__printb", "__readi", "__readln", "__eof",
+		"__stoi", "__itos", "__stoa", "__atos", "__random", "__time", "__exit",
+		"__allocateObject", "__allocateArray", "__stringCat"
+	};
+
+	/** A LIR function - a method, the main method or a runtime check.
+	 */
+	public static class Function {
+		public final String name;
+		int[] code;
+		int frameSize;
+		// the slot of each register, variable and parameter
+		final Map<String, Integer> slots = new HashMap<String, Integer>();
+		int thisSlot = -1;
+
+		Function(String name){
+			this.name = name;
+		}
+
+		int slot(String name){
+			Integer slot = slots.get(name);
+			if (slot == null){
+				slot = slots.size();
+				slots.put(name, slot);
+			}
+			return slot;
+		}
+
+		// the slot of a parameter, or -1 if the function never uses it
+		int paramSlot(String name){
+			Integer slot = slots.get(name);
+			return (slot == null) ? -1 : slot;
+		}
+
+		// number of instructions
+		public int size(){
+			return code.length / WIDTH;
+		}
+	}
+
+	/** A dispatch table - the methods of a class by their offset.
+	 */
+	static class DispatchTable {
+		final String name;
+		Function[] methods;
+
+		DispatchTable(String name){
+			this.name = name;
+		}
+
+		public String toString(){
+			return name;
+		}
+	}
+
+	/** A call instruction's target and arguments.
+	 */
+	static class CallSite {
+		// static calls - the callee, and the slot in its frame of each argument
+		Function target;
+		int[] paramSlots;
+		// virtual calls - the dispatch offset, and the argument names, bound to the slots
+		// of the last callee (which is usually the only one)
+		int offset;
+		String[] paramNames;
+		Function lastCallee;
+		int[] lastParamSlots;
+		// library calls - the index of the function in LIBRARY_FUNCTIONS
+		int library;
+		// argument operands
+		int[] args;
+	}
+
+	/** Thrown when the LIR code cannot be decoded.
+	 */
+	public static class FormatError extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public FormatError(String message, int line){
+			super(line+": LIR error: "+message);
+		}
+	}
+
+	final Function main;
+	final Map<String, Function> functions;
+	final CallSite[] callSites;
+	final int[] poolInts;
+	final Object[] poolRefs;
+	// string literals, error messages and dispatch tables by their label
+	final Map<String, Object> constants;
+
+	private LIRProgram(Function main, Map<String, Function> functions, CallSite[] callSites, int[] poolInts, Object[] poolRefs, Map<String, Object> constants){
+		this.main = main;
+		this.functions = functions;
+		this.callSites = callSites;
+		this.poolInts = poolInts;
+		this.poolRefs = poolRefs;
+		this.constants = constants;
+	}
+
+	/** The decoded functions, in program order.
+	 */
+	public Collection<Function> getFunctions(){
+		return functions.values();
+	}
+
+	/** Decodes a LIR program, as written by LIRTranslator.
+	 */
+	public static LIRProgram load(Reader source) throws IOException, FormatError {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(source);
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line.trim());
+		return new Decoder(lines).decode();
+	}
+
+	// decodes the lines of a program. Not reused
+	private static class Decoder {
+		private final List<String> lines;
+		private int lineNumber;
+
+		// labels of jumps - all other labels start functions
+		private final Set<String> jumpTargets = new HashSet<String>();
+		private final Map<String, Function> functions = new LinkedHashMap<String, Function>();
+		private final List<CallSite> callSites = new ArrayList<CallSite>();
+		// static call sites, and the name of their callee and parameters
+		private final Map<CallSite, String> staticTargets = new HashMap<CallSite, String>();
+		private final Map<CallSite, String[]> staticParams = new HashMap<CallSite, String[]>();
+		// dispatch tables and the names of their methods
+		private final Map<DispatchTable, String[]> dispatchTables = new LinkedHashMap<DispatchTable, String[]>();
+
+		// constant pool. Constants are found by name, immediates by value
+		private final Map<String, Integer> namedConstants = new HashMap<String, Integer>();
+		private final Map<Integer, Integer> immediates = new HashMap<Integer, Integer>();
+		private final List<Integer> poolInts = new ArrayList<Integer>();
+		private final List<Object> poolRefs = new ArrayList<Object>();
+
+		// the function being decoded
+		private Function function;
+		private int[] code = new int[64];
+		private int codeSize;
+		private Map<String, Integer> labels;
+		// code positions waiting for the label they jump to
+		private List<Integer> fixups;
+		private List<String> fixupLabels;
+
+		Decoder(List<String> lines){
+			this.lines = lines;
+		}
+
+		LIRProgram decode() throws FormatError {
+			// find the jump targets and the constants first, so every line can be decoded in one go
+			for (lineNumber = 1; lineNumber <= lines.size(); lineNumber++){
+				String line = lines.get(lineNumber-1);
+				if (line.startsWith("Jump"))
+					jumpTargets.add(line.substring(line.indexOf(' ')+1).trim());
+				else if (line.matches("[A-Za-z_][A-Za-z0-9_]*: *\".*\""))
+					addPoolConstant(line.substring(0, line.indexOf(':')), unescape(line.substring(line.indexOf('"')+1, line.lastIndexOf('"'))));
+				else if (line.startsWith("_DV_") && line.contains("[")){
+					DispatchTable table = new DispatchTable(line.substring(0, line.indexOf(':')));
+					String list = line.substring(line.indexOf('[')+1, line.lastIndexOf(']')).trim();
+					dispatchTables.put(table, list.isEmpty() ? new String[0] : list.split(" *, *"));
+					addPoolConstant(table.name, table);
+				}
+			}
+
+			for (lineNumber = 1; lineNumber <= lines.size(); lineNumber++){
+				String line = lines.get(lineNumber-1);
+				if (line.isEmpty() || line.startsWith("#") || line.contains("\"") || line.startsWith("_DV_"))
+					continue;
+				if (line.endsWith(":") && line.indexOf(' ') < 0){
+					String label = line.substring(0, line.length()-1);
+					if (jumpTargets.contains(label)){
+						if (function == null)
+							throw new FormatError("label "+label+" outside of a function", lineNumber);
+						labels.put(label, codeSize);
+					} else {
+						startFunction(label);
+					}
+				} else {
+					if (function == null)
+						throw new FormatError("instruction outside of a function", lineNumber);
+					decodeInstruction(line);
+				}
+			}
+			endFunction();
+
+			return link();
+		}
+
+		// resolve calls and dispatch tables, which may refer to functions further down
+		private LIRProgram link() throws FormatError {
+			lineNumber = 0;
+			for (Map.Entry<CallSite, String> e: staticTargets.entrySet()){
+				CallSite site = e.getKey();
+				site.target = findFunction(e.getValue());
+				String[] params = staticParams.get(site);
+				site.paramSlots = new int[params.length];
+				for (int i = 0; i < params.length; i++)
+					site.paramSlots[i] = site.target.slot(params[i]);
+			}
+			for (Map.Entry<DispatchTable, String[]> e: dispatchTables.entrySet()){
+				String[] names = e.getValue();
+				e.getKey().methods = new Function[names.length];
+				for (int i = 0; i < names.length; i++)
+					e.getKey().methods[i] = findFunction(names[i]);
+			}
+
+			// all slots are known now
+			for (Function f: functions.values())
+				f.frameSize = f.slots.size();
+
+			Function main = functions.get("_ic_main");
+			if (main == null)
+				throw new FormatError("missing _ic_main", lineNumber);
+
+			int[] ints = new int[poolInts.size()];
+			for (int i = 0; i < ints.length; i++)
+				ints[i] = poolInts.get(i);
+			Map<String, Object> constants = new HashMap<String, Object>();
+			for (Map.Entry<String, Integer> e: namedConstants.entrySet())
+				constants.put(e.getKey(), poolRefs.get(~e.getValue()));
+			return new LIRProgram(main, functions, callSites.toArray(new CallSite[callSites.size()]), ints, poolRefs.toArray(), constants);
+		}
+
+		private Function findFunction(String name) throws FormatError {
+			Function f = functions.get(name);
+			if (f == null)
+				throw new FormatError("unknown function "+name, lineNumber);
+			return f;
+		}
+
+		private void startFunction(String name) throws FormatError {
+			endFunction();
+			if (functions.containsKey(name))
+				throw new FormatError("function "+name+" defined twice", lineNumber);
+			function = new Function(name);
+			functions.put(name, function);
+			codeSize = 0;
+			labels = new HashMap<String, Integer>();
+			fixups = new ArrayList<Integer>();
+			fixupLabels = new ArrayList<String>();
+		}
+
+		private void endFunction() throws FormatError {
+			if (function == null)
+				return;
+			// falling off the end of a function (main, or a void method) returns
+			emit(RETURN, immediate(9999), 0, 0);
+			for (int i = 0; i < fixups.size(); i++){
+				Integer target = labels.get(fixupLabels.get(i));
+				if (target == null)
+					throw new FormatError("unknown label "+fixupLabels.get(i)+" in "+function.name, 0);
+				code[fixups.get(i)] = target;
+			}
+			function.code = Arrays.copyOf(code, codeSize);
+			function.thisSlot = function.paramSlot("this");
+		}
+
+		private void decodeInstruction(String line) throws FormatError {
+			int space = line.indexOf(' ');
+			String op = (space < 0) ? line : line.substring(0, space);
+			String rest = (space < 0) ? "" : line.substring(space+1).trim();
+
+			if (op.equals("StaticCall") || op.equals("VirtualCall") || op.equals("Library")){
+				decodeCall(op, rest);
+				return;
+			}
+			if (op.startsWith("Jump")){
+				int jump = jumpOpcode(op);
+				fixups.add(codeSize+1);
+				fixupLabels.add(rest);
+				emit(jump, 0, 0, 0);
+				return;
+			}
+
+			String[] operands = rest.split(" *, *");
+			if (op.equals("Return")){
+				expect(operands, 1, line);
+				String ret = operands[0];
+				// LIRTranslator may return a location directly - load it first
+				if (ret.contains(".")){
+					String[] field = ret.split("\\.");
+					emit(LOAD_FIELD, slot(field[0]), Integer.parseInt(field[1]), slot("$ret"));
+					ret = "$ret";
+				} else if (ret.contains("[")){
+					emit(LOAD_ARRAY, slot(arrayOf(ret)), slot(indexOf(ret)), slot("$ret"));
+					ret = "$ret";
+				}
+				emit(RETURN, value(ret), 0, 0);
+			} else if (op.equals("Neg")){
+				expect(operands, 1, line);
+				emit(NEG, slot(operands[0]), 0, 0);
+			} else {
+				expect(operands, 2, line);
+				String src = operands[0], dst = operands[1];
+				if (op.equals("Move")){
+					if (isImmediate(src))
+						emit(MOVE_IMM, Integer.parseInt(src), slot(dst), 0);
+					else if (namedConstants.containsKey(src))
+						emit(MOVE_POOL, namedConstants.get(src), slot(dst), 0);
+					else
+						emit(MOVE, slot(src), slot(dst), 0);
+				} else if (op.equals("MoveField")){
+					if (src.contains(".")){
+						String[] field = src.split("\\.");
+						emit(LOAD_FIELD, slot(field[0]), Integer.parseInt(field[1]), slot(dst));
+					} else {
+						String[] field = dst.split("\\.");
+						emit(STORE_FIELD, value(src), slot(field[0]), Integer.parseInt(field[1]));
+					}
+				} else if (op.equals("MoveArray")){
+					if (src.contains("[")){
+						emit(LOAD_ARRAY, slot(arrayOf(src)), slot(indexOf(src)), slot(dst));
+					} else {
+						emit(STORE_ARRAY, value(src), slot(arrayOf(dst)), slot(indexOf(dst)));
+					}
+				} else if (op.equals("ArrayLength")){
+					emit(ARRAY_LENGTH, slot(src), slot(dst), 0);
+				} else if (op.equals("Compare")){
+					if (isImmediate(src))
+						emit(COMPARE_IMM, Integer.parseInt(src), slot(dst), 0);
+					else
+						emit(COMPARE, slot(src), slot(dst), 0);
+				} else {
+					int opcode = arithmeticOpcode(op);
+					if (opcode < 0)
+						throw new FormatError("unknown instruction "+line, lineNumber);
+					if (isImmediate(src))
+						emit(opcode+1, Integer.parseInt(src), slot(dst), 0);
+					else
+						emit(opcode, slot(src), slot(dst), 0);
+				}
+			}
+		}
+
+		// StaticCall _C_m(x=R1, ...), R2 / VirtualCall R1.3(x=R2, ...), R1 / Library __f(R1, ...), R2
+		private void decodeCall(String op, String rest) throws FormatError {
+			int open = rest.indexOf('('), close = rest.lastIndexOf(')');
+			int comma = rest.indexOf(',', close);
+			if (open < 0 || close < open || comma < 0)
+				throw new FormatError("malformed call "+rest, lineNumber);
+			String callee = rest.substring(0, open).trim();
+			String argList = rest.substring(open+1, close).trim();
+			String[] args = argList.isEmpty() ? new String[0] : argList.split(" *, *");
+			int dst = slot(rest.substring(comma+1).trim());
+
+			if (op.equals("StaticCall") && decodeCheck(callee, args))
+				return;
+
+			CallSite site = new CallSite();
+			site.args = new int[args.length];
+			String[] names = new String[args.length];
+			for (int i = 0; i < args.length; i++){
+				String arg = args[i];
+				int eq = arg.indexOf('=');
+				if (!op.equals("Library")){
+					if (eq < 0)
+						throw new FormatError("missing parameter name in "+rest, lineNumber);
+					names[i] = arg.substring(0, eq).trim();
+					arg = arg.substring(eq+1).trim();
+				}
+				site.args[i] = value(arg);
+			}
+			int index = callSites.size();
+			callSites.add(site);
+
+			if (op.equals("StaticCall")){
+				staticTargets.put(site, callee);
+				staticParams.put(site, names);
+				emit(STATIC_CALL, index, dst, 0);
+			} else if (op.equals("VirtualCall")){
+				String[] target = callee.split("\\.");
+				site.offset = Integer.parseInt(target[1]);
+				site.paramNames = names;
+				emit(VIRTUAL_CALL, index, slot(target[0]), dst);
+			} else {
+				site.library = Arrays.asList(LIBRARY_FUNCTIONS).indexOf(callee);
+				if (site.library < 0)
+					throw new FormatError("unknown library function "+callee, lineNumber);
+				emit(LIBRARY, index, dst, 0);
+			}
+		}
+
+		// a call of one of the runtime checks LIRTranslator emits. Returns false for other calls
+		private boolean decodeCheck(String callee, String[] args) throws FormatError {
+			if (callee.equals("__checkNullRef") && args.length == 1 && args[0].startsWith("a="))
+				emit(CHECK_NULL, slot(args[0].substring(2)), 0, 0);
+			else if (callee.equals("__checkArrayAccess") && args.length == 2 && args[0].startsWith("a=") && args[1].startsWith("i="))
+				emit(CHECK_ARRAY, slot(args[0].substring(2)), slot(args[1].substring(2)), 0);
+			else if (callee.equals("__checkSize") && args.length == 1 && args[0].startsWith("n="))
+				emit(CHECK_SIZE, slot(args[0].substring(2)), 0, 0);
+			else if (callee.equals("__checkZero") && args.length == 1 && args[0].startsWith("b="))
+				emit(CHECK_ZERO, slot(args[0].substring(2)), 0, 0);
+			else
+				return false;
+			return true;
+		}
+
+		private static int jumpOpcode(String op) throws FormatError {
+			if (op.equals("Jump")) return JUMP;
+			if (op.equals("JumpTrue")) return JUMP_TRUE;
+			if (op.equals("JumpFalse")) return JUMP_FALSE;
+			if (op.equals("JumpG")) return JUMP_G;
+			if (op.equals("JumpGE")) return JUMP_GE;
+			if (op.equals("JumpL")) return JUMP_L;
+			if (op.equals("JumpLE")) return JUMP_LE;
+			throw new FormatError("unknown instruction "+op, 0);
+		}
+
+		// the slot form of an arithmetic instruction. The immediate form follows it
+		private static int arithmeticOpcode(String op){
+			if (op.equals("Add")) return ADD;
+			if (op.equals("Sub")) return SUB;
+			if (op.equals("Mul")) return MUL;
+			if (op.equals("Div")) return DIV;
+			if (op.equals("Mod")) return MOD;
+			return -1;
+		}
+
+		private void expect(String[] operands, int n, String line) throws FormatError {
+			if (operands.length != n || operands[0].isEmpty())
+				throw new FormatError("wrong number of operands in "+line, lineNumber);
+		}
+
+		// an operand of any kind - immediate, constant, or a register / variable
+		private int value(String operand) throws FormatError {
+			if (isImmediate(operand))
+				return immediate(Integer.parseInt(operand));
+			Integer constant = namedConstants.get(operand);
+			if (constant != null)
+				return constant;
+			return slot(operand);
+		}
+
+		private int slot(String name) throws FormatError {
+			if (name.isEmpty() || name.contains(".") || name.contains("[") || isImmediate(name))
+				throw new FormatError("expected a register or variable instead of '"+name+"'", lineNumber);
+			return function.slot(name);
+		}
+
+		private int immediate(int value){
+			Integer index = immediates.get(value);
+			if (index == null){
+				poolInts.add(value);
+				poolRefs.add(null);
+				index = ~(poolInts.size()-1);
+				immediates.put(value, index);
+			}
+			return index;
+		}
+
+		private void addPoolConstant(String name, Object value){
+			poolInts.add(0);
+			poolRefs.add(value);
+			namedConstants.put(name, ~(poolInts.size()-1));
+		}
+
+		private void emit(int op, int a, int b, int c){
+			if (codeSize + WIDTH > code.length)
+				code = Arrays.copyOf(code, code.length*2);
+			code[codeSize++] = op;
+			code[codeSize++] = a;
+			code[codeSize++] = b;
+			code[codeSize++] = c;
+		}
+
+		private static boolean isImmediate(String s){
+			int i = (s.startsWith("-")) ? 1 : 0;
+			if (i == s.length())
+				return false;
+			for (; i < s.length(); i++)
+				if (!Character.isDigit(s.charAt(i)))
+					return false;
+			return true;
+		}
+
+		private static String arrayOf(String location){
+			return location.substring(0, location.indexOf('[')).trim();
+		}
+
+		private static String indexOf(String location){
+			return location.substring(location.indexOf('[')+1, location.lastIndexOf(']')).trim();
+		}
+
+		// string literals keep the escapes of the IC source
+		private static String unescape(String s){
+			if (s.indexOf('\\') < 0)
+				return s;
+			StringBuilder sb = new StringBuilder(s.length());
+			for (int i = 0; i < s.length(); i++){
+				char c = s.charAt(i);
+				if (c == '\\' && i+1 < s.length()){
+					c = s.charAt(++i);
+					switch (c){
+					case 'n': c = '\n'; break;
+					case 't': c = '\t'; break;
+					default: break;	// \" and \\
+					}
+				}
+				sb.append(c);
+			}
+			return sb.toString();
+		}
+	}
+}
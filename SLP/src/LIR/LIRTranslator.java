@@ -1,10 +1,13 @@
 package LIR;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
+import JFR.MethodTranslationEvent;
 import slp.*;
 import slp.Class;
 import semanticTypes.*;
@@ -17,22 +20,36 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 	private int currWhileIdentifier = -1;
 	// count the number of labels we have seen
 	private int labelNumber = 0;
-	// map each literal string to the format 'str[i]'
-	private List<String> strLiterals = new ArrayList<String>();
-	// list of methods' lir code
-	private List<String> methodsCodeList = new ArrayList<String>();
+	// numbers each literal string, for the format 'str[i]'
+	private StringLiteralPool strLiterals = new StringLiteralPool();
+	// literals are defined in a section shared with other units, see setSharedStrings
+	private boolean sharedStrings;
+	// where the lir code is written to. null when translating into a string
+	private Appendable out;
+	// per-class code of previous compilations. null when not compiling incrementally
+	private TranslationCache cache;
+	// record the code of the translated classes in the cache
+	private boolean recordCache;
+	// maps the registers of each method onto a register file. null to keep the numbering of curReg
+	private RegisterAllocator allocator;
+	// runtime checks are a compare and a jump to an error stub of the method, instead of a call
+	private boolean inlineChecks;
+	// the label number of the error stubs of the current method, and the errors they report
+	private int checkLabel;
+	private Set<String> errorStubs = new LinkedHashSet<String>();
+	// the locals and parameters of the current method, as named in its code
+	private Set<String> methodVariables = new HashSet<String>();
+	private Set<String> methodParams = new HashSet<String>();
 	// main method's lir code
 	private String mainMethodCode="";
-	// dispatch table lir code
-	private List<String> classDispatchTableCodeList = new ArrayList<String>();
-	// dispatch table map - maps class names to a list of <method, belongsToClassName>
-	protected Map<String, HashMap<Integer,ArrayList<String>>> dispatchTableMap = new HashMap<String,HashMap<Integer,ArrayList<String>>>();
 	
 	private SemanticType runtimeType;
 	private boolean inAssign;
 	
 	private int curReg = 1;
 	private ASTNode root;
+	// the file of the program, for the translation events
+	private String fileName;
 	private SymbolTable symTab;
 	private TypeTable typTab;
 	
@@ -42,10 +59,62 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 	
 	public LIRTranslator(ASTNode root, SymbolTable symTab, TypeTable typTab){
 		this.root = root;
+		if (root instanceof Program)
+			this.fileName = ((Program) root).getFileName();
 		this.symTab = symTab;
 		this.typTab = typTab;
 	}
 	
+	// translator that streams the lir code into <out> instead of building it in memory
+	public LIRTranslator(ASTNode root, SymbolTable symTab, TypeTable typTab, Appendable out){
+		this(root, symTab, typTab);
+		this.out = out;
+	}
+	
+	// take the code of unchanged classes from <cache>, and record the code of all other classes in it
+	public void setCache(TranslationCache cache){
+		setCache(cache, true);
+	}
+	
+	// take the code of unchanged classes from <cache>, and leave the cache as it is unless <record>
+	public void setCache(TranslationCache cache, boolean record){
+		this.cache = cache;
+		this.recordCache = record;
+	}
+	
+	// leave the string literals section out, and the literal references in the code marked as
+	// '#str<i>' with i numbered as in getStringLiterals, for StringLiteralPool.merge to number
+	// them as in a section shared by many units
+	public void setSharedStrings(boolean sharedStrings){
+		this.sharedStrings = sharedStrings;
+	}
+	
+	// the string literals of the program, once it is translated
+	public StringLiteralPool getStringLiterals(){
+		return strLiterals;
+	}
+	
+	// allocate the registers of every translated method with <allocator>
+	public void setRegisterAllocator(RegisterAllocator allocator){
+		this.allocator = allocator;
+	}
+	
+	// emit each runtime check inline, as a compare and a conditional jump to an error stub at the
+	// end of the method that prints the error message and exits, instead of a call of the check
+	// helper. Faster, but larger code
+	public void setInlineChecks(boolean inlineChecks){
+		this.inlineChecks = inlineChecks;
+	}
+	
+	// translate the whole program into the output given in the constructor
+	public void translate() throws IOException{
+		try{
+			root.accept(this, null);
+		} catch (UncheckedIOException e){
+			throw e.getCause();
+		}
+	}
+	
 	String runtimeChecks(){
 		StringBuilder st = new StringBuilder("\n# runtime checks #\n");
 		
@@ -93,110 +162,55 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 	
 	@Override
 	public LIRUpType visit(Program program, Object o) {
-		/////// fill dispatch table: ///////
-		for(Class cl: program.classes){
-			List<String> overridenMethods = new ArrayList<String>();
-			dispatchTableMap.put(cl.name, new HashMap<Integer,ArrayList<String>>());
-			int j = 0; // j will be the methods offset
-			
-			// has super - clone methods list from super class, if the method doesn't exist in the current class.
-			if(cl.superName != null){ 	
-				HashMap<Integer,ArrayList<String>> supersMethodsMap = dispatchTableMap.get(cl.superName);
-				for (int i=0;i<supersMethodsMap.keySet().size();i++){
-					String mName = supersMethodsMap.get(i).get(0);
-					String belongName = supersMethodsMap.get(i).get(1);
-					ArrayList<String> methodDetails = new ArrayList<String>(2);
-					if (!cl.hasMethodWithName(mName)){  // if the method doesn't exist in the current class
-						methodDetails.add(mName); methodDetails.add(belongName);
-					}
-					else{	// such a method exists (it's overridden)
-						methodDetails.add(mName); methodDetails.add(cl.name);
-						overridenMethods.add(mName);
-					}
-					dispatchTableMap.get(cl.name).put(j, methodDetails);
-					j++;
-				}	
-			}
-			
-			// insert new methods into dispatch table map (if not static)
-			for (Method m: cl.methods){
-				
-				if(!m.isStatic && !overridenMethods.contains(m.name)){
-					ArrayList<String> methodDetails = new ArrayList<String>(2);
-					methodDetails.add(m.name); methodDetails.add(cl.name);
-					dispatchTableMap.get(cl.name).put(j, methodDetails);
-					j++;			
-				}
-			}	
-				/*HashMap<Integer,ArrayList<String>> supersMethodsMap = dispatchTableMap.get(cl.superName);
-				for (int i=0;i<supersMethodsMap.keySet().size();i++){
-					String mName = supersMethodsMap.get(i).get(0);
-					String belongName = supersMethodsMap.get(i).get(1);
-					if (!cl.hasMethodWithName(mName)){  // if the method doesn't exist in the current class
-						ArrayList<String> methodDetails = new ArrayList<String>(2);
-						methodDetails.add(mName); methodDetails.add(belongName);
-						dispatchTableMap.get(cl.name).put(j, methodDetails);
-						j++;
-					}
-				}	
-			}
-			
-			// insert new methods into dispatch table map (if not static)
-			for (Method m: cl.methods){
-				
-				if(!m.isStatic){
-					ArrayList<String> methodDetails = new ArrayList<String>(2);
-					methodDetails.add(m.name); methodDetails.add(cl.name);
-					dispatchTableMap.get(cl.name).put(j, methodDetails);
-					j++;			
-				}
-			}*/
-		}
+		// string literals are collected ahead, so the header can be written before any method
+		new StringLiteralCollector(strLiterals).collect(program);
 		
-		/////// visit all classes in the program //////
-		for(Class cl: program.classes){
-			symTab.enterScope();
-			cl.accept(this, null);
-			symTab.exitScope();
+		// when no sink is given, the whole translation is returned as a string
+		StringBuilder lirCode = null;
+		if (out == null){
+			lirCode = new StringBuilder();
+			out = lirCode;
 		}
 		
-		String lirCode = "";
-		
 		// insert string literals
-		lirCode += "# string literals #\n";
-		int i = 1;
-		for (String str: this.strLiterals){
-			lirCode += "str"+i+": \""+str+"\"\n";
-			i++;
-		}
-		lirCode += "\n# error messages #\n";
-		lirCode += "error_null_ref: \"Runtime Error: Null pointer dereference!\"\n";
-		lirCode += "error_array_bounds: \"Runtime Error: Array index out of bounds!\"\n";
-		lirCode += "error_array_negative: \"Runtime Error: Array allocation with negative array size!\"\n";
-		lirCode += "error_zero_division: \"Runtime Error: Division by zero!\"\n";
+		if (sharedStrings)
+			emit("# string literals: shared #\n");
+		else
+			emit(strLiterals.sectionCode());
+		emit("\n# error messages #\n");
+		emit("error_null_ref: \"Runtime Error: Null pointer dereference!\"\n");
+		emit("error_array_bounds: \"Runtime Error: Array index out of bounds!\"\n");
+		emit("error_array_negative: \"Runtime Error: Array allocation with negative array size!\"\n");
+		emit("error_zero_division: \"Runtime Error: Division by zero!\"\n");
 		
-		lirCode += "\n# dispatch table #\n";
-		// insert dispatch table
-		buildDispatchTableCode();
-		for (String line: this.classDispatchTableCodeList){
-			lirCode += line+"\n";
+		emit("\n# dispatch table #\n");
+		// insert dispatch tables, in the order the classes are declared
+		for (Class cl: program.classes){
+			emit(dispatchTableCode((ClassSymbol) symTab.findEntryGlobal(cl.name))+"\n");
 		}
 		
-		lirCode += runtimeChecks();
-		lirCode+= "\n";
+		if (!inlineChecks){
+			emit(runtimeChecks());
+			emit("\n");
+		}
 		
-		// insert all methods (except main)
-		for (String method: this.methodsCodeList){
-			lirCode += method+"\n";
+		/////// visit all classes in the program - all methods (except main) are written on the fly //////
+		for(Class cl: program.classes){
+			symTab.enterScope();
+			cl.accept(this, null);
+			symTab.exitScope();
 		}
 		
-		lirCode+= "\n";
+		emit("\n");
 		
 		// insert main method
-		lirCode += this.mainMethodCode;
-		
+		emit(this.mainMethodCode);
 		
-		return new LIRUpType(lirCode, LIRAstNodeType.EXPLICIT,"");
+		if (lirCode != null){
+			out = null;
+			return new LIRUpType(lirCode.toString(), LIRAstNodeType.EXPLICIT,"");
+		}
+		return new LIRUpType("", LIRAstNodeType.EXPLICIT,"");
 	}
 
 	@Override
@@ -204,8 +218,19 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		
 		currentThisClass = cl.name; //update current class
 		
+		// class unchanged since the last compilation - write its cached code
+		List<CachedMethod> cachedMethods = (cache != null) ? cache.getCachedClass(cl.name) : null;
+		if (cachedMethods != null){
+			for (CachedMethod m: cachedMethods){
+				String methodCode = m.toProgramCode(labelNumber, strLiterals, sharedStrings ? "#str" : "str");
+				labelNumber += m.labelCount;
+				writeMethod(methodCode, m.isMain);
+			}
+			return new LIRUpType("", LIRAstNodeType.EXPLICIT,"");
+		}
+		
 		ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(cl.name);
-		for (FieldSymbol f: cs.getFieldsRec()){
+		for (FieldSymbol f: cs.getLayout().getFields()){
 			symTab.addEntry(f);
 		}
 		
@@ -239,9 +264,16 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 
 	@Override
 	public LIRUpType visit(Method method, Object o) {
+		MethodTranslationEvent event = new MethodTranslationEvent();
+		event.begin();
 		boolean ismain = isMain(method); 
-		String methodCode = "";
+		StringBuilder methodCode = new StringBuilder();
 		currentMethodName = method.name;
+		int firstLabel = labelNumber;
+		if (inlineChecks){
+			checkLabel = labelNumber++;
+			errorStubs.clear();
+		}
 		
 		// get method headline
 		String methodHeadLine="";
@@ -251,7 +283,7 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		else{
 			methodHeadLine+="_"+currentThisClass+"_"+method.name+":\n";
 		}
-		methodCode+=methodHeadLine;
+		methodCode.append(methodHeadLine);
 		
 		try{
 			for (Formal f: method.formalList){
@@ -259,39 +291,136 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 			}
 		}catch(SemanticError se){}
 		
+		methodParams.clear();
+		for (Formal f: method.formalList)
+			methodParams.add(f.name);
+		if (!method.isStatic)
+			methodParams.add("this");
+		methodVariables.clear();
+		methodVariables.addAll(methodParams);
+		
 		// visit all statements and add their code to methodCode
 		for (Stmt s: method.statementList){
-			methodCode += s.accept(this, null).lirCode;
+			methodCode.append(s.accept(this, null).lirCode);
 		}
 		
 		// as the specs says, if the method is void, we add "Return 9999"
 		if(!ismain && method.type.getName().equals("void")){
-			methodCode += "Return 9999\n";
+			methodCode.append("Return 9999\n");
+		}
+		if (!errorStubs.isEmpty()){
+			methodCode.append(errorStubsCode(methodCode));
 		}
 		
-		// update methodsCode list / main method
+		String code = methodCode.toString();
+		if (allocator != null){
+			code = allocator.allocate(code, methodVariables, methodParams);
+		}
+		if (cache != null){
+			if (recordCache)
+				cache.addTranslatedMethod(currentThisClass, CachedMethod.fromTranslation(method.name, ismain, code, firstLabel, labelNumber-firstLabel, strLiterals));
+			if (!sharedStrings)
+				code = code.replace("#str", "str");
+		}
+		if (event.shouldCommit()){
+			event.file = fileName;
+			event.className = currentThisClass;
+			event.method = method.name;
+			event.statements = NodeCounter.countStatements(method);
+			event.instructions = instructions(code);
+			event.commit();
+		}
+		writeMethod(code, ismain);
+		
+		//empty return... (because we already wrote the method.. no need to return code..)
+		return new LIRUpType("", LIRAstNodeType.EXPLICIT,"");
+	}
+
+	// the number of instructions in <code>
+	private static int instructions(String code){
+		InstructionCounter counter = new InstructionCounter(null);
+		try{
+			counter.append(code);
+		} catch (IOException e){}
+		return counter.getCount();
+	}
+
+	// the check that the reference in <reg> is not null
+	private String nullCheck(String reg){
+		if (!inlineChecks)
+			return "StaticCall __checkNullRef(a="+reg+"), Rdummy\n";
+		return "Compare 0, "+reg+"\nJumpTrue "+errorStub("null_ref")+"\n";
+	}
+	
+	// the check that <index> is within the array <array>, using the register <tmp>
+	private String boundsCheck(String array, String index, String tmp){
+		if (!inlineChecks)
+			return "StaticCall __checkArrayAccess(a="+array+", i="+index+"), Rdummy\n";
+		String stub = errorStub("array_bounds");
+		return "ArrayLength "+array+", "+tmp+"\nCompare "+index+", "+tmp+"\nJumpLE "+stub+"\n"
+				+"Compare 0, "+index+"\nJumpL "+stub+"\n";
+	}
+	
+	// the check that the array size in bytes in <reg> is not negative
+	private String sizeCheck(String reg){
+		if (!inlineChecks)
+			return "StaticCall __checkSize(n="+reg+"), Rdummy\n";
+		return "Compare 0, "+reg+"\nJumpL "+errorStub("array_negative")+"\n";
+	}
+	
+	// the check that the divisor in <reg> is not zero
+	private String zeroCheck(String reg){
+		if (!inlineChecks)
+			return "StaticCall __checkZero(b="+reg+"), Rdummy\n";
+		return "Compare 0, "+reg+"\nJumpTrue "+errorStub("zero_division")+"\n";
+	}
+	
+	// the label of the stub of the current method that reports error_<error>
+	private String errorStub(String error){
+		errorStubs.add(error);
+		return "_"+error+"_label"+checkLabel;
+	}
+	
+	// the error stubs of the current method, put after its <code>. Code that falls off the
+	// end of the method jumps over them
+	private String errorStubsCode(CharSequence code){
+		StringBuilder str = new StringBuilder();
+		int lastLine = code.toString().lastIndexOf('\n', code.length()-2) + 1;
+		boolean returns = code.toString().startsWith("Return ", lastLine);
+		if (!returns)
+			str.append("Jump _end_label"+checkLabel+"\n");
+		for (String error: errorStubs){
+			str.append("_"+error+"_label"+checkLabel+":\n");
+			str.append("Library __println(error_"+error+"), Rdummy\n");
+			str.append("Library __exit(1), Rdummy\n");
+		}
+		if (!returns)
+			str.append("_end_label"+checkLabel+":\n");
+		return str.toString();
+	}
+	
+	// write the method to the output / keep main method for the end of the program
+	private void writeMethod(String methodCode, boolean ismain){
 		if (ismain){
 			mainMethodCode = methodCode;
 		} else {
-			methodsCodeList.add(methodCode);
+			emit(methodCode);
+			emit("\n");
 		}
-		
-		//empty return... (because we already updated the methodsCodeList.. no need to return code..)
-		return new LIRUpType("", LIRAstNodeType.EXPLICIT,"");
 	}
 
 	@Override
 	public LIRUpType visit(AssignStmt assignStmt, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
-		runtimeType = (SemanticType) assignStmt.rhs.accept(new ExprTypeResolver(symTab, typTab, currentThisClass, currentMethodName), null);
+		runtimeType = typeOf(assignStmt.rhs);
 			
 		LIRUpType rhs = assignStmt.rhs.accept(this, null);
 		
-		str += rhs.lirCode;
-		str += getMoveType(rhs.astNodeType);
-		str += rhs.register+", ";
-		str += "R"+curReg+"\n";
+		str.append(rhs.lirCode);
+		str.append(getMoveType(rhs.astNodeType));
+		str.append(rhs.register+", ");
+		str.append("R"+curReg+"\n");
 		
 		++curReg;
 		inAssign = true;
@@ -299,174 +428,190 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		inAssign = false;
 		--curReg;
 		
-		str+= lhs.lirCode;
+		str.append(lhs.lirCode);
 		
-		str += getMoveType(lhs.astNodeType);
-		str += "R"+curReg+", "+lhs.register+"\n";
+		str.append(getMoveType(lhs.astNodeType));
+		str.append("R"+curReg+", "+lhs.register+"\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT,"");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT,"");
 	}
 
 	@Override
 	public LIRUpType visit(ReturnStmt retStmt, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		if (retStmt.expr != null){
 			LIRUpType returnVal = retStmt.expr.accept(this, null);
-			str += returnVal.lirCode;
+			str.append(returnVal.lirCode);
 			if (returnVal.astNodeType == LIRAstNodeType.EXTERNALVARLOC){
-				str += "MoveField "+returnVal.register+", R"+curReg+"\n";
-				str += "Return R"+curReg+"\n";
+				str.append("MoveField "+returnVal.register+", R"+curReg+"\n");
+				str.append("Return R"+curReg+"\n");
 			}
 			else
-				str += "Return "+returnVal.register+"\n";
+				str.append("Return "+returnVal.register+"\n");
 		} else {
-			str += "Return 9999\n";
+			str.append("Return 9999\n");
 		}
 		
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT, "");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT, "");
 	}
 	
 	@Override
 	public LIRUpType visit(UnaryOpExpr unaryOp, Object o) {
-		String str = "";
-		String trueLabel = "_true_label"+labelNumber;
-		String endLabel = "_end_label"+(labelNumber++);
+		if (unaryOp.operator == UnaryOpsEnum.LNEG)//This is logical unary operation
+			return conditionValue(unaryOp);
 		
+		//This is math unary operation
+		StringBuilder str = new StringBuilder();
 		LIRUpType rightOp = unaryOp.rightOp.accept(this, null);
-		str += rightOp.lirCode;
-		str += getMoveType(rightOp.astNodeType);
-		str += rightOp.register+", R"+curReg+"\n";
-		if (unaryOp.operator == UnaryOpsEnum.LNEG){//This is logical unary operation
-			// recursive call to rightOp
-
-			str += "Compare 0, R"+curReg+"\n";
-			str += "JumpTrue "+trueLabel+"\n";
-			str += "Move 0, R"+curReg+"\n";
-			str += "Jump "+endLabel+"\n";
-			str += trueLabel+":\n";
-			str += "Move 1, R"+curReg+"\n";
-			str += endLabel+":\n";
-
-			return new LIRUpType(str, LIRAstNodeType.REGISTER,"R"+curReg);
-		}
-		else{//This is math unary operation			
-			str += "Neg R"+curReg+"\n";
-			return new LIRUpType(str, LIRAstNodeType.REGISTER,"R"+curReg);
-			
-		}
+		str.append(rightOp.lirCode);
+		str.append(getMoveType(rightOp.astNodeType));
+		str.append(rightOp.register+", R"+curReg+"\n");
+		str.append("Neg R"+curReg+"\n");
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER,"R"+curReg);
 	}
 
 	@Override
 	public LIRUpType visit(BinaryOpExpr binaryOp, Object o) {
+		if (binaryOp.operator == BinaryOpsEnum.LAND || binaryOp.operator == BinaryOpsEnum.LOR)
+			return conditionValue(binaryOp);
+		
 		String trueLabel = "_true_label"+labelNumber;
-		String falseLabel = "_false_label"+labelNumber;
 		String endLabel = "_end_label"+(labelNumber++);
-		String str = "";
-		
-		LIRUpType leftOp = binaryOp.leftOp.accept(this, null);
-		str += leftOp.lirCode;
-		str += getMoveType(leftOp.astNodeType);
-		str += leftOp.register+", R"+curReg+"\n";
-
-		++curReg;
-		LIRUpType rightOp = binaryOp.rightOp.accept(this, null);
-		--curReg;
-		str += rightOp.lirCode;
-		str += getMoveType(rightOp.astNodeType);
-		str += rightOp.register+", R"+(curReg+1)+"\n";
+		StringBuilder str = new StringBuilder(operands(binaryOp));
 
 		if (binaryOp.operator.type == "Logical"){
-			if (binaryOp.operator != BinaryOpsEnum.LAND && binaryOp.operator != BinaryOpsEnum.LOR){
-				str += "Compare R"+(curReg+1)+", R"+curReg+"\n";
-			}
-			switch (binaryOp.operator){
-			case EQUAL:
-				str += "JumpTrue "+trueLabel+"\n";
-				break;
-			case NEQUAL:
-				str += "JumpFalse "+trueLabel+"\n";
-				break;
-			case GT:
-				str += "JumpG "+trueLabel+"\n";
-				break;
-			case GTE:
-				str += "JumpGE "+trueLabel+"\n";
-				break;
-			case LT:
-				str += "JumpL "+trueLabel+"\n";
-				break;
-			case LTE:
-				str += "JumpLE "+trueLabel+"\n";
-				break;
-			case LAND:
-				str += "Compare 0, R"+curReg+"\n";
-				str += "JumpTrue "+falseLabel+"\n";
-				str += "Compare 0, R"+(curReg+1)+"\n";
-				str += "JumpTrue "+falseLabel+"\n";
-				str += "Jump "+trueLabel+"\n";
-				str += falseLabel+":\n"; 
-				break;
-			case LOR:
-				str += "Compare 0, R"+curReg+"\n";
-				str += "JumpFalse "+trueLabel+"\n";
-				str += "Compare 0, R"+(curReg+1)+"\n";
-				str += "JumpFalse "+trueLabel+"\n"; 
-				break;
-			default:
-				System.out.println("Error in logical binaryOP");	
-			}
-			str += "Move 0, R"+curReg+"\n";
-			str += "Jump "+endLabel+"\n";
-			str += trueLabel+":\n";
-			str += "Move 1, R"+curReg+"\n";
-			str += endLabel+":\n";
+			str.append("Compare R"+(curReg+1)+", R"+curReg+"\n");
+			str.append(jump(binaryOp.operator, true)+" "+trueLabel+"\n");
+			str.append("Move 0, R"+curReg+"\n");
+			str.append("Jump "+endLabel+"\n");
+			str.append(trueLabel+":\n");
+			str.append("Move 1, R"+curReg+"\n");
+			str.append(endLabel+":\n");
 
-			return new LIRUpType(str, LIRAstNodeType.REGISTER,"R"+curReg);
+			return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER,"R"+curReg);
 		}
 		else{
 			switch (binaryOp.operator){
 			case PLUS:
 				// resolve the type of the operands. expecting ints or strings
-				SemanticType operandType = (SemanticType) binaryOp.rightOp.accept(new ExprTypeResolver(symTab, typTab, currentThisClass, currentMethodName), null);
+				SemanticType operandType = typeOf(binaryOp.rightOp);
 				if (operandType == typTab.intType){
-					str += "Add R"+(curReg+1)+", R"+curReg+"\n";
+					str.append("Add R"+(curReg+1)+", R"+curReg+"\n");
 				} else {
-					str += "Library __stringCat(R"+curReg+", R"+(curReg+1)+"), R"+curReg+"\n";
+					str.append("Library __stringCat(R"+curReg+", R"+(curReg+1)+"), R"+curReg+"\n");
 				}
 				break;
 			case MINUS:
-				str += "Sub R"+(curReg+1)+", R"+curReg+"\n";
+				str.append("Sub R"+(curReg+1)+", R"+curReg+"\n");
 				break;
 			case MULTIPLY:
-				str += "Mul R"+(curReg+1)+", R"+curReg+"\n";
+				str.append("Mul R"+(curReg+1)+", R"+curReg+"\n");
 				break;
 			case DIVIDE:
-				str += "StaticCall __checkZero(b=R"+(curReg+1)+"), Rdummy\n";
-				str += "Div R"+(curReg+1)+", R"+curReg+"\n";
+				if (binaryOp.zeroCheck)
+					str.append(zeroCheck("R"+(curReg+1)));
+				str.append("Div R"+(curReg+1)+", R"+curReg+"\n");
 				break;
 			case MOD:
-				str += "Mod R"+(curReg+1)+", R"+curReg+"\n";
+				str.append("Mod R"+(curReg+1)+", R"+curReg+"\n");
 				break;
 			default:
 				System.out.println("Error in math binaryOp");
 			}
 			
-			return new LIRUpType(str, LIRAstNodeType.REGISTER,"R"+curReg);
+			return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER,"R"+curReg);
 		}
 
 	}
 
+	// the code that puts the left operand of <binaryOp> in R<curReg> and the right one in R<curReg+1>
+	private String operands(BinaryOpExpr binaryOp){
+		StringBuilder str = new StringBuilder();
+		LIRUpType leftOp = binaryOp.leftOp.accept(this, null);
+		str.append(leftOp.lirCode);
+		str.append(getMoveType(leftOp.astNodeType));
+		str.append(leftOp.register+", R"+curReg+"\n");
+
+		++curReg;
+		LIRUpType rightOp = binaryOp.rightOp.accept(this, null);
+		--curReg;
+		str.append(rightOp.lirCode);
+		str.append(getMoveType(rightOp.astNodeType));
+		str.append(rightOp.register+", R"+(curReg+1)+"\n");
+		return str.toString();
+	}
+	
+	// the jump taken after 'Compare right, left' when <left operator right> is <when>
+	private static String jump(BinaryOpsEnum operator, boolean when){
+		switch (operator){
+		case EQUAL:	return when ? "JumpTrue" : "JumpFalse";
+		case NEQUAL:	return when ? "JumpFalse" : "JumpTrue";
+		case GT:	return when ? "JumpG" : "JumpLE";
+		case GTE:	return when ? "JumpGE" : "JumpL";
+		case LT:	return when ? "JumpL" : "JumpGE";
+		case LTE:	return when ? "JumpLE" : "JumpG";
+		default:
+			System.out.println("Error in logical binaryOP");
+			return null;
+		}
+	}
+	
+	// the code that jumps to <label> when the condition <cond> is <when>, and falls through
+	// otherwise. && and || jump as soon as their left operand decides, without evaluating the
+	// right one, and ! swaps the outcomes, so only other expressions leave a 0/1 value to test.
+	// Always emits a jump to <label>, as labels that no jump targets start functions
+	private String branch(Expr cond, String label, boolean when){
+		if (cond instanceof UnaryOpExpr && ((UnaryOpExpr) cond).operator == UnaryOpsEnum.LNEG)
+			return branch(((UnaryOpExpr) cond).rightOp, label, !when);
+		if (cond instanceof BinaryOpExpr){
+			BinaryOpExpr b = (BinaryOpExpr) cond;
+			if (b.operator == BinaryOpsEnum.LAND || b.operator == BinaryOpsEnum.LOR){
+				// the outcome of the left operand that decides: false for &&, true for ||
+				boolean decides = (b.operator == BinaryOpsEnum.LOR);
+				if (when == decides)
+					return branch(b.leftOp, label, when)+branch(b.rightOp, label, when);
+				String skip = (decides ? "_true_label" : "_false_label")+(labelNumber++);
+				return branch(b.leftOp, skip, decides)+branch(b.rightOp, label, when)+skip+":\n";
+			}
+			if (b.operator.type == "Logical")
+				return operands(b)+"Compare R"+(curReg+1)+", R"+curReg+"\n"+jump(b.operator, when)+" "+label+"\n";
+		}
+		StringBuilder str = new StringBuilder();
+		LIRUpType value = cond.accept(this, null);
+		str.append(value.lirCode);
+		if (value.astNodeType != LIRAstNodeType.REGISTER){
+			str.append(getMoveType(value.astNodeType));
+			str.append(value.register+", R"+curReg+"\n");
+		}
+		str.append("Compare 0, R"+curReg+"\n");
+		str.append((when ? "JumpFalse " : "JumpTrue ")+label+"\n");
+		return str.toString();
+	}
+	
+	// the 0/1 value of the condition <cond> in R<curReg>
+	private LIRUpType conditionValue(Expr cond){
+		String falseLabel = "_false_label"+labelNumber;
+		String endLabel = "_end_label"+(labelNumber++);
+		StringBuilder str = new StringBuilder(branch(cond, falseLabel, false));
+		str.append("Move 1, R"+curReg+"\n");
+		str.append("Jump "+endLabel+"\n");
+		str.append(falseLabel+":\n");
+		str.append("Move 0, R"+curReg+"\n");
+		str.append(endLabel+":\n");
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER,"R"+curReg);
+	}
+
 	@Override
 	public LIRUpType visit(StaticCall staticCall, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
 		int curRegBackup = curReg;
 		for (Expr arg: staticCall.args){
 			LIRUpType argExp = arg.accept(this, null);
-			str += argExp.lirCode;
+			str.append(argExp.lirCode);
 			if(argExp.astNodeType != LIRAstNodeType.REGISTER){
-				str += getMoveType(argExp.astNodeType);
-				str += argExp.register+", R"+curReg+"\n";
+				str.append(getMoveType(argExp.astNodeType));
+				str.append(argExp.register+", R"+curReg+"\n");
 			}
 			curReg++;
 		}
@@ -474,15 +619,15 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 				
 		// it's a Library call
 		if (staticCall.className.equals("Library")){
-			str += "Library __"+staticCall.funcName+"(";
+			str.append("Library __"+staticCall.funcName+"(");
 			for(int i = 0; i < staticCall.args.size(); i++){
-				str += "R"+(i+curReg);
+				str.append("R"+(i+curReg));
 				if (i < staticCall.args.size()-1)
-					str += ", ";
+					str.append(", ");
 			}
-			str += "), R"+curReg+"\n";
+			str.append("), R"+curReg+"\n");
 			
-			return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);
+			return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);
 		}
 		
 		// other static methods
@@ -496,46 +641,47 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 
 		// create a label
 		String methodName = "_"+cs.name+"_"+ms.name;
-		str += "StaticCall "+methodName+"(";
+		str.append("StaticCall "+methodName+"(");
 		for(int i = 0; i < staticCall.args.size(); i++){
-			str += ms.params.get(i).name+"=R"+(curReg+i);
+			str.append(ms.params.get(i).name+"=R"+(curReg+i));
 			if (i < staticCall.args.size()-1)
-				str += ", ";
+				str.append(", ");
 		}
-		str += "), R"+curReg+"\n";
+		str.append("), R"+curReg+"\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);
 	}
 
 	@Override
 	public LIRUpType visit(VirtCall virtCall, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		String className;
 		
 		// external
 		if (virtCall.location != null){
-			className = ((SemanticType)virtCall.location.accept(new ExprTypeResolver(symTab, typTab, currentThisClass, currentMethodName), null)).name;
+			className = typeOf(virtCall.location).name;
 			LIRUpType location = virtCall.location.accept(this, null);
-			str += location.lirCode;
+			str.append(location.lirCode);
 			if(location.astNodeType != LIRAstNodeType.REGISTER){
-				str += getMoveType(location.astNodeType);
-				str += location.register+", R"+curReg+"\n";
+				str.append(getMoveType(location.astNodeType));
+				str.append(location.register+", R"+curReg+"\n");
 			}
 
-			str += "StaticCall __checkNullRef(a=R"+curReg+"), Rdummy\n";
+			if (virtCall.nullCheck)
+				str.append(nullCheck("R"+curReg));
 		} else {	// local
 			className = currentThisClass;
-			str += "Move this, R"+curReg+"\n";
+			str.append("Move this, R"+curReg+"\n");
 		}
 		
 		int curRegBackup = curReg;
 		for (Expr arg: virtCall.args){
 			++curReg;
 			LIRUpType argExp = arg.accept(this, null);
-			str += argExp.lirCode;
+			str.append(argExp.lirCode);
 			if(argExp.astNodeType != LIRAstNodeType.REGISTER){
-				str += getMoveType(argExp.astNodeType);
-				str += argExp.register+", R"+curReg+"\n";
+				str.append(getMoveType(argExp.astNodeType));
+				str.append(argExp.register+", R"+curReg+"\n");
 			}
 		}
 		curReg = curRegBackup;
@@ -545,55 +691,45 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		try {
 			ms = cs.getMethodSymbolRec(virtCall.funcName);
 		} catch (SemanticError e) {}
-		int offset = 0;
-		// find method's offset according to dispatch table
-		HashMap<Integer,ArrayList<String>> offsetToMethod = dispatchTableMap.get(cs.name);
-		for (int i=0;i<offsetToMethod.size();i++){
-			if (offsetToMethod.get(i).get(0).equals(ms.name)){
-				offset = i;
-				break;
-			}
-		}
+		// method's offset according to dispatch table
+		int offset = cs.getVirtualTable().getOffset(ms.name);
 		
-		str += "VirtualCall R"+curReg+"."+offset+"(";
+		str.append("VirtualCall R"+curReg+"."+offset+"(");
 		for(int i = 0; i < virtCall.args.size(); i++){
-			str += ms.params.get(i).name+"=R"+(curReg+i+1);
+			str.append(ms.params.get(i).name+"=R"+(curReg+i+1));
 			if (i < virtCall.args.size()-1)
-				str += ", ";
+				str.append(", ");
 		}
-		str += "), R"+curReg+"\n";
+		str.append("), R"+curReg+"\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);	
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);	
 	}
 
 	@Override
 	public LIRUpType visit(VarLocation varLoc, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
 		// location.ID
 		if (varLoc.location != null){
 			LIRUpType loc = varLoc.location.accept(this, null);
-			str += loc.lirCode;
+			str.append(loc.lirCode);
 			
 			// get the type of the location
-			SemanticType locationType = (SemanticType) varLoc.location.accept(new ExprTypeResolver(symTab, typTab, currentThisClass, currentMethodName), null);
+			SemanticType locationType = typeOf(varLoc.location);
 			
 			// get the field offset
 			ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(locationType.name);	
-			FieldSymbol fs = null;
-			try{	// will always succeed
-				fs = cs.getFieldSymbolRec(varLoc.name);
-			}catch (SemanticError se){}			 
-			int fieldOffset = fs.getOffset();
+			int fieldOffset = cs.getLayout().getField(varLoc.name).getOffset();
 			
 			if(loc.astNodeType != LIRAstNodeType.REGISTER){
-				str += getMoveType(loc.astNodeType);
-				str += loc.register+", R"+curReg+"\n";
+				str.append(getMoveType(loc.astNodeType));
+				str.append(loc.register+", R"+curReg+"\n");
 			}
 			
-			str += "StaticCall __checkNullRef(a=R"+curReg+"), Rdummy\n";
+			if (varLoc.nullCheck)
+				str.append(nullCheck("R"+curReg));
 			
-			return new LIRUpType(str, LIRAstNodeType.EXTERNALVARLOC, "R"+curReg+"."+fieldOffset);
+			return new LIRUpType(str.toString(), LIRAstNodeType.EXTERNALVARLOC, "R"+curReg+"."+fieldOffset);
 		// ID
 		}else{
 			String localVarName = "";
@@ -606,15 +742,11 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 			}
 			else if (scopeLevel == 2){	// it's a field of THIS
 				ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(currentThisClass);
-				FieldSymbol fs = null;
-				try{
-					fs = cs.getFieldSymbolRec(varLoc.name);
-				}catch(SemanticError se){}
-				int fieldOffset = fs.getOffset();
+				int fieldOffset = cs.getLayout().getField(varLoc.name).getOffset();
 				
-				str += "Move this, R"+curReg+"\n";
+				str.append("Move this, R"+curReg+"\n");
 
-				return new LIRUpType(str, LIRAstNodeType.EXTERNALVARLOC, "R"+curReg+"."+fieldOffset);
+				return new LIRUpType(str.toString(), LIRAstNodeType.EXTERNALVARLOC, "R"+curReg+"."+fieldOffset);
 			}
 			return new LIRUpType("",LIRAstNodeType.LOCALVARLOC, localVarName);
 		}
@@ -622,29 +754,31 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 
 	@Override
 	public LIRUpType visit(ArrayLocation arrLoc, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
 		LIRUpType array = arrLoc.array.accept(this, null);
-		str += array.lirCode;
+		str.append(array.lirCode);
 		if(array.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(array.astNodeType);
-			str += array.register+", R"+curReg+"\n";
+			str.append(getMoveType(array.astNodeType));
+			str.append(array.register+", R"+curReg+"\n");
 		}
 
-		str += "StaticCall __checkNullRef(a=R"+curReg+"), Rdummy\n";
+		if (arrLoc.nullCheck)
+			str.append(nullCheck("R"+curReg));
 		
 		++curReg;
 		LIRUpType index = arrLoc.index.accept(this, null);
 		--curReg;
 		
-		str += index.lirCode;
+		str.append(index.lirCode);
 		if(index.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(index.astNodeType);
-			str += index.register+", R"+(curReg+1)+"\n";
+			str.append(getMoveType(index.astNodeType));
+			str.append(index.register+", R"+(curReg+1)+"\n");
 		}
 		
-		str += "StaticCall __checkArrayAccess(a=R"+curReg+", i=R"+(curReg+1)+"), Rdummy\n";
-		return new LIRUpType(str, LIRAstNodeType.ARRAYLOC,"R"+curReg+"[R"+(curReg+1)+"]");
+		if (arrLoc.boundsCheck)
+			str.append(boundsCheck("R"+curReg, "R"+(curReg+1), "R"+(curReg+2)));
+		return new LIRUpType(str.toString(), LIRAstNodeType.ARRAYLOC,"R"+curReg+"[R"+(curReg+1)+"]");
 	}
 
 	@Override
@@ -654,51 +788,42 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 
 	@Override
 	public LIRUpType visit(StmtList stmtList, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
 		symTab.enterScope();
 		for (Stmt s: stmtList.statements)
-			str += s.accept(this, null).lirCode;
+			str.append(s.accept(this, null).lirCode);
 		
 		symTab.exitScope();
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT,"");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT,"");
 	}
 
 	@Override
 	public LIRUpType visit(IfStmt ifStatement, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		String falseLabel = "_false_label"+labelNumber;
 		String endLabel = "_end_label"+(labelNumber++);
 		
-		LIRUpType condExp = ifStatement.condition.accept(this, null);
-		str += condExp.lirCode;
-		if (condExp.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(condExp.astNodeType);
-			str += condExp.register+", R"+curReg+"\n";
-		}
-		
-		str += "Compare 0, R"+curReg+"\n";
-		if (ifStatement.elseStmt!=null) str += "JumpTrue "+falseLabel+"\n";
-		else str += "JumpTrue "+endLabel+"\n";
+		str.append(branch(ifStatement.condition, (ifStatement.elseStmt != null) ? falseLabel : endLabel, false));
 		
 		symTab.enterScope();
 		LIRUpType thenStat = ifStatement.thenStmt.accept(this, null);
 		symTab.exitScope();
-		str += thenStat.lirCode;
+		str.append(thenStat.lirCode);
 		
 		if (ifStatement.elseStmt!=null){
-			str += "Jump "+endLabel+"\n";
+			str.append("Jump "+endLabel+"\n");
 
-			str += falseLabel+":\n";
+			str.append(falseLabel+":\n");
 			symTab.enterScope();
 			LIRUpType elseStat = ifStatement.elseStmt.accept(this, null);
 			symTab.exitScope();
-			str += elseStat.lirCode;
+			str.append(elseStat.lirCode);
 		}
 		
-		str += endLabel+":\n";
+		str.append(endLabel+":\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT,"");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT,"");
 	}
 
 	@Override
@@ -706,29 +831,21 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		int prevWhileID = currWhileIdentifier;
 		currWhileIdentifier = labelNumber;
 		
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		String whileLabel = "_while_cond_label"+labelNumber;
 		String endLabel = "_end_label"+(labelNumber++);
 		
-		str += whileLabel+":\n";
-		LIRUpType conditionExp = whileStmt.condition.accept(this, null);
-		str += conditionExp.lirCode;
-		if (conditionExp.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(conditionExp.astNodeType);
-			str += conditionExp.register+", R"+curReg+"\n";
-		}
-
-		str += "Compare 0, R"+curReg+"\n";
-		str += "JumpTrue "+endLabel+"\n";
+		str.append(whileLabel+":\n");
+		str.append(branch(whileStmt.condition, endLabel, false));
 		
 		symTab.enterScope();
-		str += whileStmt.thenStmt.accept(this, null).lirCode;
+		str.append(whileStmt.thenStmt.accept(this, null).lirCode);
 		symTab.exitScope();
-		str += "Jump "+whileLabel+"\n";
-		str += endLabel+":\n";
+		str.append("Jump "+whileLabel+"\n");
+		str.append(endLabel+":\n");
 		
 		currWhileIdentifier = prevWhileID;
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT,"");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT,"");
 	}
 
 	@Override
@@ -749,22 +866,25 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 			symTab.addEntry(new VarSymbol(localVarStmt.name, typTab.resolveType(localVarStmt.type.getName())));
 		}catch(SemanticError se) {}
 		
-		String str = "";
+		methodVariables.add(localVarStmt.name+symTab.scopeLevel);
+		StringBuilder str = new StringBuilder();
 		String reg = "R"+curReg;
 		
 		if (localVarStmt.init != null){
 			LIRUpType initVal = localVarStmt.init.accept(this, null);
-			str += initVal.lirCode;
+			str.append(initVal.lirCode);
 			if (initVal.astNodeType != LIRAstNodeType.REGISTER){
-				str += getMoveType(initVal.astNodeType);
-				str += initVal.register+", "+reg+"\n";
+				str.append(getMoveType(initVal.astNodeType));
+				str.append(initVal.register+", "+reg+"\n");
 			}
 			else
 				reg = initVal.register;
-			str += "Move "+reg+", "+localVarStmt.name+symTab.scopeLevel+"\n";
+			if (localVarStmt.nullCheck)
+				str.append(nullCheck(reg));
+			str.append("Move "+reg+", "+localVarStmt.name+symTab.scopeLevel+"\n");
 		}
 		
-		return new LIRUpType(str, LIRAstNodeType.STATEMENT,"");
+		return new LIRUpType(str.toString(), LIRAstNodeType.STATEMENT,"");
 	}
 
 	@Override
@@ -776,44 +896,46 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 	@Override
 	public LIRUpType visit(NewClassExpr newClassExp, Object o) {
 		ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(newClassExp.name);
-		String str = "Library __allocateObject("+cs.bytesInMemory()+"), R"+curReg+"\n";
-		str += "MoveField _DV_"+cs.name+", R"+curReg+".0\n";
+		StringBuilder str = new StringBuilder("Library __allocateObject("+cs.getLayout().bytesInMemory()+"), R"+curReg+"\n");
+		str.append("MoveField _DV_"+cs.name+", R"+curReg+".0\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);
 	}
 
 	@Override
 	public LIRUpType visit(NewArrayExpr newArrExp, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 		
 		LIRUpType size = newArrExp.index.accept(this, null);
-		str += size.lirCode;
+		str.append(size.lirCode);
 		if (size.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(size.astNodeType);
-			str += size.register+", R"+curReg+"\n";
+			str.append(getMoveType(size.astNodeType));
+			str.append(size.register+", R"+curReg+"\n");
 		}
-		str += "Mul 4, R"+curReg+"\n";
-		str += "StaticCall __checkSize(n=R"+curReg+"), Rdummy\n";
-		str += "Library __allocateArray(R"+curReg+"), R"+curReg+"\n";
+		str.append("Mul 4, R"+curReg+"\n");
+		if (newArrExp.sizeCheck)
+			str.append(sizeCheck("R"+curReg));
+		str.append("Library __allocateArray(R"+curReg+"), R"+curReg+"\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);
 	}
 
 	@Override
 	public LIRUpType visit(LengthExpr lengthExpr, Object o) {
-		String str = "";
+		StringBuilder str = new StringBuilder();
 
 		LIRUpType array = lengthExpr.context.accept(this, null);
-		str += array.lirCode;
+		str.append(array.lirCode);
 		if (array.astNodeType != LIRAstNodeType.REGISTER){
-			str += getMoveType(array.astNodeType);
-			str += array.register+", R"+curReg+"\n";
+			str.append(getMoveType(array.astNodeType));
+			str.append(array.register+", R"+curReg+"\n");
 		}
 		
-		str += "StaticCall __checkNullRef(a=R"+curReg+"), Rdummy\n";
-		str += "ArrayLength R"+curReg+", R"+curReg+"\n";
+		if (lengthExpr.nullCheck)
+			str.append(nullCheck("R"+curReg));
+		str.append("ArrayLength R"+curReg+", R"+curReg+"\n");
 		
-		return new LIRUpType(str, LIRAstNodeType.REGISTER, "R"+curReg);
+		return new LIRUpType(str.toString(), LIRAstNodeType.REGISTER, "R"+curReg);
 	}
 
 	@Override
@@ -821,10 +943,8 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		String strLiteral = "";
 		LiteralsEnum type = expr.type;
 		if (type == LiteralsEnum.QUOTE){
-			String strVal = ((String) expr.value);
-			if (!strLiterals.contains(strVal))
-				strLiterals.add(strVal);
-			strLiteral = "str"+(strLiterals.indexOf(strVal)+1);	
+			// literals are marked while translating for the cache (see CachedMethod) or a shared section
+			strLiteral = (cache != null || sharedStrings ? "#str" : "str")+strLiterals.add((String) expr.value);	
 		}	
 		if (type == LiteralsEnum.INTEGER){
 			strLiteral = expr.value.toString();
@@ -841,6 +961,14 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		return new LIRUpType("", LIRAstNodeType.LITERAL,strLiteral);
 	}
 	
+	// the type of an expression. Uses the type recorded by the semantic checker, and resolves
+	// it again only for nodes the checker has not seen
+	private SemanticType typeOf(Expr expr){
+		if (expr.semanticType != null)
+			return expr.semanticType;
+		return (SemanticType) expr.accept(new ExprTypeResolver(symTab, typTab, currentThisClass, currentMethodName), null);
+	}
+	
 	private boolean isMain(Method m){
 		if (m.isStatic)  
 			if (m.type.getName().equals("void")) 
@@ -853,27 +981,24 @@ public class LIRTranslator implements PropagatingVisitor<Object, LIRUpType> {
 		return false;
 	}
 	
-	private void buildDispatchTableCode(){
-		
-		
-		
-		
-		for (Map.Entry<String, HashMap<Integer,ArrayList<String>>> ce: dispatchTableMap.entrySet()){ //go through each class entry		
-			String str="";
-			str+= "_DV_"+ ce.getKey() +": [";
-			 // go through each method entry
-			int i;
-			for (i=0; i<ce.getValue().keySet().size();i++){
-				ArrayList<String> me = ce.getValue().get(i); // me is [methodName,BelgonsToClass]
-				str+="_"+me.get(1)+"_"+me.get(0)+",";
-			}
-			if (i > 0){
-				str = str.substring(0, str.length()-1); //chop the last ','
-			}
-			str+="]";
-			classDispatchTableCodeList.add(str);
-		}
+	private String dispatchTableCode(ClassSymbol cs){
+		VirtualTable vt = cs.getVirtualTable();
+		StringBuilder str = new StringBuilder("_DV_"+cs.name+": [");
+		for (int i = 0; i < vt.size(); i++){
+			if (i > 0)
+				str.append(",");
+			str.append(vt.getLabel(i));
+		}
+		return str.append("]").toString();
+	}
 	
+	// append lir code to the output. Visitor methods cannot throw, so IO errors are wrapped
+	private void emit(CharSequence code){
+		try{
+			out.append(code);
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
 	}
 	
 	private String getMoveType(LIRAstNodeType type){
@@ -0,0 +1,680 @@
+package LIR;
+
+import java.util.*;
+
+/**
+ * Allocates the registers of the LIR code of a method onto a bounded register file R1..R<n>.
+ *
+ * The translator numbers registers along the expression tree and keeps every local and
+ * parameter in memory. Here the registers and the variables of the method are all taken as
+ * virtual registers: their liveness is computed over the control flow of the method, moves
+ * between two virtual registers that do not interfere are coalesced (and dropped), and linear
+ * scan maps the remaining live ranges onto the register file.
+ *
+ * A virtual register that gets no register is spilled - a variable stays in its own memory
+ * while it holds the value it had at the entry, anything else goes to $t<i>. Spilled operands
+ * are used directly where LIR allows memory, and through three scratch registers elsewhere;
+ * those are only set aside when something spills.
+ */
+public class RegisterAllocator {
+	public static final int MIN_REGISTERS = 4;
+	private static final int SCRATCH = 3;
+
+	private final int registers;
+	private final List<String> report = new ArrayList<String>();
+	private int movesBefore;
+	private int movesAfter;
+
+	// the method being allocated
+	private List<Line> lines;
+	private List<String> names;
+	private Map<String, Integer> ids;
+	private Set<String> variables;
+	// the webs that hold the value a variable has at the entry of the method
+	private BitSet entryWebs;
+
+	public RegisterAllocator(int registers){
+		if (registers < MIN_REGISTERS)
+			throw new IllegalArgumentException("the register file needs at least "+MIN_REGISTERS+" registers");
+		this.registers = registers;
+	}
+
+	public int getRegisters(){
+		return registers;
+	}
+
+	/** A line for each method allocated: registers and moves before and after.
+	 */
+	public List<String> getReport(){
+		return report;
+	}
+
+	public int getMovesEliminated(){
+		return movesBefore - movesAfter;
+	}
+
+	/** Allocates the registers of a method.
+	 *
+	 * @param code The LIR code of the method, starting with its label.
+	 * @param variables The locals, parameters and 'this' of the method, as named in the code.
+	 * @param params The parameters of the method, including 'this'.
+	 * @return The code with registers allocated.
+	 */
+	public String allocate(String code, Set<String> variables, Set<String> params){
+		String[] text = code.split("\n");
+		this.variables = variables;
+		lines = new ArrayList<Line>();
+		names = new ArrayList<String>();
+		ids = new HashMap<String, Integer>();
+		for (int i = 1; i < text.length; i++)
+			lines.add(parse(text[i]));
+		int virtualRegisters = 0, promoted = 0;
+		for (String name: names){
+			if (isRegister(name))
+				virtualRegisters++;
+			else
+				promoted++;
+		}
+		splitWebs();
+		int n = lines.size(), v = names.size();
+
+		BitSet[] out = liveOut(identity(v));
+		BitSet entry = liveIn(0, out, identity(v));
+		int[] alias = coalesce(out, entry);
+
+		// the parameter whose value a register holds at the entry - two of them would interfere
+		String[] entryParam = new String[v];
+		for (int x = entry.nextSetBit(0); x >= 0; x = entry.nextSetBit(x+1))
+			if (params.contains(names.get(x)))
+				entryParam[alias[x]] = names.get(x);
+		// only the class of the entry web of a variable may spill into the variable's own memory -
+		// its other webs may be coalesced into classes live at the same time
+		String[] memory = new String[v];
+		for (int x = 0; x < v; x++){
+			int c = alias[x];
+			if (entryParam[c] != null)
+				memory[c] = entryParam[c];
+			else if (memory[c] == null && entryWebs.get(x) && variables.contains(names.get(x)))
+				memory[c] = names.get(x);
+		}
+		for (int c = 0; c < v; c++)
+			if (memory[c] == null)
+				memory[c] = "$t"+c;
+
+		out = liveOut(alias);
+		entry = liveIn(0, out, alias);
+		int[][] intervals = intervals(out, alias);
+		int[] reg = linearScan(intervals, alias, registers);
+		int available = registers;
+		for (int c = 0; c < v; c++){
+			if (intervals[c] != null && reg[c] < 0){
+				available = registers - SCRATCH;
+				reg = linearScan(intervals, alias, available);
+				break;
+			}
+		}
+
+		StringBuilder result = new StringBuilder(text[0]).append('\n');
+		for (int c = entry.nextSetBit(0); c >= 0; c = entry.nextSetBit(c+1))
+			if (entryParam[c] != null && reg[c] >= 0)
+				result.append("Move "+entryParam[c]+", R"+(reg[c]+1)+"\n");
+		for (int i = 0; i < n; i++)
+			rewrite(lines.get(i), alias, reg, memory, available, result);
+		String allocated = result.toString();
+
+		int before = count(text, "Move "), after = count(allocated.split("\n"), "Move ");
+		int used = 0, spilled = 0;
+		for (int c = 0; c < v; c++){
+			if (intervals[c] == null)
+				continue;
+			if (reg[c] < 0)
+				spilled++;
+			else
+				used = Math.max(used, reg[c]+1);
+		}
+		if (spilled > 0)
+			used = registers;
+		movesBefore += before;
+		movesAfter += after;
+		report.add(text[0].substring(0, text[0].length()-1)+": "+virtualRegisters+" registers and "+promoted+" variables -> "
+				+used+" registers, "+before+" moves -> "+after+" ("+(before-after)+" eliminated), "+spilled+" spilled");
+		return allocated;
+	}
+
+	// a line of the method: its text split around the virtual registers it refers to
+	private static class Line {
+		String op;				// null for labels
+		String label;			// the label of a label line, or the target of a jump
+		List<String> parts = new ArrayList<String>();
+		List<Integer> refs = new ArrayList<Integer>();	// virtual register of each odd part
+		List<Integer> roles = new ArrayList<Integer>();
+		BitSet use = new BitSet();
+		BitSet def = new BitSet();
+	}
+
+	// roles of a reference. DIRECT references may be replaced by memory
+	private static final int USE = 1, DEF = 2, DIRECT = 4;
+
+	private Line parse(String text){
+		Line line = new Line();
+		if (text.endsWith(":")){
+			line.label = text.substring(0, text.length()-1);
+			line.parts.add(text);
+			return line;
+		}
+		int space = text.indexOf(' ');
+		line.op = (space < 0) ? text : text.substring(0, space);
+		if (line.op.startsWith("Jump")){
+			line.label = text.substring(space+1).trim();
+			line.parts.add(text);
+			return line;
+		}
+
+		boolean call = line.op.equals("StaticCall") || line.op.equals("VirtualCall") || line.op.equals("Library");
+		int open = text.indexOf('('), close = text.lastIndexOf(')');
+		int comma = call ? close : text.indexOf(',');
+		int start = 0;
+		for (int i = space+1; i < text.length(); ){
+			char ch = text.charAt(i);
+			if (!isNameChar(ch)){
+				i++;
+				continue;
+			}
+			int end = i;
+			while (end < text.length() && isNameChar(text.charAt(end)))
+				end++;
+			String name = text.substring(i, end);
+			// parameter names of calls are not operands
+			boolean param = end < text.length() && text.charAt(end) == '=';
+			if (!param && (isRegister(name) || variables.contains(name))){
+				Integer id = ids.get(name);
+				if (id == null){
+					id = names.size();
+					names.add(name);
+					ids.put(name, id);
+				}
+				line.parts.add(text.substring(start, i));
+				line.parts.add(name);
+				line.refs.add(id);
+				line.roles.add(role(line.op, text, i, end, call, open, close, comma));
+				start = end;
+			}
+			i = end;
+		}
+		line.parts.add(text.substring(start));
+		for (int k = 0; k < line.refs.size(); k++){
+			if ((line.roles.get(k) & USE) != 0)
+				line.use.set(line.refs.get(k));
+			if ((line.roles.get(k) & DEF) != 0)
+				line.def.set(line.refs.get(k));
+		}
+		return line;
+	}
+
+	// how the name at text[i..end) is used by the instruction
+	private static int role(String op, String text, int i, int end, boolean call, int open, int close, int comma){
+		if (call){
+			if (i > close)
+				return DEF;
+			return (i > open) ? USE|DIRECT : USE;
+		}
+		boolean lone = isOperand(text, i, end);
+		if (op.equals("Neg"))
+			return USE|DEF;
+		if (op.equals("Return"))
+			return lone ? USE|DIRECT : USE;
+		if (op.equals("Compare"))
+			return (i < comma && lone) ? USE|DIRECT : USE;
+		if (op.equals("Add") || op.equals("Sub") || op.equals("Mul") || op.equals("Div") || op.equals("Mod"))
+			return (i < comma) ? USE|DIRECT : USE|DEF;
+		// Move, MoveField, MoveArray, ArrayLength - the destination is written if it is a register
+		int direct = (op.equals("Move")) ? DIRECT : 0;
+		if (i < comma || !lone)
+			return USE|direct;
+		return DEF|direct;
+	}
+
+	// is text[i..end) a whole operand, and not part of a field or array location
+	private static boolean isOperand(String text, int i, int end){
+		char before = text.charAt(i-1);
+		char after = (end < text.length()) ? text.charAt(end) : ',';
+		return (before == ' ' || before == ',') && after == ',';
+	}
+
+	private static boolean isNameChar(char ch){
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '#';
+	}
+
+	private static boolean isRegister(String name){
+		if (name.length() < 2 || name.charAt(0) != 'R')
+			return false;
+		for (int i = 1; i < name.length(); i++)
+			if (!Character.isDigit(name.charAt(i)))
+				return false;
+		return true;
+	}
+
+	// renames every register and variable into its webs - the definitions that reach a common
+	// use, with those uses. The translator reuses R1, R2... for unrelated values, which would
+	// otherwise be a single live range. The entry of the method counts as a definition of all
+	private void splitWebs(){
+		int n = lines.size(), v = names.size();
+		// definition sites: v entry definitions, then the definitions of each line
+		List<Integer> siteVar = new ArrayList<Integer>();
+		BitSet[] sitesOf = new BitSet[v];
+		for (int x = 0; x < v; x++){
+			siteVar.add(x);
+			sitesOf[x] = new BitSet();
+			sitesOf[x].set(x);
+		}
+		int[][] siteAt = new int[n][];
+		for (int i = 0; i < n; i++){
+			BitSet def = lines.get(i).def;
+			siteAt[i] = new int[def.length()];
+			for (int x = def.nextSetBit(0); x >= 0; x = def.nextSetBit(x+1)){
+				siteAt[i][x] = siteVar.size();
+				sitesOf[x].set(siteVar.size());
+				siteVar.add(x);
+			}
+		}
+
+		// reaching definitions, forward to a fixed point
+		int[][] succ = successors();
+		List<List<Integer>> pred = new ArrayList<List<Integer>>();
+		for (int i = 0; i < n; i++)
+			pred.add(new ArrayList<Integer>());
+		for (int i = 0; i < n; i++)
+			for (int s: succ[i])
+				pred.get(s).add(i);
+		BitSet[] in = new BitSet[n], out = new BitSet[n];
+		for (int i = 0; i < n; i++){
+			in[i] = new BitSet();
+			out[i] = new BitSet();
+		}
+		boolean changed = true;
+		while (changed){
+			changed = false;
+			for (int i = 0; i < n; i++){
+				BitSet x = new BitSet();
+				if (i == 0)
+					x.set(0, v);
+				for (int p: pred.get(i))
+					x.or(out[p]);
+				BitSet o = (BitSet) x.clone();
+				BitSet def = lines.get(i).def;
+				for (int d = def.nextSetBit(0); d >= 0; d = def.nextSetBit(d+1)){
+					o.andNot(sitesOf[d]);
+					o.set(siteAt[i][d]);
+				}
+				if (!x.equals(in[i]) || !o.equals(out[i])){
+					in[i] = x;
+					out[i] = o;
+					changed = true;
+				}
+			}
+		}
+
+		// a web of each reference: its definition, or the definitions that reach it
+		int[] web = identity(siteVar.size());
+		List<int[]> refSites = new ArrayList<int[]>();
+		for (int i = 0; i < n; i++){
+			Line line = lines.get(i);
+			int[] sites = new int[line.refs.size()];
+			for (int k = 0; k < sites.length; k++){
+				int x = line.refs.get(k);
+				int role = line.roles.get(k);
+				int site = -1;
+				if ((role & DEF) != 0)
+					site = siteAt[i][x];
+				if ((role & USE) != 0){
+					BitSet reaching = (BitSet) in[i].clone();
+					reaching.and(sitesOf[x]);
+					for (int d = reaching.nextSetBit(0); d >= 0; d = reaching.nextSetBit(d+1)){
+						if (site < 0)
+							site = d;
+						else
+							web[find(web, d)] = find(web, site);
+					}
+				}
+				// unreachable code
+				if (site < 0)
+					site = x;
+				sites[k] = site;
+			}
+			refSites.add(sites);
+		}
+
+		List<String> webNames = new ArrayList<String>();
+		Map<Integer, Integer> webIds = new HashMap<Integer, Integer>();
+		entryWebs = new BitSet();
+		for (int i = 0; i < n; i++){
+			Line line = lines.get(i);
+			line.use = new BitSet();
+			line.def = new BitSet();
+			for (int k = 0; k < line.refs.size(); k++){
+				int root = find(web, refSites.get(i)[k]);
+				Integer id = webIds.get(root);
+				if (id == null){
+					id = webNames.size();
+					webNames.add(names.get(siteVar.get(root)));
+					webIds.put(root, id);
+				}
+				if (find(web, siteVar.get(root)) == root)
+					entryWebs.set(id);
+				line.refs.set(k, id);
+				if ((line.roles.get(k) & USE) != 0)
+					line.use.set(id);
+				if ((line.roles.get(k) & DEF) != 0)
+					line.def.set(id);
+			}
+		}
+		names = webNames;
+	}
+
+	private static int[] identity(int n){
+		int[] alias = new int[n];
+		for (int i = 0; i < n; i++)
+			alias[i] = i;
+		return alias;
+	}
+
+	// successors of each line
+	private int[][] successors(){
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 0; i < lines.size(); i++)
+			if (lines.get(i).op == null)
+				labels.put(lines.get(i).label, i);
+		int n = lines.size();
+		int[][] succ = new int[n][];
+		for (int i = 0; i < n; i++){
+			Line line = lines.get(i);
+			int next = (i+1 < n) ? i+1 : -1;
+			if (line.op == null || !(line.op.startsWith("Jump") || line.op.equals("Return"))){
+				succ[i] = (next < 0) ? new int[0] : new int[] { next };
+			} else if (line.op.equals("Return")){
+				succ[i] = new int[0];
+			} else {
+				Integer target = labels.get(line.label);
+				if (target == null)
+					throw new IllegalArgumentException("unknown label "+line.label);
+				succ[i] = (line.op.equals("Jump") || next < 0) ? new int[] { target } : new int[] { target, next };
+			}
+		}
+		return succ;
+	}
+
+	private BitSet aliased(BitSet set, int[] alias){
+		BitSet result = new BitSet();
+		for (int x = set.nextSetBit(0); x >= 0; x = set.nextSetBit(x+1))
+			result.set(alias[x]);
+		return result;
+	}
+
+	// the virtual registers live after each line, by backward data flow to a fixed point
+	private BitSet[] liveOut(int[] alias){
+		int n = lines.size();
+		int[][] succ = successors();
+		BitSet[] use = new BitSet[n], def = new BitSet[n];
+		BitSet[] in = new BitSet[n], out = new BitSet[n];
+		for (int i = 0; i < n; i++){
+			use[i] = aliased(lines.get(i).use, alias);
+			def[i] = aliased(lines.get(i).def, alias);
+			in[i] = new BitSet();
+			out[i] = new BitSet();
+		}
+		boolean changed = true;
+		while (changed){
+			changed = false;
+			for (int i = n-1; i >= 0; i--){
+				BitSet o = new BitSet();
+				for (int s: succ[i])
+					o.or(in[s]);
+				BitSet x = (BitSet) o.clone();
+				x.andNot(def[i]);
+				x.or(use[i]);
+				if (!x.equals(in[i]) || !o.equals(out[i])){
+					in[i] = x;
+					out[i] = o;
+					changed = true;
+				}
+			}
+		}
+		return out;
+	}
+
+	private BitSet liveIn(int i, BitSet[] out, int[] alias){
+		if (i >= lines.size())
+			return new BitSet();
+		BitSet in = (BitSet) out[i].clone();
+		in.andNot(aliased(lines.get(i).def, alias));
+		in.or(aliased(lines.get(i).use, alias));
+		return in;
+	}
+
+	// merges the two sides of each move that do not interfere - a definition of one while the
+	// other is live, other than by a move between them, or both live at the entry
+	private int[] coalesce(BitSet[] out, BitSet entry){
+		int v = names.size();
+		int[] alias = identity(v);
+		// live sets and definitions of the merged registers, kept up to date while merging
+		BitSet[] liveAt = new BitSet[v], defAt = new BitSet[v];
+		for (int x = 0; x < v; x++){
+			liveAt[x] = new BitSet();
+			defAt[x] = new BitSet();
+		}
+		for (int i = 0; i < lines.size(); i++){
+			for (int x = out[i].nextSetBit(0); x >= 0; x = out[i].nextSetBit(x+1))
+				liveAt[x].set(i);
+			BitSet def = lines.get(i).def;
+			for (int x = def.nextSetBit(0); x >= 0; x = def.nextSetBit(x+1))
+				defAt[x].set(i);
+		}
+		BitSet entryLive = (BitSet) entry.clone();
+
+		for (int i = 0; i < lines.size(); i++){
+			Line line = lines.get(i);
+			if (!"Move".equals(line.op) || line.refs.size() != 2 || line.def.isEmpty())
+				continue;
+			int a = find(alias, line.refs.get(0)), b = find(alias, line.refs.get(1));
+			if (a == b || (entryLive.get(a) && entryLive.get(b)))
+				continue;
+			if (interferes(a, b, defAt, liveAt, alias) || interferes(b, a, defAt, liveAt, alias))
+				continue;
+			alias[b] = a;
+			liveAt[a].or(liveAt[b]);
+			defAt[a].or(defAt[b]);
+			if (entryLive.get(b))
+				entryLive.set(a);
+		}
+		for (int x = 0; x < v; x++)
+			alias[x] = find(alias, x);
+		return alias;
+	}
+
+	// is <a> defined where <b> is live, other than by a move from <b>
+	private boolean interferes(int a, int b, BitSet[] defAt, BitSet[] liveAt, int[] alias){
+		BitSet both = (BitSet) defAt[a].clone();
+		both.and(liveAt[b]);
+		for (int i = both.nextSetBit(0); i >= 0; i = both.nextSetBit(i+1)){
+			Line line = lines.get(i);
+			boolean copy = "Move".equals(line.op) && line.refs.size() == 2 && !line.def.isEmpty()
+					&& find(alias, line.refs.get(0)) == b;
+			if (!copy)
+				return true;
+		}
+		return false;
+	}
+
+	private static int find(int[] alias, int x){
+		while (alias[x] != x)
+			x = alias[x];
+		return x;
+	}
+
+	// the live range of each merged register as [first, last] position, where line i has
+	// position 2i before it and 2i+1 after it. null for registers merged into others
+	private int[][] intervals(BitSet[] out, int[] alias){
+		int[][] intervals = new int[names.size()][];
+		for (int i = 0; i < lines.size(); i++){
+			BitSet before = liveIn(i, out, alias);
+			BitSet after = (BitSet) out[i].clone();
+			after.or(aliased(lines.get(i).def, alias));
+			for (int c = before.nextSetBit(0); c >= 0; c = before.nextSetBit(c+1))
+				cover(intervals, c, 2*i);
+			for (int c = after.nextSetBit(0); c >= 0; c = after.nextSetBit(c+1))
+				cover(intervals, c, 2*i+1);
+		}
+		return intervals;
+	}
+
+	private static void cover(int[][] intervals, int c, int position){
+		if (intervals[c] == null)
+			intervals[c] = new int[] { position, position };
+		else {
+			intervals[c][0] = Math.min(intervals[c][0], position);
+			intervals[c][1] = Math.max(intervals[c][1], position);
+		}
+	}
+
+	// assigns registers 0..k-1 to the live ranges in the order they start, or -1 for spilled
+	// ones. When none is free, the range that ends last is spilled
+	private int[] linearScan(final int[][] intervals, int[] alias, int k){
+		int v = names.size();
+		int[] reg = new int[v];
+		Arrays.fill(reg, -1);
+		// the other side of the moves that are left, to share a register with where possible
+		int[] hint = new int[v];
+		Arrays.fill(hint, -1);
+		for (Line line: lines){
+			if ("Move".equals(line.op) && line.refs.size() == 2 && !line.def.isEmpty()){
+				int a = alias[line.refs.get(0)], b = alias[line.refs.get(1)];
+				hint[a] = b;
+				hint[b] = a;
+			}
+		}
+
+		List<Integer> order = new ArrayList<Integer>();
+		for (int c = 0; c < v; c++)
+			if (intervals[c] != null)
+				order.add(c);
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){
+				int d = intervals[a][0] - intervals[b][0];
+				return (d != 0) ? d : a - b;
+			}
+		});
+
+		List<Integer> active = new ArrayList<Integer>();
+		boolean[] free = new boolean[k];
+		Arrays.fill(free, true);
+		for (int c: order){
+			for (Iterator<Integer> it = active.iterator(); it.hasNext(); ){
+				int a = it.next();
+				if (intervals[a][1] < intervals[c][0]){
+					free[reg[a]] = true;
+					it.remove();
+				}
+			}
+			int r = -1;
+			if (hint[c] >= 0 && reg[hint[c]] >= 0 && free[reg[hint[c]]])
+				r = reg[hint[c]];
+			for (int i = 0; i < k && r < 0; i++)
+				if (free[i])
+					r = i;
+			if (r >= 0){
+				reg[c] = r;
+				free[r] = false;
+				active.add(c);
+				continue;
+			}
+			int last = c;
+			for (int a: active)
+				if (intervals[a][1] > intervals[last][1])
+					last = a;
+			if (last != c){
+				reg[c] = reg[last];
+				reg[last] = -1;
+				active.remove((Integer) last);
+				active.add(c);
+			}
+		}
+		return reg;
+	}
+
+	private void rewrite(Line line, int[] alias, int[] reg, String[] memory, int available, StringBuilder result){
+		if (line.refs.isEmpty()){
+			result.append(line.parts.get(0)).append('\n');
+			return;
+		}
+		// a coalesced move
+		if ("Move".equals(line.op) && line.refs.size() == 2 && alias[line.refs.get(0)] == alias[line.refs.get(1)])
+			return;
+		int spilledRefs = 0;
+		for (int ref: line.refs)
+			if (reg[alias[ref]] < 0)
+				spilledRefs++;
+		// a move takes one memory operand
+		boolean moveBoth = "Move".equals(line.op) && spilledRefs == 2;
+
+		// spilled registers that go through a scratch register, with how the instruction uses them
+		Map<Integer, Integer> scratchRoles = new LinkedHashMap<Integer, Integer>();
+		for (int k = 0; k < line.refs.size(); k++){
+			int c = alias[line.refs.get(k)];
+			int role = line.roles.get(k);
+			if (reg[c] < 0 && ((role & DIRECT) == 0 || (moveBoth && k == 0))){
+				Integer roles = scratchRoles.get(c);
+				scratchRoles.put(c, (roles == null) ? role : roles|role);
+			}
+		}
+		// every reference of a register that goes through a scratch register reads it there -
+		// a call may take as argument the memory its result is stored into
+		for (int k = 0; k < line.refs.size(); k++){
+			int c = alias[line.refs.get(k)];
+			if (scratchRoles.containsKey(c))
+				scratchRoles.put(c, scratchRoles.get(c)|line.roles.get(k));
+		}
+		Map<Integer, String> scratch = new HashMap<Integer, String>();
+		StringBuilder after = new StringBuilder();
+		for (Map.Entry<Integer, Integer> e: scratchRoles.entrySet()){
+			int c = e.getKey();
+			String r = "R"+(available+scratch.size()+1);
+			scratch.put(c, r);
+			if ((e.getValue() & USE) != 0)
+				result.append("Move "+memory[c]+", "+r+"\n");
+			if ((e.getValue() & DEF) != 0)
+				after.append("Move "+r+", "+memory[c]+"\n");
+		}
+
+		StringBuilder text = new StringBuilder();
+		for (int k = 0; k < line.refs.size(); k++){
+			int c = alias[line.refs.get(k)];
+			text.append(line.parts.get(2*k));
+			if (reg[c] >= 0)
+				text.append("R"+(reg[c]+1));
+			else if (scratch.containsKey(c))
+				text.append(scratch.get(c));
+			else
+				text.append(memory[c]);
+		}
+		text.append(line.parts.get(line.parts.size()-1));
+
+		String instruction = text.toString();
+		// a move whose both sides got the same register
+		if (line.op.equals("Move")){
+			int comma = instruction.indexOf(',');
+			if (instruction.substring(5, comma).trim().equals(instruction.substring(comma+1).trim()))
+				instruction = null;
+		}
+		if (instruction != null)
+			result.append(instruction).append('\n');
+		result.append(after);
+	}
+
+	private static int count(String[] lines, String prefix){
+		int n = 0;
+		for (String line: lines)
+			if (line.startsWith(prefix))
+				n++;
+		return n;
+	}
+}
@@ -0,0 +1,166 @@
+package LIR;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * Collects all string literals of a program, in the same order LIRTranslator meets them.
+ * Lets the translator write the string literals section before any method code,
+ * so the methods can be streamed to the output as soon as they are translated.
+ */
+public class StringLiteralCollector implements Visitor {
+	private StringLiteralPool strLiterals;
+
+	public StringLiteralCollector(StringLiteralPool strLiterals){
+		this.strLiterals = strLiterals;
+	}
+
+	// add all string literals of the given AST to the pool
+	public void collect(ASTNode root){
+		root.accept(this);
+	}
+
+	@Override
+	public void visit(UnaryOpExpr expr) {
+		expr.rightOp.accept(this);
+	}
+
+	@Override
+	public void visit(BinaryOpExpr expr) {
+		expr.leftOp.accept(this);
+		expr.rightOp.accept(this);
+	}
+
+	@Override
+	public void visit(Program program) {
+		for (Class cl: program.classes)
+			cl.accept(this);
+	}
+
+	@Override
+	public void visit(Class cl) {
+		for (Method m: cl.methods)
+			m.accept(this);
+	}
+
+	@Override
+	public void visit(Field field) {
+	}
+
+	@Override
+	public void visit(Formal formal) {
+	}
+
+	@Override
+	public void visit(Type type) {
+	}
+
+	@Override
+	public void visit(Method method) {
+		for (Stmt s: method.statementList)
+			s.accept(this);
+	}
+
+	@Override
+	public void visit(AssignStmt stmt) {
+		// the translator visits the assigned value before the location
+		stmt.rhs.accept(this);
+		stmt.lhs.accept(this);
+	}
+
+	@Override
+	public void visit(ReturnStmt stmt) {
+		if (stmt.expr != null)
+			stmt.expr.accept(this);
+	}
+
+	@Override
+	public void visit(StaticCall call) {
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	@Override
+	public void visit(VirtCall call) {
+		if (call.location != null)
+			call.location.accept(this);
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	@Override
+	public void visit(VarLocation loc) {
+		if (loc.location != null)
+			loc.location.accept(this);
+	}
+
+	@Override
+	public void visit(ArrayLocation loc) {
+		loc.array.accept(this);
+		loc.index.accept(this);
+	}
+
+	@Override
+	public void visit(CallStmt stmt) {
+		stmt.call.accept(this);
+	}
+
+	@Override
+	public void visit(StmtList stmts) {
+		for (Stmt s: stmts.statements)
+			s.accept(this);
+	}
+
+	@Override
+	public void visit(IfStmt stmt) {
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt.accept(this);
+	}
+
+	@Override
+	public void visit(WhileStmt stmt) {
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+	}
+
+	@Override
+	public void visit(BreakStmt stmt) {
+	}
+
+	@Override
+	public void visit(ContinueStmt stmt) {
+	}
+
+	@Override
+	public void visit(LocalVarStmt stmt) {
+		if (stmt.init != null)
+			stmt.init.accept(this);
+	}
+
+	@Override
+	public void visit(ThisExpr expr) {
+	}
+
+	@Override
+	public void visit(NewClassExpr expr) {
+	}
+
+	@Override
+	public void visit(NewArrayExpr expr) {
+		expr.index.accept(this);
+	}
+
+	@Override
+	public void visit(LengthExpr expr) {
+		expr.context.accept(this);
+	}
+
+	@Override
+	public void visit(LiteralExpr expr) {
+		if (expr.type == LiteralsEnum.QUOTE){
+			strLiterals.add((String) expr.value);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package LIR;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * The string literals of a program, numbered from 1 in the order they are added, without
+ * duplicates. Literal i is written as 'str<i>' in LIR code. Numbers are kept in a hash map,
+ * so adding or looking up a literal takes the same time however many literals there are.
+ */
+public class StringLiteralPool {
+	private final Map<String, Integer> numbers = new HashMap<String, Integer>();
+	private final List<String> literals = new ArrayList<String>();
+
+	// literal references left in the code of a unit translated for a shared pool
+	private static final Pattern MARKED = Pattern.compile("#str(\\d+)");
+
+	// the number of <literal>, added if it is new
+	public int add(String literal){
+		Integer n = numbers.get(literal);
+		if (n == null){
+			literals.add(literal);
+			n = literals.size();
+			numbers.put(literal, n);
+		}
+		return n;
+	}
+
+	// the number of <literal>, or 0 if it is not in the pool
+	public int numberOf(String literal){
+		Integer n = numbers.get(literal);
+		return (n == null) ? 0 : n;
+	}
+
+	// literal number <n>
+	public String get(int n){
+		return literals.get(n-1);
+	}
+
+	public int size(){
+		return literals.size();
+	}
+
+	// the literals, in the order of their numbers
+	public List<String> getLiterals(){
+		return Collections.unmodifiableList(literals);
+	}
+
+	// the string literals section of a LIR program
+	public String sectionCode(){
+		StringBuilder sb = new StringBuilder("# string literals #\n");
+		for (int i = 0; i < literals.size(); i++)
+			sb.append("str"+(i+1)+": \""+literals.get(i)+"\"\n");
+		return sb.toString();
+	}
+
+	// <code> of a unit whose literal references '#str<i>' are numbered as in <unit>, with the
+	// references numbered as in this pool instead. Adds the literals of the unit this pool does not have
+	public String merge(String code, StringLiteralPool unit){
+		Matcher m = MARKED.matcher(code);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()){
+			m.appendReplacement(sb, "str"+add(unit.get(Integer.parseInt(m.group(1)))));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+}
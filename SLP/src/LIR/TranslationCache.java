@@ -0,0 +1,61 @@
+package LIR;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Per-class LIR code shared between compilations of the same program.
+ * Classes added with addCachedClass are not translated again - LIRTranslator writes their
+ * cached method code instead. The methods of all other classes are recorded while they
+ * are translated, so they can be stored for the next compilation.
+ */
+public class TranslationCache {
+	// classes taken from the cache - class name to its methods, in declaration order
+	private Map<String, List<CachedMethod>> cached = new HashMap<String, List<CachedMethod>>();
+	// classes translated in this compilation
+	private Map<String, List<CachedMethod>> translated = new LinkedHashMap<String, List<CachedMethod>>();
+
+	public void addCachedClass(String className, List<CachedMethod> methods){
+		cached.put(className, methods);
+	}
+
+	// the cached methods of the class, or null if the class has to be translated
+	public List<CachedMethod> getCachedClass(String className){
+		return cached.get(className);
+	}
+
+	public Set<String> getCachedClassNames(){
+		return cached.keySet();
+	}
+
+	void addTranslatedMethod(String className, CachedMethod method){
+		List<CachedMethod> methods = translated.get(className);
+		if (methods == null){
+			methods = new ArrayList<CachedMethod>();
+			translated.put(className, methods);
+		}
+		methods.add(method);
+	}
+
+	// the methods recorded while translating the class, or null if it was not translated
+	public List<CachedMethod> getTranslatedClass(String className){
+		return translated.get(className);
+	}
+
+	public static void writeClass(List<CachedMethod> methods, OutputStream os) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(methods.size());
+		for (CachedMethod m: methods)
+			m.write(out);
+		out.flush();
+	}
+
+	public static List<CachedMethod> readClass(InputStream is) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+		int n = in.readInt();
+		List<CachedMethod> methods = new ArrayList<CachedMethod>(n);
+		for (int i = 0; i < n; i++)
+			methods.add(CachedMethod.read(in));
+		return methods;
+	}
+}
@@ -0,0 +1,536 @@
+package optimizer;
+
+import java.util.*;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * Optimizes a checked program before it is translated to LIR:
+ * - first inlines the calls of small methods, when given an Inliner, see setInliner.
+ * - folds constant int and boolean expressions, and concatenations of string literals.
+ *   Ints are 32 bits and wrap around, division truncates, as in LIR. Division or modulo
+ *   by a constant 0 is left for the runtime check.
+ * - simplifies identities: x+0, x-0, x*1, x/1, x*0, b&&true, b||false, !!b, -(-x).
+ * - removes if and while statements whose condition is constant.
+ * - clears the runtime checks that can never fail - null checks of 'this' and of new
+ *   objects, zero checks of constant divisors and size checks of constant array sizes.
+ * - then clears the null checks of variables known to be non-null, see NullCheckEliminator,
+ *   and the bounds checks of indexes known to be in bounds, see BoundsCheckEliminator.
+ *
+ * The AST is changed in place only in part: the statement and argument lists are edited
+ * where they are, and the runtime check flags are cleared on the nodes themselves. Any other
+ * change builds a new node, so each visit returns the node that replaces the visited one -
+ * the node itself when nothing changed, or null for a removed statement.
+ * An expression is only dropped when it has no side effects and cannot fail.
+ */
+public class ASTOptimizer implements PropagatingVisitor<Object, ASTNode> {
+	private int folded;
+	private int simplified;
+	private int checksRemoved;
+	private int statementsRemoved;
+	private int nullChecksRemoved;
+	private boolean eliminateBoundsChecks = true;
+	private int boundsChecksRemoved;
+	private List<String> boundsCheckReport = Collections.emptyList();
+	private Inliner inliner;
+
+	public void optimize(Program program){
+		if (inliner != null)
+			inliner.inline(program);
+		program.accept(this, null);
+		NullCheckEliminator nullChecks = new NullCheckEliminator();
+		nullChecks.eliminate(program);
+		nullChecksRemoved = nullChecks.getRemoved();
+		if (eliminateBoundsChecks){
+			BoundsCheckEliminator boundsChecks = new BoundsCheckEliminator();
+			boundsChecks.eliminate(program);
+			boundsChecksRemoved = boundsChecks.getRemoved();
+			boundsCheckReport = boundsChecks.getReport();
+		}
+	}
+
+	/** Turns the removal of bounds checks on (the default) or off, to compare the two.
+	 */
+	public void setEliminateBoundsChecks(boolean eliminateBoundsChecks){
+		this.eliminateBoundsChecks = eliminateBoundsChecks;
+	}
+
+	/** Inlines calls with <code>inliner</code> before the other optimizations - by default
+	 * (null) none are.
+	 */
+	public void setInliner(Inliner inliner){
+		this.inliner = inliner;
+	}
+
+	/** A one line summary of the optimizations made.
+	 */
+	public String getReport(){
+		return folded+" constant expressions folded, "+simplified+" expressions simplified, "
+				+checksRemoved+" runtime checks removed, "+statementsRemoved+" dead statements removed, "
+				+nullChecksRemoved+" redundant null checks removed, "+boundsChecksRemoved+" bounds checks removed, "+getCallsInlined()+" calls inlined";
+	}
+
+	/** For each loop with bounds checks in its own body, a line telling how many were removed.
+	 */
+	public List<String> getBoundsCheckReport(){
+		return boundsCheckReport;
+	}
+
+	public int getFolded(){
+		return folded;
+	}
+
+	public int getSimplified(){
+		return simplified;
+	}
+
+	public int getChecksRemoved(){
+		return checksRemoved;
+	}
+
+	public int getStatementsRemoved(){
+		return statementsRemoved;
+	}
+
+	/** The number of null checks of variables known to be non-null that were removed.
+	 */
+	public int getNullChecksRemoved(){
+		return nullChecksRemoved;
+	}
+
+	/** The number of bounds checks of indexes known to be in bounds that were removed.
+	 */
+	public int getBoundsChecksRemoved(){
+		return boundsChecksRemoved;
+	}
+
+	/** The number of calls inlined.
+	 */
+	public int getCallsInlined(){
+		return (inliner != null) ? inliner.getInlined() : 0;
+	}
+
+	@Override
+	public ASTNode visit(Program program, Object d) {
+		for (Class cl: program.classes)
+			cl.accept(this, null);
+		return program;
+	}
+
+	@Override
+	public ASTNode visit(Class cl, Object d) {
+		for (Method m: cl.methods)
+			m.accept(this, null);
+		return cl;
+	}
+
+	@Override
+	public ASTNode visit(Field field, Object d) {
+		return field;
+	}
+
+	@Override
+	public ASTNode visit(Formal formal, Object d) {
+		return formal;
+	}
+
+	@Override
+	public ASTNode visit(Type type, Object d) {
+		return type;
+	}
+
+	@Override
+	public ASTNode visit(Method method, Object d) {
+		optimize(method.statementList);
+		return method;
+	}
+
+	@Override
+	public ASTNode visit(AssignStmt stmt, Object d) {
+		Location lhs = (Location) stmt.lhs.accept(this, null);
+		Expr rhs = optimize(stmt.rhs);
+		if (lhs == stmt.lhs && rhs == stmt.rhs)
+			return stmt;
+		return new AssignStmt(stmt.line, lhs, rhs);
+	}
+
+	@Override
+	public ASTNode visit(ReturnStmt stmt, Object d) {
+		if (stmt.expr == null)
+			return stmt;
+		Expr expr = optimize(stmt.expr);
+		return (expr == stmt.expr) ? stmt : new ReturnStmt(stmt.line, expr);
+	}
+
+	@Override
+	public ASTNode visit(CallStmt stmt, Object d) {
+		CallExpr call = (CallExpr) stmt.call.accept(this, null);
+		return (call == stmt.call) ? stmt : new CallStmt(stmt.line, call);
+	}
+
+	@Override
+	public ASTNode visit(StmtList stmt, Object d) {
+		optimize(stmt.statements);
+		return stmt;
+	}
+
+	@Override
+	public ASTNode visit(IfStmt stmt, Object d) {
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition, LiteralsEnum.TRUE) || isLiteral(condition, LiteralsEnum.FALSE)){
+			statementsRemoved++;
+			Stmt taken = isLiteral(condition, LiteralsEnum.TRUE) ? stmt.thenStmt : stmt.elseStmt;
+			if (taken == null)
+				return null;
+			// keep the branch in a scope of its own
+			return new StmtList(taken.line, taken).accept(this, null);
+		}
+		Stmt thenStmt = branch(stmt.thenStmt);
+		Stmt elseStmt = (stmt.elseStmt != null) ? branch(stmt.elseStmt) : null;
+		if (condition == stmt.condition && thenStmt == stmt.thenStmt && elseStmt == stmt.elseStmt)
+			return stmt;
+		return new IfStmt(stmt.line, condition, thenStmt, elseStmt);
+	}
+
+	@Override
+	public ASTNode visit(WhileStmt stmt, Object d) {
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition, LiteralsEnum.FALSE)){
+			statementsRemoved++;
+			return null;
+		}
+		Stmt thenStmt = branch(stmt.thenStmt);
+		if (condition == stmt.condition && thenStmt == stmt.thenStmt)
+			return stmt;
+		return new WhileStmt(stmt.line, condition, thenStmt);
+	}
+
+	@Override
+	public ASTNode visit(BreakStmt stmt, Object d) {
+		return stmt;
+	}
+
+	@Override
+	public ASTNode visit(ContinueStmt stmt, Object d) {
+		return stmt;
+	}
+
+	@Override
+	public ASTNode visit(LocalVarStmt stmt, Object d) {
+		if (stmt.init == null)
+			return stmt;
+		Expr init = optimize(stmt.init);
+		LocalVarStmt result = stmt;
+		if (init != stmt.init){
+			result = new LocalVarStmt(stmt.line, stmt.type, stmt.name, init);
+			result.nullCheck = stmt.nullCheck;
+		}
+		if (result.nullCheck && neverNull(init)){
+			result.nullCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(StaticCall call, Object d) {
+		optimizeArgs(call.args);
+		return call;
+	}
+
+	@Override
+	public ASTNode visit(VirtCall call, Object d) {
+		optimizeArgs(call.args);
+		if (call.location == null)
+			return call;
+		Expr location = optimize(call.location);
+		VirtCall result = call;
+		if (location != call.location){
+			result = new VirtCall(call.line, location, call.funcName, call.args);
+			copy(call, result);
+			result.nullCheck = call.nullCheck;
+		}
+		if (result.nullCheck && neverNull(location)){
+			result.nullCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(VarLocation loc, Object d) {
+		if (loc.location == null)
+			return loc;
+		Expr location = optimize(loc.location);
+		VarLocation result = loc;
+		if (location != loc.location){
+			result = new VarLocation(loc.line, location, loc.name);
+			copy(loc, result);
+			result.nullCheck = loc.nullCheck;
+		}
+		if (result.nullCheck && neverNull(location)){
+			result.nullCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(ArrayLocation loc, Object d) {
+		Expr array = optimize(loc.array);
+		Expr index = optimize(loc.index);
+		ArrayLocation result = loc;
+		if (array != loc.array || index != loc.index){
+			result = new ArrayLocation(loc.line, array, index);
+			copy(loc, result);
+			result.nullCheck = loc.nullCheck;
+			result.boundsCheck = loc.boundsCheck;
+		}
+		if (result.nullCheck && neverNull(array)){
+			result.nullCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(ThisExpr expr, Object d) {
+		return expr;
+	}
+
+	@Override
+	public ASTNode visit(NewClassExpr expr, Object d) {
+		return expr;
+	}
+
+	@Override
+	public ASTNode visit(NewArrayExpr expr, Object d) {
+		Expr index = optimize(expr.index);
+		NewArrayExpr result = expr;
+		if (index != expr.index){
+			result = expr.withIndex(index);
+			copy(expr, result);
+		}
+		// LIR checks the size in bytes, which overflows for more than MAX_VALUE/4 elements
+		if (result.sizeCheck && isInt(index) && intOf(index) >= 0 && intOf(index) <= Integer.MAX_VALUE/4){
+			result.sizeCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(LengthExpr expr, Object d) {
+		Expr context = optimize(expr.context);
+		LengthExpr result = expr;
+		if (context != expr.context){
+			result = new LengthExpr(expr.line, context);
+			copy(expr, result);
+			result.nullCheck = expr.nullCheck;
+		}
+		if (result.nullCheck && neverNull(context)){
+			result.nullCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(LiteralExpr expr, Object d) {
+		return expr;
+	}
+
+	@Override
+	public ASTNode visit(UnaryOpExpr expr, Object d) {
+		Expr operand = optimize(expr.rightOp);
+		if (expr.operator == UnaryOpsEnum.UMINUS){
+			if (isInt(operand))
+				return fold(expr, LiteralsEnum.INTEGER, -intOf(operand));
+			if (operand instanceof UnaryOpExpr && ((UnaryOpExpr) operand).operator == UnaryOpsEnum.UMINUS)
+				return simplify(((UnaryOpExpr) operand).rightOp);
+		} else {
+			if (isBoolean(operand))
+				return foldBoolean(expr, !isLiteral(operand, LiteralsEnum.TRUE));
+			if (operand instanceof UnaryOpExpr && ((UnaryOpExpr) operand).operator == UnaryOpsEnum.LNEG)
+				return simplify(((UnaryOpExpr) operand).rightOp);
+		}
+		if (operand == expr.rightOp)
+			return expr;
+		UnaryOpExpr result = new UnaryOpExpr(expr.line, expr.operator, operand);
+		copy(expr, result);
+		return result;
+	}
+
+	@Override
+	public ASTNode visit(BinaryOpExpr expr, Object d) {
+		Expr left = optimize(expr.leftOp);
+		Expr right = optimize(expr.rightOp);
+		BinaryOpsEnum op = expr.operator;
+
+		// constant operands
+		if (isInt(left) && isInt(right)){
+			int a = intOf(left), b = intOf(right);
+			switch (op){
+			case PLUS:		return fold(expr, LiteralsEnum.INTEGER, a + b);
+			case MINUS:		return fold(expr, LiteralsEnum.INTEGER, a - b);
+			case MULTIPLY:	return fold(expr, LiteralsEnum.INTEGER, a * b);
+			case DIVIDE:	if (b != 0) return fold(expr, LiteralsEnum.INTEGER, a / b); break;
+			case MOD:		if (b != 0) return fold(expr, LiteralsEnum.INTEGER, a % b); break;
+			case LT:		return foldBoolean(expr, a < b);
+			case LTE:		return foldBoolean(expr, a <= b);
+			case GT:		return foldBoolean(expr, a > b);
+			case GTE:		return foldBoolean(expr, a >= b);
+			case EQUAL:		return foldBoolean(expr, a == b);
+			case NEQUAL:	return foldBoolean(expr, a != b);
+			default:		break;
+			}
+		}
+		if (isBoolean(left) && isBoolean(right)){
+			boolean a = isLiteral(left, LiteralsEnum.TRUE), b = isLiteral(right, LiteralsEnum.TRUE);
+			switch (op){
+			case LAND:		return foldBoolean(expr, a && b);
+			case LOR:		return foldBoolean(expr, a || b);
+			case EQUAL:		return foldBoolean(expr, a == b);
+			case NEQUAL:	return foldBoolean(expr, a != b);
+			default:		break;
+			}
+		}
+		if (op == BinaryOpsEnum.PLUS && isLiteral(left, LiteralsEnum.QUOTE) && isLiteral(right, LiteralsEnum.QUOTE))
+			return fold(expr, LiteralsEnum.QUOTE, (String) ((LiteralExpr) left).value + ((LiteralExpr) right).value);
+
+		// identities. An int literal operand means the other operand is an int too
+		switch (op){
+		case PLUS:
+			if (isInt(left, 0)) return simplify(right);
+			if (isInt(right, 0)) return simplify(left);
+			break;
+		case MINUS:
+			if (isInt(right, 0)) return simplify(left);
+			break;
+		case MULTIPLY:
+			if (isInt(left, 1)) return simplify(right);
+			if (isInt(right, 1)) return simplify(left);
+			if ((isInt(left, 0) && isPure(right)) || (isInt(right, 0) && isPure(left)))
+				return fold(expr, LiteralsEnum.INTEGER, 0);
+			break;
+		case DIVIDE:
+			if (isInt(right, 1)) return simplify(left);
+			break;
+		case LAND:
+			if (isLiteral(left, LiteralsEnum.TRUE)) return simplify(right);
+			if (isLiteral(right, LiteralsEnum.TRUE)) return simplify(left);
+			if ((isLiteral(left, LiteralsEnum.FALSE) && isPure(right)) || (isLiteral(right, LiteralsEnum.FALSE) && isPure(left)))
+				return foldBoolean(expr, false);
+			break;
+		case LOR:
+			if (isLiteral(left, LiteralsEnum.FALSE)) return simplify(right);
+			if (isLiteral(right, LiteralsEnum.FALSE)) return simplify(left);
+			if ((isLiteral(left, LiteralsEnum.TRUE) && isPure(right)) || (isLiteral(right, LiteralsEnum.TRUE) && isPure(left)))
+				return foldBoolean(expr, true);
+			break;
+		default:
+			break;
+		}
+
+		BinaryOpExpr result = expr;
+		if (left != expr.leftOp || right != expr.rightOp){
+			result = new BinaryOpExpr(expr.line, left, op, right);
+			copy(expr, result);
+			result.zeroCheck = expr.zeroCheck;
+		}
+		if (op == BinaryOpsEnum.DIVIDE && result.zeroCheck && isInt(right) && intOf(right) != 0){
+			result.zeroCheck = false;
+			checksRemoved++;
+		}
+		return result;
+	}
+
+	private Expr optimize(Expr expr){
+		return (Expr) expr.accept(this, null);
+	}
+
+	// optimize a list of statements in place, dropping the removed ones
+	private void optimize(List<Stmt> statements){
+		for (ListIterator<Stmt> it = statements.listIterator(); it.hasNext(); ){
+			Stmt s = (Stmt) it.next().accept(this, null);
+			if (s == null)
+				it.remove();
+			else
+				it.set(s);
+		}
+	}
+
+	private void optimizeArgs(List<Expr> args){
+		for (ListIterator<Expr> it = args.listIterator(); it.hasNext(); )
+			it.set(optimize(it.next()));
+	}
+
+	// the branch of an if or while statement. A removed branch becomes an empty block
+	private Stmt branch(Stmt stmt){
+		Stmt result = (Stmt) stmt.accept(this, null);
+		return (result != null) ? result : new StmtList(stmt.line, new ArrayList<Stmt>());
+	}
+
+	private Expr fold(Expr original, LiteralsEnum type, Object value){
+		folded++;
+		LiteralExpr literal = new LiteralExpr(original.line, type, value);
+		copy(original, literal);
+		return literal;
+	}
+
+	private Expr foldBoolean(Expr original, boolean value){
+		return fold(original, value ? LiteralsEnum.TRUE : LiteralsEnum.FALSE, value ? "true" : "false");
+	}
+
+	private Expr simplify(Expr replacement){
+		simplified++;
+		return replacement;
+	}
+
+	// the replacing node keeps the type the checker recorded
+	private static void copy(Expr from, Expr to){
+		to.semanticType = from.semanticType;
+	}
+
+	// whether evaluating the expression has no side effects and cannot fail
+	static boolean isPure(Expr expr){
+		if (expr instanceof LiteralExpr || expr instanceof ThisExpr)
+			return true;
+		if (expr instanceof VarLocation)
+			return ((VarLocation) expr).location == null;
+		if (expr instanceof UnaryOpExpr)
+			return isPure(((UnaryOpExpr) expr).rightOp);
+		if (expr instanceof BinaryOpExpr){
+			BinaryOpExpr b = (BinaryOpExpr) expr;
+			if ((b.operator == BinaryOpsEnum.DIVIDE || b.operator == BinaryOpsEnum.MOD) && !(isInt(b.rightOp) && intOf(b.rightOp) != 0))
+				return false;
+			return isPure(b.leftOp) && isPure(b.rightOp);
+		}
+		return false;
+	}
+
+	private static boolean neverNull(Expr expr){
+		return expr instanceof ThisExpr || expr instanceof NewClassExpr || expr instanceof NewArrayExpr;
+	}
+
+	private static boolean isLiteral(Expr expr, LiteralsEnum type){
+		return expr instanceof LiteralExpr && ((LiteralExpr) expr).type == type;
+	}
+
+	private static boolean isBoolean(Expr expr){
+		return isLiteral(expr, LiteralsEnum.TRUE) || isLiteral(expr, LiteralsEnum.FALSE);
+	}
+
+	private static boolean isInt(Expr expr){
+		return isLiteral(expr, LiteralsEnum.INTEGER);
+	}
+
+	private static boolean isInt(Expr expr, int value){
+		return isInt(expr) && intOf(expr) == value;
+	}
+
+	private static int intOf(Expr expr){
+		return ((Number) ((LiteralExpr) expr).value).intValue();
+	}
+}
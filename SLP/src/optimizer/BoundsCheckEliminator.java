@@ -0,0 +1,679 @@
+package optimizer;
+
+import java.util.*;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * Removes the bounds checks of array accesses that can never fail, by a range analysis over
+ * the control flow of each method, in the way of NullCheckEliminator. Of the int and array
+ * local variables, parameters and fields of 'this', it knows:
+ * - v >= 0: after v is assigned a literal >= 0, the length of an array, or w + c for a
+ *   literal c >= 0 and a w >= 0 small enough not to overflow; in the branch where v > -1.
+ * - v < a.length: after v is assigned a.length - c for a literal c > 0, after a[v] was
+ *   checked, and in the branch where v < a.length.
+ * - v < n, for an int variable or literal n: after v is assigned a literal below n, and in
+ *   the branch where v < n.
+ * - a.length == n, for an int variable or literal n: after a is assigned a new array of n
+ *   elements for an n known to be at most MAX_VALUE/4, or n is assigned a.length.
+ * A fact is forgotten when one of its variables is assigned, and a fact of a field of 'this'
+ * also as NullCheckEliminator forgets it. a[v] needs no check when v >= 0, and v < a.length
+ * or v < n where a.length == n; a[k], for a literal k, when a.length == n for a literal n > k.
+ *
+ * At the head of a loop, the facts known on entry stay known, except those of variables the
+ * loop may change - but for the variables of counted loops. A local variable v the loop only
+ * steps up by literals, in its own body, stays >= 0 when the loop runs while v < n, and the
+ * steps of one iteration cannot take v past MAX_VALUE from below n. One the loop only steps
+ * down, and runs while v >= 0, stays below what it was below.
+ * No array has more than MAX_VALUE/4 elements, as LIR allocates them by their size in bytes.
+ *
+ * The checks are only removed, not hoisted: a loop whose accesses cannot all be proven keeps
+ * the checks of those. The checks in each loop, and how many were removed, are reported.
+ */
+public class BoundsCheckEliminator implements PropagatingVisitor<Set<BoundsCheckEliminator.Fact>, Set<BoundsCheckEliminator.Fact>> {
+	private static final int NONNEG = 0, BELOW = 1, LESS = 2, LENGTH = 3;
+	private static final long MAX_LENGTH = Integer.MAX_VALUE / 4;
+
+	/** A fact of a variable: var >= 0, var < bound.length, var < bound or var.length == bound.
+	 * Variables are the declarations of locals and parameters and the names of fields of
+	 * 'this', as in NullCheckEliminator. A bound is a variable, or an Integer.
+	 */
+	static final class Fact {
+		final int kind;
+		final Object var, bound;
+
+		Fact(int kind, Object var, Object bound){
+			this.kind = kind;
+			this.var = var;
+			this.bound = bound;
+		}
+
+		boolean mentions(Object v){
+			return var.equals(v) || v.equals(bound);
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof Fact))
+				return false;
+			Fact f = (Fact) o;
+			return kind == f.kind && var.equals(f.var) && (bound == null ? f.bound == null : bound.equals(f.bound));
+		}
+
+		@Override
+		public int hashCode(){
+			return kind * 31 + var.hashCode() * 17 + (bound == null ? 0 : bound.hashCode());
+		}
+	}
+
+	private int removed;
+	// the declarations of the names in scope, innermost scope first
+	private Deque<Map<String, Object>> scopes = new ArrayDeque<Map<String, Object>>();
+	// the facts at the breaks of each loop around, innermost loop first
+	private Deque<List<Set<Fact>>> breaks = new ArrayDeque<List<Set<Fact>>>();
+	// the bounds checks in each loop around and how many of them were removed, innermost loop first
+	private Deque<int[]> loops = new ArrayDeque<int[]>();
+	private String className, methodName;
+	private List<String> report = new ArrayList<String>();
+
+	public void eliminate(Program program){
+		program.accept(this, null);
+	}
+
+	/** The number of bounds checks removed.
+	 */
+	public int getRemoved(){
+		return removed;
+	}
+
+	/** A line for each loop with bounds checks in its own body: where it is, and how many of
+	 * its checks were removed.
+	 */
+	public List<String> getReport(){
+		return report;
+	}
+
+	@Override
+	public Set<Fact> visit(Program program, Set<Fact> facts) {
+		for (Class cl: program.classes)
+			cl.accept(this, null);
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(Class cl, Set<Fact> facts) {
+		className = cl.name;
+		for (Method m: cl.methods)
+			m.accept(this, null);
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(Field field, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(Formal formal, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(Type type, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(Method method, Set<Fact> facts) {
+		methodName = method.name;
+		scopes.clear();
+		Map<String, Object> params = new HashMap<String, Object>();
+		for (Formal f: method.formalList)
+			params.put(f.name, f);
+		scopes.push(params);
+		block(method.statementList, new HashSet<Fact>());
+		scopes.pop();
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(AssignStmt stmt, Set<Fact> facts) {
+		// the right side is translated first
+		stmt.rhs.accept(this, facts);
+		stmt.lhs.accept(this, facts);
+		Object var = variable(stmt.lhs);
+		if (var != null){
+			Set<Fact> learned = assigned(var, stmt.rhs, facts);
+			forget(facts, var);
+			facts.addAll(learned);
+		} else if (stmt.lhs instanceof VarLocation){
+			// a field of some object, which may be 'this'
+			forget(facts, ((VarLocation) stmt.lhs).name);
+		}
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(ReturnStmt stmt, Set<Fact> facts) {
+		if (stmt.expr != null)
+			stmt.expr.accept(this, facts);
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(CallStmt stmt, Set<Fact> facts) {
+		stmt.call.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(StmtList stmt, Set<Fact> facts) {
+		return block(stmt.statements, facts);
+	}
+
+	@Override
+	public Set<Fact> visit(IfStmt stmt, Set<Fact> facts) {
+		ConditionFacts<Fact> cond = condition(stmt.condition, facts);
+		Set<Fact> thenFacts = branch(stmt.thenStmt, cond.whenTrue);
+		Set<Fact> elseFacts = (stmt.elseStmt != null) ? branch(stmt.elseStmt, cond.whenFalse) : cond.whenFalse;
+		return meet(thenFacts, elseFacts);
+	}
+
+	@Override
+	public Set<Fact> visit(WhileStmt stmt, Set<Fact> facts) {
+		LoopEffects loop = new LoopEffects();
+		stmt.accept(loop);
+		for (Iterator<Fact> it = facts.iterator(); it.hasNext(); ){
+			Fact f = it.next();
+			if ((changes(loop, f.var) || changes(loop, f.bound)) && !counted(stmt, loop, f))
+				it.remove();
+		}
+		loops.push(new int[2]);
+		// the loop is reported before the loops in it
+		int line = report.size();
+		report.add(null);
+		ConditionFacts<Fact> cond = condition(stmt.condition, facts);
+		breaks.push(new ArrayList<Set<Fact>>());
+		branch(stmt.thenStmt, cond.whenTrue);
+		Set<Fact> exit = cond.whenFalse;
+		for (Set<Fact> b: breaks.pop())
+			exit = meet(exit, b);
+		int[] checks = loops.pop();
+		if (checks[0] > 0)
+			report.set(line, className+"."+methodName+", loop at line "+stmt.line+": "+checks[1]+" of "+checks[0]+" bounds checks removed");
+		else
+			report.remove(line);
+		return exit;
+	}
+
+	@Override
+	public Set<Fact> visit(BreakStmt stmt, Set<Fact> facts) {
+		if (!breaks.isEmpty())
+			breaks.peek().add(new HashSet<Fact>(facts));
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(ContinueStmt stmt, Set<Fact> facts) {
+		return null;
+	}
+
+	@Override
+	public Set<Fact> visit(LocalVarStmt stmt, Set<Fact> facts) {
+		Set<Fact> learned = Collections.emptySet();
+		if (stmt.init != null){
+			stmt.init.accept(this, facts);
+			learned = assigned(stmt, stmt.init, facts);
+		}
+		scopes.peek().put(stmt.name, stmt);
+		// what held of the variable in the last iteration of a loop around
+		forget(facts, stmt);
+		facts.addAll(learned);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(StaticCall call, Set<Fact> facts) {
+		for (Expr arg: call.args)
+			arg.accept(this, facts);
+		if (!call.className.equals("Library"))
+			forgetFields(facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(VirtCall call, Set<Fact> facts) {
+		if (call.location != null)
+			call.location.accept(this, facts);
+		for (Expr arg: call.args)
+			arg.accept(this, facts);
+		forgetFields(facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(VarLocation loc, Set<Fact> facts) {
+		if (loc.location != null)
+			loc.location.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(ArrayLocation loc, Set<Fact> facts) {
+		loc.array.accept(this, facts);
+		loc.index.accept(this, facts);
+		Object array = variable(loc.array);
+		if (loc.boundsCheck){
+			int[] checks = loops.peek();
+			if (checks != null)
+				checks[0]++;
+			if (array != null && inBounds(loc.index, array, facts)){
+				loc.boundsCheck = false;
+				removed++;
+				if (checks != null)
+					checks[1]++;
+			}
+		}
+		// a failed check ends the program
+		Object index = variable(loc.index);
+		if (array != null && index != null && !index.equals(array)){
+			facts.add(new Fact(NONNEG, index, null));
+			facts.add(new Fact(BELOW, index, array));
+		}
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(ThisExpr expr, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(NewClassExpr expr, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(NewArrayExpr expr, Set<Fact> facts) {
+		expr.index.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(LengthExpr expr, Set<Fact> facts) {
+		expr.context.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(LiteralExpr expr, Set<Fact> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(UnaryOpExpr expr, Set<Fact> facts) {
+		expr.rightOp.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Fact> visit(BinaryOpExpr expr, Set<Fact> facts) {
+		if (expr.operator == BinaryOpsEnum.LAND || expr.operator == BinaryOpsEnum.LOR){
+			// what holds whether it is true or false, see condition
+			ConditionFacts<Fact> c = condition(expr, facts);
+			facts.clear();
+			facts.addAll(meet(c.whenTrue, c.whenFalse));
+			return facts;
+		}
+		expr.leftOp.accept(this, facts);
+		expr.rightOp.accept(this, facts);
+		return facts;
+	}
+
+	// the facts after a list of statements, in a scope of their own
+	private Set<Fact> block(List<Stmt> statements, Set<Fact> facts){
+		scopes.push(new HashMap<String, Object>());
+		for (Stmt s: statements)
+			facts = reach(s, facts);
+		scopes.pop();
+		return facts;
+	}
+
+	// the branch of an if or while statement, in a scope of its own
+	private Set<Fact> branch(Stmt stmt, Set<Fact> facts){
+		scopes.push(new HashMap<String, Object>());
+		facts = reach(stmt, facts);
+		scopes.pop();
+		return facts;
+	}
+
+	// the facts after a statement, where null facts before it mean it is never reached. Its
+	// checks are still looked at, knowing nothing, and it never completes either
+	private Set<Fact> reach(Stmt stmt, Set<Fact> facts){
+		if (facts == null){
+			stmt.accept(this, new HashSet<Fact>());
+			return null;
+		}
+		return stmt.accept(this, facts);
+	}
+
+	// the facts when a condition is true and when it is false (null for never), given the
+	// facts before it. The two sets are new
+	private ConditionFacts<Fact> condition(Expr cond, Set<Fact> facts){
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).type == LiteralsEnum.TRUE)
+			return new ConditionFacts<Fact>(new HashSet<Fact>(facts), null);
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).type == LiteralsEnum.FALSE)
+			return new ConditionFacts<Fact>(null, new HashSet<Fact>(facts));
+		if (cond instanceof UnaryOpExpr && ((UnaryOpExpr) cond).operator == UnaryOpsEnum.LNEG){
+			return condition(((UnaryOpExpr) cond).rightOp, facts).negated();
+		}
+		if (cond instanceof BinaryOpExpr){
+			BinaryOpExpr b = (BinaryOpExpr) cond;
+			// the right operand is evaluated only when the left one does not decide
+			if (b.operator == BinaryOpsEnum.LAND){
+				ConditionFacts<Fact> left = condition(b.leftOp, facts);
+				ConditionFacts<Fact> right = rightOperand(b.rightOp, left.whenTrue);
+				return new ConditionFacts<Fact>(right.whenTrue, meet(left.whenFalse, right.whenFalse));
+			}
+			if (b.operator == BinaryOpsEnum.LOR){
+				ConditionFacts<Fact> left = condition(b.leftOp, facts);
+				ConditionFacts<Fact> right = rightOperand(b.rightOp, left.whenFalse);
+				return new ConditionFacts<Fact>(meet(left.whenTrue, right.whenTrue), right.whenFalse);
+			}
+			Expr[] compared = compared(b);
+			if (compared != null){
+				cond.accept(this, facts);
+				Set<Fact> whenTrue = new HashSet<Fact>(facts), whenFalse = new HashSet<Fact>(facts);
+				boolean strict = (b.operator == BinaryOpsEnum.LT || b.operator == BinaryOpsEnum.GT);
+				less(compared[0], compared[1], strict, whenTrue);
+				less(compared[1], compared[0], !strict, whenFalse);
+				return new ConditionFacts<Fact>(whenTrue, whenFalse);
+			}
+		}
+		cond.accept(this, facts);
+		return new ConditionFacts<Fact>(new HashSet<Fact>(facts), new HashSet<Fact>(facts));
+	}
+
+	// the operands of a comparison of ints, the smaller first: {x, y} for x < y, x <= y, y > x
+	// and y >= x. null for any other expression
+	private static Expr[] compared(BinaryOpExpr b){
+		switch (b.operator){
+		case LT:
+		case LTE:	return new Expr[] { b.leftOp, b.rightOp };
+		case GT:
+		case GTE:	return new Expr[] { b.rightOp, b.leftOp };
+		default:	return null;
+		}
+	}
+
+	// adds to <facts> what x < y (<strict>) or x <= y tells
+	private void less(Expr x, Expr y, boolean strict, Set<Fact> facts){
+		Object low = variable(x), high = variable(y);
+		if (high != null && ((isInt(x) && intOf(x) >= (strict ? -1 : 0)) || x instanceof LengthExpr
+				|| (low != null && nonNegative(low, facts))))
+			facts.add(new Fact(NONNEG, high, null));
+		if (low == null)
+			return;
+		Object array = (y instanceof LengthExpr) ? variable(((LengthExpr) y).context) : null;
+		if (array != null){
+			if (strict && !array.equals(low))
+				facts.add(new Fact(BELOW, low, array));
+		} else if (high != null){
+			if (strict && !high.equals(low))
+				facts.add(new Fact(LESS, low, high));
+		} else if (isInt(y) && (strict || intOf(y) < Integer.MAX_VALUE)){
+			facts.add(new Fact(LESS, low, strict ? intOf(y) : intOf(y) + 1));
+		}
+	}
+
+	// the facts of <var> after it is assigned <rhs>, knowing <facts> before
+	private Set<Fact> assigned(Object var, Expr rhs, Set<Fact> facts){
+		Set<Fact> learned = new HashSet<Fact>();
+		Object from = variable(rhs);
+		if (isInt(rhs)){
+			if (intOf(rhs) >= 0)
+				learned.add(new Fact(NONNEG, var, null));
+			if (intOf(rhs) < Integer.MAX_VALUE)
+				learned.add(new Fact(LESS, var, intOf(rhs) + 1));
+		} else if (rhs instanceof NewArrayExpr){
+			// LIR allocates by the size in bytes, so a larger size may wrap around to a shorter array
+			Expr index = ((NewArrayExpr) rhs).index;
+			Object size = bound(index);
+			if (size != null && !size.equals(var) && (isInt(index) ? intOf(index) <= MAX_LENGTH : max(size, facts) <= MAX_LENGTH))
+				learned.add(new Fact(LENGTH, var, size));
+		} else if (rhs instanceof LengthExpr){
+			learned.add(new Fact(NONNEG, var, null));
+			Object array = variable(((LengthExpr) rhs).context);
+			if (array != null && !array.equals(var))
+				learned.add(new Fact(LENGTH, array, var));
+		} else if (from != null){
+			// a copy knows what the original knows
+			for (Fact f: facts){
+				if (f.var.equals(from) && !var.equals(f.bound))
+					learned.add(new Fact(f.kind, var, f.bound));
+				else if (from.equals(f.bound) && !f.var.equals(var))
+					learned.add(new Fact(f.kind, f.var, var));
+			}
+		} else if (rhs instanceof BinaryOpExpr){
+			BinaryOpExpr b = (BinaryOpExpr) rhs;
+			if (b.operator == BinaryOpsEnum.PLUS){
+				Expr step = isInt(b.leftOp) ? b.leftOp : b.rightOp;
+				Object w = variable(isInt(b.leftOp) ? b.rightOp : b.leftOp);
+				if (isInt(step) && w != null && intOf(step) >= 0 && nonNegative(w, facts)
+						&& max(w, facts) + intOf(step) <= Integer.MAX_VALUE)
+					learned.add(new Fact(NONNEG, var, null));
+			} else if (b.operator == BinaryOpsEnum.MINUS && isInt(b.rightOp) && intOf(b.rightOp) >= 0){
+				minus(var, b.leftOp, intOf(b.rightOp), facts, learned);
+			}
+		}
+		return learned;
+	}
+
+	// adds to <learned> the facts of <var> after it is assigned x - c, for c >= 0
+	private void minus(Object var, Expr x, int c, Set<Fact> facts, Set<Fact> learned){
+		if (x instanceof LengthExpr){
+			Object array = variable(((LengthExpr) x).context);
+			if (c > 0 && array != null && !array.equals(var))
+				learned.add(new Fact(BELOW, var, array));
+			return;
+		}
+		Object w = variable(x);
+		// w - c for a w >= 0 cannot overflow, and is at most w
+		if (w == null || !nonNegative(w, facts))
+			return;
+		for (Fact f: facts){
+			if (f.var.equals(w) && (f.kind == BELOW || f.kind == LESS) && !var.equals(f.bound))
+				learned.add(new Fact(f.kind, var, f.bound));
+			if (c > 0 && f.kind == LENGTH && w.equals(f.bound) && !f.var.equals(var))
+				learned.add(new Fact(BELOW, var, f.var));
+		}
+		if (c > 0 && !w.equals(var))
+			learned.add(new Fact(LESS, var, w));
+	}
+
+	// whether <index> is known to be in the bounds of the array variable <array>
+	private boolean inBounds(Expr index, Object array, Set<Fact> facts){
+		if (isInt(index)){
+			for (Fact f: facts){
+				if (f.kind == LENGTH && f.var.equals(array) && f.bound instanceof Integer
+						&& intOf(index) >= 0 && intOf(index) < (Integer) f.bound)
+					return true;
+			}
+			return false;
+		}
+		Object var = variable(index);
+		if (var == null || !nonNegative(var, facts))
+			return false;
+		if (facts.contains(new Fact(BELOW, var, array)))
+			return true;
+		// v < n and a.length == m, for n <= m
+		for (Fact f: facts){
+			if (f.kind != LESS || !f.var.equals(var))
+				continue;
+			for (Fact g: facts){
+				if (g.kind == LENGTH && g.var.equals(array) && (f.bound.equals(g.bound)
+						|| (f.bound instanceof Integer && g.bound instanceof Integer && (Integer) f.bound <= (Integer) g.bound)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean nonNegative(Object var, Set<Fact> facts){
+		if (facts.contains(new Fact(NONNEG, var, null)))
+			return true;
+		for (Fact f: facts){
+			if (f.kind == LENGTH && var.equals(f.bound))
+				return true;
+		}
+		return false;
+	}
+
+	// the largest value the int variable <var> may have, knowing <facts>
+	private static long max(Object var, Set<Fact> facts){
+		long max = Integer.MAX_VALUE;
+		for (Fact f: facts){
+			if (f.kind == BELOW && f.var.equals(var))
+				max = Math.min(max, MAX_LENGTH - 1);
+			else if (f.kind == LESS && f.var.equals(var))
+				max = Math.min(max, (f.bound instanceof Integer) ? (Integer) f.bound - 1L : Integer.MAX_VALUE - 1L);
+			else if (f.kind == LENGTH && var.equals(f.bound))
+				max = Math.min(max, MAX_LENGTH);
+		}
+		return max;
+	}
+
+	// whether the loop may change the variable or bound <key>
+	private static boolean changes(LoopEffects loop, Object key){
+		if (key == null || key instanceof Integer)
+			return false;
+		return loop.assigned.contains(name(key)) || (loop.calls && key instanceof String);
+	}
+
+	// whether the fact <f> of a variable the loop changes still holds at its head, as the loop
+	// only steps the variable, see above
+	private boolean counted(WhileStmt stmt, LoopEffects loop, Fact f){
+		if (f.var instanceof String || changes(loop, f.bound))
+			return false;
+		if (f.kind == NONNEG){
+			long up = loop.stepsUp(name(f.var)), below = runsBelow(stmt.condition, f.var);
+			return up >= 0 && below >= 0 && below - 1 + up <= Integer.MAX_VALUE;
+		}
+		if (f.kind == BELOW || f.kind == LESS){
+			long down = loop.stepsDown(name(f.var));
+			return down >= 0 && down <= Integer.MAX_VALUE && runsNonNegative(stmt.condition, f.var);
+		}
+		return false;
+	}
+
+	// the largest n such that <var> < n whenever <cond> is true, as one of the operands of
+	// the && at its top tells, or -1
+	private long runsBelow(Expr cond, Object var){
+		if (cond instanceof BinaryOpExpr && ((BinaryOpExpr) cond).operator == BinaryOpsEnum.LAND){
+			BinaryOpExpr b = (BinaryOpExpr) cond;
+			long left = runsBelow(b.leftOp, var), right = runsBelow(b.rightOp, var);
+			return (left < 0 || (right >= 0 && right < left)) ? right : left;
+		}
+		Expr[] compared = (cond instanceof BinaryOpExpr) ? compared((BinaryOpExpr) cond) : null;
+		if (compared == null || !var.equals(variable(compared[0])))
+			return -1;
+		boolean strict = (((BinaryOpExpr) cond).operator == BinaryOpsEnum.LT || ((BinaryOpExpr) cond).operator == BinaryOpsEnum.GT);
+		long n;
+		if (compared[1] instanceof LengthExpr)
+			n = MAX_LENGTH;
+		else if (isInt(compared[1]))
+			n = intOf(compared[1]);
+		else
+			n = Integer.MAX_VALUE;
+		return strict ? n : (n == Integer.MAX_VALUE ? -1 : n + 1);
+	}
+
+	// whether <var> >= 0 whenever <cond> is true, as one of the operands of the && at its top tells
+	private boolean runsNonNegative(Expr cond, Object var){
+		if (cond instanceof BinaryOpExpr && ((BinaryOpExpr) cond).operator == BinaryOpsEnum.LAND){
+			BinaryOpExpr b = (BinaryOpExpr) cond;
+			return runsNonNegative(b.leftOp, var) || runsNonNegative(b.rightOp, var);
+		}
+		Expr[] compared = (cond instanceof BinaryOpExpr) ? compared((BinaryOpExpr) cond) : null;
+		if (compared == null || !var.equals(variable(compared[1])) || !isInt(compared[0]))
+			return false;
+		boolean strict = (((BinaryOpExpr) cond).operator == BinaryOpsEnum.LT || ((BinaryOpExpr) cond).operator == BinaryOpsEnum.GT);
+		return intOf(compared[0]) >= (strict ? -1 : 0);
+	}
+
+	private static void forget(Set<Fact> facts, Object var){
+		for (Iterator<Fact> it = facts.iterator(); it.hasNext(); ){
+			if (it.next().mentions(var))
+				it.remove();
+		}
+	}
+
+	// fields of 'this' may be assigned by the called method
+	private static void forgetFields(Set<Fact> facts){
+		for (Iterator<Fact> it = facts.iterator(); it.hasNext(); ){
+			Fact f = it.next();
+			if (f.var instanceof String || f.bound instanceof String)
+				it.remove();
+		}
+	}
+
+	// the facts when the right operand <right> of && or || is true and when it is false, given
+	// the outcome <facts> of the left operand it is evaluated on. Never, if that never happens
+	private ConditionFacts<Fact> rightOperand(Expr right, Set<Fact> facts){
+		if (facts == null){
+			condition(right, new HashSet<Fact>());
+			return new ConditionFacts<Fact>(null, null);
+		}
+		return condition(right, facts);
+	}
+
+	// a variable or int literal, as a bound. null if <expr> is anything else
+	private Object bound(Expr expr){
+		return isInt(expr) ? Integer.valueOf(intOf(expr)) : variable(expr);
+	}
+
+	// the declaration of the local variable or parameter <expr> names, or the name of the
+	// field of 'this'. null if <expr> is anything else
+	private Object variable(Expr expr){
+		if (!(expr instanceof VarLocation))
+			return null;
+		VarLocation loc = (VarLocation) expr;
+		if (loc.location != null)
+			return (loc.location instanceof ThisExpr) ? loc.name : null;
+		for (Map<String, Object> scope: scopes){
+			Object decl = scope.get(loc.name);
+			if (decl != null)
+				return decl;
+		}
+		// not a local or parameter, so a field
+		return loc.name;
+	}
+
+	private static String name(Object var){
+		if (var instanceof Formal)
+			return ((Formal) var).name;
+		if (var instanceof LocalVarStmt)
+			return ((LocalVarStmt) var).name;
+		return (String) var;
+	}
+
+	private static boolean isInt(Expr expr){
+		return expr instanceof LiteralExpr && ((LiteralExpr) expr).type == LiteralsEnum.INTEGER;
+	}
+
+	private static int intOf(Expr expr){
+		return ((Number) ((LiteralExpr) expr).value).intValue();
+	}
+
+	// the facts known on both paths, where null is a path never taken
+	private static Set<Fact> meet(Set<Fact> a, Set<Fact> b){
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		Set<Fact> both = new HashSet<Fact>(a);
+		both.retainAll(b);
+		return both;
+	}
+}
@@ -0,0 +1,73 @@
+package optimizer;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * How often each method called each other method, for the Inliner to inline the hot calls.
+ * A profile file has a line "<caller class>.<method> <callee class>.<method> <count>" for each
+ * pair, where the class is the one that declares the method - lines that are empty or start
+ * with '#' are skipped. "slp -run -call-profile <file>" writes one.
+ */
+public class CallProfile {
+	private final Map<String, Long> counts = new TreeMap<String, Long>();
+	private long total;
+
+	public static CallProfile read(Reader reader) throws IOException{
+		CallProfile profile = new CallProfile();
+		BufferedReader in = new BufferedReader(reader);
+		int lineNumber = 0;
+		for (String line = in.readLine(); line != null; line = in.readLine()){
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] parts = line.split("\\s+");
+			try{
+				if (parts.length != 3 || parts[0].indexOf('.') <= 0 || parts[1].indexOf('.') <= 0)
+					throw new NumberFormatException();
+				profile.add(parts[0], parts[1], Long.parseLong(parts[2]));
+			} catch (NumberFormatException e){
+				throw new IOException("line "+lineNumber+" of the call profile is not '<class>.<method> <class>.<method> <count>': "+line);
+			}
+		}
+		return profile;
+	}
+
+	/** Adds <code>count</code> calls of <code>callee</code> from <code>caller</code>, both
+	 * given as <class>.<method>.
+	 */
+	public void add(String caller, String callee, long count){
+		String key = caller+" "+callee;
+		Long old = counts.get(key);
+		counts.put(key, (old == null) ? count : old + count);
+		total += count;
+	}
+
+	/** The number of calls of <code>callee</code> from <code>caller</code>, 0 if not in the profile.
+	 */
+	public long getCount(String caller, String callee){
+		Long count = counts.get(caller+" "+callee);
+		return (count == null) ? 0 : count;
+	}
+
+	/** The number of calls in the profile.
+	 */
+	public long getTotal(){
+		return total;
+	}
+
+	public void write(Writer out) throws IOException{
+		out.write(toString());
+	}
+
+	/** The profile in the format of a profile file, sorted by caller and callee.
+	 */
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> e: counts.entrySet())
+			sb.append(e.getKey()+" "+e.getValue()+"\n");
+		return sb.toString();
+	}
+}
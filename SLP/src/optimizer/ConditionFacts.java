@@ -0,0 +1,23 @@
+package optimizer;
+
+import java.util.Set;
+
+/**
+ * The facts that hold when a condition is true and when it is false, as found by the
+ * dataflow analyses of NullCheckEliminator and BoundsCheckEliminator. An outcome that never
+ * happens has null facts.
+ */
+class ConditionFacts<F> {
+	final Set<F> whenTrue;
+	final Set<F> whenFalse;
+
+	ConditionFacts(Set<F> whenTrue, Set<F> whenFalse){
+		this.whenTrue = whenTrue;
+		this.whenFalse = whenFalse;
+	}
+
+	// the facts of the negated condition
+	ConditionFacts<F> negated(){
+		return new ConditionFacts<F>(whenFalse, whenTrue);
+	}
+}
@@ -0,0 +1,518 @@
+package optimizer;
+
+import java.util.*;
+
+import semanticTypes.SemanticType;
+import slp.*;
+import slp.Class;
+import symbolTable.ClassSymbol;
+import symbolTable.SymbolTable;
+import symbolTable.VirtualTable;
+
+/**
+ * Inlines the calls of small methods: static calls of IC methods, and virtual calls of a
+ * method that no subclass of the static class of the receiver overrides - when the dispatch
+ * table of each of these classes has the same implementation at the offset of the method,
+ * the call can only reach that one.
+ *
+ * Only calls that make a statement of their own are inlined: a call statement, the right side
+ * of an assignment, the initializer of a local variable and the value of a return. The callee
+ * must have at most <budget> AST nodes, must not be the caller, and may only return by its
+ * last statement. The call becomes a block that declares the receiver and the parameters as
+ * locals, initialized by the receiver and the arguments in the order the call evaluates them,
+ * followed by the body of the callee, of which the value of the last return goes where the
+ * value of the call went. The receiver keeps the null check of the call, on its declaration.
+ * Calls are inlined from the bodies the methods had before any inlining, so the calls in an
+ * inlined body are not inlined in turn.
+ *
+ * The locals and parameters of the callee are renamed <name>$<site>_ - IC names cannot have
+ * a '$', so the LIR names <name><scope level> of the translation cannot clash with those of
+ * the caller. The fields of the callee are accessed through the receiver, as are the methods
+ * it calls on 'this'.
+ *
+ * With a call profile, only the hot calls are inlined - between methods that make at least 1%
+ * of the calls in the profile - and their callees may have twice the budget.
+ */
+public class Inliner {
+	/** The budget without -inline-budget: large enough for getters, setters and short loops.
+	 */
+	public static final int DEFAULT_BUDGET = 40;
+
+	private final SymbolTable symTab;
+	private final int budget;
+	private CallProfile profile;
+	private boolean sameClassOnly;
+	private Program program;
+	// the methods by <class>.<method>, of the class that declares them
+	private Map<String, Method> methods = new HashMap<String, Method>();
+	// whether a method can be inlined, whatever its size
+	private Map<Method, Boolean> inlinable = new HashMap<Method, Boolean>();
+	// whether a virtual method <class>.<method> is only implemented once in <class> and its subclasses
+	private Map<String, Boolean> monomorphic = new HashMap<String, Boolean>();
+	// the statements that replace each inlined call, found before any is replaced
+	private Map<Stmt, List<Stmt>> replacements = new IdentityHashMap<Stmt, List<Stmt>>();
+	private Class currentClass;
+	private Method currentMethod;
+	private int inlined;
+
+	/** An inliner of the methods of at most <code>budget</code> AST nodes.
+	 *
+	 * @param symTab The symbol table of the checked program, for its dispatch tables.
+	 */
+	public Inliner(SymbolTable symTab, int budget){
+		this.symTab = symTab;
+		this.budget = budget;
+	}
+
+	/** Inlines only the calls that are hot in <code>profile</code>, up to twice the budget.
+	 * Null (the default) inlines every call the budget allows.
+	 */
+	public void setProfile(CallProfile profile){
+		this.profile = profile;
+	}
+
+	/** Inlines only methods declared in the class of the caller, so that the code of a class
+	 * does not depend on the bodies of other classes - as incremental compilation requires.
+	 */
+	public void setSameClassOnly(boolean sameClassOnly){
+		this.sameClassOnly = sameClassOnly;
+	}
+
+	public void inline(Program program){
+		this.program = program;
+		for (Class cl: program.classes)
+			for (Method m: cl.methods)
+				methods.put(cl.name+"."+m.name, m);
+		for (Class cl: program.classes){
+			currentClass = cl;
+			for (Method m: cl.methods){
+				currentMethod = m;
+				find(m.statementList);
+			}
+		}
+		for (Class cl: program.classes)
+			for (Method m: cl.methods)
+				replace(m.statementList);
+		replacements.clear();
+	}
+
+	/** The number of calls inlined.
+	 */
+	public int getInlined(){
+		return inlined;
+	}
+
+	// finds the calls to inline in <stmts> and the statements under them
+	private void find(List<Stmt> stmts){
+		for (Stmt s: stmts)
+			find(s);
+	}
+
+	private void find(Stmt stmt){
+		if (stmt instanceof StmtList){
+			find(((StmtList) stmt).statements);
+		} else if (stmt instanceof IfStmt){
+			find(((IfStmt) stmt).thenStmt);
+			if (((IfStmt) stmt).elseStmt != null)
+				find(((IfStmt) stmt).elseStmt);
+		} else if (stmt instanceof WhileStmt){
+			find(((WhileStmt) stmt).thenStmt);
+		} else {
+			List<Stmt> replacement = inline(stmt);
+			if (replacement != null){
+				replacements.put(stmt, replacement);
+				inlined++;
+			}
+		}
+	}
+
+	// replaces the inlined calls in <stmts> and the statements under them
+	private void replace(List<Stmt> stmts){
+		for (ListIterator<Stmt> it = stmts.listIterator(); it.hasNext();){
+			Stmt s = it.next();
+			List<Stmt> replacement = replacements.get(s);
+			if (replacement != null){
+				it.remove();
+				for (Stmt r: replacement)
+					it.add(r);
+			} else {
+				Stmt r = replace(s);
+				if (r != s)
+					it.set(r);
+			}
+		}
+	}
+
+	// the statement that replaces <stmt> in a branch of an if or while
+	private Stmt replace(Stmt stmt){
+		List<Stmt> replacement = replacements.get(stmt);
+		if (replacement != null)
+			return (replacement.size() == 1) ? replacement.get(0) : new StmtList(stmt.line, replacement);
+		if (stmt instanceof StmtList){
+			replace(((StmtList) stmt).statements);
+		} else if (stmt instanceof IfStmt){
+			IfStmt s = (IfStmt) stmt;
+			Stmt thenStmt = replace(s.thenStmt);
+			Stmt elseStmt = (s.elseStmt != null) ? replace(s.elseStmt) : null;
+			if (thenStmt != s.thenStmt || elseStmt != s.elseStmt)
+				return new IfStmt(s.line, s.condition, thenStmt, elseStmt);
+		} else if (stmt instanceof WhileStmt){
+			WhileStmt s = (WhileStmt) stmt;
+			Stmt thenStmt = replace(s.thenStmt);
+			if (thenStmt != s.thenStmt)
+				return new WhileStmt(s.line, s.condition, thenStmt);
+		}
+		return stmt;
+	}
+
+	// the statements that replace <stmt> with the call in it inlined, or null if it has no
+	// call to inline
+	private List<Stmt> inline(Stmt stmt){
+		CallExpr call = null;
+		if (stmt instanceof CallStmt)
+			call = ((CallStmt) stmt).call;
+		else if (stmt instanceof AssignStmt && ((AssignStmt) stmt).rhs instanceof CallExpr)
+			call = (CallExpr) ((AssignStmt) stmt).rhs;
+		else if (stmt instanceof LocalVarStmt && ((LocalVarStmt) stmt).init instanceof CallExpr)
+			call = (CallExpr) ((LocalVarStmt) stmt).init;
+		else if (stmt instanceof ReturnStmt && ((ReturnStmt) stmt).expr instanceof CallExpr)
+			call = (CallExpr) ((ReturnStmt) stmt).expr;
+		if (call == null)
+			return null;
+
+		// the receiver of a virtual call, null for 'this'
+		Expr receiver = null;
+		String owner;
+		if (call instanceof StaticCall){
+			StaticCall sc = (StaticCall) call;
+			if (sc.className.equals("Library") || !(symTab.findEntryGlobal(sc.className) instanceof ClassSymbol))
+				return null;
+			owner = ((ClassSymbol) symTab.findEntryGlobal(sc.className)).getBaseClassOfStaticMethod(sc.funcName);
+		} else {
+			VirtCall vc = (VirtCall) call;
+			String className;
+			if (vc.location == null || vc.location instanceof ThisExpr){
+				if (currentMethod.isStatic)
+					return null;
+				className = currentClass.name;
+			} else {
+				if (vc.location.semanticType == null)
+					return null;
+				className = vc.location.semanticType.name;
+				receiver = vc.location;
+			}
+			owner = implementation(className, vc.funcName);
+		}
+		if (owner == null || (sameClassOnly && !owner.equals(currentClass.name)))
+			return null;
+		Method callee = methods.get(owner+"."+call.funcName);
+		if (callee == null || callee == currentMethod || callee.isStatic != (call instanceof StaticCall))
+			return null;
+		if (!isInlinable(callee) || NodeCounter.countNodes(callee) > budget(owner+"."+callee.name))
+			return null;
+
+		int site = inlined;
+		List<Stmt> block = new ArrayList<Stmt>();
+		String self = null;
+		SemanticType selfType = null;
+		if (receiver != null){
+			self = "this$"+site+"_";
+			selfType = receiver.semanticType;
+			LocalVarStmt decl = new LocalVarStmt(call.line, new ClassType(call.line, selfType.name), self, receiver);
+			decl.nullCheck = ((VirtCall) call).nullCheck;
+			block.add(decl);
+		}
+		Copier copier = new Copier(site, self, selfType);
+		for (int i = 0; i < call.args.size(); i++){
+			Formal formal = callee.formalList.get(i);
+			block.add(new LocalVarStmt(call.line, formal.type, copier.declare(formal.name), call.args.get(i)));
+		}
+		int n = callee.statementList.size();
+		Expr result = null;
+		for (int i = 0; i < n; i++){
+			Stmt s = callee.statementList.get(i);
+			if (i == n-1 && s instanceof ReturnStmt){
+				if (((ReturnStmt) s).expr != null)
+					result = copier.copy(((ReturnStmt) s).expr);
+			} else {
+				block.add(copier.copy(s));
+			}
+		}
+
+		List<Stmt> replacement = new ArrayList<Stmt>();
+		if (stmt instanceof CallStmt){
+			if (result instanceof CallExpr)
+				block.add(new CallStmt(call.line, (CallExpr) result));
+			else if (result != null && !ASTOptimizer.isPure(result))
+				block.add(new LocalVarStmt(call.line, callee.type, "result$"+site+"_", result));
+		} else if (stmt instanceof AssignStmt){
+			block.add(new AssignStmt(stmt.line, ((AssignStmt) stmt).lhs, result));
+		} else if (stmt instanceof LocalVarStmt){
+			LocalVarStmt s = (LocalVarStmt) stmt;
+			replacement.add(new LocalVarStmt(s.line, s.type, s.name));
+			VarLocation var = new VarLocation(s.line, s.name);
+			var.semanticType = call.semanticType;
+			block.add(new AssignStmt(s.line, var, result));
+		} else {
+			block.add(new ReturnStmt(stmt.line, result));
+		}
+		replacement.add(new StmtList(call.line, block));
+		return replacement;
+	}
+
+	// the class whose implementation of the virtual method <name> every object of class
+	// <className> runs, or null if that depends on the class of the object
+	private String implementation(String className, String name){
+		ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(className);
+		VirtualTable vt = cs.getVirtualTable();
+		int offset = vt.getOffset(name);
+		if (offset < 0)
+			return null;
+		Boolean known = monomorphic.get(className+"."+name);
+		if (known == null){
+			known = true;
+			String label = vt.getLabel(offset);
+			for (Class cl: program.classes)
+				if (isSubclass(cl.name, className) && !((ClassSymbol) symTab.findEntryGlobal(cl.name)).getVirtualTable().getLabel(offset).equals(label))
+					known = false;
+			monomorphic.put(className+"."+name, known);
+		}
+		return known ? vt.getOwner(offset) : null;
+	}
+
+	private boolean isSubclass(String name, String superName){
+		while (name != null && !name.equals(superName))
+			name = ((ClassSymbol) symTab.findEntryGlobal(name)).superName;
+		return name != null;
+	}
+
+	// the largest callee to inline at a call of <callee> from the current method
+	private long budget(String callee){
+		if (profile == null)
+			return budget;
+		long count = profile.getCount(currentClass.name+"."+currentMethod.name, callee);
+		return (count > 0 && count*100 >= profile.getTotal()) ? 2*budget : -1;
+	}
+
+	// whether <m> only returns by its last statement, with a value if it has one
+	private boolean isInlinable(Method m){
+		Boolean known = inlinable.get(m);
+		if (known == null){
+			int n = m.statementList.size();
+			Stmt last = (n > 0) ? m.statementList.get(n-1) : null;
+			boolean returns = last instanceof ReturnStmt && ((ReturnStmt) last).expr != null;
+			known = m.type.getName().equals("void") || returns;
+			for (int i = 0; i < n && known; i++)
+				if (i < n-1 || !(last instanceof ReturnStmt))
+					known = !hasReturn(m.statementList.get(i));
+			inlinable.put(m, known);
+		}
+		return known;
+	}
+
+	private static boolean hasReturn(Stmt stmt){
+		if (stmt instanceof ReturnStmt)
+			return true;
+		if (stmt instanceof StmtList){
+			for (Stmt s: ((StmtList) stmt).statements)
+				if (hasReturn(s))
+					return true;
+			return false;
+		}
+		if (stmt instanceof IfStmt)
+			return hasReturn(((IfStmt) stmt).thenStmt) || (((IfStmt) stmt).elseStmt != null && hasReturn(((IfStmt) stmt).elseStmt));
+		if (stmt instanceof WhileStmt)
+			return hasReturn(((WhileStmt) stmt).thenStmt);
+		return false;
+	}
+
+	/**
+	 * Copies the body of a callee to inline it at the call <site>: renames its parameters and
+	 * locals, and accesses its fields and calls its methods through <self> - a local of the
+	 * receiver, or 'this' when null. The copies keep the types and the runtime checks.
+	 */
+	private static class Copier implements PropagatingVisitor<Object, ASTNode> {
+		private final int site;
+		private final String self;
+		private final SemanticType selfType;
+		// the new names of the parameters and locals in scope, innermost scope first
+		private LinkedList<Map<String, String>> scopes = new LinkedList<Map<String, String>>();
+
+		Copier(int site, String self, SemanticType selfType){
+			this.site = site;
+			this.self = self;
+			this.selfType = selfType;
+			scopes.push(new HashMap<String, String>());
+		}
+
+		// the new name of a parameter or local <name> declared in the current scope
+		String declare(String name){
+			String fresh = name+"$"+site+"_";
+			scopes.peek().put(name, fresh);
+			return fresh;
+		}
+
+		Stmt copy(Stmt stmt){
+			return (Stmt) stmt.accept(this, null);
+		}
+
+		Expr copy(Expr expr){
+			return (Expr) expr.accept(this, null);
+		}
+
+		private List<Expr> copy(List<Expr> exprs){
+			List<Expr> copies = new ArrayList<Expr>();
+			for (Expr e: exprs)
+				copies.add(copy(e));
+			return copies;
+		}
+
+		// a branch of an if or while, in a scope of its own as the translation has it
+		private Stmt branch(Stmt stmt){
+			scopes.push(new HashMap<String, String>());
+			Stmt copy = copy(stmt);
+			scopes.pop();
+			return copy;
+		}
+
+		private Expr self(int line){
+			if (self == null)
+				return new ThisExpr(line);
+			VarLocation var = new VarLocation(line, self);
+			var.semanticType = selfType;
+			return var;
+		}
+
+		private static <T extends Expr> T typed(Expr from, T to){
+			to.semanticType = from.semanticType;
+			return to;
+		}
+
+		public ASTNode visit(Program program, Object d) { return program; }
+		public ASTNode visit(Class cl, Object d) { return cl; }
+		public ASTNode visit(Field field, Object d) { return field; }
+		public ASTNode visit(Formal formal, Object d) { return formal; }
+		public ASTNode visit(Type type, Object d) { return type; }
+		public ASTNode visit(Method method, Object d) { return method; }
+
+		public ASTNode visit(AssignStmt stmt, Object d) {
+			return new AssignStmt(stmt.line, (Location) copy(stmt.lhs), copy(stmt.rhs));
+		}
+
+		public ASTNode visit(ReturnStmt stmt, Object d) {
+			return new ReturnStmt(stmt.line, (stmt.expr != null) ? copy(stmt.expr) : null);
+		}
+
+		public ASTNode visit(StaticCall call, Object d) {
+			return typed(call, new StaticCall(call.line, call.className, call.funcName, copy(call.args)));
+		}
+
+		public ASTNode visit(VirtCall call, Object d) {
+			Expr location = (call.location != null) ? copy(call.location) : self(call.line);
+			VirtCall copy = typed(call, new VirtCall(call.line, location, call.funcName, copy(call.args)));
+			copy.nullCheck = call.nullCheck;
+			return copy;
+		}
+
+		public ASTNode visit(VarLocation loc, Object d) {
+			if (loc.location == null){
+				for (Map<String, String> scope: scopes)
+					if (scope.containsKey(loc.name))
+						return typed(loc, new VarLocation(loc.line, scope.get(loc.name)));
+			}
+			// a field, of 'this' if it has no location
+			Expr location = (loc.location != null) ? copy(loc.location) : self(loc.line);
+			VarLocation copy = typed(loc, new VarLocation(loc.line, location, loc.name));
+			copy.nullCheck = loc.nullCheck;
+			return copy;
+		}
+
+		public ASTNode visit(ArrayLocation loc, Object d) {
+			ArrayLocation copy = typed(loc, new ArrayLocation(loc.line, copy(loc.array), copy(loc.index)));
+			copy.nullCheck = loc.nullCheck;
+			copy.boundsCheck = loc.boundsCheck;
+			return copy;
+		}
+
+		public ASTNode visit(CallStmt stmt, Object d) {
+			return new CallStmt(stmt.line, (CallExpr) copy(stmt.call));
+		}
+
+		public ASTNode visit(StmtList stmts, Object d) {
+			scopes.push(new HashMap<String, String>());
+			List<Stmt> copies = new ArrayList<Stmt>();
+			for (Stmt s: stmts.statements)
+				copies.add(copy(s));
+			scopes.pop();
+			return new StmtList(stmts.line, copies);
+		}
+
+		public ASTNode visit(IfStmt stmt, Object d) {
+			Expr condition = copy(stmt.condition);
+			Stmt thenStmt = branch(stmt.thenStmt);
+			return new IfStmt(stmt.line, condition, thenStmt, (stmt.elseStmt != null) ? branch(stmt.elseStmt) : null);
+		}
+
+		public ASTNode visit(WhileStmt stmt, Object d) {
+			return new WhileStmt(stmt.line, copy(stmt.condition), branch(stmt.thenStmt));
+		}
+
+		public ASTNode visit(BreakStmt stmt, Object d) {
+			return new BreakStmt(stmt.line);
+		}
+
+		public ASTNode visit(ContinueStmt stmt, Object d) {
+			return new ContinueStmt(stmt.line);
+		}
+
+		public ASTNode visit(LocalVarStmt stmt, Object d) {
+			Expr init = (stmt.init != null) ? copy(stmt.init) : initial(stmt);
+			LocalVarStmt copy = new LocalVarStmt(stmt.line, stmt.type, declare(stmt.name), init);
+			copy.nullCheck = stmt.nullCheck;
+			return copy;
+		}
+
+		// the value a local without initializer has in a new frame - inlined in a loop, it
+		// would keep the value of the previous call
+		private static Expr initial(LocalVarStmt stmt){
+			String type = stmt.type.getName();
+			if (type.equals("int"))
+				return new LiteralExpr(stmt.line, LiteralsEnum.INTEGER, 0);
+			if (type.equals("boolean"))
+				return new LiteralExpr(stmt.line, LiteralsEnum.FALSE, false);
+			return new LiteralExpr(stmt.line, LiteralsEnum.NULL, null);
+		}
+
+		public ASTNode visit(ThisExpr expr, Object d) {
+			return self(expr.line);
+		}
+
+		public ASTNode visit(NewClassExpr expr, Object d) {
+			return typed(expr, new NewClassExpr(expr.line, expr.name));
+		}
+
+		public ASTNode visit(NewArrayExpr expr, Object d) {
+			return typed(expr, expr.withIndex(copy(expr.index)));
+		}
+
+		public ASTNode visit(LengthExpr expr, Object d) {
+			LengthExpr copy = typed(expr, new LengthExpr(expr.line, copy(expr.context)));
+			copy.nullCheck = expr.nullCheck;
+			return copy;
+		}
+
+		public ASTNode visit(LiteralExpr expr, Object d) {
+			return typed(expr, new LiteralExpr(expr.line, expr.type, expr.value));
+		}
+
+		public ASTNode visit(UnaryOpExpr expr, Object d) {
+			return typed(expr, new UnaryOpExpr(expr.line, expr.operator, copy(expr.rightOp)));
+		}
+
+		public ASTNode visit(BinaryOpExpr expr, Object d) {
+			BinaryOpExpr copy = typed(expr, new BinaryOpExpr(expr.line, copy(expr.leftOp), expr.operator, copy(expr.rightOp)));
+			copy.zeroCheck = expr.zeroCheck;
+			return copy;
+		}
+	}
+}
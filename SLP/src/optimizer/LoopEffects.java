@@ -0,0 +1,177 @@
+package optimizer;
+
+import java.util.*;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * What a loop may change: the names of the variables and fields it assigns or declares,
+ * and whether it calls IC methods. Also the variables it only steps by constants, as in
+ * i = i + 1 or i = i - 2, in its own body and not in loops nested in it, with the sum of
+ * their steps up and down in one iteration.
+ */
+class LoopEffects implements Visitor {
+	Set<String> assigned = new HashSet<String>();
+	boolean calls;
+	// the steps up and down of the variables stepped by constants, and the variables that are not
+	private Map<String, long[]> steps = new HashMap<String, long[]>();
+	private Set<String> irregular = new HashSet<String>();
+	// the loops entered, counting the loop itself
+	private int loops;
+
+	/** The sum of the steps up of <code>name</code> in one iteration, or -1 if it is not only
+	 * stepped up by constants.
+	 */
+	long stepsUp(String name){
+		long[] s = steps.get(name);
+		return (s == null || irregular.contains(name) || s[1] > 0) ? -1 : s[0];
+	}
+
+	/** The sum of the steps down of <code>name</code> in one iteration, or -1 if it is not only
+	 * stepped down by constants.
+	 */
+	long stepsDown(String name){
+		long[] s = steps.get(name);
+		return (s == null || irregular.contains(name) || s[0] > 0) ? -1 : s[1];
+	}
+
+	public void visit(Program program) { }
+	public void visit(Class cl) { }
+	public void visit(Field field) { }
+	public void visit(Formal formal) { }
+	public void visit(Type type) { }
+	public void visit(Method method) { }
+
+	public void visit(AssignStmt stmt) {
+		if (stmt.lhs instanceof VarLocation){
+			String name = ((VarLocation) stmt.lhs).name;
+			assigned.add(name);
+			Long step = step(stmt);
+			if (step == null || loops > 1){
+				irregular.add(name);
+			} else {
+				long[] s = steps.get(name);
+				if (s == null)
+					steps.put(name, s = new long[2]);
+				s[step >= 0 ? 0 : 1] += Math.abs(step);
+			}
+		}
+		stmt.lhs.accept(this);
+		stmt.rhs.accept(this);
+	}
+
+	// c for a statement v = v + c, -c for v = v - c, where c is an int literal
+	private static Long step(AssignStmt stmt){
+		VarLocation var = (VarLocation) stmt.lhs;
+		if (var.location != null || !(stmt.rhs instanceof BinaryOpExpr))
+			return null;
+		BinaryOpExpr b = (BinaryOpExpr) stmt.rhs;
+		if (b.operator == BinaryOpsEnum.PLUS && isVar(b.rightOp, var.name) && isInt(b.leftOp))
+			return (long) intOf(b.leftOp);
+		if (!isVar(b.leftOp, var.name) || !isInt(b.rightOp))
+			return null;
+		if (b.operator == BinaryOpsEnum.PLUS)
+			return (long) intOf(b.rightOp);
+		if (b.operator == BinaryOpsEnum.MINUS)
+			return -(long) intOf(b.rightOp);
+		return null;
+	}
+
+	private static boolean isVar(Expr expr, String name){
+		return expr instanceof VarLocation && ((VarLocation) expr).location == null && ((VarLocation) expr).name.equals(name);
+	}
+
+	private static boolean isInt(Expr expr){
+		return expr instanceof LiteralExpr && ((LiteralExpr) expr).type == LiteralsEnum.INTEGER;
+	}
+
+	private static int intOf(Expr expr){
+		return ((Number) ((LiteralExpr) expr).value).intValue();
+	}
+
+	public void visit(ReturnStmt stmt) {
+		if (stmt.expr != null)
+			stmt.expr.accept(this);
+	}
+
+	public void visit(StaticCall call) {
+		if (!call.className.equals("Library"))
+			calls = true;
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	public void visit(VirtCall call) {
+		calls = true;
+		if (call.location != null)
+			call.location.accept(this);
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	public void visit(VarLocation loc) {
+		if (loc.location != null)
+			loc.location.accept(this);
+	}
+
+	public void visit(ArrayLocation loc) {
+		loc.array.accept(this);
+		loc.index.accept(this);
+	}
+
+	public void visit(CallStmt stmt) {
+		stmt.call.accept(this);
+	}
+
+	public void visit(StmtList stmts) {
+		for (Stmt s: stmts.statements)
+			s.accept(this);
+	}
+
+	public void visit(IfStmt stmt) {
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt.accept(this);
+	}
+
+	public void visit(WhileStmt stmt) {
+		loops++;
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+		loops--;
+	}
+
+	public void visit(BreakStmt stmt) { }
+	public void visit(ContinueStmt stmt) { }
+
+	public void visit(LocalVarStmt stmt) {
+		assigned.add(stmt.name);
+		irregular.add(stmt.name);
+		if (stmt.init != null)
+			stmt.init.accept(this);
+	}
+
+	public void visit(ThisExpr expr) { }
+	public void visit(NewClassExpr expr) { }
+
+	public void visit(NewArrayExpr expr) {
+		expr.index.accept(this);
+	}
+
+	public void visit(LengthExpr expr) {
+		expr.context.accept(this);
+	}
+
+	public void visit(LiteralExpr expr) { }
+
+	public void visit(UnaryOpExpr expr) {
+		expr.rightOp.accept(this);
+	}
+
+	public void visit(BinaryOpExpr expr) {
+		expr.leftOp.accept(this);
+		expr.rightOp.accept(this);
+	}
+}
@@ -0,0 +1,409 @@
+package optimizer;
+
+import java.util.*;
+
+import slp.*;
+import slp.Class;
+
+/**
+ * Removes the null checks that can never fail, by a dataflow analysis over the control flow
+ * of each method. A local variable, parameter or field of 'this' is known to be non-null:
+ * - after it is assigned a new object or array, 'this', a string literal or another
+ *   variable known to be non-null,
+ * - after it was checked (a failed check ends the program),
+ * - in the branch where it compared unequal to null,
+ * until it is assigned again. A field of 'this' is also forgotten when a field of the same
+ * name of any object is assigned, and at every call of an IC method, which may assign it -
+ * Library functions never do. At the joins of if statements and at the exits of loops, a
+ * variable is known to be non-null if it is on every path that reaches there. At the head of
+ * a loop, the variables known on entry stay known, except those the loop may change.
+ *
+ * The right operand of && and || is evaluated only when the left one does not decide, and is
+ * looked at knowing what holds on that outcome of the left one, as in a != null && a.f.
+ *
+ * A fact set holds the declarations (Formal or LocalVarStmt) of the locals and parameters
+ * known to be non-null, and the names of such fields of 'this'. Statements take the facts
+ * before them and return the facts after them, or null when they never complete normally.
+ * Expressions change the facts they are given.
+ */
+public class NullCheckEliminator implements PropagatingVisitor<Set<Object>, Set<Object>> {
+	private int removed;
+	// the declarations of the names in scope, innermost scope first
+	private Deque<Map<String, Object>> scopes = new ArrayDeque<Map<String, Object>>();
+	// the facts at the breaks of each loop around, innermost loop first
+	private Deque<List<Set<Object>>> breaks = new ArrayDeque<List<Set<Object>>>();
+
+	public void eliminate(Program program){
+		program.accept(this, null);
+	}
+
+	/** The number of null checks removed.
+	 */
+	public int getRemoved(){
+		return removed;
+	}
+
+	@Override
+	public Set<Object> visit(Program program, Set<Object> facts) {
+		for (Class cl: program.classes)
+			cl.accept(this, null);
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(Class cl, Set<Object> facts) {
+		for (Method m: cl.methods)
+			m.accept(this, null);
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(Field field, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(Formal formal, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(Type type, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(Method method, Set<Object> facts) {
+		scopes.clear();
+		Map<String, Object> params = new HashMap<String, Object>();
+		for (Formal f: method.formalList)
+			params.put(f.name, f);
+		scopes.push(params);
+		block(method.statementList, new HashSet<Object>());
+		scopes.pop();
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(AssignStmt stmt, Set<Object> facts) {
+		// the right side is translated first
+		stmt.rhs.accept(this, facts);
+		stmt.lhs.accept(this, facts);
+		Object var = variable(stmt.lhs);
+		if (var != null){
+			if (nonNull(stmt.rhs, facts))
+				facts.add(var);
+			else
+				facts.remove(var);
+		} else if (stmt.lhs instanceof VarLocation){
+			// a field of some object, which may be 'this'
+			facts.remove(((VarLocation) stmt.lhs).name);
+		}
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(ReturnStmt stmt, Set<Object> facts) {
+		if (stmt.expr != null)
+			stmt.expr.accept(this, facts);
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(CallStmt stmt, Set<Object> facts) {
+		stmt.call.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(StmtList stmt, Set<Object> facts) {
+		return block(stmt.statements, facts);
+	}
+
+	@Override
+	public Set<Object> visit(IfStmt stmt, Set<Object> facts) {
+		ConditionFacts<Object> cond = condition(stmt.condition, facts);
+		Set<Object> thenFacts = branch(stmt.thenStmt, cond.whenTrue);
+		Set<Object> elseFacts = (stmt.elseStmt != null) ? branch(stmt.elseStmt, cond.whenFalse) : cond.whenFalse;
+		return meet(thenFacts, elseFacts);
+	}
+
+	@Override
+	public Set<Object> visit(WhileStmt stmt, Set<Object> facts) {
+		LoopEffects loop = new LoopEffects();
+		stmt.accept(loop);
+		for (Iterator<Object> it = facts.iterator(); it.hasNext(); ){
+			Object var = it.next();
+			if (loop.assigned.contains(name(var)) || (loop.calls && var instanceof String))
+				it.remove();
+		}
+		ConditionFacts<Object> cond = condition(stmt.condition, facts);
+		breaks.push(new ArrayList<Set<Object>>());
+		branch(stmt.thenStmt, cond.whenTrue);
+		Set<Object> exit = cond.whenFalse;
+		for (Set<Object> b: breaks.pop())
+			exit = meet(exit, b);
+		return exit;
+	}
+
+	@Override
+	public Set<Object> visit(BreakStmt stmt, Set<Object> facts) {
+		if (!breaks.isEmpty())
+			breaks.peek().add(new HashSet<Object>(facts));
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(ContinueStmt stmt, Set<Object> facts) {
+		return null;
+	}
+
+	@Override
+	public Set<Object> visit(LocalVarStmt stmt, Set<Object> facts) {
+		if (stmt.init != null)
+			stmt.init.accept(this, facts);
+		// a variable whose initializer is checked is non-null after the check
+		boolean checked = stmt.nullCheck;
+		if (checked)
+			stmt.nullCheck = check(true, stmt.init, facts);
+		scopes.peek().put(stmt.name, stmt);
+		if (stmt.init != null && (checked || nonNull(stmt.init, facts)))
+			facts.add(stmt);
+		else
+			facts.remove(stmt);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(StaticCall call, Set<Object> facts) {
+		for (Expr arg: call.args)
+			arg.accept(this, facts);
+		if (!call.className.equals("Library"))
+			forgetFields(facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(VirtCall call, Set<Object> facts) {
+		if (call.location != null){
+			call.location.accept(this, facts);
+			call.nullCheck = check(call.nullCheck, call.location, facts);
+		}
+		for (Expr arg: call.args)
+			arg.accept(this, facts);
+		forgetFields(facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(VarLocation loc, Set<Object> facts) {
+		if (loc.location != null){
+			loc.location.accept(this, facts);
+			loc.nullCheck = check(loc.nullCheck, loc.location, facts);
+		}
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(ArrayLocation loc, Set<Object> facts) {
+		loc.array.accept(this, facts);
+		loc.nullCheck = check(loc.nullCheck, loc.array, facts);
+		loc.index.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(ThisExpr expr, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(NewClassExpr expr, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(NewArrayExpr expr, Set<Object> facts) {
+		expr.index.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(LengthExpr expr, Set<Object> facts) {
+		expr.context.accept(this, facts);
+		expr.nullCheck = check(expr.nullCheck, expr.context, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(LiteralExpr expr, Set<Object> facts) {
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(UnaryOpExpr expr, Set<Object> facts) {
+		expr.rightOp.accept(this, facts);
+		return facts;
+	}
+
+	@Override
+	public Set<Object> visit(BinaryOpExpr expr, Set<Object> facts) {
+		if (expr.operator == BinaryOpsEnum.LAND || expr.operator == BinaryOpsEnum.LOR){
+			// what holds whether it is true or false, see condition
+			ConditionFacts<Object> c = condition(expr, facts);
+			facts.clear();
+			facts.addAll(meet(c.whenTrue, c.whenFalse));
+			return facts;
+		}
+		expr.leftOp.accept(this, facts);
+		expr.rightOp.accept(this, facts);
+		return facts;
+	}
+
+	// the facts after a list of statements, in a scope of their own
+	private Set<Object> block(List<Stmt> statements, Set<Object> facts){
+		scopes.push(new HashMap<String, Object>());
+		for (Stmt s: statements)
+			facts = reach(s, facts);
+		scopes.pop();
+		return facts;
+	}
+
+	// the branch of an if or while statement, in a scope of its own
+	private Set<Object> branch(Stmt stmt, Set<Object> facts){
+		scopes.push(new HashMap<String, Object>());
+		facts = reach(stmt, facts);
+		scopes.pop();
+		return facts;
+	}
+
+	// the facts after a statement, where null facts before it mean it is never reached. Its
+	// checks are still looked at, knowing nothing, and it never completes either
+	private Set<Object> reach(Stmt stmt, Set<Object> facts){
+		if (facts == null){
+			stmt.accept(this, new HashSet<Object>());
+			return null;
+		}
+		return stmt.accept(this, facts);
+	}
+
+	// the facts when a condition is true and when it is false (null for never), given the
+	// facts before it. The two sets are new
+	private ConditionFacts<Object> condition(Expr cond, Set<Object> facts){
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).type == LiteralsEnum.TRUE)
+			return new ConditionFacts<Object>(new HashSet<Object>(facts), null);
+		if (cond instanceof LiteralExpr && ((LiteralExpr) cond).type == LiteralsEnum.FALSE)
+			return new ConditionFacts<Object>(null, new HashSet<Object>(facts));
+		if (cond instanceof UnaryOpExpr && ((UnaryOpExpr) cond).operator == UnaryOpsEnum.LNEG){
+			return condition(((UnaryOpExpr) cond).rightOp, facts).negated();
+		}
+		if (cond instanceof BinaryOpExpr){
+			BinaryOpExpr b = (BinaryOpExpr) cond;
+			// the right operand is evaluated only when the left one does not decide
+			if (b.operator == BinaryOpsEnum.LAND){
+				ConditionFacts<Object> left = condition(b.leftOp, facts);
+				ConditionFacts<Object> right = rightOperand(b.rightOp, left.whenTrue);
+				return new ConditionFacts<Object>(right.whenTrue, meet(left.whenFalse, right.whenFalse));
+			}
+			if (b.operator == BinaryOpsEnum.LOR){
+				ConditionFacts<Object> left = condition(b.leftOp, facts);
+				ConditionFacts<Object> right = rightOperand(b.rightOp, left.whenFalse);
+				return new ConditionFacts<Object>(meet(left.whenTrue, right.whenTrue), right.whenFalse);
+			}
+			if (b.operator == BinaryOpsEnum.EQUAL || b.operator == BinaryOpsEnum.NEQUAL){
+				cond.accept(this, facts);
+				Set<Object> whenTrue = new HashSet<Object>(facts), whenFalse = new HashSet<Object>(facts);
+				Object var = null;
+				if (isNull(b.rightOp))
+					var = variable(b.leftOp);
+				else if (isNull(b.leftOp))
+					var = variable(b.rightOp);
+				if (var != null)
+					(b.operator == BinaryOpsEnum.NEQUAL ? whenTrue : whenFalse).add(var);
+				return new ConditionFacts<Object>(whenTrue, whenFalse);
+			}
+		}
+		cond.accept(this, facts);
+		return new ConditionFacts<Object>(new HashSet<Object>(facts), new HashSet<Object>(facts));
+	}
+
+	// the facts when the right operand <right> of && or || is true and when it is false, given
+	// the outcome <facts> of the left operand it is evaluated on. Never, if that never happens
+	private ConditionFacts<Object> rightOperand(Expr right, Set<Object> facts){
+		if (facts == null){
+			condition(right, new HashSet<Object>());
+			return new ConditionFacts<Object>(null, null);
+		}
+		return condition(right, facts);
+	}
+
+	// fields of 'this' may be assigned by the called method
+	private static void forgetFields(Set<Object> facts){
+		for (Iterator<Object> it = facts.iterator(); it.hasNext(); ){
+			if (it.next() instanceof String)
+				it.remove();
+		}
+	}
+
+	// whether a check of <expr> is still needed, knowing <facts> before it. After the check,
+	// the checked variable is known to be non-null
+	private boolean check(boolean needed, Expr expr, Set<Object> facts){
+		if (needed && nonNull(expr, facts)){
+			removed++;
+			needed = false;
+		}
+		Object var = variable(expr);
+		if (var != null)
+			facts.add(var);
+		return needed;
+	}
+
+	private boolean nonNull(Expr expr, Set<Object> facts){
+		if (expr instanceof ThisExpr || expr instanceof NewClassExpr || expr instanceof NewArrayExpr)
+			return true;
+		if (expr instanceof LiteralExpr)
+			return ((LiteralExpr) expr).type == LiteralsEnum.QUOTE;
+		Object var = variable(expr);
+		return var != null && facts.contains(var);
+	}
+
+	// what the facts hold for the variable <expr> names: the declaration of a local variable
+	// or parameter, or the name of a field of 'this'. null if <expr> is anything else
+	private Object variable(Expr expr){
+		if (!(expr instanceof VarLocation))
+			return null;
+		VarLocation loc = (VarLocation) expr;
+		if (loc.location != null)
+			return (loc.location instanceof ThisExpr) ? loc.name : null;
+		for (Map<String, Object> scope: scopes){
+			Object decl = scope.get(loc.name);
+			if (decl != null)
+				return decl;
+		}
+		// not a local or parameter, so a field
+		return loc.name;
+	}
+
+	private static String name(Object var){
+		if (var instanceof Formal)
+			return ((Formal) var).name;
+		if (var instanceof LocalVarStmt)
+			return ((LocalVarStmt) var).name;
+		return (String) var;
+	}
+
+	private static boolean isNull(Expr expr){
+		return expr instanceof LiteralExpr && ((LiteralExpr) expr).type == LiteralsEnum.NULL;
+	}
+
+	// the facts known on both paths, where null is a path never taken
+	private static Set<Object> meet(Set<Object> a, Set<Object> b){
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		Set<Object> both = new HashSet<Object>(a);
+		both.retainAll(b);
+		return both;
+	}
+}
@@ -4,6 +4,11 @@ package semanticTypes;
 public class SClassType extends SemanticType {
 	public final String superName;
 	private TypeTable typeTable;
+	
+	// position in the hierarchy index of the type table, see TypeTable.isSubclass.
+	// id is -1 for class types that are not the unique ones of a type table
+	int id = -1;
+	int pre, post;
 
 	// for a class without a superclass
 	public SClassType(String name) throws SemanticError{
@@ -23,16 +28,8 @@ public class SClassType extends SemanticType {
 	public boolean isLike(SemanticType other){
 		if (this == other) return true;
 		
-		if (other instanceof SClassType){
-			if(typeTable != null){
-				try{
-					return typeTable.resolveClassType(superName).isLike(other);
-				}
-				catch (SemanticError se){
-					return false;
-				}
-			}
-		}
+		if (other instanceof SClassType && typeTable != null)
+			return typeTable.isSubclass(this, (SClassType) other);
 		return false;
 	}
-}
\ No newline at end of file
+}
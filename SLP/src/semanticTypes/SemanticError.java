@@ -8,6 +8,11 @@ public class SemanticError extends Exception {
 		this.value = value;
 	}
 
+	// the name the error is about
+	public String getValue(){
+		return value;
+	}
+
 	public String toString(){
 		return "Semantic error: "+this.getMessage()+": "+value;
 	}
@@ -16,6 +16,10 @@ public class TypeTable {
 	
 	// user defined types
 	private Map<String, SClassType> classes = new HashMap<String,SClassType>();
+	
+	// hierarchy index: user defined types by id, and whether their pre/post numbers are up to date
+	private List<SClassType> classIds = new ArrayList<SClassType>();
+	private boolean indexed;
      
 	// returns a unique semantic type object, representing the type defined in the parameter
 	public SemanticType resolveType(String name) throws SemanticError{
@@ -63,12 +67,75 @@ public class TypeTable {
     		throw new SemanticError("class already defined", name);
     	if (superName != null && !classes.containsKey(superName)) 
     		throw new SemanticError("super class is undefined", superName);
-    	SClassType classType;
-    	if (superName != null)
-    		classType = new SClassType(name, superName, this);
-    	else
-    		classType = new SClassType(name);
+    	SClassType classType = new SClassType(name, superName, this);
+    	classType.id = classIds.size();
+    	classIds.add(classType);
     	classes.put(name, classType);
+    	indexed = false;
+    }
+    
+    // returns true iff SUB is SUP or derived from it. Each class gets the numbers of its entry
+    // and exit in a depth first walk of the inheritance forest, so that the classes derived from
+    // a class are those whose numbers lie within its own - a check that does not depend on the
+    // depth of the hierarchy.
+    boolean isSubclass(SClassType sub, SClassType sup){
+    	if (sup.id < 0)
+    		return false;
+    	if (sub.id < 0){
+    		// a class type made outside this table (by a ClassSymbol) is only like the
+    		// unique types of its superclasses
+    		if (sub.superName == null)
+    			return false;
+    		sub = classes.get(sub.superName);
+    	}
+    	if (!indexed)
+    		indexHierarchy();
+    	return sup.pre <= sub.pre && sub.post <= sup.post;
+    }
+    
+    // numbers the classes in a depth first walk of the inheritance forest. Superclasses are
+    // defined before their subclasses, so the classes come in an order that has parents first
+    private void indexHierarchy(){
+    	int n = classIds.size();
+    	int[] firstChild = new int[n], nextSibling = new int[n], lastChild = new int[n];
+    	Arrays.fill(firstChild, -1);
+    	Arrays.fill(nextSibling, -1);
+    	List<Integer> roots = new ArrayList<Integer>();
+    	for (SClassType c: classIds){
+    		if (c.superName == null){
+    			roots.add(c.id);
+    			continue;
+    		}
+    		int parent = classes.get(c.superName).id;
+    		if (firstChild[parent] < 0)
+    			firstChild[parent] = c.id;
+    		else
+    			nextSibling[lastChild[parent]] = c.id;
+    		lastChild[parent] = c.id;
+    	}
+    	
+    	// iterative, as hierarchies may be deeper than the call stack
+    	int counter = 0;
+    	int[] stack = new int[n];
+    	for (int root: roots){
+    		int top = 0;
+    		stack[top++] = root;
+    		classIds.get(root).pre = counter++;
+    		while (top > 0){
+    			int c = stack[top-1];
+    			// firstChild is consumed as the walk goes: it points at the next child to enter
+    			int child = firstChild[c];
+    			if (child >= 0){
+    				firstChild[c] = nextSibling[child];
+    				classIds.get(child).pre = counter++;
+    				stack[top++] = child;
+    			} else {
+    				classIds.get(c).post = counter++;
+    				top--;
+    			}
+    		}
+    	}
+    	indexed = true;
     }
     
     // returns true iff the parameter is a previously-seen array type
@@ -3,6 +3,11 @@ package slp;
 public class ArrayLocation extends Location {
 	public final Expr array;
 	public final Expr index;
+	/** Whether the translation checks the array for null, and the index against its bounds.
+	 * Cleared by optimizations that prove the check can never fail.
+	 */
+	public boolean nullCheck = true;
+	public boolean boundsCheck = true;
 
 	public ArrayLocation(int line, Expr array, Expr index) {
 		super(line);
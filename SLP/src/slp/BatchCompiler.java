@@ -0,0 +1,279 @@
+package slp;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import LIR.StringLiteralPool;
+
+/** Compiles many IC files in one process, each file <name>.ic into its own <name>.lir.
+ * The files are independent of each other, so they can be compiled concurrently by a
+ * fixed pool of worker threads. Every file is compiled by its own {@link Compiler},
+ * so no compiler state is shared between files, and the status lines are printed in
+ * input order - the output does not depend on the number of threads.
+ * 
+ * In an output directory, the files found under a directory keep their path below it. Two
+ * inputs that would write the same .lir file fail, the first one of them excepted.
+ * 
+ * With a shared strings file, the string literals of all files are defined once, in that
+ * file, and the .lir files refer to them. The literals are numbered in input order, as the
+ * files finish compiling.
+ */
+public class BatchCompiler {
+	private final List<File> inputs = new ArrayList<File>();
+	// the path of each input below the directory it was found in, or its name
+	private final List<String> relativePaths = new ArrayList<String>();
+	private String outDir = null;
+	private int threads = 1;
+	// the string literals of all files, when shared
+	private File stringsFile = null;
+	private StringLiteralPool strings;
+
+	// the outcome of compiling a single file
+	private static class FileResult {
+		File in, out;
+		Throwable error;
+		double millis;
+		// when strings are shared, the code is written once its literals are numbered
+		String code;
+		StringLiteralPool literals;
+	}
+
+	/** Adds a file to compile, or all .ic files under it when it is a directory (sorted by name).
+	 */
+	public void addInput(File f) {
+		addInput(f, f.isDirectory() ? "" : f.getName());
+	}
+
+	private void addInput(File f, String relativePath) {
+		if (f.isDirectory()) {
+			File[] files = f.listFiles();
+			Arrays.sort(files);
+			for (File child: files) {
+				if (child.isDirectory() || child.getName().endsWith(".ic"))
+					addInput(child, relativePath.isEmpty() ? child.getName() : relativePath+File.separator+child.getName());
+			}
+		} else {
+			inputs.add(f);
+			relativePaths.add(relativePath);
+		}
+	}
+
+	public List<File> getInputs() {
+		return inputs;
+	}
+
+	/** Sets the directory the .lir files are written to. By default each one is written next to its source.
+	 */
+	public void setOutputDir(String outDir) {
+		this.outDir = outDir;
+	}
+
+	/** Sets the number of worker threads. 0 means one thread per available core.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Defines the string literals of all files once, in <code>file</code>, instead of in each .lir file.
+	 * A .lir file runs with the shared strings file in front of it.
+	 */
+	public void setStringsFile(File file) {
+		this.stringsFile = file;
+	}
+
+	/** Compiles all input files, printing a status line per file and a summary to <code>log</code>.
+	 *
+	 * @return The number of files that failed to compile.
+	 */
+	public int run(PrintStream log) {
+		if (outDir != null)
+			new File(outDir).mkdirs();
+
+		long batchStart = System.nanoTime();
+		strings = (stringsFile != null) ? new StringLiteralPool() : null;
+		List<FileResult> results = (threads == 1) ? compileSequential() : compileParallel();
+		IOException stringsError = (strings != null) ? writeStrings() : null;
+		double seconds = (System.nanoTime()-batchStart)/1e9;
+
+		int failed = 0;
+		long sourceBytes = 0;
+		for (FileResult r: results) {
+			if (r.error == null) {
+				sourceBytes += r.in.length();
+				log.printf("[ok]   %s -> %s (%.1f ms)%n", r.in.getPath(), r.out.getPath(), r.millis);
+			} else {
+				failed++;
+				log.printf("[fail] %s: %s%n", r.in.getPath(), r.error);
+			}
+		}
+
+		if (stringsError != null) {
+			failed++;
+			log.printf("[fail] %s: %s%n", stringsFile.getPath(), stringsError);
+		}
+
+		log.println();
+		if (strings != null)
+			log.printf("%d string literals shared in %s (%d in the files)%n", strings.size(), stringsFile.getPath(), literals(results));
+		log.printf("%d files compiled, %d failed, in %.1f ms (%d thread%s)%n", results.size()-failed, failed, seconds*1000, threads, threads == 1 ? "" : "s");
+		log.printf("throughput: %.1f files/s, %.1f KB/s of source%n", results.size()/seconds, sourceBytes/1024.0/seconds);
+		return failed;
+	}
+
+	// the .lir file of each input, or null for an input whose .lir file an earlier input writes
+	private List<File> outputs(List<FileResult> duplicates) {
+		List<File> outputs = new ArrayList<File>();
+		Map<File, File> writers = new HashMap<File, File>();
+		for (int i = 0; i < inputs.size(); i++) {
+			File out = lirFileFor(inputs.get(i), relativePaths.get(i), outDir);
+			File first = writers.get(out.getAbsoluteFile());
+			if (first == null) {
+				writers.put(out.getAbsoluteFile(), inputs.get(i));
+				outputs.add(out);
+			} else {
+				FileResult r = new FileResult();
+				r.in = inputs.get(i);
+				r.out = out;
+				r.error = new IOException("writes "+out.getPath()+", as "+first.getPath()+" does");
+				duplicates.set(i, r);
+				outputs.add(null);
+			}
+		}
+		return outputs;
+	}
+
+	private List<FileResult> compileSequential() {
+		List<FileResult> results = new ArrayList<FileResult>(Collections.<FileResult>nCopies(inputs.size(), null));
+		List<File> outputs = outputs(results);
+		for (int i = 0; i < inputs.size(); i++) {
+			if (outputs.get(i) != null)
+				results.set(i, finish(compileFile(inputs.get(i), outputs.get(i))));
+		}
+		return results;
+	}
+
+	private List<FileResult> compileParallel() {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<FileResult> results = new ArrayList<FileResult>(Collections.<FileResult>nCopies(inputs.size(), null));
+			List<File> outputs = outputs(results);
+			List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+			for (int i = 0; i < inputs.size(); i++) {
+				final File in = inputs.get(i), out = outputs.get(i);
+				futures.add(out == null ? null : pool.submit(new Callable<FileResult>() {
+					public FileResult call() {
+						return compileFile(in, out);
+					}
+				}));
+			}
+			// collect in input order, whatever order the files finished in
+			for (int i = 0; i < futures.size(); i++) {
+				if (futures.get(i) != null)
+					results.set(i, finish(futures.get(i).get()));
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private FileResult compileFile(File in, File out) {
+		FileResult r = new FileResult();
+		r.in = in;
+		r.out = out;
+		long start = System.nanoTime();
+		try {
+			if (outDir != null)
+				out.getParentFile().mkdirs();
+			if (strings == null) {
+				Compiler.compile(in.getPath(), r.out.getPath());
+			} else {
+				Compiler compiler = new Compiler();
+				compiler.setFileName(in.getPath());
+				Reader source = new FileReader(in);
+				try {
+					compiler.parse(source);
+				} finally {
+					source.close();
+				}
+				compiler.check();
+				compiler.optimize();
+				compiler.setSharedStrings(true);
+				StringBuilder code = new StringBuilder();
+				compiler.translate(code);
+				r.code = code.toString();
+				r.literals = compiler.getStringLiterals();
+			}
+		} catch (Exception e) {
+			r.error = e;
+		} catch (Error e) {
+			// e.g. a StackOverflowError on a deeply nested program - the other files go on
+			r.error = e;
+		}
+		r.millis = (System.nanoTime()-start)/1e6;
+		return r;
+	}
+
+	// number the literals of a compiled file in the shared strings and write its code. Called
+	// in input order, so the numbers do not depend on the number of threads
+	private FileResult finish(FileResult r) {
+		if (r.code == null)
+			return r;
+		try {
+			Writer out = new BufferedWriter(new FileWriter(r.out));
+			try {
+				out.write(strings.merge(r.code, r.literals));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			r.error = e;
+		}
+		r.code = null;
+		return r;
+	}
+
+	// write the shared strings file, returning the error if it failed
+	private IOException writeStrings() {
+		try {
+			Writer out = new BufferedWriter(new FileWriter(stringsFile));
+			try {
+				out.write(strings.sectionCode());
+			} finally {
+				out.close();
+			}
+			return null;
+		} catch (IOException e) {
+			return e;
+		}
+	}
+
+	// the number of string literals of the compiled files, counting each file's own
+	private static int literals(List<FileResult> results) {
+		int n = 0;
+		for (FileResult r: results) {
+			if (r.literals != null)
+				n += r.literals.size();
+		}
+		return n;
+	}
+
+	// the .lir output file of source file <in>, found at <relativePath> below its input directory
+	static File lirFileFor(File in, String relativePath, String outDir) {
+		String name = (outDir != null) ? relativePath : in.getName();
+		if (name.endsWith(".ic"))
+			name = name.substring(0, name.length()-3);
+		name += ".lir";
+		return outDir != null ? new File(outDir, name) : new File(in.getParentFile(), name);
+	}
+}
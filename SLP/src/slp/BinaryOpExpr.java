@@ -4,6 +4,10 @@ public class BinaryOpExpr extends Expr {
 	public final Expr leftOp;
 	public final BinaryOpsEnum operator;
 	public final Expr rightOp;
+	/** Whether the translation of a division checks the divisor for zero.
+	 * Cleared by optimizations that prove it never is.
+	 */
+	public boolean zeroCheck = true;
 
 	public BinaryOpExpr(int line, Expr leftOp, BinaryOpsEnum operator, Expr rightOp) {
 		super(line);
@@ -0,0 +1,70 @@
+package slp;
+
+import java.io.*;
+import java.net.*;
+
+/** Thin client of the {@link CompileServer}. Takes the same arguments as <code>slp</code>,
+ * writes output.lir into the current directory and prints what <code>slp</code> would print.
+ */
+public class CompileClient {
+
+	/** @param args [-p port] followed by the name of the file containing an IC,
+	 *              "-" to send the program text from standard input, or -shutdown.
+	 */
+	public static void main(String[] args) {
+		int port = CompileServer.DEFAULT_PORT;
+		int i = 0;
+		if (args.length > 1 && args[0].equals("-p")) {
+			port = Integer.parseInt(args[1]);
+			i = 2;
+		}
+		if (args.length != i+1) {
+			System.out.println("Error: Missing input file argument!");
+			System.out.println("Usage: slpc [-p <port>] <filename>|-|-shutdown");
+			System.exit(-1);
+		}
+
+		String request;
+		try {
+			if (args[i].equals("-shutdown")) {
+				request = "SHUTDOWN\n";
+			} else if (args[i].equals("-")) {
+				String source = readAll(new InputStreamReader(System.in, "UTF-8"));
+				request = "SOURCE "+source.length()+"\n"+source;
+			} else {
+				request = "FILE\n"+new File(args[i]).getAbsolutePath()+"\n"+new File("output.lir").getAbsolutePath()+"\n";
+			}
+		} catch (IOException e) {
+			System.out.println("Failed reading the program: "+e);
+			System.exit(1);
+			return;
+		}
+
+		try {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			out.write(request);
+			out.flush();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			String status = in.readLine();
+			System.out.print(readAll(in));
+			System.out.flush();
+			socket.close();
+			if (!"OK".equals(status))
+				System.exit(1);
+		} catch (IOException e) {
+			System.out.println("Cannot reach the compile server on port "+port+": "+e);
+			System.exit(1);
+		}
+	}
+
+	private static String readAll(Reader in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[8192];
+		int n;
+		while ((n = in.read(buf)) != -1)
+			sb.append(buf, 0, n);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,35 @@
+package slp;
+
+import java.util.List;
+
+/** Thrown by the compiler when the program has syntax or semantic errors.
+ */
+public class CompileError extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final Diagnostics diagnostics;
+
+	public CompileError(Diagnostics diagnostics) {
+		super(null, null, false, false);
+		this.diagnostics = diagnostics;
+	}
+
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+
+	/** The first error, and how many more there are.
+	 */
+	@Override
+	public String getMessage() {
+		List<Diagnostic> list = diagnostics.getDiagnostics();
+		if (list.isEmpty())
+			return "compilation failed";
+		return list.get(0)+(list.size() > 1 ? " (and "+(list.size()-1)+" more errors)" : "");
+	}
+
+	@Override
+	public String toString() {
+		return getMessage();
+	}
+}
@@ -0,0 +1,175 @@
+package slp;
+
+import java.io.*;
+import java.net.*;
+
+/** A long-running compile server. It keeps the compiler classes loaded and JIT-compiled
+ * between compilations, so a compile request doesn't pay for JVM startup and warm-up.
+ * The server listens on a localhost port and handles one request per connection,
+ * one connection at a time.
+ *
+ * Protocol (UTF-8 text):
+ * <pre>
+ *   FILE\n&lt;input path&gt;\n&lt;output path&gt;\n   compile a file and write its LIR into the output path
+ *   SOURCE &lt;n&gt;\n&lt;n characters of IC source&gt;   compile the given program text
+ *   SHUTDOWN\n                                      stop the server
+ * </pre>
+ * The response is a status line, <code>OK</code> or <code>ERROR</code>, followed by everything
+ * the compilation printed - the same text <code>slp &lt;filename&gt;</code> prints: the semantic check
+ * result or the diagnostics, and the LIR listing. The server then closes the connection.
+ * A request that cannot be served, or that stops sending for READ_TIMEOUT_MS, is answered
+ * with <code>ERROR</code> and the reason.
+ */
+public class CompileServer {
+	public static final int DEFAULT_PORT = 7171;
+	// how long a request may leave the server waiting for its next bytes
+	private static final int READ_TIMEOUT_MS = 30000;
+
+	private final ServerSocket serverSocket;
+
+	public CompileServer(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/** Serves compile requests until a SHUTDOWN request arrives.
+	 */
+	public void serve() throws IOException {
+		System.out.println("Compile server listening on "+serverSocket.getLocalSocketAddress());
+		boolean running = true;
+		while (running) {
+			Socket client = serverSocket.accept();
+			try {
+				// a stalled client would block the clients after it
+				client.setSoTimeout(READ_TIMEOUT_MS);
+				running = handle(client);
+			} catch (SocketTimeoutException e) {
+				System.out.println("Request failed: "+e);
+				reject(client, "Request timed out");
+			} catch (IOException e) {
+				System.out.println("Request failed: "+e);
+				reject(client, e.toString());
+			} catch (RuntimeException e) {
+				// a malformed request fails alone, the server goes on
+				System.out.println("Request failed: "+e);
+				reject(client, e.toString());
+			} catch (Error e) {
+				System.out.println("Request failed: "+e);
+				reject(client, e.toString());
+			} finally {
+				client.close();
+			}
+		}
+		serverSocket.close();
+		System.out.println("Compile server stopped");
+	}
+
+	// handle a single request. Returns false when the server should stop
+	private boolean handle(Socket client) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+		Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), "UTF-8"));
+
+		String command = in.readLine();
+		if (command == null)
+			return true;
+		if (command.equals("SHUTDOWN")) {
+			out.write("OK\n");
+			out.flush();
+			return false;
+		}
+
+		File input = null, output = null;
+		boolean temporary = false;
+		try {
+			if (command.equals("FILE")) {
+				String inputPath = in.readLine(), outputPath = in.readLine();
+				if (inputPath == null || outputPath == null) {
+					reject(client, "FILE needs an input and an output path");
+					return true;
+				}
+				input = new File(inputPath);
+				output = new File(outputPath);
+			} else if (command.startsWith("SOURCE ")) {
+				int length;
+				try {
+					length = Integer.parseInt(command.substring(7).trim());
+				} catch (NumberFormatException e) {
+					length = -1;
+				}
+				if (length < 0) {
+					reject(client, "SOURCE needs the length of the source text: "+command);
+					return true;
+				}
+				input = File.createTempFile("slp", ".ic");
+				output = File.createTempFile("slp", ".lir");
+				temporary = true;
+				// copied in chunks, so the length the client gives costs no memory
+				char[] buffer = new char[8192];
+				int read = 0;
+				Writer w = new OutputStreamWriter(new FileOutputStream(input), "UTF-8");
+				try {
+					while (read < length) {
+						int n = in.read(buffer, 0, Math.min(buffer.length, length-read));
+						if (n < 0)
+							break;
+						w.write(buffer, 0, n);
+						read += n;
+					}
+				} finally {
+					w.close();
+				}
+				if (read < length) {
+					reject(client, "SOURCE text ended after "+read+" of "+length+" characters");
+					return true;
+				}
+			} else {
+				reject(client, "Unknown request: "+command);
+				return true;
+			}
+
+			long start = System.nanoTime();
+			ByteArrayOutputStream console = new ByteArrayOutputStream();
+			boolean ok = compile(input, output, new PrintStream(console, true, "UTF-8"));
+			System.out.printf("%s %s (%.1f ms)%n", ok ? "compiled" : "failed  ", temporary ? "<source>" : input.getPath(), (System.nanoTime()-start)/1e6);
+
+			out.write(ok ? "OK\n" : "ERROR\n");
+			out.write(console.toString("UTF-8"));
+			out.flush();
+			return true;
+		} finally {
+			if (temporary) {
+				input.delete();
+				output.delete();
+			}
+		}
+	}
+
+	// answer a request that cannot be served with ERROR and the reason
+	private static void reject(Socket client, String reason) {
+		try {
+			Writer out = new OutputStreamWriter(client.getOutputStream(), "UTF-8");
+			out.write("ERROR\n"+reason+"\n");
+			out.flush();
+		} catch (IOException e) {
+			System.out.println("Failed answering the request: "+e);
+		}
+	}
+
+	// compile like the command line does, with everything it prints going to <console>.
+	// Requests are handled one at a time, so redirecting the standard streams is safe.
+	private boolean compile(File input, File output, PrintStream console) {
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		System.setOut(console);
+		System.setErr(console);
+		try {
+			return Main.compileFile(input, output.getPath());
+		} catch (Error e) {
+			// e.g. a StackOverflowError on a deeply nested program - the server has to outlive it
+			console.println("Compilation failed: "+e);
+			return false;
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package slp;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/** The time and memory each phase of a compilation took, and the size of what it made.
+ * For each phase it keeps the wall time, the CPU time and the bytes allocated by the thread
+ * that compiled, as far as the JVM can tell (-1 when it cannot).
+ */
+public class CompileStats {
+
+	/** The cost of one phase.
+	 */
+	public static class Phase {
+		public final String name;
+		public long wallNanos, cpuNanos, allocatedBytes;
+
+		Phase(String name) {
+			this.name = name;
+		}
+	}
+
+	private final List<Phase> phases = new ArrayList<Phase>();
+	private Phase current;
+	private long wallStart, cpuStart, allocatedStart;
+
+	// -1 until the phase that counts it has run
+	private long astNodes = -1, symbols = -1, instructions = -1, labels = -1;
+	private int maxRegister = -1;
+
+	/** Starts timing <code>phase</code>, ending the phase before it if it still runs.
+	 */
+	public void start(String phase) {
+		if (current != null)
+			stop();
+		current = new Phase(phase);
+		wallStart = System.nanoTime();
+		cpuStart = cpuTime();
+		allocatedStart = allocatedBytes();
+	}
+
+	/** Ends the phase that runs.
+	 */
+	public void stop() {
+		if (current == null)
+			return;
+		long wall = System.nanoTime(), cpu = cpuTime(), allocated = allocatedBytes();
+		current.wallNanos = wall - wallStart;
+		current.cpuNanos = (cpu < 0 || cpuStart < 0) ? -1 : cpu - cpuStart;
+		current.allocatedBytes = (allocated < 0 || allocatedStart < 0) ? -1 : allocated - allocatedStart;
+		phases.add(current);
+		current = null;
+	}
+
+	/** Wraps <code>out</code> so the time spent in it is counted as <code>phase</code>, and not
+	 * as the phase that runs while it is written, e.g. when a translation streams into a file.
+	 * The phase is added when the writer is closed.
+	 */
+	public Writer timed(String phase, Writer out) {
+		return new TimedWriter(new Phase(phase), out);
+	}
+
+	private class TimedWriter extends Writer {
+		private final Phase phase;
+		private final Writer out;
+		private boolean closed = false;
+		private long wall, cpu, allocated;
+
+		TimedWriter(Phase phase, Writer out) {
+			this.phase = phase;
+			this.out = out;
+		}
+
+		public void write(char[] buf, int off, int len) throws IOException {
+			begin();
+			try {
+				out.write(buf, off, len);
+			} finally {
+				end();
+			}
+		}
+
+		public void flush() throws IOException {
+			begin();
+			try {
+				out.flush();
+			} finally {
+				end();
+			}
+		}
+
+		public void close() throws IOException {
+			begin();
+			try {
+				out.close();
+			} finally {
+				end();
+				if (!closed)
+					phases.add(phase);
+				closed = true;
+			}
+		}
+
+		private void begin() {
+			wall = System.nanoTime();
+			cpu = cpuTime();
+			allocated = allocatedBytes();
+		}
+
+		// moves the time since begin() from the phase that runs into this one
+		private void end() {
+			long dWall = System.nanoTime() - wall;
+			long c = cpuTime(), a = allocatedBytes();
+			long dCpu = (c < 0 || cpu < 0) ? -1 : c - cpu;
+			long dAllocated = (a < 0 || allocated < 0) ? -1 : a - allocated;
+			phase.wallNanos += dWall;
+			phase.cpuNanos = (dCpu < 0 || phase.cpuNanos < 0) ? -1 : phase.cpuNanos + dCpu;
+			phase.allocatedBytes = (dAllocated < 0 || phase.allocatedBytes < 0) ? -1 : phase.allocatedBytes + dAllocated;
+			if (current != null) {
+				wallStart += dWall;
+				if (dCpu >= 0 && cpuStart >= 0)
+					cpuStart += dCpu;
+				if (dAllocated >= 0 && allocatedStart >= 0)
+					allocatedStart += dAllocated;
+			}
+		}
+	}
+
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(phases);
+	}
+
+	/** The sum of all phases.
+	 */
+	public Phase getTotal() {
+		Phase total = new Phase("total");
+		for (Phase p: phases) {
+			total.wallNanos += p.wallNanos;
+			total.cpuNanos = (p.cpuNanos < 0 || total.cpuNanos < 0) ? -1 : total.cpuNanos + p.cpuNanos;
+			total.allocatedBytes = (p.allocatedBytes < 0 || total.allocatedBytes < 0) ? -1 : total.allocatedBytes + p.allocatedBytes;
+		}
+		return total;
+	}
+
+	public void setAstNodes(long astNodes) {
+		this.astNodes = astNodes;
+	}
+
+	public long getAstNodes() {
+		return astNodes;
+	}
+
+	public void setSymbols(long symbols) {
+		this.symbols = symbols;
+	}
+
+	public long getSymbols() {
+		return symbols;
+	}
+
+	public void setInstructions(long instructions) {
+		this.instructions = instructions;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	public void setLabels(long labels) {
+		this.labels = labels;
+	}
+
+	public long getLabels() {
+		return labels;
+	}
+
+	public void setMaxRegister(int maxRegister) {
+		this.maxRegister = maxRegister;
+	}
+
+	public int getMaxRegister() {
+		return maxRegister;
+	}
+
+	/** Prints a table of the phases, and the counts, for people to read.
+	 */
+	public void print(PrintStream out) {
+		out.println("Compilation statistics");
+		out.println("======================");
+		out.printf("%-12s %12s %12s %16s%n", "phase", "wall ms", "cpu ms", "allocated KB");
+		for (Phase p: phases)
+			print(out, p);
+		print(out, getTotal());
+		out.println("AST nodes: "+count(astNodes)+", symbols: "+count(symbols)
+				+", LIR instructions: "+count(instructions)+", labels: "+count(labels)
+				+", max register: "+(maxRegister < 0 ? "n/a" : "R"+maxRegister));
+	}
+
+	private static void print(PrintStream out, Phase p) {
+		out.printf(Locale.ROOT, "%-12s %12.3f %12s %16s%n", p.name, p.wallNanos / 1e6,
+				p.cpuNanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.3f", p.cpuNanos / 1e6),
+				p.allocatedBytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", p.allocatedBytes / 1024.0));
+	}
+
+	private static String count(long n) {
+		return n < 0 ? "n/a" : ""+n;
+	}
+
+	/** Writes the phases and the counts as a JSON object, for tools to read. Times are in
+	 * nanoseconds, and what is not known is null.
+	 *
+	 * @param file The compiled file, written along.
+	 */
+	public void writeJson(Writer out, String file) throws IOException {
+		out.write("{\n");
+		out.write("  \"file\": \""+file.replace("\\", "\\\\").replace("\"", "\\\"")+"\",\n");
+		out.write("  \"phases\": [\n");
+		for (int i = 0; i < phases.size(); i++) {
+			out.write("    "+json(phases.get(i)));
+			out.write(i < phases.size()-1 ? ",\n" : "\n");
+		}
+		out.write("  ],\n");
+		out.write("  \"total\": "+json(getTotal())+",\n");
+		out.write("  \"astNodes\": "+json(astNodes)+",\n");
+		out.write("  \"symbols\": "+json(symbols)+",\n");
+		out.write("  \"lirInstructions\": "+json(instructions)+",\n");
+		out.write("  \"labels\": "+json(labels)+",\n");
+		out.write("  \"maxRegister\": "+json(maxRegister)+"\n");
+		out.write("}\n");
+	}
+
+	private static String json(Phase p) {
+		return "{\"phase\": \""+p.name+"\", \"wallNanos\": "+p.wallNanos+", \"cpuNanos\": "+json(p.cpuNanos)
+				+", \"allocatedBytes\": "+json(p.allocatedBytes)+"}";
+	}
+
+	private static String json(long n) {
+		return n < 0 ? "null" : ""+n;
+	}
+
+	// CPU time of this thread so far, or -1
+	private static long cpuTime() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isCurrentThreadCpuTimeSupported())
+			return -1;
+		return threads.getCurrentThreadCpuTime();
+	}
+
+	// bytes allocated by this thread so far, or -1
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
@@ -0,0 +1,410 @@
+package slp;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import JFR.ParseEvent;
+import semanticTypes.*;
+import symbolTable.*;
+import optimizer.ASTOptimizer;
+import optimizer.CallProfile;
+import optimizer.Inliner;
+import LIR.InstructionCounter;
+import LIR.LIRTranslator;
+import LIR.RegisterAllocator;
+import LIR.StringLiteralPool;
+import LIR.TranslationCache;
+
+/** Runs the compilation phases (Lexer, Parser, SemanticChecker, LIRTranslator) of a single IC program.
+ * Every instance keeps its own AST, symbol table and type table, so a new instance
+ * should be used for each compiled file.
+ */
+public class Compiler {
+	private Program root;
+	private SymbolTable symTab = new SymbolTable();
+	private TypeTable typTab = new TypeTable();
+	// code of classes from previous compilations, see IncrementalCompiler
+	protected TranslationCache cache;
+	private boolean optimize;
+	private ASTOptimizer optimizer;
+	private int registers;
+	private boolean inlineChecks;
+	private RegisterAllocator allocator;
+	private FieldProfile fieldProfile;
+	private int inlineBudget = Inliner.DEFAULT_BUDGET;
+	private CallProfile callProfile;
+	private boolean sharedStrings;
+	private StringLiteralPool stringLiterals;
+	private Diagnostics diagnostics = new Diagnostics();
+	private CompileStats stats;
+	private String fileName;
+
+	/** Parses an IC program.
+	 *
+	 * @param source Reader holding the program text.
+	 * @return The root of the AST.
+	 * @throws CompileError If the program has a lexical or syntax error.
+	 */
+	public Program parse(Reader source) throws Exception {
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		try {
+			return parseProgram(source);
+		} catch (Lexer.Lexception e) {
+			diagnostics.add(new Diagnostic(Diagnostic.Kind.LEXICAL, e.line, e.column, "lexical", e.message));
+			throw new CompileError(diagnostics);
+		} finally {
+			if (event.shouldCommit()) {
+				event.file = fileName;
+				if (root != null) {
+					event.classes = root.classes.size();
+					event.statements = NodeCounter.countStatements(root);
+				}
+				event.errors = diagnostics.getDiagnostics().size();
+				event.commit();
+			}
+		}
+	}
+	
+	private Program parseProgram(Reader source) throws Exception {
+		Lexer scanner = new Lexer(source);
+		Parser parser;
+		if (stats == null) {
+			parser = new Parser(scanner);
+		} else {
+			// lex the whole program first, so the lexer is timed apart from the parser
+			stats.start("lex");
+			final List<java_cup.runtime.Symbol> tokens = new ArrayList<java_cup.runtime.Symbol>();
+			try {
+				java_cup.runtime.Symbol token;
+				do {
+					token = scanner.next_token();
+					tokens.add(token);
+				} while (token.sym != sym.EOF);
+			} finally {
+				// a lexical error ends the phase too
+				stats.stop();
+			}
+			stats.start("parse");
+			parser = new Parser(new java_cup.runtime.Scanner() {
+				private int next = 0;
+
+				public java_cup.runtime.Symbol next_token() {
+					if (next < tokens.size())
+						return tokens.get(next++);
+					// the parser takes each token once, so EOF is made again when asked for again
+					java_cup.runtime.Symbol eof = tokens.get(tokens.size()-1);
+					return new java_cup.runtime.Symbol(eof.sym, eof.left, eof.right);
+				}
+			});
+		}
+		parser.setDiagnostics(diagnostics);
+		try {
+			root = (Program) parser.parse().value;
+		} finally {
+			if (stats != null)
+				stats.stop();
+		}
+		root.setFileName(fileName);
+		if (stats != null)
+			stats.setAstNodes(NodeCounter.count(root));
+		return root;
+	}
+	
+	/** Sets the name of the file the program is read from, for the events of the compilation.
+	 */
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+	
+	public String getFileName() {
+		return fileName;
+	}
+	
+	/** Times each phase into <code>stats</code>, and counts what they make. By default (null)
+	 * nothing is timed.
+	 */
+	public void setStats(CompileStats stats) {
+		this.stats = stats;
+	}
+	
+	public CompileStats getStats() {
+		return stats;
+	}
+
+	/** The root of the AST, or null before parsing.
+	 */
+	public Program getRoot() {
+		return root;
+	}
+	
+	/** Sets the number of errors after which checking stops, see Diagnostics.setMaxErrors.
+	 */
+	public void setMaxErrors(int maxErrors) {
+		diagnostics.setMaxErrors(maxErrors);
+	}
+	
+	/** The errors found in the program so far.
+	 */
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+	
+	/** Runs the semantic checks on the parsed program.
+	 * 
+	 * @throws CompileError If the program has semantic errors.
+	 */
+	public void check() throws CompileError {
+		if (stats != null)
+			stats.start("check");
+		try {
+			checkProgram();
+		} finally {
+			if (stats != null)
+				stats.stop();
+		}
+		if (stats != null)
+			stats.setSymbols(symTab.getAddedCount());
+	}
+	
+	private void checkProgram() throws CompileError {
+		SemanticChecker checker = new SemanticChecker(root, symTab, typTab, diagnostics);
+		if (cache != null)
+			checker.skipClassBodies(cache.getCachedClassNames());
+		checker.start();
+		if (diagnostics.hasErrors())
+			throw new CompileError(diagnostics);
+		if (fieldProfile != null) {
+			// superclasses are declared before their subclasses, so their layouts come first
+			for (Class cl: root.classes)
+				((ClassSymbol) symTab.findEntryGlobal(cl.name)).layoutFields(fieldProfile);
+		}
+	}
+	
+	/** Lays out the fields of each class the most accessed first in <code>profile</code>, when
+	 * the program is checked. By default (null) fields are laid out in the order they are declared.
+	 */
+	public void setFieldProfile(FieldProfile profile) {
+		this.fieldProfile = profile;
+	}
+	
+	public FieldProfile getFieldProfile() {
+		return fieldProfile;
+	}
+	
+	/** Turns the field accesses counted by a run of the translated program (see
+	 * LIRInterpreter.profileFields) into a profile by the class that declares each field.
+	 */
+	public FieldProfile fieldProfile(Map<String, long[]> accesses) {
+		FieldProfile profile = new FieldProfile();
+		for (Map.Entry<String, long[]> e: accesses.entrySet()) {
+			FieldLayout layout = ((ClassSymbol) symTab.findEntryGlobal(e.getKey())).getLayout();
+			long[] counts = e.getValue();
+			for (int offset = 1; offset < counts.length && offset <= layout.size(); offset++) {
+				if (counts[offset] > 0)
+					profile.add(layout.getOwner(offset), layout.getField(offset).name, counts[offset]);
+			}
+		}
+		return profile;
+	}
+
+	/** Turns the call counts of a run of the translated program (see LIRInterpreter.profileCalls),
+	 * by the labels of the callers and callees, into a profile by <class>.<method>.
+	 */
+	public CallProfile callProfile(Map<String, Map<String, Long>> calls) {
+		Map<String, String> methods = new HashMap<String, String>();
+		for (Class cl: root.classes) {
+			for (Method m: cl.methods) {
+				methods.put("_"+cl.name+"_"+m.name, cl.name+"."+m.name);
+				if (m.isStatic && m.name.equals("main"))
+					methods.put("_ic_main", cl.name+"."+m.name);
+			}
+		}
+		CallProfile profile = new CallProfile();
+		for (Map.Entry<String, Map<String, Long>> e: calls.entrySet()) {
+			String caller = methods.get(e.getKey());
+			for (Map.Entry<String, Long> c: e.getValue().entrySet()) {
+				String callee = methods.get(c.getKey());
+				if (caller != null && callee != null)
+					profile.add(caller, callee, c.getValue());
+			}
+		}
+		return profile;
+	}
+
+	/** Turns the optimizations of {@link #optimize()} on or off (the default).
+	 */
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+	
+	public boolean isOptimizing() {
+		return optimize;
+	}
+	
+	/** Optimizes the checked program, if optimizations are on.
+	 */
+	public void optimize() {
+		if (!optimize)
+			return;
+		if (stats != null)
+			stats.start("optimize");
+		optimizer = new ASTOptimizer();
+		if (inlineBudget > 0) {
+			Inliner inliner = new Inliner(symTab, inlineBudget);
+			inliner.setProfile(callProfile);
+			// the cached code of a class must not depend on the bodies of the others
+			inliner.setSameClassOnly(cache != null);
+			optimizer.setInliner(inliner);
+		}
+		optimizer.optimize(root);
+		if (stats != null)
+			stats.stop();
+	}
+	
+	/** Inlines the calls of methods of at most <code>budget</code> AST nodes when optimizing,
+	 * see Inliner. 0 inlines none.
+	 */
+	public void setInlineBudget(int budget) {
+		this.inlineBudget = budget;
+	}
+	
+	public int getInlineBudget() {
+		return inlineBudget;
+	}
+	
+	/** Inlines only the calls that are hot in <code>profile</code> when optimizing, up to twice
+	 * the budget. By default (null) every call the budget allows is inlined.
+	 */
+	public void setCallProfile(CallProfile profile) {
+		this.callProfile = profile;
+	}
+	
+	public CallProfile getCallProfile() {
+		return callProfile;
+	}
+	
+	/** The optimizer that optimized the program, or null.
+	 */
+	public ASTOptimizer getOptimizer() {
+		return optimizer;
+	}
+	
+	/** Sets the size of the register file the registers of each method are allocated onto.
+	 * 0 (the default) keeps the registers as the translator numbers them.
+	 */
+	public void setRegisters(int registers) {
+		this.registers = registers;
+	}
+	
+	public int getRegisters() {
+		return registers;
+	}
+	
+	/** Translates each runtime check into a compare and a jump to an error stub of its method,
+	 * instead of a call of the check helper (the default) - faster, but larger code.
+	 */
+	public void setInlineChecks(boolean inlineChecks) {
+		this.inlineChecks = inlineChecks;
+	}
+	
+	public boolean isInliningChecks() {
+		return inlineChecks;
+	}
+	
+	/** The register allocator of the last translation, or null.
+	 */
+	public RegisterAllocator getRegisterAllocator() {
+		return allocator;
+	}
+	
+	/** Counts the instructions of the program's translation, without writing it anywhere.
+	 * The classes taken from the cache count with their cached code, as their bodies are not
+	 * checked.
+	 */
+	public InstructionCounter count() throws IOException {
+		if (stats != null)
+			stats.start("count");
+		InstructionCounter counter = new InstructionCounter(null);
+		LIRTranslator translator = new LIRTranslator(root, symTab, typTab, counter);
+		translator.setInlineChecks(inlineChecks);
+		if (cache != null)
+			translator.setCache(cache, false);
+		if (registers > 0)
+			translator.setRegisterAllocator(new RegisterAllocator(registers));
+		translator.translate();
+		if (stats != null)
+			stats.stop();
+		return counter;
+	}
+	
+	/** Translates the checked program to LIR.
+	 *
+	 * @param out Where the LIR code is written to.
+	 */
+	public void translate(Appendable out) throws IOException {
+		if (stats == null) {
+			translateProgram(out);
+			return;
+		}
+		stats.start("translate");
+		InstructionCounter counter = new InstructionCounter(out);
+		try {
+			translateProgram(counter);
+		} finally {
+			stats.stop();
+		}
+		stats.setInstructions(counter.getCount());
+		stats.setLabels(counter.getLabels());
+		stats.setMaxRegister(counter.getMaxRegister());
+	}
+	
+	private void translateProgram(Appendable out) throws IOException {
+		LIRTranslator translator = new LIRTranslator(root, symTab, typTab, out);
+		translator.setCache(cache);
+		allocator = (registers > 0) ? new RegisterAllocator(registers) : null;
+		translator.setRegisterAllocator(allocator);
+		translator.setSharedStrings(sharedStrings);
+		translator.setInlineChecks(inlineChecks);
+		translator.translate();
+		stringLiterals = translator.getStringLiterals();
+	}
+	
+	/** Translates the program for a string literals section shared with other programs, see
+	 * LIRTranslator.setSharedStrings.
+	 */
+	public void setSharedStrings(boolean sharedStrings) {
+		this.sharedStrings = sharedStrings;
+	}
+	
+	/** The string literals of the last translation, or null.
+	 */
+	public StringLiteralPool getStringLiterals() {
+		return stringLiterals;
+	}
+
+	/** Compiles the IC program in <code>inputFile</code> into LIR code in <code>outputFile</code>.
+	 */
+	public static void compile(String inputFile, String outputFile) throws Exception {
+		Compiler compiler = new Compiler();
+		compiler.setFileName(inputFile);
+		Reader source = new FileReader(inputFile);
+		try {
+			compiler.parse(source);
+		} finally {
+			source.close();
+		}
+		compiler.check();
+		compiler.optimize();
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(outputFile));
+		try {
+			compiler.translate(out);
+		} finally {
+			out.close();
+		}
+	}
+}
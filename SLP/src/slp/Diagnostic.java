@@ -0,0 +1,44 @@
+package slp;
+
+/** An error found in an IC program, by the lexer, the parser or the semantic checker.
+ */
+public class Diagnostic {
+	public enum Kind { LEXICAL, SYNTAX, SEMANTIC }
+
+	public final Kind kind;
+	/** The line of the error, or -1 if not known.
+	 */
+	public final int line;
+	/** The column of the error, or -1 if not known (the AST keeps lines only).
+	 */
+	public final int column;
+	/** Names the check that failed, such as "undefined-variable" - stable, unlike the message.
+	 */
+	public final String code;
+	public final String message;
+
+	public Diagnostic(Kind kind, int line, int column, String code, String message) {
+		this.kind = kind;
+		this.line = line;
+		this.column = column;
+		this.code = code;
+		this.message = message;
+	}
+
+	/** The error as the command line prints it.
+	 */
+	@Override
+	public String toString() {
+		if (kind == Kind.LEXICAL)
+			return line+": Lexical error: "+message;
+		if (kind == Kind.SEMANTIC)
+			return line+": Semantic error: "+message;
+		StringBuilder m = new StringBuilder("Error");
+		if (line >= 0) {
+			m.append(" in line "+line);
+			if (column >= 0)
+				m.append(", column "+column);
+		}
+		return m.append(" : "+message).toString();
+	}
+}
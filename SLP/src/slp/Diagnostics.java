@@ -0,0 +1,54 @@
+package slp;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/** The errors found in a program, in the order they were found. The same error (kind, line
+ * and message) is kept only once, so an error seen again while checking goes unreported.
+ */
+public class Diagnostics {
+	public static final int DEFAULT_MAX_ERRORS = 100;
+
+	private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+	private final Set<String> seen = new HashSet<String>();
+	private int maxErrors = DEFAULT_MAX_ERRORS;
+
+	/** Sets the number of errors after which checking stops. 0 means no limit.
+	 */
+	public void setMaxErrors(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
+	public int getMaxErrors() {
+		return maxErrors;
+	}
+
+	/** Adds an error.
+	 *
+	 * @return false once the maximum number of errors is reached, when checking should stop.
+	 */
+	public boolean add(Diagnostic d) {
+		if (seen.add(d.kind+" "+d.line+" "+d.message))
+			diagnostics.add(d);
+		return !isFull();
+	}
+
+	public boolean isFull() {
+		return maxErrors > 0 && diagnostics.size() >= maxErrors;
+	}
+
+	public boolean hasErrors() {
+		return !diagnostics.isEmpty();
+	}
+
+	public List<Diagnostic> getDiagnostics() {
+		return Collections.unmodifiableList(diagnostics);
+	}
+
+	/** Prints the errors in the format of the command line, one per line.
+	 */
+	public void print(PrintStream out) {
+		for (Diagnostic d: diagnostics)
+			out.println(d);
+	}
+}
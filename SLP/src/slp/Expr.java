@@ -1,6 +1,13 @@
 package slp;
 
+import semanticTypes.SemanticType;
+
 public abstract class Expr extends ASTNode {
+	/** The type of this expression, filled in by the semantic checker.
+	 * <code>null</code> until the expression has been checked.
+	 */
+	public SemanticType semanticType;
+	
 	protected Expr(int line){
 		super(line);
 	}
@@ -0,0 +1,165 @@
+package slp;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import LIR.CachedMethod;
+import LIR.TranslationCache;
+
+/** A compiler that keeps the LIR code of every class in an on-disk cache, and reuses it
+ * when the program is compiled again: the method bodies of unchanged classes are neither
+ * checked nor translated again.
+ *
+ * A class is looked up by a hash of its source text and of the signatures (super class,
+ * fields, methods and their parameters) of all classes in the program. The signatures of
+ * all classes are part of the key, not only those of the super class chain, since a method
+ * body depends on the field offsets, dispatch offsets and parameter names of every class it
+ * uses. Editing a method body therefore invalidates only the class that contains it, while
+ * a signature change invalidates every class. Declarations are always checked again, since
+ * the changed classes are checked against them.
+ */
+public class IncrementalCompiler extends Compiler {
+	private final File cacheDir;
+	// cache file of each class in the program, in declaration order
+	private final Map<String, File> classFiles = new LinkedHashMap<String, File>();
+	private final List<String> hits = new ArrayList<String>();
+	private final List<String> misses = new ArrayList<String>();
+
+	public IncrementalCompiler(File cacheDir) {
+		this.cacheDir = cacheDir;
+		this.cache = new TranslationCache();
+	}
+
+	/** Parses the program and looks up all of its classes in the cache.
+	 */
+	@Override
+	public Program parse(Reader source) throws Exception {
+		String text = readAll(source);
+		Program root = super.parse(new StringReader(text));
+
+		String[] lines = text.split("\n", -1);
+		// code of other optimizations, register files and field layouts is kept apart
+		String signatures = (isOptimizing() ? "-O\ninline "+getInlineBudget()+"\n"
+				+(getCallProfile() != null ? "calls\n"+getCallProfile() : "") : "")+(isInliningChecks() ? "-inline-checks\n" : "")+"registers "+getRegisters()+"\n"
+				+(getFieldProfile() != null ? "layout\n"+getFieldProfile() : "")+programSignatures(root);
+		for (int i = 0; i < root.classes.size(); i++) {
+			Class cl = root.classes.get(i);
+			File classFile = new File(cacheDir, hash(signatures, classText(root, i, lines)));
+			classFiles.put(cl.name, classFile);
+
+			List<CachedMethod> methods = null;
+			if (classFile.isFile()) {
+				try {
+					InputStream in = new FileInputStream(classFile);
+					try {
+						methods = TranslationCache.readClass(in);
+					} finally {
+						in.close();
+					}
+				} catch (IOException e) {
+					// unreadable entry - translate the class again
+				}
+			}
+			if (methods != null) {
+				cache.addCachedClass(cl.name, methods);
+				hits.add(cl.name);
+			} else {
+				misses.add(cl.name);
+			}
+		}
+		return root;
+	}
+
+	/** Translates the program and stores the code of the translated classes in the cache.
+	 */
+	@Override
+	public void translate(Appendable out) throws IOException {
+		super.translate(out);
+
+		cacheDir.mkdirs();
+		for (Map.Entry<String, File> e: classFiles.entrySet()) {
+			List<CachedMethod> methods = cache.getTranslatedClass(e.getKey());
+			if (methods == null)
+				continue;
+			// write to a temporary file of its own first, so a concurrent compilation never reads
+			// half an entry, nor writes into the same temporary file
+			File tmp = File.createTempFile(e.getValue().getName()+".", ".tmp", cacheDir);
+			boolean written = false;
+			try {
+				OutputStream os = new FileOutputStream(tmp);
+				try {
+					TranslationCache.writeClass(methods, os);
+				} finally {
+					os.close();
+				}
+				written = tmp.renameTo(e.getValue());
+			} finally {
+				if (!written)
+					tmp.delete();
+			}
+		}
+	}
+
+	/** Prints the cache hits and misses of each class, and their totals.
+	 */
+	public void printReport(PrintStream out) {
+		for (String name: classFiles.keySet())
+			out.println("cache "+(hits.contains(name) ? "hit:  " : "miss: ")+name);
+		out.println("cache: "+hits.size()+" hits, "+misses.size()+" misses");
+	}
+
+	// the source lines of class <i>: from its first line up to the first line of the next class
+	// (which may hold the end of this class), or to the end of the file
+	private static String classText(Program root, int i, String[] lines) {
+		int from = root.classes.get(i).line - 1;
+		int to = (i+1 < root.classes.size()) ? root.classes.get(i+1).line : lines.length;
+		StringBuilder sb = new StringBuilder();
+		for (int l = Math.max(from, 0); l < Math.min(to, lines.length); l++)
+			sb.append(lines[l]).append('\n');
+		return sb.toString();
+	}
+
+	// the declarations of all classes, in declaration order
+	private static String programSignatures(Program root) {
+		StringBuilder sb = new StringBuilder();
+		for (Class cl: root.classes) {
+			sb.append("class ").append(cl).append('\n');
+			for (Field f: cl.fields)
+				sb.append(" field ").append(f.type.getName()).append(' ').append(f.name).append('\n');
+			for (Method m: cl.methods) {
+				sb.append(m.isStatic ? " static " : " virtual ").append(m.type.getName()).append(' ').append(m.name).append('(');
+				for (Formal f: m.formalList)
+					sb.append(f.type.getName()).append(' ').append(f.name).append(',');
+				sb.append(")\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String hash(String signatures, String classText) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(signatures.getBytes("UTF-8"));
+			md.update((byte) 0);
+			md.update(classText.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b: md.digest())
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String readAll(Reader in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[8192];
+		int n;
+		while ((n = in.read(buf)) != -1)
+			sb.append(buf, 0, n);
+		return sb.toString();
+	}
+}
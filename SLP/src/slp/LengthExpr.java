@@ -2,6 +2,10 @@ package slp;
 
 public class LengthExpr extends Expr {
 	public final Expr context;
+	/** Whether the translation checks the array for null.
+	 * Cleared by optimizations that prove it is never null.
+	 */
+	public boolean nullCheck = true;
 
 	public LengthExpr(int line, Expr context) {
 		super(line);
@@ -346,12 +346,19 @@ class Lexer implements sym, java_cup.runtime.Scanner {
     private Symbol symbol(int type)               { return new Symbol(type, yyline, yycolumn); }
     private Symbol symbol(int type, Object value) { return new Symbol(type, yyline, yycolumn, value); }
     
-    private class Lexception extends Exception
+    class Lexception extends Exception
 	{
+		private static final long serialVersionUID = 1L;
 		private String m_message;
+		// the line and column of the error, both from 1
+		final int line, column;
+		final String message;
 	
 		public Lexception(String message, int line) {
 			m_message = new String(""+line+": Lexical error: " + message);
+			this.line = line;
+			this.column = yycolumn+1;
+			this.message = message;
 	    }
 	    
 	    public String toString(){
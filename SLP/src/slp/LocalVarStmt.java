@@ -4,6 +4,10 @@ public class LocalVarStmt extends Stmt {
 	public final Type type;
 	public final String name;
 	public final Expr init;
+	/** Whether the translation checks <code>init</code> for null. Only set on the variables
+	 * that hold the receivers of inlined calls, which the calls would have checked.
+	 */
+	public boolean nullCheck;
 
 	public LocalVarStmt(int line, Type type, String name, Expr init) {
 		super(line);
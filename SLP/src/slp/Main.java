@@ -1,65 +1,625 @@
 package slp;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
 
-import semanticTypes.*;
-import symbolTable.*;
-//import java_cup.runtime.*;
-import java_cup.runtime.Symbol;
-import LIR.LIRTranslator;
+import JFR.CompilationEvent;
+import JVM.JVMBackend;
+import LIR.InstructionCounter;
+import LIR.LIRInterpreter;
+import LIR.LIRProgram;
+import LIR.RegisterAllocator;
+import optimizer.CallProfile;
+import optimizer.Inliner;
+import symbolTable.FieldProfile;
 
 public class Main {
 	/** Reads an IC and pretty-prints it.
 	 * 
-	 * @param args Should be the name of the file containing an IC.
+	 * @param args Should be the name of the file containing an IC,
+	 *             -batch followed by the files to compile, -incremental followed
+	 *             by the file to compile, -run or -jvm followed by the file to run,
+	 *             or -server.
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-batch")) {
+			batch(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-server")) {
+			server(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-incremental")) {
+			incremental(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-run")) {
+			run(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-jvm")) {
+			jvm(args);
+			return;
+		}
+		Compiler compiler = new Compiler();
+		String statsFile = null;
+		int i = 0;
+		for (; i < args.length-1; i++) {
+			if (args[i].equals("-O")) {
+				compiler.setOptimize(true);
+			} else if (args[i].equals("-inline-checks")) {
+				compiler.setInlineChecks(true);
+			} else if (args[i].equals("-registers")) {
+				compiler.setRegisters(registers(args[++i]));
+			} else if (args[i].equals("-layout")) {
+				compiler.setFieldProfile(fieldProfile(args[++i]));
+			} else if (args[i].equals("-inline-budget")) {
+				compiler.setInlineBudget(inlineBudget(args[++i]));
+			} else if (args[i].equals("-inline-profile")) {
+				compiler.setCallProfile(callProfile(args[++i]));
+			} else if (args[i].equals("-max-errors")) {
+				compiler.setMaxErrors(maxErrors(args[++i]));
+			} else if (args[i].equals("-stats")) {
+				compiler.setStats(new CompileStats());
+			} else if (args[i].equals("-stats-json")) {
+				compiler.setStats(new CompileStats());
+				statsFile = args[++i];
+			} else {
+				break;
+			}
+		}
+		args = Arrays.copyOfRange(args, i, args.length);
 		if (args.length != 1) {
 			System.out.println("Error: Missing input file argument!");
-			System.out.println("Usage: slp <filename>");
+			printUsage();
 			System.exit(-1);
 		}
+		boolean ok = compileFile(new File(args[0]), "output.lir", compiler);
+		if (!printStats(compiler.getStats(), statsFile, args[0]) || !ok)
+			System.exit(1);
+	}
+	
+	/** Compiles a single IC file, writes its LIR into <code>resultFile</code> and prints
+	 * the result of each phase to System.out.
+	 * 
+	 * @return true if the file was compiled successfully.
+	 */
+	static boolean compileFile(File inputFile, String resultFile) {
+		return compileFile(inputFile, resultFile, new Compiler());
+	}
+	
+	/** Like {@link #compileFile(File, String)}, compiling with the given (new) compiler.
+	 */
+	static boolean compileFile(File inputFile, String resultFile, Compiler compiler) {
+		CompilationEvent event = new CompilationEvent();
+		event.begin();
+		compiler.setFileName(inputFile.getPath());
+		boolean ok = compileFile(inputFile, resultFile, compiler, event);
+		if (event.shouldCommit()) {
+			event.file = inputFile.getPath();
+			Program root = compiler.getRoot();
+			if (root != null) {
+				event.classes = root.classes.size();
+				event.statements = NodeCounter.countStatements(root);
+			}
+			event.succeeded = ok;
+			event.commit();
+		}
+		return ok;
+	}
+	
+	private static boolean compileFile(File inputFile, String resultFile, Compiler compiler, CompilationEvent event) {
 		try {
 			// Parse the input file
-			FileReader txtFile = new FileReader(args[0]);
-			Lexer scanner = new Lexer(txtFile);
-			Parser parser = new Parser(scanner);
-
-			Symbol parseSymbol = parser.parse();
-			Program root = (Program) parseSymbol.value;
+			FileReader txtFile = new FileReader(inputFile);
+			Program root = compiler.parse(txtFile);
 			
 			// Pretty-print the program to System.out
 			//PrettyPrinter printer = new PrettyPrinter(root);
 			//printer.print();
 			
-			SymbolTable symTab = new SymbolTable();
-			TypeTable typTab = new TypeTable();
-			  
-			
-			SemanticChecker checker = new SemanticChecker(root, symTab, typTab);
-			checker.start();
+			compiler.check();
 			System.out.println("Passed semantic checks successfully!\n");
 			
-			LIRTranslator translator = new LIRTranslator(root, symTab, typTab);
-			String translation = root.accept(translator, 0).lirCode;
+			InstructionCounter unoptimized = null;
+			if (compiler.isOptimizing()) {
+				unoptimized = compiler.count();
+				compiler.optimize();
+			}
 			
-			// print output to file
-			String resultFile = "output.lir";
+			// stream the translation into the output file, method by method
+			InstructionCounter counter;
+			CompileStats stats = compiler.getStats();
 			try {
-				BufferedWriter buff = new BufferedWriter(new FileWriter(resultFile));
-				buff.write(translation);
+				Writer file = new FileWriter(resultFile);
+				// the time spent writing the file is taken out of the translation
+				if (stats != null)
+					file = stats.timed("write", file);
+				BufferedWriter buff = new BufferedWriter(file);
+				counter = new InstructionCounter(buff);
+				compiler.translate(counter);
 				buff.flush();
 				buff.close();
+				event.instructions = counter.getCount();
 			} catch (IOException e) {
 				System.out.println("Failed writing to file: "+resultFile);
 				e.printStackTrace();
+				return false;
 			}
 			System.out.println("LIR translation");
 			System.out.println("===============");
-			System.out.println(translation);
+			if (stats != null)
+				stats.start("print");
+			printFile(resultFile);
+			if (stats != null)
+				stats.stop();
+			
+			if (unoptimized != null) {
+				System.out.println("Optimizations: "+compiler.getOptimizer().getReport());
+				List<String> loops = compiler.getOptimizer().getBoundsCheckReport();
+				if (!loops.isEmpty()) {
+					System.out.println("Bounds checks by loop:");
+					for (String line: loops)
+						System.out.println("  "+line);
+				}
+				System.out.println("LIR instructions: "+counter.getCount()+" ("+unoptimized.getCount()+" without -O), "
+						+"jumps: "+counter.getJumps()+" ("+unoptimized.getJumps()+" without -O), "
+						+"runtime check calls: "+counter.getRuntimeChecks()+" ("+unoptimized.getRuntimeChecks()+" without -O)");
+			}
+			RegisterAllocator allocator = compiler.getRegisterAllocator();
+			if (allocator != null) {
+				System.out.println("Register allocation ("+allocator.getRegisters()+" registers):");
+				for (String line: allocator.getReport())
+					System.out.println("  "+line);
+				System.out.println("moves eliminated: "+allocator.getMovesEliminated());
+			}
+			return true;
 
+		} catch (CompileError e) {
+			e.getDiagnostics().print(System.out);
+			return false;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/** Prints the statistics of a compilation, if it kept any, and writes them into
+	 * <code>jsonFile</code> as JSON if it is not null.
+	 * 
+	 * @return false if the JSON file could not be written.
+	 */
+	static boolean printStats(CompileStats stats, String jsonFile, String inputFile) {
+		if (stats == null)
+			return true;
+		System.out.println();
+		stats.print(System.out);
+		if (jsonFile == null)
+			return true;
+		try {
+			Writer out = new BufferedWriter(new FileWriter(jsonFile));
+			try {
+				stats.writeJson(out, inputFile);
+			} finally {
+				out.close();
+			}
+			return true;
+		} catch (IOException e) {
+			System.out.println("Failed writing the statistics to "+jsonFile+": "+e.getMessage());
+			return false;
+		}
+	}
+	
+	// the argument of -registers
+	private static int registers(String arg) {
+		int n = -1;
+		try {
+			n = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+		}
+		if (n < RegisterAllocator.MIN_REGISTERS) {
+			System.out.println("Error: -registers takes a number of at least "+RegisterAllocator.MIN_REGISTERS);
+			printUsage();
+			System.exit(-1);
+		}
+		return n;
+	}
+	
+	// the argument of -j
+	private static int threads(String arg) {
+		int n = -1;
+		try {
+			n = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+		}
+		if (n < 1) {
+			System.out.println("Error: -j takes a number of threads, at least 1");
+			printUsage();
+			System.exit(-1);
+		}
+		return n;
+	}
+	
+	// the argument of -inline-budget
+	private static int inlineBudget(String arg) {
+		int n = -1;
+		try {
+			n = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+		}
+		if (n < 0) {
+			System.out.println("Error: -inline-budget takes a number of AST nodes, 0 for no inlining");
+			printUsage();
+			System.exit(-1);
+		}
+		return n;
+	}
+	
+	// the argument of -max-errors
+	private static int maxErrors(String arg) {
+		int n = -1;
+		try {
+			n = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+		}
+		if (n < 0) {
+			System.out.println("Error: -max-errors takes a number, 0 for no limit");
+			printUsage();
+			System.exit(-1);
+		}
+		return n;
+	}
+	
+	// the field profile of -layout
+	private static FieldProfile fieldProfile(String fileName) {
+		try {
+			Reader in = new FileReader(fileName);
+			try {
+				return FieldProfile.read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Error: cannot read the field profile "+fileName+": "+e.getMessage());
+			System.exit(-1);
+			return null;
+		}
+	}
+	
+	// the call profile of -inline-profile
+	private static CallProfile callProfile(String fileName) {
+		try {
+			Reader in = new FileReader(fileName);
+			try {
+				return CallProfile.read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Error: cannot read the call profile "+fileName+": "+e.getMessage());
+			System.exit(-1);
+			return null;
+		}
+	}
+	
+	private static void printUsage() {
+		System.out.println("Usage: slp [-O] [-inline-checks] [-registers <n>] [-layout <profile>] [-inline-budget <n>] [-inline-profile <profile>] [-max-errors <n>] [-stats] [-stats-json <file>] <filename>");
+		System.out.println("       slp -batch [-d <outdir>] [-j <threads>] [-strings <file>] <file|dir>...");
+		System.out.println("       slp -incremental [-O] [-inline-checks] [-registers <n>] [-layout <profile>] [-inline-budget <n>] [-inline-profile <profile>] [-max-errors <n>] [-stats] [-stats-json <file>] [-cache <dir>] [-report] <filename>");
+		System.out.println("       slp -run [-O] [-inline-checks] [-inline-budget <n>] [-inline-profile <profile>] [-profile <profile>] [-call-profile <profile>] <filename>|<lirfile> [<args>...]");
+		System.out.println("       slp -jvm [-jar <jarfile>] <filename> [<args>...]");
+		System.out.println("       slp -server [-p <port>]");
+	}
+	
+	/** Compiles many IC files in one process. Each file <name>.ic is compiled into
+	 * <name>.lir, next to the source or in the directory given with -d.
+	 * Directories are expanded to the .ic files they contain, which keep their path below the
+	 * directory in the -d directory.
+	 * 
+	 * With -strings, the string literals of all files are defined once, in the given file.
+	 * 
+	 * @param args -batch [-d outdir] [-j threads] [-strings file] followed by files and directories.
+	 */
+	private static void batch(String[] args) {
+		BatchCompiler batch = new BatchCompiler();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-d") && i+1 < args.length) {
+				batch.setOutputDir(args[++i]);
+			} else if (args[i].equals("-j") && i+1 < args.length) {
+				batch.setThreads(threads(args[++i]));
+			} else if (args[i].equals("-strings") && i+1 < args.length) {
+				batch.setStringsFile(new File(args[++i]));
+			} else {
+				batch.addInput(new File(args[i]));
+			}
+		}
+		if (batch.getInputs().isEmpty()) {
+			System.out.println("Error: Missing input files!");
+			printUsage();
+			System.exit(-1);
+		}
+		
+		if (batch.run(System.out) > 0)
+			System.exit(1);
+	}
+	
+	/** Compiles a single IC file like <code>slp filename</code>, reusing the code of the classes
+	 * that did not change since the last compilation. The code of each class is kept in the
+	 * cache directory, .slpcache by default.
+	 * 
+	 * @param args -incremental [-O] [-inline-checks] [-registers n] [-layout profile] [-inline-budget n] [-inline-profile profile] [-max-errors n] [-stats] [-stats-json file] [-cache dir] [-report] filename
+	 */
+	private static void incremental(String[] args) {
+		String cacheDir = ".slpcache";
+		boolean report = false;
+		boolean optimize = false;
+		boolean inlineChecks = false;
+		int registers = 0;
+		FieldProfile profile = null;
+		int inlineBudget = Inliner.DEFAULT_BUDGET;
+		CallProfile callProfile = null;
+		int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
+		boolean stats = false;
+		String statsFile = null;
+		String file = null;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-cache") && i+1 < args.length) {
+				cacheDir = args[++i];
+			} else if (args[i].equals("-report")) {
+				report = true;
+			} else if (args[i].equals("-O")) {
+				optimize = true;
+			} else if (args[i].equals("-inline-checks")) {
+				inlineChecks = true;
+			} else if (args[i].equals("-registers") && i+1 < args.length) {
+				registers = registers(args[++i]);
+			} else if (args[i].equals("-layout") && i+1 < args.length) {
+				profile = fieldProfile(args[++i]);
+			} else if (args[i].equals("-inline-budget") && i+1 < args.length) {
+				inlineBudget = inlineBudget(args[++i]);
+			} else if (args[i].equals("-inline-profile") && i+1 < args.length) {
+				callProfile = callProfile(args[++i]);
+			} else if (args[i].equals("-max-errors") && i+1 < args.length) {
+				maxErrors = maxErrors(args[++i]);
+			} else if (args[i].equals("-stats")) {
+				stats = true;
+			} else if (args[i].equals("-stats-json") && i+1 < args.length) {
+				stats = true;
+				statsFile = args[++i];
+			} else {
+				file = args[i];
+			}
+		}
+		if (file == null) {
+			System.out.println("Error: Missing input file argument!");
+			printUsage();
+			System.exit(-1);
+		}
+		
+		IncrementalCompiler compiler = new IncrementalCompiler(new File(cacheDir));
+		compiler.setOptimize(optimize);
+		compiler.setInlineChecks(inlineChecks);
+		compiler.setRegisters(registers);
+		compiler.setFieldProfile(profile);
+		compiler.setInlineBudget(inlineBudget);
+		compiler.setCallProfile(callProfile);
+		compiler.setMaxErrors(maxErrors);
+		if (stats)
+			compiler.setStats(new CompileStats());
+		boolean ok = compileFile(new File(file), "output.lir", compiler);
+		if (report)
+			compiler.printReport(System.out);
+		if (!printStats(compiler.getStats(), statsFile, file) || !ok)
+			System.exit(1);
+	}
+	
+	/** Runs an IC program on the LIR interpreter. A .lir file is run as is, any other
+	 * file is compiled first. Only the output of the program is printed.
+	 * With -profile, the accesses to the fields of each class are counted and written into
+	 * a field profile for -layout. With -call-profile, the calls between methods are counted
+	 * and written into a call profile for -inline-profile.
+	 * 
+	 * @param args -run [-O] [-inline-checks] [-inline-budget n] [-inline-profile profile] [-profile profile] [-call-profile profile] filename followed by the arguments of the IC main method.
+	 */
+	private static void run(String[] args) {
+		boolean optimize = false;
+		boolean inlineChecks = false;
+		int inlineBudget = Inliner.DEFAULT_BUDGET;
+		CallProfile callProfile = null;
+		String profileFile = null;
+		String callProfileFile = null;
+		int file = 1;
+		for (; file < args.length-1; file++) {
+			if (args[file].equals("-O")) {
+				optimize = true;
+			} else if (args[file].equals("-inline-checks")) {
+				inlineChecks = true;
+			} else if (args[file].equals("-inline-budget")) {
+				inlineBudget = inlineBudget(args[++file]);
+			} else if (args[file].equals("-inline-profile")) {
+				callProfile = callProfile(args[++file]);
+			} else if (args[file].equals("-profile")) {
+				profileFile = args[++file];
+			} else if (args[file].equals("-call-profile")) {
+				callProfileFile = args[++file];
+			} else {
+				break;
+			}
+		}
+		if (args.length <= file) {
+			System.out.println("Error: Missing input file argument!");
+			printUsage();
+			System.exit(-1);
+		}
+		if (profileFile != null && args[file].endsWith(".lir")) {
+			System.out.println("Error: -profile needs the IC program, to know the fields of each class");
+			System.exit(-1);
+		}
+		if (callProfileFile != null && args[file].endsWith(".lir")) {
+			System.out.println("Error: -call-profile needs the IC program, to know the methods of each class");
+			System.exit(-1);
+		}
+		String[] programArgs = new String[args.length-file-1];
+		System.arraycopy(args, file+1, programArgs, 0, programArgs.length);
+		
+		LIRProgram program;
+		Compiler compiler = null;
+		try {
+			Reader lir;
+			if (args[file].endsWith(".lir")) {
+				lir = new FileReader(args[file]);
+			} else {
+				compiler = parseAndCheck(args[file]);
+				compiler.setOptimize(optimize);
+				compiler.setInlineChecks(inlineChecks);
+				compiler.setInlineBudget(inlineBudget);
+				compiler.setCallProfile(callProfile);
+				compiler.optimize();
+				StringBuilder code = new StringBuilder();
+				compiler.translate(code);
+				lir = new StringReader(code.toString());
+			}
+			try {
+				program = LIRProgram.load(lir);
+			} finally {
+				lir.close();
+			}
+		} catch (LIRProgram.FormatError e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		} catch (CompileError e) {
+			e.getDiagnostics().print(System.out);
+			System.exit(1);
+			return;
 		} catch (Exception e) {
 			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+		LIRInterpreter interpreter = new LIRInterpreter(program, out, new InputStreamReader(System.in));
+		if (profileFile != null)
+			interpreter.profileFields();
+		if (callProfileFile != null)
+			interpreter.profileCalls();
+		int status = interpreter.run(programArgs);
+		if (profileFile != null) {
+			try {
+				Writer profile = new FileWriter(profileFile);
+				try {
+					compiler.fieldProfile(interpreter.getFieldAccesses()).write(profile);
+				} finally {
+					profile.close();
+				}
+			} catch (IOException e) {
+				System.err.println("Failed writing the field profile "+profileFile+": "+e.getMessage());
+				status = (status != 0) ? status : 1;
+			}
+		}
+		if (callProfileFile != null) {
+			try {
+				Writer profile = new FileWriter(callProfileFile);
+				try {
+					compiler.callProfile(interpreter.getCalls()).write(profile);
+				} finally {
+					profile.close();
+				}
+			} catch (IOException e) {
+				System.err.println("Failed writing the call profile "+callProfileFile+": "+e.getMessage());
+				status = (status != 0) ? status : 1;
+			}
+		}
+		if (status != 0)
+			System.exit(status);
+	}
+	
+	/** Compiles an IC program into JVM classes, and runs them or writes them into a jar.
+	 * Only the output of the program is printed.
+	 * 
+	 * @param args -jvm [-jar jarfile] filename followed by the arguments of the IC main method.
+	 */
+	private static void jvm(String[] args) {
+		String jarFile = null;
+		int i = 1;
+		if (args.length > 2 && args[1].equals("-jar")) {
+			jarFile = args[2];
+			i = 3;
+		}
+		if (args.length <= i) {
+			System.out.println("Error: Missing input file argument!");
+			printUsage();
+			System.exit(-1);
+		}
+		String[] programArgs = new String[args.length-i-1];
+		System.arraycopy(args, i+1, programArgs, 0, programArgs.length);
+		
+		JVMBackend backend;
+		try {
+			backend = new JVMBackend(parseAndCheck(args[i]).getRoot());
+			if (jarFile != null) {
+				backend.writeJar(new File(jarFile));
+				return;
+			}
+		} catch (CompileError e) {
+			e.getDiagnostics().print(System.out);
+			System.exit(1);
+			return;
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+		int status = backend.run(programArgs, out, new InputStreamReader(System.in));
+		if (status != 0)
+			System.exit(status);
+	}
+	
+	// parse and check a program, without printing anything when it passes
+	private static Compiler parseAndCheck(String fileName) throws Exception {
+		Compiler compiler = new Compiler();
+		compiler.setFileName(fileName);
+		Reader source = new FileReader(fileName);
+		try {
+			compiler.parse(source);
+		} finally {
+			source.close();
+		}
+		compiler.check();
+		return compiler;
+	}
+	
+	/** Runs a compile server that keeps the compiler loaded (and JIT-compiled) between
+	 * compilations. Clients connect through CompileClient or the slpc scripts.
+	 * 
+	 * @param args -server [-p port]
+	 */
+	private static void server(String[] args) {
+		int port = CompileServer.DEFAULT_PORT;
+		if (args.length == 3 && args[1].equals("-p"))
+			port = Integer.parseInt(args[2]);
+		try {
+			new CompileServer(port).serve();
+		} catch (IOException e) {
+			System.out.println("Compile server failed: "+e);
+			System.exit(1);
+		}
+	}
+	
+	// copy a (possibly large) file to System.out without reading it all into memory
+	private static void printFile(String fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		char[] buf = new char[8192];
+		int n;
+		while ((n = reader.read(buf)) != -1) {
+			System.out.print(new String(buf, 0, n));
 		}
+		System.out.println();
+		reader.close();
 	}
 }
\ No newline at end of file
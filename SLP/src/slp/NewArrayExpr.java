@@ -3,14 +3,32 @@ package slp;
 public class NewArrayExpr extends Expr {
 	public final Type type;
 	public final Expr index;
+	/** Whether the translation checks that the size is not negative.
+	 * Cleared by optimizations that prove it never is.
+	 */
+	public boolean sizeCheck = true;
 
 	public NewArrayExpr(int line, Type type, Expr index) {
+		this(line, type, index, true);
+	}
+	
+	// <brackets> adds the brackets of new T[n] to the element type, else <type> has them already
+	private NewArrayExpr(int line, Type type, Expr index, boolean brackets) {
 		super(line);
-		type.arrayLvl++;
+		if (brackets)
+			type.arrayLvl++;
 		this.type = type;
 		this.index = index;
 	}
 	
+	/** A copy of this node with another size, of the same type and with the same size check.
+	 */
+	public NewArrayExpr withIndex(Expr index) {
+		NewArrayExpr copy = new NewArrayExpr(line, type, index, false);
+		copy.sizeCheck = sizeCheck;
+		return copy;
+	}
+	
 	/** Accepts a visitor object as part of the visitor pattern.
 	 * @param visitor A visitor.
 	 */
@@ -0,0 +1,186 @@
+package slp;
+
+/** Counts the nodes of an AST, and the statements among them (blocks are not counted).
+ */
+public class NodeCounter implements Visitor {
+	private long nodes;
+	private long statements;
+
+	public static long count(Program root) {
+		NodeCounter counter = new NodeCounter();
+		root.accept(counter);
+		return counter.nodes;
+	}
+
+	/** The number of nodes in <code>node</code> and under it.
+	 */
+	public static long countNodes(ASTNode node) {
+		NodeCounter counter = new NodeCounter();
+		node.accept(counter);
+		return counter.nodes;
+	}
+
+	/** The number of statements in <code>node</code> and the nodes under it.
+	 */
+	public static long countStatements(ASTNode node) {
+		NodeCounter counter = new NodeCounter();
+		node.accept(counter);
+		return counter.statements;
+	}
+
+	public void visit(Program program) {
+		nodes++;
+		for (Class cl: program.classes)
+			cl.accept(this);
+	}
+
+	public void visit(Class cl) {
+		nodes++;
+		for (Field f: cl.fields)
+			f.accept(this);
+		for (Method m: cl.methods)
+			m.accept(this);
+	}
+
+	public void visit(Field field) {
+		nodes++;
+		field.type.accept(this);
+	}
+
+	public void visit(Formal formal) {
+		nodes++;
+		formal.type.accept(this);
+	}
+
+	public void visit(Type type) {
+		nodes++;
+	}
+
+	public void visit(Method method) {
+		nodes++;
+		method.type.accept(this);
+		for (Formal f: method.formalList)
+			f.accept(this);
+		for (Stmt s: method.statementList)
+			s.accept(this);
+	}
+
+	public void visit(AssignStmt stmt) {
+		nodes++;
+		statements++;
+		stmt.lhs.accept(this);
+		stmt.rhs.accept(this);
+	}
+
+	public void visit(ReturnStmt stmt) {
+		nodes++;
+		statements++;
+		if (stmt.expr != null)
+			stmt.expr.accept(this);
+	}
+
+	public void visit(StaticCall call) {
+		nodes++;
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	public void visit(VirtCall call) {
+		nodes++;
+		if (call.location != null)
+			call.location.accept(this);
+		for (Expr arg: call.args)
+			arg.accept(this);
+	}
+
+	public void visit(VarLocation loc) {
+		nodes++;
+		if (loc.location != null)
+			loc.location.accept(this);
+	}
+
+	public void visit(ArrayLocation loc) {
+		nodes++;
+		loc.array.accept(this);
+		loc.index.accept(this);
+	}
+
+	public void visit(CallStmt stmt) {
+		nodes++;
+		statements++;
+		stmt.call.accept(this);
+	}
+
+	public void visit(StmtList stmts) {
+		nodes++;
+		for (Stmt s: stmts.statements)
+			s.accept(this);
+	}
+
+	public void visit(IfStmt stmt) {
+		nodes++;
+		statements++;
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+		if (stmt.elseStmt != null)
+			stmt.elseStmt.accept(this);
+	}
+
+	public void visit(WhileStmt stmt) {
+		nodes++;
+		statements++;
+		stmt.condition.accept(this);
+		stmt.thenStmt.accept(this);
+	}
+
+	public void visit(BreakStmt stmt) {
+		nodes++;
+		statements++;
+	}
+
+	public void visit(ContinueStmt stmt) {
+		nodes++;
+		statements++;
+	}
+
+	public void visit(LocalVarStmt stmt) {
+		nodes++;
+		statements++;
+		stmt.type.accept(this);
+		if (stmt.init != null)
+			stmt.init.accept(this);
+	}
+
+	public void visit(ThisExpr expr) {
+		nodes++;
+	}
+
+	public void visit(NewClassExpr expr) {
+		nodes++;
+	}
+
+	public void visit(NewArrayExpr expr) {
+		nodes++;
+		expr.index.accept(this);
+	}
+
+	public void visit(LengthExpr expr) {
+		nodes++;
+		expr.context.accept(this);
+	}
+
+	public void visit(LiteralExpr expr) {
+		nodes++;
+	}
+
+	public void visit(UnaryOpExpr expr) {
+		nodes++;
+		expr.rightOp.accept(this);
+	}
+
+	public void visit(BinaryOpExpr expr) {
+		nodes++;
+		expr.leftOp.accept(this);
+		expr.rightOp.accept(this);
+	}
+}
@@ -643,31 +643,37 @@ public class Parser extends java_cup.runtime.lr_parser {
 
 
 	private Lexer lexer;
+	private Diagnostics diagnostics = new Diagnostics();
 
 	public Parser(Lexer lexer) {
 		super(lexer);
 		this.lexer = lexer;
 	}	
 	
+	// collect syntax errors into <diagnostics>
+	public void setDiagnostics(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+	
     public void report_error(String message, Object info) {
-        StringBuilder m = new StringBuilder("Error");
+        int line = -1, column = -1;
    
         if (info instanceof java_cup.runtime.Symbol) {
             Symbol s = ((java_cup.runtime.Symbol) info);
    
             if (s.left >= 0) {              // s.left is the line number 
-                m.append(" in line "+(s.left+1));   
+                line = s.left+1;   
                 if (s.right >= 0)                  // s.right is the column number 
-                    m.append(", column "+(s.right+1));
+                    column = s.right+1;
             }
         }
-        m.append(" : "+message);
-        System.out.println(m);
+        diagnostics.add(new Diagnostic(Diagnostic.Kind.SYNTAX, line, column, "syntax", message));
     }
    
-    public void report_fatal_error(String message, Object info) {
+    public void report_fatal_error(String message, Object info) throws CompileError {
         report_error(message, info);
-        System.exit(1);
+        done_parsing();
+        throw new CompileError(diagnostics);
     }
 
 }
@@ -4,6 +4,8 @@ import java.util.List;
 
 public class Program extends ASTNode {
 	public final List<Class> classes;
+	// the file the program was read from, or null
+	private String fileName;
 
 	public Program(int line, List<Class> classes) {
 		super(line);
@@ -14,6 +16,14 @@ public class Program extends ASTNode {
 		classes.add(c);
 	}
 	
+	public void setFileName(String fileName){
+		this.fileName = fileName;
+	}
+	
+	public String getFileName(){
+		return fileName;
+	}
+	
 	/** Accepts a visitor object as part of the visitor pattern.
 	 * @param visitor A visitor.
 	 */
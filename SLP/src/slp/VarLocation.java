@@ -3,6 +3,10 @@ package slp;
 public class VarLocation extends Location {
 	public final Expr location;
 	public final String name;
+	/** Whether the translation checks <code>location</code> for null.
+	 * Cleared by optimizations that prove it is never null.
+	 */
+	public boolean nullCheck = true;
 
 	public VarLocation(int line, String name) {
 		this(line, null, name);
@@ -4,6 +4,10 @@ import java.util.List;
 
 public class VirtCall extends CallExpr {
 	public final Expr location;
+	/** Whether the translation checks <code>location</code> for null.
+	 * Cleared by optimizations that prove it is never null.
+	 */
+	public boolean nullCheck = true;
 
 	public VirtCall(int line, Expr location, String name, List<Expr> args) {
 		super(line, name, args);
@@ -8,11 +8,17 @@ import slp.Method;
 
 // class symbol for symbol table
  public class ClassSymbol extends Symbol {
-	private Map<String, MethodSymbol> methods = new HashMap<String,MethodSymbol>();
-	private Map<String, FieldSymbol> fields = new HashMap<String,FieldSymbol>();
+	// in the order the methods are declared, which is the order of new methods in the dispatch table
+	private Map<String, MethodSymbol> methods = new LinkedHashMap<String,MethodSymbol>();
+	// in the order the fields are declared
+	private Map<String, FieldSymbol> fields = new LinkedHashMap<String,FieldSymbol>();
 	private SymbolTable symbolTable;
 	public final String superName; 
 	public int nextFieldOffset;
+	// built on first use, once all methods are added
+	private VirtualTable virtualTable;
+	// built on first use, once all fields are added, or by layoutFields
+	private FieldLayout layout;
 	
 	// for classes without super
 	public ClassSymbol(String name, SymbolTable global)  throws SemanticError{
@@ -67,6 +73,20 @@ import slp.Method;
 		return ms;
 	}
 	
+	// the dispatch table of this class. Must not be used before the methods of this class and
+	// its superclasses are all added
+	public VirtualTable getVirtualTable(){
+		if (virtualTable == null){
+			if (superName != null){
+				ClassSymbol cs = (ClassSymbol) symbolTable.findEntryGlobal(superName);
+				virtualTable = new VirtualTable(cs.getVirtualTable(), name, methods.values());
+			} else {
+				virtualTable = new VirtualTable(name, methods.values());
+			}
+		}
+		return virtualTable;
+	}
+	
 	// returns the base class where static function <funcName> is defined
 	public String getBaseClassOfStaticMethod(String funcName){
 		if (methods.containsKey(funcName) && methods.get(funcName).isStatic)
@@ -157,24 +177,45 @@ import slp.Method;
 		throw  new SemanticError("field name already in use", name);
 	}
 	
+	// the layout of the objects of this class, with the fields in the order they are declared
+	// unless laid out by layoutFields. Must not be used before all fields are added
+	public FieldLayout getLayout(){
+		if (layout == null)
+			layoutFields(null);
+		return layout;
+	}
+	
+	// lays out the fields of this class after the inherited ones, the ones accessed most often
+	// in <profile> first (in the order they are declared if <profile> is null, or between fields
+	// with the same count). Sets the offsets of the fields, so it must be done before translation,
+	// and for a superclass before its subclasses
+	public void layoutFields(FieldProfile profile){
+		List<FieldSymbol> own = new ArrayList<FieldSymbol>(fields.values());
+		if (profile != null){
+			final Map<FieldSymbol, Long> counts = new HashMap<FieldSymbol, Long>();
+			for (FieldSymbol f: own)
+				counts.put(f, profile.getCount(name, f.name));
+			Collections.sort(own, new Comparator<FieldSymbol>() {
+				public int compare(FieldSymbol a, FieldSymbol b){
+					return Long.compare(counts.get(b), counts.get(a));
+				}
+			});
+		}
+		FieldLayout superLayout = null;
+		if (superName != null)
+			superLayout = ((ClassSymbol) symbolTable.findEntryGlobal(superName)).getLayout();
+		layout = new FieldLayout(superLayout, name, own);
+	}
+	
 	public int bytesInMemory(){
 		//return number of bytes this class needs for allocation = (number of fields+1)*4
-		int size=0;
-		size += this.getNumberOfFieldsRec() + 1;
-		size *= 4;		
-		return size;
+		return getLayout().bytesInMemory();
 	}
 	
 	
-	// returns the number of fields in this class, including all of super's fields, recursively...
+	// returns the number of fields in this class, including all of super's fields
 	public int getNumberOfFieldsRec(){
-		int n=0;
-		n+=fields.keySet().size();
-		if (this.superName != null){
-			n+=((ClassSymbol) symbolTable.findEntryGlobal(this.superName)).getNumberOfFieldsRec();
-		}
-		
-		return n;
+		return getLayout().size();
 	}
 	
 	// retrieve recursively all methods of this class(virtual or static, including inherited).
@@ -202,13 +243,8 @@ import slp.Method;
 		return list;
 	}
 	
-	// retrieve recursively all fields of this class(including inherited)
+	// all fields of this class (including inherited), by offset
 	public List<FieldSymbol> getFieldsRec(){
-		List<FieldSymbol> list = new ArrayList<FieldSymbol>(fields.values());
-		if (superName != null){
-			ClassSymbol cs = (ClassSymbol) symbolTable.findEntryGlobal(superName);
-			list.addAll(cs.getFieldsRec());
-		}
-		return list;
+		return getLayout().getFields();
 	}
 }
@@ -0,0 +1,72 @@
+package symbolTable;
+
+import java.util.*;
+
+// the layout of the objects of a class: all its fields (including inherited ones) by offset.
+// Offset 0 holds the dispatch table, so the field at offset i is the i-th field of the layout.
+// The fields of the superclass come first, at the offsets they have in the superclass, so an
+// object of the class can be used as an object of the superclass.
+public class FieldLayout {
+	private final FieldSymbol[] fields;
+	private final String[] owners;
+	private final int inherited;
+	private final Map<String, FieldSymbol> byName;
+	private final List<FieldSymbol> fieldList;
+	
+	// lays out the fields of <className> after those of its superclass (<superLayout> may be null),
+	// in the given order. Sets the offsets of the fields
+	FieldLayout(FieldLayout superLayout, String className, List<FieldSymbol> declared){
+		inherited = (superLayout != null) ? superLayout.fields.length : 0;
+		fields = new FieldSymbol[inherited + declared.size()];
+		owners = new String[fields.length];
+		byName = new HashMap<String, FieldSymbol>();
+		if (superLayout != null){
+			System.arraycopy(superLayout.fields, 0, fields, 0, inherited);
+			System.arraycopy(superLayout.owners, 0, owners, 0, inherited);
+			byName.putAll(superLayout.byName);
+		}
+		for (int i = 0; i < declared.size(); i++){
+			FieldSymbol f = declared.get(i);
+			f.setOffset(inherited + i + 1);
+			fields[inherited + i] = f;
+			owners[inherited + i] = className;
+			byName.put(f.name, f);
+		}
+		fieldList = Collections.unmodifiableList(Arrays.asList(fields));
+	}
+	
+	// the number of fields, including inherited ones
+	public int size(){
+		return fields.length;
+	}
+	
+	// the number of fields inherited from the superclass, which come first
+	public int getInherited(){
+		return inherited;
+	}
+	
+	// all fields, by offset
+	public List<FieldSymbol> getFields(){
+		return fieldList;
+	}
+	
+	// the field at <offset> (1 to size())
+	public FieldSymbol getField(int offset){
+		return fields[offset-1];
+	}
+	
+	// the name of the class that declares the field at <offset>
+	public String getOwner(int offset){
+		return owners[offset-1];
+	}
+	
+	// the field named <name>, or null
+	public FieldSymbol getField(String name){
+		return byName.get(name);
+	}
+	
+	// the size of an object: the fields and the dispatch table, 4 bytes each
+	public int bytesInMemory(){
+		return (fields.length + 1) * 4;
+	}
+}
@@ -0,0 +1,58 @@
+package symbolTable;
+
+import java.io.*;
+import java.util.*;
+
+// how often each field is accessed, to lay out the fields of a class hottest first. A profile
+// file has a line "<class>.<field> <count>" for each field - lines that are empty or start
+// with '#' are skipped. "slp -run -profile <file>" writes one.
+public class FieldProfile {
+	private final Map<String, Long> counts = new TreeMap<String, Long>();
+	
+	public static FieldProfile read(Reader reader) throws IOException{
+		FieldProfile profile = new FieldProfile();
+		BufferedReader in = new BufferedReader(reader);
+		int lineNumber = 0;
+		for (String line = in.readLine(); line != null; line = in.readLine()){
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] parts = line.split("\\s+");
+			int dot = parts[0].indexOf('.');
+			try{
+				if (parts.length != 2 || dot <= 0)
+					throw new NumberFormatException();
+				profile.add(parts[0].substring(0, dot), parts[0].substring(dot+1), Long.parseLong(parts[1]));
+			} catch (NumberFormatException e){
+				throw new IOException("line "+lineNumber+" of the field profile is not '<class>.<field> <count>': "+line);
+			}
+		}
+		return profile;
+	}
+	
+	public void add(String className, String field, long count){
+		String key = className+"."+field;
+		Long old = counts.get(key);
+		counts.put(key, (old == null) ? count : old + count);
+	}
+	
+	// the number of accesses to field <field> declared in <className>, 0 if not in the profile
+	public long getCount(String className, String field){
+		Long count = counts.get(className+"."+field);
+		return (count == null) ? 0 : count;
+	}
+	
+	public void write(Writer out) throws IOException{
+		out.write(toString());
+	}
+	
+	// the profile in the format of a profile file, sorted by field
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> e: counts.entrySet())
+			sb.append(e.getKey()+" "+e.getValue()+"\n");
+		return sb.toString();
+	}
+}
@@ -1,8 +1,12 @@
 package symbolTable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import JFR.CheckEvent;
 import semanticTypes.*;
 import slp.*;
 import slp.Class;
@@ -18,6 +22,11 @@ import slp.Class;
  * - Library functions declaration
  * - exactly one "main" method
  * - break, continue only inside loops
+ *
+ * Errors are collected into a Diagnostics, and checking goes on after an error wherever the
+ * rest of the program can still be checked: the type of an expression with an error is null,
+ * and no error is reported about the expressions it is part of. Checking stops after errors
+ * in the class declarations, or once the maximum number of errors is reached.
  */
 public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	private SymbolTable symTab;
@@ -29,17 +38,80 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	private SemanticType currentThisClass = null;
 	private boolean writingToVar = false;
 	private int controlFlows = 0;
+	// classes whose method bodies are not checked (already checked in a previous compilation)
+	private Set<String> skippedClasses = new HashSet<String>();
+	private Diagnostics diagnostics;
+	
+	// thrown to stop checking once the maximum number of errors is reached
+	private static class TooManyErrors extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		TooManyErrors(){
+			super(null, null, false, false);
+		}
+	}
 	
 	public SemanticChecker(ASTNode root, SymbolTable symtab,TypeTable typtab) {
+		this(root, symtab, typtab, new Diagnostics());
+	}
+	
+	// checker that adds the errors it finds to <diagnostics>
+	public SemanticChecker(ASTNode root, SymbolTable symtab,TypeTable typtab, Diagnostics diagnostics) {
 		this.root = root;
 		this.symTab = symtab;
 		this.typTab = typtab;
+		this.diagnostics = diagnostics;
 		
 		addLibraryClass();
 	}
 	
+	// don't check the method bodies of the given classes. Their declarations are still checked
+	public void skipClassBodies(Collection<String> classNames) {
+		skippedClasses.addAll(classNames);
+	}
+	
+	// check the program. The errors found are in getDiagnostics
 	public void start() {
-		root.accept(this, null);
+		CheckEvent event = new CheckEvent();
+		event.begin();
+		try{
+			root.accept(this, null);
+		} catch (TooManyErrors e){}
+		if (event.shouldCommit()){
+			if (root instanceof Program){
+				event.file = ((Program) root).getFileName();
+				event.classes = ((Program) root).classes.size();
+			}
+			event.statements = NodeCounter.countStatements(root);
+			event.errors = diagnostics.getDiagnostics().size();
+			event.commit();
+		}
+	}
+	
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+	
+	public boolean hasErrors() {
+		return diagnostics.hasErrors();
+	}
+	
+	// report an error at <line>
+	private void error(int line, String code, String message){
+		if (!diagnostics.add(new Diagnostic(Diagnostic.Kind.SEMANTIC, line, -1, code, message)))
+			throw new TooManyErrors();
+	}
+	
+	private void error(int line, String code, SemanticError se){
+		error(line, code, se.getMessage()+": "+se.getValue());
+	}
+	
+	// check an expression and record its resolved type on the node, so later phases
+	// don't have to resolve it again
+	private SemanticType checkExpr(Expr expr){
+		SemanticType type = (SemanticType) expr.accept(this, null);
+		expr.semanticType = type;
+		return type;
 	}
 	
 	private boolean isMain(Method m){
@@ -95,8 +167,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 			params.add(new ParamSymbol("a", typTab.resolveType("int[]")));
 			sym.addMethodSymbol("atos", typTab.voidType, params, true,-1);
 		} catch (SemanticError se){		// should never fail
-			System.out.println("0: "+se);
-			System.exit(1);
+			throw new IllegalStateException(se.toString());
 		}
 			
 		symTab.addEntry(sym);
@@ -104,65 +175,56 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	
 	@Override
 	public Object visit(UnaryOpExpr unary, Object d) {
-		SemanticType operandType = (SemanticType) unary.rightOp.accept(this, null);
+		SemanticType operandType = checkExpr(unary.rightOp);
 		if (unary.operator == UnaryOpsEnum.UMINUS){
-			if(operandType == typTab.intType)
-				return typTab.intType;
-			else{
-				System.out.println(unary.line+": Semantic error: Operand must be of type int");
-	        	System.exit(1);
-			}	
+			if(operandType != typTab.intType && operandType != null)
+				error(unary.line, "operand-type", "Operand must be of type int");
+			return typTab.intType;
 		}
 		else{	// operator !
-			if(operandType == typTab.booleanType)
-				return typTab.booleanType;
-			else{
-				System.out.println(unary.line+": Semantic error: Operand must be of type boolean");
-	        	System.exit(1);
-			}
+			if(operandType != typTab.booleanType && operandType != null)
+				error(unary.line, "operand-type", "Operand must be of type boolean");
+			return typTab.booleanType;
 		}
-		return null;	// will never get here
 	}
 
 	@Override
 	public Object visit(BinaryOpExpr binary, Object d) {
 		// check left op
-		SemanticType leftOpType = (SemanticType) binary.leftOp.accept(this, null);
-        if (leftOpType == null) return null;
+		SemanticType leftOpType = checkExpr(binary.leftOp);
         // check right op
-        SemanticType rightOpType = (SemanticType) binary.rightOp.accept(this, null);
-        if (rightOpType == null) return null;
+        SemanticType rightOpType = checkExpr(binary.rightOp);
+        // an operand with an error was reported already - the type of the result is still known, except for +
+        boolean known = (leftOpType != null && rightOpType != null);
         
 		switch(binary.operator.name){
 		case "&&": case "||":
-	        if(!(leftOpType == typTab.booleanType &&  rightOpType == typTab.booleanType)){
-	        	System.out.println(binary.line+": Semantic error: Operands must be of type boolean");
-	        	System.exit(1);
+	        if(known && !(leftOpType == typTab.booleanType &&  rightOpType == typTab.booleanType)){
+	        	error(binary.line, "operand-type", "Operands must be of type boolean");
 	        }
 	        return typTab.booleanType;
 		case ">":case ">=" : case "<": case "<=":
-	        if(!(leftOpType == typTab.intType &&  rightOpType == typTab.intType)){
-	        	System.out.println(binary.line+": Semantic error: Operands must be of type int");
-	        	System.exit(1);
+	        if(known && !(leftOpType == typTab.intType &&  rightOpType == typTab.intType)){
+	        	error(binary.line, "operand-type", "Operands must be of type int");
 	        }
 	        return typTab.booleanType;
 	      
 		case "+":
+			if (!known)
+				return null;
 			if(leftOpType == typTab.stringType && rightOpType == typTab.stringType){
 				return typTab.stringType;
 		    }
 		    // else, fall through to check if they are both ints
 		case "-": case "*": case "/": case "%":
-	        if(!(leftOpType == typTab.intType &&  rightOpType == typTab.intType)){
-	        	System.out.println(binary.line+": Semantic error: Operands must be of type int");
-	        	System.exit(1);
+	        if(known && !(leftOpType == typTab.intType &&  rightOpType == typTab.intType)){
+	        	error(binary.line, "operand-type", "Operands must be of type int");
 	        }
 	        return typTab.intType;
 	    
 		case "==": case "!=":
-	        if(! (leftOpType.isLike(rightOpType) || (rightOpType.isLike(leftOpType))) ){
-	        	System.out.println(binary.line+": Semantic error: Operands must be of similar type");
-	        	System.exit(1);
+	        if(known && !(leftOpType.isLike(rightOpType) || (rightOpType.isLike(leftOpType))) ){
+	        	error(binary.line, "operand-type", "Operands must be of similar type");
 	        }
 	        return typTab.booleanType;
 				
@@ -178,10 +240,12 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 			try{
 				typTab.addClassType(cl.name, cl.superName);
 			} catch (SemanticError se){
-				System.out.println(""+cl.line + ": "+se);
-				System.exit(1);
+				error(cl.line, "class-declaration", se);
 			}
 		}
+		// the rest of the checks need a sound class hierarchy
+		if (diagnostics.hasErrors())
+			return null;
 		int classOffset = 0;
 		for (Class cl: program.classes){
 			ClassSymbol sym = null;
@@ -193,8 +257,8 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 					sym = new ClassSymbol(cl.name, symTab, classOffset);
 				}
 			} catch (SemanticError se){
-				System.out.println(""+cl.line + ": "+se);
-				System.exit(1);
+				error(cl.line, "class-declaration", se);
+				return null;
 			}
 			// update nextFieldOffset according to super
 			if(cl.superName != null){
@@ -206,8 +270,8 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 				try{
 					sym.addFieldSymbol(f.name, typTab.resolveType(f.type.getName()),sym.nextFieldOffset);
 				} catch (SemanticError se){
-					System.out.println(""+f.line + ": "+se);
-					System.exit(1);
+					error(f.line, "field-declaration", se);
+					continue;
 				}
 				sym.nextFieldOffset++;
 			}
@@ -222,14 +286,12 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 					}
 					sym.addMethodSymbol(m.name, typTab.resolveType(m.type.getName()), params, m.isStatic, methodOffset);
 				} catch (SemanticError se){
-					System.out.println(""+m.line + ": "+se);
-					System.exit(1);
+					error(m.line, "method-declaration", se);
 				}
 				
 				if(isMain(m)){
 					if(mainDefined == true){
-						System.out.println(""+m.line +": Semantic error: main function already defined");
-						System.exit(1);
+						error(m.line, "main-redefinition", "main function already defined");
 					}
 					else
 						mainDefined = true;
@@ -241,11 +303,12 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		}
 		
 		if (!mainDefined){
-			System.out.println(""+program.line + ": Semantic error: no main method found");
-			System.exit(1);
+			error(program.line, "no-main", "no main method found");
 		}
 		
 		for (Class cl: program.classes){
+			if (skippedClasses.contains(cl.name))
+				continue;
 			symTab.enterScope();
 			cl.accept(this, null);
 			symTab.exitScope();
@@ -259,8 +322,8 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		try {
 			currentThisClass = typTab.resolveType(cl.name);
 		} catch (SemanticError se) {
-			System.out.println(""+cl.line + ": "+se);
-			System.exit(1);
+			error(cl.line, "class-declaration", se);
+			return null;
 		}
 		/*int methodOffset = 0;
 		for (Method m: cl.methods){
@@ -310,36 +373,35 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	public Object visit(Method method, Object d) {
 		boolean hasReturn = false;
 		controlFlows = 1;
+		SemanticType methodType;
 		try{
-			if (method.isStatic){
-				inStatic = true;
-			}
-			symTab.addEntry(new ParamSymbol("return", typTab.resolveType(method.type.getName())));
-			SemanticType methodType = symTab.findEntryGlobal("return").type;
+			methodType = typTab.resolveType(method.type.getName());
+			symTab.addEntry(new ParamSymbol("return", methodType));
 			for (Formal f: method.formalList){
 				symTab.addEntry(new ParamSymbol(f.name, typTab.resolveType(f.type.getName())));
 			}
-			
-			for (Stmt s: method.statementList){
-				SemanticType stmtType = (SemanticType) s.accept(this, null);
-				if (s instanceof ReturnStmt){
-					
-					if (methodType != stmtType ){
-						System.out.println(s.line + ": Semantic error: return type must be "+methodType.name);
-						System.exit(1);
-					}
-					hasReturn = true;
-					
-				}				
-			}
-			
-			if (methodType!= typTab.voidType && controlFlows > 0 && !hasReturn){
-				System.out.println(method.line + ": Semantic error: method must have a return statement of type "+methodType.name);
-				System.exit(1);
-			}
 		} catch (SemanticError se){
-			System.out.println(""+method.type.line + ": "+se);
-			System.exit(1);
+			error(method.type.line, "method-declaration", se);
+			return null;
+		}
+		
+		if (method.isStatic){
+			inStatic = true;
+		}
+		for (Stmt s: method.statementList){
+			SemanticType stmtType = (SemanticType) s.accept(this, null);
+			if (s instanceof ReturnStmt){
+				
+				if (methodType != stmtType ){
+					error(s.line, "return-type", "return type must be "+methodType.name);
+				}
+				hasReturn = true;
+				
+			}				
+		}
+		
+		if (methodType!= typTab.voidType && controlFlows > 0 && !hasReturn){
+			error(method.line, "missing-return", "method must have a return statement of type "+methodType.name);
 		}
 
 		inStatic = false;	
@@ -369,16 +431,15 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		
         // check location recursively
         writingToVar = true;
-		SemanticType locationType = (SemanticType) assignStmt.lhs.accept(this, null);        
+		SemanticType locationType = checkExpr(assignStmt.lhs);        
 		writingToVar = false;
         if (locationType == null) return null;
         // check assignment recursively
-        SemanticType assignmentType = (SemanticType) assignStmt.rhs.accept(this, null);
+        SemanticType assignmentType = checkExpr(assignStmt.rhs);
         if (assignmentType == null) return null;
         
         if(!assignmentType.isLike(locationType)){
-        	System.out.println(assignStmt.line+": Semantic error: type mismatch, not of type "+locationType.name);
-        	System.exit(1);
+        	error(assignStmt.line, "type-mismatch", "type mismatch, not of type "+locationType.name);
         }
         
         
@@ -425,11 +486,13 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 			exprType = typTab.voidType;
 		}
 		else{
-			exprType = (SemanticType) returnStmt.expr.accept(this, null);
+			exprType = checkExpr(returnStmt.expr);
 		}
-		if ( returnType != exprType){
-			System.out.println(returnStmt.line + ": Semantic error: return type must be "+returnType.name);
-			System.exit(1);
+		// reported here, or (when null) with the expression
+		if (returnType != exprType){
+			if (exprType != null)
+				error(returnStmt.line, "return-type", "return type must be "+returnType.name);
+			return returnType;
 		}
 		
 		return exprType;
@@ -449,38 +512,28 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		if (staticCall.className != null) { 
 			ClassSymbol cl = (ClassSymbol) symTab.findEntryGlobal(staticCall.className);
 			if (cl==null){
-				System.out.println(staticCall.line+": Semantic error: class "+staticCall.className+" does not exist");
-				System.exit(1);
-			}
-			try {
-				func = cl.getMethodSymbolRec(staticCall.funcName);
-			} catch (SemanticError e) {
-				
-			}
-			if (func==null){
-				System.out.println(staticCall.line+": Semantic error: method "+staticCall.funcName+" does not exist in class "+cl.name );
-				System.exit(1);
+				error(staticCall.line, "undefined-class", "class "+staticCall.className+" does not exist");
+			} else {
+				try {
+					func = cl.getMethodSymbolRec(staticCall.funcName);
+				} catch (SemanticError e) {
+					
+				}
+				if (func==null){
+					error(staticCall.line, "undefined-method", "method "+staticCall.funcName+" does not exist in class "+cl.name);
+				}
 			}
-			funcType = func.type;
 			List<SemanticType> callArgsTypes = new ArrayList<SemanticType>();
 			
 			for (Expr arg: staticCall.args){
-				SemanticType argType  = (SemanticType) arg.accept(this, null);
+				SemanticType argType  = checkExpr(arg);
 				callArgsTypes.add(argType);
 			}
+			if (func == null)
+				return null;
+			funcType = func.type;
 			
-			if (!func.checkParamTypes(callArgsTypes)){
-	        	System.out.print(staticCall.line+": Semantic error: method " + staticCall.funcName+" expects "+func.params.size()+" arguments");
-	        	if (func.params.size() > 0){
-	        		System.out.print(": (");
-		        	for (ParamSymbol p: func.params){
-		        		System.out.print(" "+p.type.name);
-		        	}
-		        	System.out.println(" )");
-	        	}
-	        	
-	        	System.exit(1);
-			}
+			checkArguments(staticCall.line, staticCall.funcName, func, callArgsTypes);
 		}
 
 		
@@ -496,70 +549,72 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		// when call is local
 		if (virtCall.location == null) { 
 			if (inStatic){
-				System.out.println(virtCall.line+": Semantic error: virtual method invocation without identifier, in static scope");
-				System.exit(1);
+				error(virtCall.line, "static-scope", "virtual method invocation without identifier, in static scope");
 			}
-			func = (MethodSymbol) symTab.findEntryGlobal(virtCall.funcName);
+			Symbol sym = symTab.findEntryGlobal(virtCall.funcName);
+			func = (sym instanceof MethodSymbol) ? (MethodSymbol) sym : null;
 			if (func==null){
-				System.out.println(virtCall.line+": Semantic error: method "+virtCall.funcName+" does not exist");
-				System.exit(1);
+				error(virtCall.line, "undefined-method", "method "+virtCall.funcName+" does not exist");
 			}
 		}
 		
 		//when call is external [when we have obj.funcName(...)]
 		else { 
-			SemanticType locationType = (SemanticType) virtCall.location.accept(this, null);
-			if (locationType == null) return null;
-			try{
-				typTab.resolveClassType(locationType.name);
-				ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(locationType.name);
-				
+			SemanticType locationType = checkExpr(virtCall.location);
+			if (locationType != null){
 				try{
-					func = cs.getMethodSymbolRec(virtCall.funcName)	;			
+					typTab.resolveClassType(locationType.name);
+					ClassSymbol cs = (ClassSymbol) symTab.findEntryGlobal(locationType.name);
+					
+					try{
+						func = cs.getMethodSymbolRec(virtCall.funcName)	;			
+					}
+					catch (SemanticError se){
+						// there is no such method in that class
+						error(virtCall.line, "undefined-method", "there is no method "+ virtCall.funcName +" in class "+cs.name);
+					}				
 				}
 				catch (SemanticError se){
-					// there is no such method in that class
-					System.out.println(virtCall.line +": Semantic error: there is no method "+ virtCall.funcName +" in class "+cs.name);
-					System.exit(1);
-				}				
-			}
-			catch (SemanticError se){
-				//there is no class like this
-				System.out.println(virtCall.line +": Semantic error: "+locationType+" does not exist");
-				System.exit(1);
+					//there is no class like this
+					error(virtCall.line, "undefined-class", locationType+" does not exist");
+				}
 			}
 		}
 
 		// check args types
-		funcType = func.type;
-		
 		for (Expr arg: virtCall.args){
-			SemanticType argType  = (SemanticType) arg.accept(this, null);
+			SemanticType argType  = checkExpr(arg);
 			callArgsTypes.add(argType);
 		}
+		if (func == null)
+			return null;
+		funcType = func.type;
 		
-		if (!func.checkParamTypes(callArgsTypes)){
-        	System.out.print(virtCall.line+": Semantic error: method " + virtCall.funcName+" expects "+func.params.size()+" arguments");
-        	if (func.params.size() > 0){
-        		System.out.print(": (");
-	        	for (ParamSymbol p: func.params){
-	        		System.out.print(" "+p.type.name);
-	        	}
-	        	System.out.println(" )");
-        	}
-        	
-        	System.exit(1);
-		}
-		
+		checkArguments(virtCall.line, virtCall.funcName, func, callArgsTypes);
 		
 		return funcType;
 	}
+	
+	// check the types of the arguments of a call to <func>, unless one of them has an error
+	private void checkArguments(int line, String funcName, MethodSymbol func, List<SemanticType> argTypes){
+		if (func.params.size() == argTypes.size() && (argTypes.contains(null) || func.checkParamTypes(argTypes)))
+			return;
+		StringBuilder message = new StringBuilder("method " + funcName+" expects "+func.params.size()+" arguments");
+		if (func.params.size() > 0){
+			message.append(": (");
+			for (ParamSymbol p: func.params){
+				message.append(" "+p.type.name);
+			}
+			message.append(" )");
+		}
+		error(line, "argument-types", message.toString());
+	}
 
 	@Override
 	public Object visit(VarLocation varLoc, Object d) {
 		//external
 		if (varLoc.location != null){ 
-			SemanticType locationType = (SemanticType) varLoc.location.accept(this, null);
+			SemanticType locationType = checkExpr(varLoc.location);
 			if (locationType == null) return null;
 			try{
 				typTab.resolveClassType(locationType.name);
@@ -571,8 +626,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 				}
 				catch (SemanticError se){
 					// there is no such field in that class
-					System.out.println(varLoc.line +": Semantic error: there is no field "+ varLoc.name +" in class "+cs.name);
-					System.exit(1);
+					error(varLoc.line, "undefined-field", "there is no field "+ varLoc.name +" in class "+cs.name);
 				}
 				
 
@@ -580,29 +634,26 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 			}
 			catch (SemanticError se){
 				//there is no class like this
-				System.out.println(varLoc.line +": Semantic error: "+locationType+" does not exist");
-				System.exit(1);
+				error(varLoc.line, "undefined-class", locationType+" does not exist");
 			}
 		
 		// local
 		}else {
 			Symbol res = (Symbol) symTab.findEntryGlobal(varLoc.name);
 			if(res == null){
-				System.out.println(""+varLoc.line + ": Semantic error: undefined variable: " + varLoc.name);
-				System.exit(1);
+				error(varLoc.line, "undefined-variable", "undefined variable: " + varLoc.name);
+				return null;
 			}
 			if (res instanceof FieldSymbol){
 				if(inStatic){
-					System.out.println(""+varLoc.line + ": Semantic error: Class field referenced in static method");
-					System.exit(1);
+					error(varLoc.line, "static-scope", "Class field referenced in static method");
 				}
 			}
 			/* check if location is assigned */
 			if (!(res instanceof FieldSymbol)){
 				if (res instanceof VarSymbol){
 					if(!writingToVar && !((VarSymbol)res).isAssigned){
-						System.out.println(varLoc.line +": Semantic error: "+varLoc.name+" is not assigned");
-						System.exit(1);
+						error(varLoc.line, "unassigned-variable", varLoc.name+" is not assigned");
 					}
 				}
 			}
@@ -616,22 +667,22 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	@Override
 	public Object visit(ArrayLocation arrayLoc, Object d) {
 		SemanticType arrayElement = null;
-		SemanticType arrayType = (SemanticType) arrayLoc.array.accept(this, null);
-		if (!typTab.isArrayType(arrayType)){
-			System.out.println(""+arrayLoc.line + ": Semantic error: array access to non-array type" );
-			System.exit(1);
+		SemanticType arrayType = checkExpr(arrayLoc.array);
+		if (arrayType != null && !typTab.isArrayType(arrayType)){
+			error(arrayLoc.line, "not-an-array", "array access to non-array type");
+			arrayType = null;
 		}
 
-		SemanticType indexType = (SemanticType) arrayLoc.index.accept(this, null);
-		if (indexType != typTab.intType) {
-			System.out.println(""+arrayLoc.line + ": Semantic error: array index is not of type int" );
-			System.exit(1);
+		SemanticType indexType = checkExpr(arrayLoc.index);
+		if (indexType != typTab.intType && indexType != null) {
+			error(arrayLoc.line, "index-type", "array index is not of type int");
 		}
+		if (arrayType == null)
+			return null;
 		try{
 			arrayElement = typTab.resolveType(arrayType.name.substring(0, arrayType.name.length()-2));
 		}catch(SemanticError se){
-			System.out.println(""+arrayLoc.line + ": " + se);
-			System.exit(1);
+			error(arrayLoc.line, "undefined-type", se);
 		}
 		return arrayElement;
 	}
@@ -639,7 +690,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	@Override
 	public Object visit(CallStmt callStmt, Object d) {
 		
-		callStmt.call.accept(this, null);
+		checkExpr(callStmt.call);
 		return null;
 	}
 
@@ -658,10 +709,9 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	public Object visit(IfStmt ifStmt, Object d) {
 		if(controlFlows > 0)
 			++controlFlows;
-		SemanticType conditionType = (SemanticType) ifStmt.condition.accept(this, null);
-		if(conditionType != typTab.booleanType){
-			System.out.println(ifStmt.line + ": Semantic error: if condition must be of type boolean");
-			System.exit(1);
+		SemanticType conditionType = checkExpr(ifStmt.condition);
+		if(conditionType != typTab.booleanType && conditionType != null){
+			error(ifStmt.line, "condition-type", "if condition must be of type boolean");
 		}
 		symTab.enterScope();
 		ifStmt.thenStmt.accept(this, null);
@@ -681,10 +731,9 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	public Object visit(WhileStmt whileStmt, Object d) {
 		if(controlFlows > 0)
 			++controlFlows;
-		SemanticType conditionType = (SemanticType) whileStmt.condition.accept(this, null);
-		if (conditionType != typTab.booleanType){
-			System.out.println(whileStmt.line + ": Semantic error: while condition must be of type boolean");
-			System.exit(1);
+		SemanticType conditionType = checkExpr(whileStmt.condition);
+		if (conditionType != typTab.booleanType && conditionType != null){
+			error(whileStmt.line, "condition-type", "while condition must be of type boolean");
 		}
 		symTab.enterScope();
 		++loopLevel;
@@ -697,8 +746,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	@Override
 	public Object visit(BreakStmt breakStmt, Object d) {
 		if (loopLevel == 0){
-			System.out.println(""+breakStmt.line + ": Semantic error: break statement outside of loop");
-			System.exit(1);
+			error(breakStmt.line, "break-outside-loop", "break statement outside of loop");
 		}
 		
 		return null;
@@ -707,8 +755,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	@Override
 	public Object visit(ContinueStmt contStmt, Object d) {
 		if (loopLevel == 0){
-			System.out.println(""+contStmt.line + ": Semantic error: continue statement outside of loop");
-			System.exit(1);
+			error(contStmt.line, "continue-outside-loop", "continue statement outside of loop");
 		}
 		
 		return null;
@@ -718,36 +765,33 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 
 	public Object visit(LocalVarStmt localVar, Object d) {
 		
-		if(symTab.findEntryLocal(localVar.name) != null){
-			System.out.println(""+localVar.line + ": Semantic error: variable redefinition: "+localVar.name);
-			System.exit(1);
+		boolean redefined = (symTab.findEntryLocal(localVar.name) != null);
+		if(redefined){
+			error(localVar.line, "variable-redefinition", "variable redefinition: "+localVar.name);
 		}
 		
+		// a variable of an unknown type is still declared, with a null type, so its uses are not errors
+		SemanticType varType = null;
 		try{
+			varType = typTab.resolveType(localVar.type.getName());
+		} catch (SemanticError se){
+			error(localVar.type.line, "undefined-type", se);
+		}
+		if (!redefined){
 			if (localVar.init == null){
-			symTab.addEntry(new VarSymbol(localVar.name, typTab.resolveType(localVar.type.getName())));
+				symTab.addEntry(new VarSymbol(localVar.name, varType));
 			}
 			else {
-				symTab.addEntry(new VarSymbol(localVar.name, typTab.resolveType(localVar.type.getName()),true));
+				symTab.addEntry(new VarSymbol(localVar.name, varType, true));
 			}
-		} catch (SemanticError se){
-			System.out.println(""+localVar.type.line + ": "+se);
-			System.exit(1);
-			
 		}
 		
 		// has initialiser
 		if (localVar.init != null){
-			SemanticType assignType = (SemanticType) localVar.init.accept(this, null);
+			SemanticType assignType = checkExpr(localVar.init);
 		
-			try {
-				if(!assignType.isLike(typTab.resolveType(localVar.type.getName()))){
-					System.out.println(localVar.line+": Semantic error: type mismatch, not of type "+localVar.type.getName());
-					System.exit(1);
-				}
-			} catch (SemanticError se) {
-				System.out.println(""+localVar.type.line + ": "+se);
-				System.exit(1);
+			if(assignType != null && varType != null && !assignType.isLike(varType)){
+				error(localVar.line, "type-mismatch", "type mismatch, not of type "+localVar.type.getName());
 			}
 		}
 				
@@ -758,8 +802,8 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 	@Override
 	public Object visit(ThisExpr expr, Object d) {
 		if(inStatic){
-			System.out.println(""+expr.line + ": Semantic error: 'this' referenced in static method");
-			System.exit(1);
+			error(expr.line, "static-scope", "'this' referenced in static method");
+			return null;
 		}
 		//return symTab.findEntryGlobal("this").type;
 		return currentThisClass;
@@ -771,8 +815,7 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		try{
 			classType = typTab.resolveClassType(newClass.name);
 		}catch(SemanticError se){
-			System.out.println(""+newClass.line + ": " + se);
-			System.exit(1);
+			error(newClass.line, "undefined-class", se);
 		}
 		return classType;
 	}
@@ -783,23 +826,20 @@ public class SemanticChecker implements PropagatingVisitor<Object, Object> {
 		try{
 			arrayType = typTab.resolveArrayType(newArray.type.getName());
 		}catch(SemanticError se){
-			System.out.println(""+newArray.line + ": " + se);
-			System.exit(1);
+			error(newArray.line, "undefined-type", se);
 		}
-		SemanticType indexType = (SemanticType) newArray.index.accept(this, null);
-		if (indexType != typTab.intType) {
-			System.out.println(""+newArray.line + ": Semantic error: array size is not of type int" );
-			System.exit(1);
+		SemanticType indexType = checkExpr(newArray.index);
+		if (indexType != typTab.intType && indexType != null) {
+			error(newArray.line, "size-type", "array size is not of type int");
 		}
 		return arrayType;
 	}
 
 	@Override
 	public Object visit(LengthExpr len, Object d) {
-		SemanticType contextType = (SemanticType) len.context.accept(this, null);
-		if (!typTab.isArrayType(contextType)){
-			System.out.println(""+len.line + ": Semantic error: cannot apply operator 'length' to non-array type" );
-			System.exit(1);
+		SemanticType contextType = checkExpr(len.context);
+		if (contextType != null && !typTab.isArrayType(contextType)){
+			error(len.line, "not-an-array", "cannot apply operator 'length' to non-array type");
 		}
 		return typTab.intType;
 	}
@@ -1,85 +1,117 @@
 package symbolTable;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.List;
-import java.util.ArrayList;
 
+// Names are interned to int ids. The bindings of all open scopes are kept on a single stack,
+// where each binding links to the binding of the same name it shadows, and the top binding of
+// each name is kept by its id. Leaving a scope pops its bindings and restores what they shadowed,
+// so entering and leaving scopes and looking names up allocate nothing.
 public class SymbolTable {
-	private Map<String, List<SymbolEntry>> symbolMap = new HashMap<String, List<SymbolEntry>>();
-	private List<List<SymbolEntry>> scope = new ArrayList<List<SymbolEntry>>();
-	public int scopeLevel = 0;
+	// name to id, and the top binding of each id (-1 if the name is not bound)
+	private Map<String, Integer> ids = new HashMap<String, Integer>();
+	private int[] heads = new int[64];
 	
-	// binds scope level to a symbol
-	private class SymbolEntry{
-		private Symbol symbol;
-		private int level;
-		
-		private SymbolEntry(Symbol symbol, int level){
-			this.symbol = symbol;
-			this.level = level;
-		}
-	}
+	// the binding stack: symbol, scope level, name id and the binding it shadows (or -1)
+	private Symbol[] symbols = new Symbol[64];
+	private int[] levels = new int[64];
+	private int[] names = new int[64];
+	private int[] shadowed = new int[64];
+	private int top = 0;
+	// the number of symbols ever added
+	private int added = 0;
+	
+	// where the bindings of each open scope start on the binding stack
+	private int[] scopeStarts = new int[16];
+	public int scopeLevel = 0;
 	
 	public SymbolTable(){
 		enterScope();
 	}
 	
-	// create a new list to hold references to symbols of a new scope
+	// open a new scope
 	public void enterScope(){
-		scope.add(0, new ArrayList<SymbolEntry>());
+		if (scopeLevel == scopeStarts.length)
+			scopeStarts = Arrays.copyOf(scopeStarts, 2*scopeLevel);
+		scopeStarts[scopeLevel] = top;
 		++scopeLevel;
 	}
 	
 	// delete all symbols defined in current scope from the table 
 	public void exitScope(){
-		for (SymbolEntry se: scope.get(0)){
-			symbolMap.get(se.symbol.name).remove(0);
-			if(symbolMap.get(se.symbol.name).isEmpty())
-				symbolMap.remove(se.symbol.name);
-		}
-		scope.remove(0);
 		--scopeLevel;
+		int start = scopeStarts[scopeLevel];
+		while (top > start){
+			--top;
+			heads[names[top]] = shadowed[top];
+			symbols[top] = null;
+		}
 	}
 	
-	// add a new symbol to the table and save a reference to it in the scope list
+	// add a new symbol to the table, in the current scope
 	public void addEntry(Symbol sym){
 		if(sym == null)
 			return;
 		
-		SymbolEntry se = new SymbolEntry(sym, scopeLevel);
-		if(findEntryGlobal(sym.name) == null){
-			List<SymbolEntry> l = new ArrayList<SymbolEntry>();
-			l.add(0, se);
-			symbolMap.put(sym.name, l);
+		Integer id = ids.get(sym.name);
+		if (id == null){
+			id = ids.size();
+			ids.put(sym.name, id);
+			if (id == heads.length)
+				heads = Arrays.copyOf(heads, 2*id);
+			heads[id] = -1;
+		}
+		if (top == symbols.length){
+			symbols = Arrays.copyOf(symbols, 2*top);
+			levels = Arrays.copyOf(levels, 2*top);
+			names = Arrays.copyOf(names, 2*top);
+			shadowed = Arrays.copyOf(shadowed, 2*top);
 		}
-		else
-			symbolMap.get(sym.name).add(0, se);
-		scope.get(0).add(se);
+		symbols[top] = sym;
+		levels[top] = scopeLevel;
+		names[top] = id;
+		shadowed[top] = heads[id];
+		heads[id] = top;
+		++top;
+		++added;
+	}
+	
+	// the number of symbols added to the table since it was made, in all scopes
+	public int getAddedCount(){
+		return added;
 	}
 
 	// searches for a symbol with given name, returns null if not found
 	public Symbol findEntryGlobal(String name){
-		List<SymbolEntry> l = symbolMap.get(name);
-		if(l == null)
+		int b = binding(name);
+		if(b < 0)
 			return null;
-		return l.get(0).symbol;
+		return symbols[b];
 	}
 	
 	// searches for a symbol with given name, returns null if not found in CURRENT scope
 	public Symbol findEntryLocal(String name){
-		List<SymbolEntry> l = symbolMap.get(name);
-		if(l == null || (l.get(0).level < scopeLevel))
+		int b = binding(name);
+		if(b < 0 || levels[b] < scopeLevel)
 			return null;
-		return l.get(0).symbol;
+		return symbols[b];
 	}
 	
 	// returns the scope level of the last definition of <name>
 	public int findScopeLevel(String name){
-		List<SymbolEntry> l = symbolMap.get(name);
-		if(l == null)
+		int b = binding(name);
+		if(b < 0)
+			return -1;
+		return levels[b];
+	}
+	
+	// the top binding of <name> on the binding stack, or -1
+	private int binding(String name){
+		Integer id = ids.get(name);
+		if(id == null)
 			return -1;
-		return l.get(0).level;
+		return heads[id];
 	}
 }
 
@@ -0,0 +1,69 @@
+package symbolTable;
+
+import java.util.*;
+
+// the dispatch table of a class: its virtual methods (including inherited ones) by offset,
+// with the class each implementation belongs to. Inherited methods keep the offsets they have
+// in the superclass, overriding methods take the offset of the method they override, and new
+// methods follow in the order they are declared.
+public class VirtualTable {
+	private final MethodSymbol[] methods;
+	private final String[] owners;
+	private final Map<String, Integer> offsets;
+	
+	// the table of a class without a superclass
+	VirtualTable(String className, Collection<MethodSymbol> declared){
+		this(null, className, declared);
+	}
+	
+	// the table of a class that extends the class of <superTable>
+	VirtualTable(VirtualTable superTable, String className, Collection<MethodSymbol> declared){
+		List<MethodSymbol> methodList = new ArrayList<MethodSymbol>();
+		List<String> ownerList = new ArrayList<String>();
+		offsets = new HashMap<String, Integer>();
+		if (superTable != null){
+			methodList.addAll(Arrays.asList(superTable.methods));
+			ownerList.addAll(Arrays.asList(superTable.owners));
+			offsets.putAll(superTable.offsets);
+		}
+		for (MethodSymbol m: declared){
+			if (m.isStatic)
+				continue;
+			Integer offset = offsets.get(m.name);
+			if (offset != null){
+				methodList.set(offset, m);
+				ownerList.set(offset, className);
+			} else {
+				offsets.put(m.name, methodList.size());
+				methodList.add(m);
+				ownerList.add(className);
+			}
+		}
+		methods = methodList.toArray(new MethodSymbol[methodList.size()]);
+		owners = ownerList.toArray(new String[ownerList.size()]);
+	}
+	
+	public int size(){
+		return methods.length;
+	}
+	
+	// the offset of the virtual method <name>, or -1 if the class has no such method
+	public int getOffset(String name){
+		Integer offset = offsets.get(name);
+		return (offset == null) ? -1 : offset;
+	}
+	
+	public MethodSymbol getMethod(int offset){
+		return methods[offset];
+	}
+	
+	// the name of the class whose implementation is at <offset>
+	public String getOwner(int offset){
+		return owners[offset];
+	}
+	
+	// the label of the implementation at <offset>: _<owner>_<method>
+	public String getLabel(int offset){
+		return "_"+owners[offset]+"_"+methods[offset].name;
+	}
+}